@@ -0,0 +1,100 @@
+package com.zoomigo.whatsapp.whatsapprentalbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares a JMH JSON result with a baseline from an earlier commit; run by the jmh profile after the
+ * benchmarks. Keep a baseline per commit and pass it in:
+ * <pre>
+ * mvn -Pjmh -DskipTests test -Djmh.result=benchmarks/$(git rev-parse --short HEAD).json
+ * mvn -Pjmh -DskipTests test -Djmh.baseline=benchmarks/abc1234.json -Djmh.failOnRegression=true
+ * </pre>
+ * Scores (time per op) and normalised allocation ({@code gc.alloc.rate.norm}, from {@code -prof gc})
+ * that grew by more than {@code jmh.threshold} percent are flagged.
+ */
+public final class JmhResultComparison {
+
+    private static final String ALLOC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (a.startsWith("--") && eq > 0) opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        String result = opts.getOrDefault("result", "");
+        String baseline = opts.getOrDefault("baseline", "");
+        if (baseline.isBlank()) {
+            System.out.println("No jmh.baseline given; results are in " + result);
+            return;
+        }
+        double threshold = Double.parseDouble(opts.getOrDefault("threshold", "10"));
+        boolean fail = Boolean.parseBoolean(opts.getOrDefault("fail", "false"));
+
+        Map<String, JsonNode> before = load(new File(baseline));
+        Map<String, JsonNode> after = load(new File(result));
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %8s %12s %12s %8s%n", "benchmark", "before", "after", "change", "B/op before", "B/op after", "change");
+        for (Map.Entry<String, JsonNode> e : after.entrySet()) {
+            JsonNode now = e.getValue();
+            JsonNode old = before.get(e.getKey());
+            double score = now.path("primaryMetric").path("score").asDouble();
+            double alloc = allocation(now);
+            if (old == null) {
+                System.out.printf("%-90s %14s %14.3f %8s %12s %12.0f %8s%n", e.getKey(), "-", score, "new", "-", alloc, "");
+                continue;
+            }
+            double oldScore = old.path("primaryMetric").path("score").asDouble();
+            double oldAlloc = allocation(old);
+            // throughput modes report ops/time, where bigger is better
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double scoreDelta = percent(oldScore, score) * (higherIsBetter ? -1 : 1);
+            double allocDelta = percent(oldAlloc, alloc);
+            boolean regressed = scoreDelta > threshold || (oldAlloc >= 0 && alloc >= 0 && allocDelta > threshold && alloc - oldAlloc > 16);
+            if (regressed) regressions++;
+            System.out.printf("%-90s %14.3f %14.3f %+7.1f%% %12.0f %12.0f %+7.1f%%%s%n", e.getKey(), oldScore, score, scoreDelta,
+                    oldAlloc, alloc, allocDelta, regressed ? "  <-- regression" : "");
+        }
+        System.out.printf("%d benchmark(s) regressed by more than %.0f%% against %s%n", regressions, threshold, baseline);
+        if (fail && regressions > 0) System.exit(1);
+    }
+
+    private static Map<String, JsonNode> load(File file) throws IOException {
+        Map<String, JsonNode> byKey = new TreeMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            if (params.isObject()) {
+                List<String> names = new ArrayList<>();
+                params.fieldNames().forEachRemaining(names::add);
+                Collections.sort(names);
+                StringJoiner joiner = new StringJoiner(",", "[", "]");
+                for (String n : names) joiner.add(n + "=" + params.get(n).asText());
+                key.append(joiner);
+            }
+            byKey.put(key.toString(), run);
+        }
+        return byKey;
+    }
+
+    private static double allocation(JsonNode run) {
+        JsonNode metrics = run.path("secondaryMetrics");
+        for (Iterator<String> it = metrics.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            // JMH prefixes profiler metrics with a middle dot
+            if (name.endsWith(ALLOC)) return metrics.get(name).path("score").asDouble();
+        }
+        return -1;
+    }
+
+    private static double percent(double before, double after) {
+        if (before <= 0) return 0;
+        return (after - before) * 100.0 / before;
+    }
+}
@@ -0,0 +1,71 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session data as it is written and read on every message: empty, and carrying a listed fleet plus an
+ * applied promo. {@code map} is the pre-version layout decoded into a LinkedHashMap, {@code state} the
+ * compact {@link SessionState} document.
+ * {@code mvn -Pjmh -DskipTests test -Djmh.includes=SessionStateBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionStateBenchmark {
+
+    @Param({"empty", "bikeList"})
+    public String shape;
+
+    @Param({"map", "state"})
+    public String format;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Object data;
+    private Class<?> type;
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        Map<String, Object> map = new HashMap<>();
+        SessionState state = SessionState.EMPTY;
+        if ("bikeList".equals(shape)) {
+            Map<String, Object> bikeMap = new LinkedHashMap<>();
+            List<Long> ids = new ArrayList<>();
+            for (long id = 1; id <= 20; id++) {
+                bikeMap.put(String.valueOf(id), id);
+                ids.add(id);
+            }
+            map.put("bikeMap", bikeMap);
+            map.put("promoCodeId", 7L);
+            map.put("promoCode", "ZOOMI10");
+            map.put("promoAppliedDiscount", 450);
+            map.put("promoFinalPrice", 4050);
+            state = state.withBikes(ids).withPromo(7L, "ZOOMI10", 450, 4050);
+        }
+        data = "map".equals(format) ? map : state;
+        type = "map".equals(format) ? LinkedHashMap.class : SessionState.class;
+        json = mapper.writeValueAsString(data);
+    }
+
+    @Benchmark
+    public String write() throws JsonProcessingException {
+        return mapper.writeValueAsString(data);
+    }
+
+    @Benchmark
+    public Object read() throws JsonProcessingException {
+        return mapper.readValue(json, type);
+    }
+}
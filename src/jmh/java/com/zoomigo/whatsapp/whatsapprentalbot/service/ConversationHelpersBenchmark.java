@@ -0,0 +1,93 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The private helpers every message goes through: money formatting, start-date parsing and
+ * free-text choice mapping. Called through method handles so the service keeps its visibility.
+ * {@code mvn -Pjmh -DskipTests test -Djmh.includes=ConversationHelpersBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationHelpersBenchmark {
+
+    private static final MethodHandle FORMAT_MONEY;
+    private static final MethodHandle PARSE_DATE;
+    private static final MethodHandle MAP_TO_CHOICE;
+    private static final MethodHandle NORMALIZE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(ConversationService.class, MethodHandles.lookup());
+            FORMAT_MONEY = lookup.findVirtual(ConversationService.class, "formatMoney", MethodType.methodType(String.class, BigDecimal.class));
+            PARSE_DATE = lookup.findVirtual(ConversationService.class, "parseDate", MethodType.methodType(LocalDate.class, String.class));
+            MAP_TO_CHOICE = lookup.findVirtual(ConversationService.class, "mapToChoice", MethodType.methodType(String.class, String.class, String.class));
+            NORMALIZE = lookup.findVirtual(ConversationService.class, "normalize", MethodType.methodType(String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DateInput {
+        @Param({"25 Oct", "tomorrow", "next friday"})
+        public String text;
+    }
+
+    private ConversationService service;
+    private final BigDecimal amount = new BigDecimal("45");
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        ExchangeRateRepository rates = InMemoryRepositories.exchangeRates();
+        rates.save(new ExchangeRate("USD", "LKR", new BigDecimal("300.00"), Instant.now(), false, true));
+        ExchangeRateService exchangeRates = new ExchangeRateService(rates);
+        exchangeRates.refresh();
+        service = new ConversationService(InMemoryRepositories.users(), InMemoryRepositories.bikes(), InMemoryRepositories.sessions(),
+                null, InMemoryRepositories.bookings(), InMemoryRepositories.promos(), InMemoryRepositories.promoBikes(),
+                exchangeRates, null);
+    }
+
+    @Benchmark
+    public String formatMoney() throws Throwable {
+        return (String) FORMAT_MONEY.invokeExact(service, amount);
+    }
+
+    @Benchmark
+    public LocalDate parseDate(DateInput date) throws Throwable {
+        return (LocalDate) PARSE_DATE.invokeExact(service, date.text);
+    }
+
+    @Benchmark
+    public String mapToChoicePickup() throws Throwable {
+        return (String) MAP_TO_CHOICE.invokeExact(service, "ASK_PICKUP", "I'll pick it up at the shop");
+    }
+
+    @Benchmark
+    public String mapToChoiceConfirm() throws Throwable {
+        return (String) MAP_TO_CHOICE.invokeExact(service, "CONFIRM_BIKE", "Yes!");
+    }
+
+    @Benchmark
+    public String normalize() throws Throwable {
+        return (String) NORMALIZE.invokeExact(service, "Pick-up at the SHOP, please!!");
+    }
+}
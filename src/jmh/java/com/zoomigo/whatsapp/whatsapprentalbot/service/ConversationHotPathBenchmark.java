@@ -0,0 +1,131 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * One {@link ConversationService#handleMessage} call per stage, against in-memory repositories wired the
+ * way the application wires them (bike catalog and list cache, promo bike index, Caffeine caches, exchange rates). Each
+ * invocation first puts the user back into {@code stage} and drops the bookings earlier invocations made,
+ * so every CONFIRM_BIKE call confirms instead of finding the bike taken; that is a handful of writes next
+ * to the message handling.
+ * {@code mvn -Pjmh -DskipTests test -Djmh.includes=ConversationHotPathBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationHotPathBenchmark {
+
+    private static final String WA_ID = "94770000000";
+
+    @Param({"START", "ASK_NAME", "ASK_DAYS", "ASK_START_DATE", "ASK_PICKUP", "ASK_BIKE", "ASK_PROMO", "CONFIRM_BIKE"})
+    public String stage;
+
+    @Param({"20"})
+    public int fleetSize;
+
+    private ConversationService service;
+    private BookingRepository bookings;
+    private User user;
+    private ChatSessionEntity session;
+    private PromoCode promo;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        // the service logs every message at INFO; console output would swamp the numbers
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        UserRepository users = InMemoryRepositories.users();
+        ChatSessionRepository sessions = InMemoryRepositories.sessions();
+        BikeRepository bikes = InMemoryRepositories.bikes();
+        PromoCodeRepository promos = InMemoryRepositories.promos();
+        PromoCodeBikeRepository promoBikes = InMemoryRepositories.promoBikes();
+        ExchangeRateRepository rates = InMemoryRepositories.exchangeRates();
+        rates.save(new ExchangeRate("USD", "LKR", new BigDecimal("300.00"), Instant.now(), false, true));
+
+        for (int i = 0; i < fleetSize; i++) {
+            Bike b = new Bike();
+            b.setName((i % 2 == 0 ? "Honda Dio " : "Yamaha FZ ") + (110 + i));
+            b.setPricePerDay(15 + i);
+            b.setDeposit(50);
+            b.setAvailable(true);
+            bikes.save(b);
+        }
+        promo = new PromoCode();
+        promo.setCode("ZOOMI10");
+        promo.setDiscountPercent(10);
+        promos.save(promo);
+
+        user = new User();
+        user.setPhoneNumber(WA_ID);
+        users.save(user);
+        session = new ChatSessionEntity(WA_ID, "START", SessionState.EMPTY);
+        sessions.save(session);
+
+        ExchangeRateService exchangeRates = new ExchangeRateService(rates);
+        exchangeRates.refresh();
+        bookings = InMemoryRepositories.bookings();
+        service = new ConversationService(users, bikes, sessions, new SessionResetService(users, sessions),
+                bookings, promos, promoBikes,
+                exchangeRates, null);
+        service.setBikeCatalog(new BikeCatalog(bikes));
+        service.setPromoBikeIndex(new PromoBikeIndex(promoBikes));
+        service.setBikeListCache(new BikeListCache(Duration.ofMinutes(1)));
+        service.setCacheManager(new CaffeineCacheManager("bikes", "promos"));
+
+        input = switch (stage) {
+            case "START" -> "Hi";
+            case "ASK_NAME" -> "Alice";
+            case "ASK_DAYS" -> "3";
+            case "ASK_START_DATE" -> "25 Oct";
+            case "ASK_PICKUP" -> "1";
+            case "ASK_BIKE" -> "2";
+            case "ASK_PROMO" -> "ZOOMI10";
+            case "CONFIRM_BIKE" -> "1";
+            default -> throw new IllegalArgumentException(stage);
+        };
+    }
+
+    @Benchmark
+    public String handleMessage() {
+        resetTo(stage);
+        return service.handleMessage(WA_ID, input);
+    }
+
+    private void resetTo(String stage) {
+        user.setStage(stage);
+        user.setName("Alice");
+        user.setDays(3);
+        user.setStartDate(LocalDate.of(2025, 10, 25));
+        user.setPickupType("Pickup at shop");
+        user.setSelectedBikeId(2L);
+        promo.setUsedCount(0);
+        bookings.deleteAll();
+
+        long[] bikes = null;
+        if ("ASK_BIKE".equals(stage) || "ASK_PROMO".equals(stage) || "CONFIRM_BIKE".equals(stage)) {
+            bikes = LongStream.rangeClosed(1, fleetSize).toArray();
+        }
+        boolean promoEntered = "CONFIRM_BIKE".equals(stage);
+        session.setState(stage);
+        session.setData(new SessionState(SessionState.VERSION, bikes,
+                promoEntered ? promo.getId() : null, promoEntered ? promo.getCode() : null, null, null));
+    }
+}
@@ -0,0 +1,152 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Map-backed stand-ins for the Spring Data repositories, so benchmarks measure the conversation code
+ * rather than Mockito or a database. Only the methods ConversationService calls are implemented.
+ */
+final class InMemoryRepositories {
+
+    // bookings pile up on every confirm; keep the stores bounded over millions of invocations
+    private static final int MAX_ROWS = 10_000;
+
+    private InMemoryRepositories() {
+    }
+
+    static UserRepository users() {
+        return repository(UserRepository.class, User::getId, User::setId, Map.of(
+                "findByPhoneNumber", (rows, args) -> first(rows, u -> args[0].equals(u.getPhoneNumber()))));
+    }
+
+    static ChatSessionRepository sessions() {
+        return repository(ChatSessionRepository.class, ChatSessionEntity::getId, ChatSessionEntity::setId, Map.of(
+                "findByWaId", (rows, args) -> first(rows, s -> args[0].equals(s.getWaId())),
+                "deleteByWaId", (rows, args) -> {
+                    rows.removeIf(s -> args[0].equals(s.getWaId()));
+                    return null;
+                }));
+    }
+
+    static BikeRepository bikes() {
+        return repository(BikeRepository.class, Bike::getId, Bike::setId, Map.of(
+                "findByIsAvailableTrue", (rows, args) -> rows.stream().filter(Bike::isAvailable).toList(),
+                "lockById", (rows, args) -> first(rows, b -> args[0].equals(b.getId()))));
+    }
+
+    static BookingRepository bookings() {
+        return repository(BookingRepository.class, Booking::getId, Booking::setId, Map.of(
+                "findTopByWaIdOrderByCreatedAtDesc", (rows, args) -> rows.stream()
+                        .filter(b -> args[0].equals(b.getWaId()))
+                        .max(Comparator.comparing(Booking::getCreatedAt)),
+                "countOverlapping", (rows, args) -> rows.stream()
+                        .filter(b -> "CONFIRMED".equals(b.getStatus()) && args[0].equals(b.getBikeId())
+                                && b.getStartDate().isBefore((LocalDate) args[2]) && b.getEndDate().isAfter((LocalDate) args[1]))
+                        .count(),
+                "countOverlappingByName", (rows, args) -> rows.stream()
+                        .filter(b -> "CONFIRMED".equals(b.getStatus()) && b.getBikeId() == null && args[0].equals(b.getBike())
+                                && b.getStartDate().isBefore((LocalDate) args[2]) && b.getEndDate().isAfter((LocalDate) args[1]))
+                        .count()));
+    }
+
+    static PromoCodeRepository promos() {
+        return repository(PromoCodeRepository.class, PromoCode::getId, PromoCode::setId, Map.of(
+                "findByCodeIgnoreCase", (rows, args) -> first(rows, p -> ((String) args[0]).equalsIgnoreCase(p.getCode())),
+                "redeem", (rows, args) -> first(rows, p -> args[0].equals(p.getId())).map(p -> {
+                    int used = p.getUsedCount() == null ? 0 : p.getUsedCount();
+                    int total = p.getTotalAllocation() == null ? 0 : p.getTotalAllocation();
+                    if (!Boolean.TRUE.equals(p.getActive()) || (total > 0 && used >= total)) return 0;
+                    p.setUsedCount(used + 1);
+                    return 1;
+                }).orElse(0)));
+    }
+
+    static PromoCodeBikeRepository promoBikes() {
+        return repository(PromoCodeBikeRepository.class, PromoCodeBike::getId, PromoCodeBike::setId, Map.of(
+                "findByPromoCode_Id", (rows, args) -> rows.stream()
+                        .filter(m -> m.getPromoCode() != null && args[0].equals(m.getPromoCode().getId())).toList(),
+                "findByPromoCode_CodeIgnoreCase", (rows, args) -> rows.stream()
+                        .filter(m -> m.getPromoCode() != null && ((String) args[0]).equalsIgnoreCase(m.getPromoCode().getCode())).toList(),
+                "findAllPromoBikeIds", (rows, args) -> rows.stream()
+                        .map(m -> new Object[]{m.getPromoCode().getId(), m.getPromoCode().getCode(), m.getBike().getId()}).toList()));
+    }
+
+    static ExchangeRateRepository exchangeRates() {
+        return repository(ExchangeRateRepository.class, ExchangeRate::getId, ExchangeRate::setId, Map.of(
+                "findByBaseCurrencyAndTargetCurrency", (rows, args) -> first(rows,
+                        r -> args[0].equals(r.getBaseCurrency()) && args[1].equals(r.getTargetCurrency())),
+                "findByBaseCurrency", (rows, args) -> rows.stream().filter(r -> args[0].equals(r.getBaseCurrency())).toList(),
+                "findByTargetCurrencyAndActiveTargetTrue", (rows, args) -> first(rows,
+                        r -> args[0].equals(r.getTargetCurrency()) && Boolean.TRUE.equals(r.getActiveTarget())),
+                "findByActiveTargetTrue", (rows, args) -> first(rows, r -> Boolean.TRUE.equals(r.getActiveTarget()))));
+    }
+
+    private static <T> Optional<T> first(Collection<T> rows, java.util.function.Predicate<T> p) {
+        for (T row : rows) if (p.test(row)) return Optional.of(row);
+        return Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, R> R repository(Class<R> type, Function<T, Long> idOf, BiConsumer<T, Long> assignId,
+                                       Map<String, BiFunction<Collection<T>, Object[], Object>> finders) {
+        Map<Long, T> rows = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > MAX_ROWS;
+            }
+        };
+        long[] sequence = {0};
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            BiFunction<Collection<T>, Object[], Object> finder = finders.get(name);
+            if (finder != null) return finder.apply(rows.values(), args);
+            switch (name) {
+                case "save", "saveAndFlush" -> {
+                    T entity = (T) args[0];
+                    Long id = idOf.apply(entity);
+                    if (id == null) {
+                        id = ++sequence[0];
+                        assignId.accept(entity, id);
+                    }
+                    rows.put(id, entity);
+                    return entity;
+                }
+                case "findById" -> {
+                    return Optional.ofNullable(rows.get((Long) args[0]));
+                }
+                case "findAll" -> {
+                    return new ArrayList<>(rows.values());
+                }
+                case "count" -> {
+                    return (long) rows.size();
+                }
+                case "delete" -> {
+                    rows.values().remove(args[0]);
+                    return null;
+                }
+                case "deleteAll" -> {
+                    rows.clear();
+                    return null;
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "toString" -> {
+                    return "InMemory" + type.getSimpleName();
+                }
+                default -> throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+            }
+        });
+    }
+}
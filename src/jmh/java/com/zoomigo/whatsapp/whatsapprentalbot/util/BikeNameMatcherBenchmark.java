@@ -0,0 +1,65 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Free-text bike selection against a large synthetic fleet.
+ * {@code mvn -Pjmh -DskipTests test -Djmh.includes=BikeNameMatcherBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BikeNameMatcherBenchmark {
+
+    private static final String[] BRANDS = {"Honda", "Yamaha", "Bajaj", "TVS", "Suzuki", "Hero", "Royal Enfield", "KTM", "Vespa", "Kawasaki"};
+    private static final String[] MODELS = {"Dio", "FZ", "Pulsar", "Apache", "Gixxer", "Splendor", "Classic", "Duke", "Primavera", "Ninja",
+            "Shine", "Ray", "Platina", "Jupiter", "Access", "Passion", "Bullet", "RC", "Sprint", "Versys"};
+
+    @Param({"100", "5000"})
+    public int fleetSize;
+
+    @Param({"yamaha fz 150", "honda", "bajaj pulsr", "I want the royal enfield classic 350 please"})
+    public String query;
+
+    private List<Bike> fleet;
+    private BikeNameMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        fleet = new ArrayList<>(fleetSize);
+        for (int i = 0; i < fleetSize; i++) {
+            Bike b = new Bike();
+            b.setId((long) i + 1);
+            b.setName(BRANDS[random.nextInt(BRANDS.length)] + " " + MODELS[random.nextInt(MODELS.length)] + " " + (100 + 5 * random.nextInt(60)));
+            fleet.add(b);
+        }
+        matcher = BikeNameMatcher.of(fleet);
+    }
+
+    @Benchmark
+    public BikeNameMatcher.Result match() {
+        return matcher.match(query);
+    }
+
+    /** what the old ASK_BIKE loop did, minus its findById per bike: first substring hit wins */
+    @Benchmark
+    public Bike legacyContainsScan() {
+        String lower = query.toLowerCase(Locale.ENGLISH);
+        for (Bike b : fleet) {
+            String name = b.getName().toLowerCase(Locale.ENGLISH);
+            if (name.equals(lower) || name.contains(lower) || lower.contains(name)) return b;
+        }
+        return null;
+    }
+}
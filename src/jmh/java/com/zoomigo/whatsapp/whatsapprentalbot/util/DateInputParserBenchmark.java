@@ -0,0 +1,72 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.joestelmach.natty.DateGroup;
+import com.joestelmach.natty.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-date parsing: DateInputParser against the old strict-patterns + per-call Natty chain.
+ * {@code mvn -Pjmh -DskipTests test -Djmh.includes=DateInputParserBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateInputParserBenchmark {
+
+    @Param({"today", "tomorrow", "next friday", "25 Oct", "2025-10-25", "in 3 days"})
+    public String input;
+
+    private DateInputParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new DateInputParser(ZoneId.of("Asia/Colombo"), true);
+    }
+
+    @Benchmark
+    public LocalDate dateInputParser() {
+        return parser.parse(input);
+    }
+
+    @Benchmark
+    public LocalDate legacyParseDate() {
+        String text = input.toLowerCase().trim();
+        if (text.equals("today")) return LocalDate.now();
+        text = text.replaceAll("(\\d+)(st|nd|rd|th)", "$1");
+
+        DateTimeFormatter[] formatters = new DateTimeFormatter[]{
+                DateTimeFormatter.ofPattern("yyyy-M-d"),
+                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+                DateTimeFormatter.ofPattern("d MMM yyyy"),
+                DateTimeFormatter.ofPattern("MMM d yyyy"),
+                DateTimeFormatter.ofPattern("d MMM"),
+                DateTimeFormatter.ofPattern("MMM d")
+        };
+        boolean appendYear = !text.matches(".*\\d{4}.*");
+        for (DateTimeFormatter formatter : formatters) {
+            try {
+                String parseText = text;
+                if (appendYear) parseText += " " + Year.now().getValue();
+                return LocalDate.parse(parseText, formatter.withLocale(Locale.ENGLISH));
+            } catch (Exception ignored) {
+            }
+        }
+        List<DateGroup> groups = new Parser().parse(text);
+        if (groups.isEmpty()) return null;
+        Date date = groups.get(0).getDates().get(0);
+        return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
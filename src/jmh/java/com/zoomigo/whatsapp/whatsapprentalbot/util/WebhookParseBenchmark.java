@@ -0,0 +1,83 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.WebhookPayload;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old {@code Map<String,Object>} binding of webhook bodies with {@link WebhookPayloadParser}.
+ * Run with {@code mvn -Pjmh -DskipTests test -Djmh.includes=WebhookParseBenchmark -Djmh.args="-prof gc"}
+ * to also see bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookParseBenchmark {
+
+    private static final String TEXT_MESSAGE = """
+            {"object":"whatsapp_business_account","entry":[{"id":"102290129340398","changes":[{"value":{
+              "messaging_product":"whatsapp",
+              "metadata":{"display_phone_number":"15550783881","phone_number_id":"106540352242922"},
+              "contacts":[{"profile":{"name":"Sheena Nelson"},"wa_id":"16505551234"}],
+              "messages":[{"from":"16505551234","id":"wamid.HBgLMTY1MDM4Nzk0MzkVAgASGBQzQTRBNjU5OUFFRTAzODEwMTQ0RgA=",
+                "timestamp":"1749416383","type":"text","text":{"body":"I want to rent a bike tomorrow"}}]
+            },"field":"messages"}]}]}
+            """;
+
+    private static final String STATUS_ONLY = """
+            {"object":"whatsapp_business_account","entry":[{"id":"102290129340398","changes":[{"value":{
+              "messaging_product":"whatsapp",
+              "metadata":{"display_phone_number":"15550783881","phone_number_id":"106540352242922"},
+              "statuses":[{"id":"wamid.HBgLMTY1MDM4Nzk0MzkVAgARGBI3MTE5MjVBOTE3MDk5QUVFM0YA","status":"delivered",
+                "timestamp":"1750263773","recipient_id":"16505551234",
+                "conversation":{"id":"6ceb9d929c1a1d3f5e0e5b2f8f4a3c11","origin":{"type":"service"}},
+                "pricing":{"billable":true,"pricing_model":"PMP","category":"service"}}]
+            },"field":"messages"}]}]}
+            """;
+
+    @Param({"text", "status"})
+    public String shape;
+
+    private byte[] body;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final WebhookPayloadParser parser = new WebhookPayloadParser();
+
+    @Setup
+    public void setUp() {
+        body = ("text".equals(shape) ? TEXT_MESSAGE : STATUS_ONLY).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void mapBinding(Blackhole bh) throws Exception {
+        // mirrors what WebhookController did before: bind the whole tree, then walk it with casts
+        Map<String, Object> payload = mapper.readValue(body, Map.class);
+        for (Object entry : (List<Object>) payload.get("entry")) {
+            for (Object change : (List<Object>) ((Map<String, Object>) entry).get("changes")) {
+                Map<String, Object> value = (Map<String, Object>) ((Map<String, Object>) change).get("value");
+                Object messages = value.get("messages");
+                if (messages == null) continue;
+                for (Object m : (List<Object>) messages) {
+                    Map<String, Object> msg = (Map<String, Object>) m;
+                    bh.consume(msg.get("from"));
+                    Object text = msg.get("text");
+                    if (text != null) bh.consume(((Map<String, Object>) text).get("body"));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public WebhookPayload streamingParser() throws Exception {
+        return parser.parse(body);
+    }
+}
@@ -0,0 +1,86 @@
+package com.zoomigo.whatsapp.whatsapprentalbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in for the WhatsApp Cloud API messages endpoint. Every POSTed text message is
+ * answered like Graph does and handed to whoever is waiting for a reply to that recipient.
+ */
+final class StubGraphApi implements AutoCloseable {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService threads = Executors.newFixedThreadPool(32);
+    private final Map<String, BlockingQueue<String>> replies = new ConcurrentHashMap<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    StubGraphApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(threads);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                received.incrementAndGet();
+                String to;
+                String text;
+                try {
+                    JsonNode json = mapper.readTree(body);
+                    to = json.path("to").asText(null);
+                    text = json.path("text").path("body").asText("");
+                } catch (IOException e) {
+                    to = null;
+                    text = null;
+                }
+                if (to == null) {
+                    malformed.incrementAndGet();
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+                inbox(to).add(text);
+                byte[] ok = ("{\"messaging_product\":\"whatsapp\",\"contacts\":[{\"input\":\"" + to + "\",\"wa_id\":\"" + to
+                        + "\"}],\"messages\":[{\"id\":\"wamid.stub" + received.get() + "\"}]}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, ok.length);
+                exchange.getResponseBody().write(ok);
+            }
+        });
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** Next reply sent to {@code waId}, or null if none arrives in time. */
+    String awaitReply(String waId, long timeout, TimeUnit unit) throws InterruptedException {
+        return inbox(waId).poll(timeout, unit);
+    }
+
+    long received() {
+        return received.get();
+    }
+
+    long malformed() {
+        return malformed.get();
+    }
+
+    private BlockingQueue<String> inbox(String waId) {
+        return replies.computeIfAbsent(waId, k -> new LinkedBlockingQueue<>());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+}
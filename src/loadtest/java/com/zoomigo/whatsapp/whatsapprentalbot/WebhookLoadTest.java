@@ -0,0 +1,300 @@
+package com.zoomigo.whatsapp.whatsapprentalbot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.BikeRepository;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.BookingRepository;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.WebhookSignature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for the whole webhook-to-reply path: starts the application against an embedded
+ * {@link StubGraphApi}, then drives simulated users through the booking flow with signed webhook
+ * POSTs, timing each message from POST to the reply arriving at the stub. Run by the loadtest profile:
+ * <pre>
+ * mvn -Ploadtest -DskipTests test
+ * mvn -Ploadtest -DskipTests test -Dloadtest.args="--users=5000 --concurrency=400 --conversation.executor.max-size=64"
+ * mvn -Ploadtest -DskipTests test -Dloadtest.args="--spring.datasource.url=jdbc:postgresql://localhost/zoomigo --spring.datasource.username=zoomigo"
+ * </pre>
+ * {@code --users}, {@code --concurrency} (users in flight at once), {@code --warmup-users},
+ * {@code --reply-timeout} (seconds), {@code --seed} and {@code --result} belong to the harness; any other
+ * {@code --key=value} is passed to the application. Users and their waIds come from the seed, so runs with
+ * the same arguments send the same traffic; give a new seed when reusing a Postgres database.
+ */
+public final class WebhookLoadTest {
+
+    private static final String APP_SECRET = "loadtest-secret";
+    private static final String PHONE_NUMBER_ID = "100000000000001";
+
+    /**
+     * One step of the booking flow: what the user sends and a fragment the reply must contain.
+     * {@code {start}} is the user's own start date, so bookings never compete for a bike.
+     */
+    private record Step(String text, String expect) {
+    }
+
+    private static final List<Step> FLOW = List.of(
+            new Step("Hi", "Welcome"),
+            new Step("Load Tester", "How many *days*"),
+            new Step("1", "start date"),
+            new Step("{start}", "pick up"),
+            new Step("1", "Available bikes"),
+            new Step("1", "You selected"),
+            new Step("1", "Booking confirmed"));
+
+    private static final String[] BIKES = {"Honda Dio", "Yamaha FZ", "Bajaj Pulsar 150", "TVS Ntorq", "Honda CB Hornet", "Suzuki Gixxer"};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final StubGraphApi graph;
+    private final URI webhook;
+    private final long replyTimeoutMillis;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong unexpected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    private WebhookLoadTest(StubGraphApi graph, URI webhook, long replyTimeoutMillis) {
+        this.graph = graph;
+        this.webhook = webhook;
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new LinkedHashMap<>();
+        Map<String, String> appProps = new LinkedHashMap<>();
+        Set<String> harnessKeys = Set.of("users", "concurrency", "warmup-users", "reply-timeout", "seed", "result");
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (!a.startsWith("--") || eq < 0) continue;
+            String key = a.substring(2, eq);
+            (harnessKeys.contains(key) ? opts : appProps).put(key, a.substring(eq + 1));
+        }
+        int users = Integer.parseInt(opts.getOrDefault("users", "2000"));
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "200"));
+        int warmupUsers = Integer.parseInt(opts.getOrDefault("warmup-users", "100"));
+        long replyTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(opts.getOrDefault("reply-timeout", "30")));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "1"));
+        String result = opts.getOrDefault("result", "target/loadtest-result.json");
+
+        try (StubGraphApi graph = new StubGraphApi()) {
+            Map<String, String> props = new LinkedHashMap<>();
+            props.put("server.port", "0");
+            props.put("spring.main.banner-mode", "off");
+            // per-message INFO logging would be the bottleneck, not the code under test
+            props.put("logging.level.root", "WARN");
+            props.put("whatsapp.api-base-url", graph.baseUrl());
+            props.put("whatsapp.api-version", "v24.0");
+            props.put("whatsapp.phone-number-id", PHONE_NUMBER_ID);
+            props.put("whatsapp.access-token", "loadtest");
+            // the stub is one phone-number-id, so Meta's per-number limit would cap the whole run
+            props.put("whatsapp.outbound.rate-per-second", "1000000");
+            props.put("whatsapp.outbound.burst", "1000000");
+            props.put("security.verify-token", "loadtest");
+            props.put("facebook.app.secret", APP_SECRET);
+            props.put("app.shop-address", "1 Load Test Road");
+            props.putAll(appProps);
+            List<String> appArgs = new ArrayList<>();
+            props.forEach((k, v) -> appArgs.add("--" + k + "=" + v));
+
+            try (ConfigurableApplicationContext app = SpringApplication.run(WhatsappRentalBotApplication.class, appArgs.toArray(String[]::new))) {
+                seedBikes(app.getBean(BikeRepository.class));
+                int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+                WebhookLoadTest test = new WebhookLoadTest(graph, URI.create("http://127.0.0.1:" + port + "/webhook"), replyTimeout);
+                BookingRepository bookings = app.getBean(BookingRepository.class);
+
+                System.out.printf("Warm-up: %d users%n", warmupUsers);
+                test.run(waIds(seed, "w", warmupUsers), concurrency);
+                test.reset();
+
+                long bookingsBefore = bookings.count();
+                System.out.printf("Run: %d users x %d messages, %d at a time%n", users, FLOW.size(), concurrency);
+                long start = System.nanoTime();
+                test.run(waIds(seed, "r", users), concurrency);
+                long elapsed = System.nanoTime() - start;
+
+                ObjectNode report = test.report(elapsed, users, concurrency, seed, bookings.count() - bookingsBefore, app.getBean(MeterRegistry.class), props);
+                ObjectWriter json = new ObjectMapper().writerWithDefaultPrettyPrinter();
+                System.out.println(json.writeValueAsString(report));
+                File out = new File(result);
+                if (out.getParentFile() != null) out.getParentFile().mkdirs();
+                json.writeValue(out, report);
+                System.out.println("Result written to " + out.getAbsolutePath());
+            }
+        }
+        // the application's non-daemon threads are gone with the context, but don't wait on stragglers
+        System.exit(0);
+    }
+
+    private static void seedBikes(BikeRepository repo) {
+        if (!repo.findByIsAvailableTrue().isEmpty()) return;
+        for (int i = 0; i < BIKES.length; i++) {
+            Bike b = new Bike();
+            b.setName(BIKES[i]);
+            b.setPricePerDay(10 + 2 * i);
+            b.setDeposit(50);
+            b.setAvailable(true);
+            repo.save(b);
+        }
+    }
+
+    // deterministic, distinct per seed and phase: 94 + 3-digit seed + phase digit + 7-digit index
+    private static List<String> waIds(long seed, String phase, int count) {
+        List<String> ids = new ArrayList<>(count);
+        String prefix = String.format("94%03d%d", Math.floorMod(seed, 1000), "w".equals(phase) ? 0 : 1);
+        for (int i = 0; i < count; i++) ids.add(prefix + String.format("%07d", i));
+        return ids;
+    }
+
+    // one day per user index, counted from tomorrow; users past bookings.availability.horizon-days
+    // are only checked at confirmation
+    private static String startDate(String waId) {
+        return LocalDate.now().plusDays(1 + Long.parseLong(waId.substring(waId.length() - 7))).toString();
+    }
+
+    private void run(List<String> waIds, int concurrency) throws InterruptedException {
+        ExecutorService users = Executors.newFixedThreadPool(concurrency);
+        for (String waId : waIds) users.execute(() -> converse(waId));
+        users.shutdown();
+        if (!users.awaitTermination(1, TimeUnit.HOURS)) users.shutdownNow();
+    }
+
+    private void reset() {
+        sent.set(0);
+        rejected.set(0);
+        timeouts.set(0);
+        unexpected.set(0);
+        completed.set(0);
+        latencies.clear();
+    }
+
+    private void converse(String waId) {
+        try {
+            for (int i = 0; i < FLOW.size(); i++) {
+                Step step = FLOW.get(i);
+                long t0 = System.nanoTime();
+                String text = step.text().replace("{start}", startDate(waId));
+                if (!post(waId, text, "wamid." + waId + "." + i)) {
+                    rejected.incrementAndGet();
+                    return;
+                }
+                String reply = graph.awaitReply(waId, replyTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (reply == null) {
+                    timeouts.incrementAndGet();
+                    return;
+                }
+                latencies.add(System.nanoTime() - t0);
+                if (!reply.contains(step.expect())) {
+                    unexpected.incrementAndGet();
+                    System.err.printf("%s step %d (%s): unexpected reply %s%n", waId, i, text, reply.replace('\n', ' '));
+                    return;
+                }
+            }
+            completed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            rejected.incrementAndGet();
+        }
+    }
+
+    private boolean post(String waId, String text, String messageId) throws IOException, InterruptedException {
+        byte[] body = payload(waId, text, messageId);
+        HttpRequest request = HttpRequest.newBuilder(webhook)
+                .header("Content-Type", "application/json")
+                .header(WebhookSignature.HEADER, WebhookSignature.sign(APP_SECRET, body))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        sent.incrementAndGet();
+        return http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+    }
+
+    // the shape Meta delivers for an inbound text message
+    private byte[] payload(String waId, String text, String messageId) throws IOException {
+        ObjectNode root = mapper.createObjectNode().put("object", "whatsapp_business_account");
+        ObjectNode value = root.putArray("entry").addObject().put("id", "WABA_LOADTEST")
+                .putArray("changes").addObject().put("field", "messages")
+                .putObject("value").put("messaging_product", "whatsapp");
+        value.putObject("metadata").put("display_phone_number", "15550000000").put("phone_number_id", PHONE_NUMBER_ID);
+        value.putArray("contacts").addObject().put("wa_id", waId).putObject("profile").put("name", "Load Tester");
+        ObjectNode message = value.putArray("messages").addObject()
+                .put("from", waId).put("id", messageId)
+                .put("timestamp", String.valueOf(System.currentTimeMillis() / 1000)).put("type", "text");
+        message.putObject("text").put("body", text);
+        return mapper.writeValueAsBytes(root);
+    }
+
+    private ObjectNode report(long elapsedNanos, int users, int concurrency, long seed, long bookings,
+                              MeterRegistry registry, Map<String, String> props) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double seconds = elapsedNanos / 1e9;
+        ObjectNode r = mapper.createObjectNode();
+        r.put("users", users).put("concurrency", concurrency).put("seed", seed)
+                .put("datasource", props.getOrDefault("spring.datasource.url", "application default"))
+                .put("durationSeconds", round(seconds))
+                .put("messagesSent", sent.get())
+                .put("repliesReceived", sorted.length)
+                .put("throughputPerSecond", round(sorted.length / seconds))
+                .put("usersCompleted", completed.get())
+                .put("bookingsCreated", bookings)
+                .put("timeouts", timeouts.get())
+                .put("unexpectedReplies", unexpected.get())
+                .put("rejectedPosts", rejected.get())
+                .put("stubRequests", graph.received());
+        ObjectNode latency = r.putObject("webhookToReplyMillis");
+        latency.put("p50", percentile(sorted, 0.50)).put("p90", percentile(sorted, 0.90)).put("p99", percentile(sorted, 0.99))
+                .put("p999", percentile(sorted, 0.999)).put("max", sorted.length == 0 ? 0 : round(sorted[sorted.length - 1] / 1e6));
+        // where the time went, from the application's own meters (these include the warm-up)
+        ObjectNode server = r.putObject("server");
+        timer(server, registry, "conversation.mailbox.wait");
+        timer(server, registry, "conversation.message");
+        timer(server, registry, "hikaricp.connections.acquire");
+        timer(server, registry, "spring.data.repository.invocations");
+        timer(server, registry, "whatsapp.outbound.send");
+        ObjectNode settings = r.putObject("settings");
+        props.forEach((k, v) -> {
+            if (k.startsWith("conversation.") || k.startsWith("spring.datasource.hikari.") || k.startsWith("whatsapp.outbound.")) settings.put(k, v);
+        });
+        return r;
+    }
+
+    private static void timer(ObjectNode server, MeterRegistry registry, String name) {
+        Collection<Timer> timers = registry.find(name).timers();
+        if (timers.isEmpty()) return;
+        long count = timers.stream().mapToLong(Timer::count).sum();
+        double total = timers.stream().mapToDouble(t -> t.totalTime(TimeUnit.MILLISECONDS)).sum();
+        double max = timers.stream().mapToDouble(t -> t.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+        server.putObject(name).put("count", count).put("meanMillis", round(count == 0 ? 0 : total / count)).put("maxMillis", round(max));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6);
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
@@ -2,8 +2,10 @@ package com.zoomigo.whatsapp.whatsapprentalbot;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WhatsappRentalBotApplication {
     public static void main(String[] args) {
         SpringApplication.run(WhatsappRentalBotApplication.class, args);
@@ -1,13 +1,27 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.KeyedMailboxExecutor;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.OutboundSendQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
 
 @Configuration
 @EnableCaching
@@ -16,27 +30,100 @@ public class HttpClientConfig {
     @Value("${whatsapp.api-base-url:}")
     private String whatsappBaseProp;
 
+    // sized with the load-test profile (see pom.xml); defaults also apply when the config is built by hand
+    @Value("${conversation.executor.core-size:5}")
+    private int executorCoreSize = 5;
+    @Value("${conversation.executor.max-size:20}")
+    private int executorMaxSize = 20;
+    @Value("${conversation.executor.queue-capacity:200}")
+    private int executorQueueCapacity = 200;
+
     @Bean(name = "conversationExecutor")
     public ThreadPoolTaskExecutor conversationExecutor() {
         ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
-        exec.setCorePoolSize(5);
-        exec.setMaxPoolSize(20);
-        exec.setQueueCapacity(200);
+        exec.setCorePoolSize(executorCoreSize);
+        exec.setMaxPoolSize(executorMaxSize);
+        exec.setQueueCapacity(executorQueueCapacity);
         exec.setThreadNamePrefix("conv-");
-        exec.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        // reject instead of running on the caller: a drain on the webhook thread would hold the ack until the mailbox is empty
+        exec.setRejectedExecutionHandler(new java.util.concurrent.ThreadPoolExecutor.AbortPolicy());
         exec.initialize();
         return exec;
     }
 
+    // Serialises messages per sender on top of conversationExecutor; different senders still run in parallel
+    @Bean
+    public KeyedMailboxExecutor conversationMailboxes(@Qualifier("conversationExecutor") ThreadPoolTaskExecutor conversationExecutor,
+                                                      @Value("${conversation.mailbox.max-queue-per-sender:32}") int maxQueuePerSender,
+                                                      @Value("${conversation.mailbox.max-tasks-per-turn:8}") int maxTasksPerTurn,
+                                                      @Value("${conversation.mailbox.idle-timeout:PT5M}") Duration idleTimeout,
+                                                      ObjectProvider<MeterRegistry> meterRegistry) {
+        return new KeyedMailboxExecutor(conversationExecutor, maxQueuePerSender, maxTasksPerTurn, idleTimeout, meterRegistry.getIfAvailable());
+    }
+
+    // Bounded, rate-limited and retrying pipeline for Graph API sends (limits apply per phone-number-id)
+    @Bean
+    public OutboundSendQueue whatsappOutbound(@Value("${whatsapp.outbound.queue-capacity:1000}") int queueCapacity,
+                                              @Value("${whatsapp.outbound.max-concurrency:16}") int maxConcurrency,
+                                              @Value("${whatsapp.outbound.rate-per-second:20}") double ratePerSecond,
+                                              @Value("${whatsapp.outbound.burst:40}") int burst,
+                                              @Value("${whatsapp.outbound.max-retries:4}") int maxRetries,
+                                              @Value("${whatsapp.outbound.retry-min-backoff:PT0.5S}") Duration minBackoff,
+                                              @Value("${whatsapp.outbound.retry-max-backoff:PT30S}") Duration maxBackoff,
+                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        return new OutboundSendQueue(new OutboundSendQueue.Settings(queueCapacity, maxConcurrency, ratePerSecond, burst,
+                maxRetries, minBackoff, maxBackoff), meterRegistry.getIfAvailable());
+    }
+
     @Bean
     public CacheManager cacheManager() {
-        // Use a simple ConcurrentMapCacheManager for tests and small deployments.
-        return new ConcurrentMapCacheManager("bikes", "promos");
+        // Caffeine with stats so Boot publishes cache.gets{result=hit|miss} for both caches
+        CaffeineCacheManager manager = new CaffeineCacheManager("bikes", "promos");
+        manager.setCaffeine(Caffeine.newBuilder().recordStats());
+        return manager;
+    }
+
+    // One pool for every outbound call (Graph API, OpenExchangeRates); pool gauges are published as reactor.netty.connection.provider.*
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider outboundConnections(@Value("${http.client.max-connections:50}") int maxConnections,
+                                                  @Value("${http.client.pending-acquire-max:500}") int pendingAcquireMax,
+                                                  @Value("${http.client.pending-acquire-timeout:PT5S}") Duration pendingAcquireTimeout,
+                                                  @Value("${http.client.max-idle-time:PT30S}") Duration maxIdleTime,
+                                                  @Value("${http.client.max-life-time:PT5M}") Duration maxLifeTime) {
+        return ConnectionProvider.builder("outbound")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public HttpClient outboundHttpClient(ConnectionProvider outboundConnections,
+                                         @Value("${http.client.connect-timeout:PT3S}") Duration connectTimeout,
+                                         @Value("${http.client.response-timeout:PT10S}") Duration responseTimeout,
+                                         @Value("${http.client.http2:true}") boolean http2) {
+        HttpClient client = HttpClient.create(outboundConnections)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout);
+        // HTTP/2 is negotiated via ALPN on https; plain http (local stubs) stays on HTTP/1.1
+        return http2 ? client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11) : client;
+    }
+
+    // Boot's WebClient.Builder picks this connector up too, so injected builders share the pool
+    @Bean
+    public ClientHttpConnector outboundConnector(HttpClient outboundHttpClient) {
+        return new ReactorClientHttpConnector(outboundHttpClient);
     }
 
     @Bean
-    public WebClient whatsappWebClient() {
-        WebClient.Builder builder = WebClient.builder();
+    public WebClient whatsappWebClient(ClientHttpConnector outboundConnector) {
+        WebClient.Builder builder = WebClient.builder().clientConnector(outboundConnector);
         String base = whatsappBaseProp;
         if (base != null && !base.isBlank()) builder.baseUrl(base);
         return builder.build();
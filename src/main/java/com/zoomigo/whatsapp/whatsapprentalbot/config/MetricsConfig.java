@@ -0,0 +1,19 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.config;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.util.StageTag;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.boot.actuate.metrics.data.DefaultRepositoryTagsProvider;
+import org.springframework.boot.actuate.metrics.data.RepositoryTagsProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // Boot times every repository call as spring.data.repository.invocations; add the conversation stage it ran under
+    @Bean
+    public RepositoryTagsProvider stageRepositoryTags() {
+        DefaultRepositoryTagsProvider defaults = new DefaultRepositoryTagsProvider();
+        return invocation -> Tags.of(defaults.repositoryTags(invocation)).and("stage", StageTag.current());
+    }
+}
@@ -27,7 +27,9 @@ public class TestSenderController {
     public ResponseEntity<String> sendText(@RequestParam String to, @RequestParam String text) {
         try {
             log.info("💬 Sending WhatsApp message to {}: {}", to, text);
-            whatsappService.sendTextMessage(to, text);
+            if (!whatsappService.sendTextMessage(to, text)) {
+                return ResponseEntity.status(503).body("Message to " + to + " was dropped");
+            }
             return ResponseEntity.ok("✅ Message sent to " + to);
         } catch (Exception e) {
             log.error("❌ Failed to send WhatsApp message to {}: {}", to, e.getMessage(), e);
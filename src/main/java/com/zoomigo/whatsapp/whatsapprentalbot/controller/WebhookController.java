@@ -1,15 +1,31 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.controller;
 
+import com.zoomigo.whatsapp.whatsapprentalbot.model.InboundMessage;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.StatusUpdate;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.WebhookPayload;
 import com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationService;
+import com.zoomigo.whatsapp.whatsapprentalbot.service.MessageDeduplicator;
 import com.zoomigo.whatsapp.whatsapprentalbot.service.WhatsappService;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.KeyedMailboxExecutor;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.StageTag;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.WebhookPayloadParser;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.WebhookSignature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
@@ -18,14 +34,33 @@ public class WebhookController {
 
     private final ConversationService chatService;
     private final WhatsappService whatsappService;
-    private final ThreadPoolTaskExecutor conversationExecutor;
+    private final KeyedMailboxExecutor conversationMailboxes;
+    // optional: skips messages Meta redelivers; when absent every message is processed
+    private final MessageDeduplicator deduplicator;
+    private final WebhookPayloadParser payloadParser = new WebhookPayloadParser();
+    private MeterRegistry meterRegistry;
     @Value("${security.verify-token}")
     private String VERIFY_TOKEN;
+    // when set, POSTs must carry a valid X-Hub-Signature-256; blank accepts unsigned payloads
+    @Value("${facebook.app.secret:}")
+    private String appSecret;
 
-    public WebhookController(ConversationService chatService, WhatsappService whatsappService, ThreadPoolTaskExecutor conversationExecutor) {
+    @Autowired
+    public WebhookController(ConversationService chatService, WhatsappService whatsappService, KeyedMailboxExecutor conversationMailboxes,
+                             @Nullable MessageDeduplicator deduplicator) {
         this.chatService = chatService;
         this.whatsappService = whatsappService;
-        this.conversationExecutor = conversationExecutor;
+        this.conversationMailboxes = conversationMailboxes;
+        this.deduplicator = deduplicator;
+    }
+
+    public WebhookController(ConversationService chatService, WhatsappService whatsappService, KeyedMailboxExecutor conversationMailboxes) {
+        this(chatService, whatsappService, conversationMailboxes, null);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
 
     @GetMapping
@@ -43,49 +78,110 @@ public class WebhookController {
     }
 
     @PostMapping
-    public ResponseEntity<String> receive(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<String> receive(@RequestBody byte[] body,
+                                          @RequestHeader(value = WebhookSignature.HEADER, required = false) String signature) {
+        long receivedNanos = System.nanoTime();
+        if (appSecret != null && !appSecret.isBlank() && !WebhookSignature.matches(appSecret, body, signature)) {
+            log.warn("❌ Rejecting webhook with {} signature", signature == null ? "no" : "an invalid");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid signature");
+        }
+        WebhookPayload payload;
+        try {
+            payload = payloadParser.parse(body);
+        } catch (IOException e) {
+            log.warn("⚠️ Rejecting unparseable webhook body ({} bytes): {}", body == null ? 0 : body.length, e.getMessage());
+            return ResponseEntity.badRequest().body("Invalid payload");
+        }
         try {
-            log.info("📩 Incoming WhatsApp payload: {}", payload);
+            log.debug("📩 Incoming WhatsApp payload: {} message(s), {} status(es)", payload.messages().size(), payload.statuses().size());
+            if (payload.entryCount() == 0) return ResponseEntity.ok("No entry");
+            if (payload.changeCount() == 0) return ResponseEntity.ok("No changes");
 
-            var entryList = (java.util.List<?>) payload.get("entry");
-            if (entryList == null || entryList.isEmpty()) return ResponseEntity.ok("No entry");
-            var entry = (Map<String, Object>) entryList.get(0);
-            var changes = (java.util.List<?>) entry.get("changes");
-            if (changes == null || changes.isEmpty()) return ResponseEntity.ok("No changes");
+            for (StatusUpdate status : payload.statuses()) {
+                log.debug("📬 Status {} for message {} to {}", status.status(), status.id(), status.recipientId());
+            }
+            if (payload.messages().isEmpty()) return ResponseEntity.ok("No messages");
 
-            var change = (Map<String, Object>) changes.get(0);
-            var value = (Map<String, Object>) change.get("value");
-            var messages = (java.util.List<?>) value.get("messages");
-            if (messages == null || messages.isEmpty()) return ResponseEntity.ok("No messages");
+            if (!dispatch(payload.messages(), receivedNanos)) {
+                // a non-2xx makes Meta redeliver; the messages that were accepted are skipped as redeliveries then
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Busy");
+            }
+            return ResponseEntity.ok("EVENT_RECEIVED");
+        } catch (Exception e) {
+            log.error("❌ Error handling webhook", e);
+            return ResponseEntity.status(500).body("Internal Server Error");
+        }
+    }
 
-            var message = (Map<String, Object>) messages.get(0);
-            String from = (String) message.get("from");
-            String type = (String) message.get("type");
+    /**
+     * Hand a delivery's messages to the conversation pipeline in payload order. Messages are grouped
+     * per sender so each sender gets one mailbox task for the whole batch; a failure on one message
+     * does not stop the ones after it. Redelivered message ids are dropped inside the mailbox task, so the
+     * deduplicator's insert is not on the request thread and a sender's copies are checked in order.
+     *
+     * @return false when some sender's batch was refused (mailbox full or executor saturated)
+     */
+    boolean dispatch(List<InboundMessage> batch) {
+        return dispatch(batch, System.nanoTime());
+    }
 
-            if ("text".equals(type)) {
-                var textObj = (Map<String, Object>) message.get("text");
-                String text = (String) textObj.get("body");
-                log.info("💬 [{}] {}", from, text);
+    boolean dispatch(List<InboundMessage> batch, long receivedNanos) {
+        Map<String, List<InboundMessage>> bySender = new LinkedHashMap<>();
+        for (InboundMessage message : batch) {
+            if (!message.hasText() || message.from() == null) {
+                log.info("ℹ️ Unsupported message type: {}", message.type());
+                continue;
+            }
+            log.info("💬 [{}] {}", message.from(), message.text());
+            bySender.computeIfAbsent(message.from(), k -> new ArrayList<>()).add(message);
+        }
 
-                // offload to conversation executor so controller returns fast
-                conversationExecutor.execute(() -> {
+        boolean allAccepted = true;
+        for (Map.Entry<String, List<InboundMessage>> sender : bySender.entrySet()) {
+            String from = sender.getKey();
+            List<InboundMessage> messages = sender.getValue();
+            // offload to the sender's mailbox so controller returns fast and messages from
+            // the same waId are handled one at a time, in order
+            boolean accepted = conversationMailboxes.execute(from, () -> {
+                for (InboundMessage message : messages) {
+                    if (deduplicator != null && !deduplicator.firstSeen(message.id())) {
+                        log.info("🔁 Skipping redelivered message {} from {}", message.id(), from);
+                        continue;
+                    }
+                    String outcome = "error";
+                    // stays NONE when handling throws; conversation.message has the stage of those failures
+                    String stage = StageTag.NONE;
                     try {
-                        String reply = chatService.handleMessage(from, text);
-                        whatsappService.sendTextMessage(from, reply);
-                        log.info("✅ Reply sent to {}: {}", from, reply);
+                        ConversationService.Reply reply = chatService.reply(from, message.text());
+                        stage = reply.stage();
+                        if (whatsappService.sendTextMessage(from, reply.text())) {
+                            outcome = "ok";
+                            log.info("✅ Reply sent to {}: {}", from, reply.text());
+                        } else {
+                            outcome = "dropped";
+                            log.warn("⚠️ Reply to {} for message {} was dropped before sending", from, message.id());
+                        }
                     } catch (Exception e) {
-                        log.error("❌ Error processing message for {}: {}", from, e.getMessage(), e);
+                        log.error("❌ Error processing message {} for {}: {}", message.id(), from, e.getMessage(), e);
+                    } finally {
+                        recordReply(receivedNanos, stage, outcome);
                     }
-                });
-
-            } else {
-                log.info("ℹ️ Unsupported message type: {}", type);
+                }
+            });
+            if (!accepted) {
+                log.warn("⚠️ Refused {} message(s) from {} - mailbox full or conversation executor saturated, asking for redelivery", messages.size(), from);
+                allAccepted = false;
             }
-
-            return ResponseEntity.ok("EVENT_RECEIVED");
-        } catch (Exception e) {
-            log.error("❌ Error handling webhook", e);
-            return ResponseEntity.status(500).body("Internal Server Error");
         }
+        return allAccepted;
+    }
+
+    // webhook arrival to the reply being handed to WhatsappService: mailbox wait + handleMessage + send hand-off
+    private void recordReply(long receivedNanos, String stage, String outcome) {
+        if (meterRegistry == null) return;
+        Timer.builder("conversation.reply")
+                .description("Time from webhook receipt to the reply being handed to WhatsappService, by stage")
+                .tag("stage", stage).tag("outcome", outcome)
+                .register(meterRegistry).record(System.nanoTime() - receivedNanos, TimeUnit.NANOSECONDS);
     }
 }
@@ -2,6 +2,7 @@ package com.zoomigo.whatsapp.whatsapprentalbot.entity;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import lombok.Data;
@@ -10,6 +11,7 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "app_config")
+@EntityListeners(EntityChangeListener.class)
 @Data
 public class AppConfig {
     @Id
@@ -5,6 +5,7 @@ import lombok.Data;
 
 @Entity
 @Table(name = "bikes")
+@EntityListeners(EntityChangeListener.class)
 @Data
 public class Bike {
     @Id
@@ -18,6 +18,9 @@ public class Booking {
     private String waId;
     private String name;
     private String bike;
+    // id of the booked bike; older bookings were backfilled from the bike name (V2 migration), except
+    // those of a name several bikes share, which stay null and are matched by name
+    private Long bikeId;
     private Integer duration;
     private Integer price;
     private Integer deposit;
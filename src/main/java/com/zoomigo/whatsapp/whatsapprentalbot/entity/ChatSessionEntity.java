@@ -1,12 +1,12 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.entity;
 
-import com.zoomigo.whatsapp.whatsapprentalbot.config.JsonbConverter;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
 
 @Entity
 @Table(name = "chat_session")
@@ -20,18 +20,19 @@ public class ChatSessionEntity {
     private String waId;
     private String state;
 
-    //@Column(columnDefinition = "jsonb")
-    @Convert(converter = JsonbConverter.class)
-    private Map<String, Object> dataJson = new HashMap<>();
+    // jsonb on Postgres, json on H2 (V4 migration), decoded straight into the record; see ChatSessionWriter for the partial updates
+    @Column(name = "data_json")
+    @JdbcTypeCode(SqlTypes.JSON)
+    private SessionState data = SessionState.EMPTY;
 
     private Instant lastUpdated = Instant.now();
 
     public ChatSessionEntity() {
     }
 
-    public ChatSessionEntity(String waId, String state, Map<String, Object> dataJson) {
+    public ChatSessionEntity(String waId, String state, SessionState data) {
         this.waId = waId;
         this.state = state;
-        this.dataJson = dataJson;
+        this.data = data;
     }
 }
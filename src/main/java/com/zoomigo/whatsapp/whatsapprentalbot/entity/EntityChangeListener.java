@@ -0,0 +1,35 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.entity;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.hibernate.Hibernate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts inserts/updates/deletes made through JPA in this process, per entity type, so in-memory
+ * copies of a table (bike catalog, exchange rates, app config, promo bike index) know to reload
+ * without querying the database on every read. Registered with {@code @EntityListeners} on each
+ * entity that has such a copy.
+ */
+public class EntityChangeListener {
+
+    private static final ConcurrentHashMap<Class<?>, AtomicLong> CHANGES = new ConcurrentHashMap<>();
+
+    public static long changeCount(Class<?> entityType) {
+        return counter(entityType).get();
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        counter(Hibernate.getClass(entity)).incrementAndGet();
+    }
+
+    private static AtomicLong counter(Class<?> entityType) {
+        return CHANGES.computeIfAbsent(entityType, k -> new AtomicLong());
+    }
+}
@@ -8,6 +8,7 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "exchange_rate", uniqueConstraints = {@UniqueConstraint(columnNames = {"base_currency", "target_currency"})})
+@EntityListeners(EntityChangeListener.class)
 @Data
 public class ExchangeRate {
     @Id
@@ -0,0 +1,42 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Id of an inbound WhatsApp message that has already been accepted for processing.
+ * Always inserted as new, so a redelivered id fails on the primary key instead of being merged.
+ */
+@Entity
+@Table(name = "processed_message", indexes = {@Index(name = "idx_processed_message_received_at", columnList = "received_at")})
+@Data
+public class ProcessedMessage implements Persistable<String> {
+
+    @Id
+    @Column(name = "message_id", length = 128)
+    private String messageId;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt;
+
+    public ProcessedMessage() {
+    }
+
+    public ProcessedMessage(String messageId, Instant receivedAt) {
+        this.messageId = messageId;
+        this.receivedAt = receivedAt;
+    }
+
+    @Override
+    public String getId() {
+        return messageId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
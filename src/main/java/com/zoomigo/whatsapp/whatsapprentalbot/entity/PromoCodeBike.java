@@ -5,6 +5,7 @@ import lombok.Data;
 
 @Entity
 @Table(name = "promo_code_bike")
+@EntityListeners(EntityChangeListener.class)
 @Data
 public class PromoCodeBike {
     @Id
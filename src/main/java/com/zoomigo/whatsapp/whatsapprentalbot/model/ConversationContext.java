@@ -0,0 +1,13 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+
+/**
+ * Everything the conversation needs about one waId, read in a single query at the start of a message.
+ * {@code selectedBike} and {@code latestBooking} are null when the user has none.
+ */
+public record ConversationContext(User user, ChatSessionEntity session, Bike selectedBike, Booking latestBooking) {
+}
@@ -0,0 +1,17 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+/**
+ * One user message extracted from a WhatsApp Cloud API webhook delivery.
+ * {@code text} is the typed text for text messages and the tapped title for interactive/button
+ * replies (whose id is kept in {@code replyId}); it stays null for media and other types.
+ */
+public record InboundMessage(String id, String from, String type, String text, String replyId) {
+
+    public InboundMessage(String id, String from, String type, String text) {
+        this(id, from, type, text, null);
+    }
+
+    public boolean hasText() {
+        return text != null;
+    }
+}
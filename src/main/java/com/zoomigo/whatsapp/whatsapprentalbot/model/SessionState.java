@@ -0,0 +1,191 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.*;
+
+/**
+ * What a chat session remembers between messages, stored in {@code chat_session.data_json} as
+ * {@code {"v":1,"b":[7,3,5],"pi":12,"pc":"ZOOMI10","pd":300,"pf":2700}}:
+ * <ul>
+ *   <li>{@code b}: ids of the bikes last listed to the user, in list order; bike number {@code n} is {@code b[n-1]}</li>
+ *   <li>{@code pi}/{@code pc}: the promo code the user entered, by id and code</li>
+ *   <li>{@code pd}/{@code pf}: the discount and final price shown when it was applied</li>
+ * </ul>
+ * Absent fields are left out. Documents written before the version field existed ({@code bikeMap},
+ * {@code promoCodeId}, ... keys) are read into the same fields with {@code version} 0; {@link #current()}
+ * stamps the current version so the next write replaces them with the compact form.
+ * <p>
+ * Instances are immutable: changes return a copy. {@code bikes} is not copied on the way out, don't modify it.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SessionState(
+        @JsonProperty("v") int version,
+        @JsonProperty("b") long[] bikes,
+        @JsonProperty("pi") Long promoCodeId,
+        @JsonProperty("pc") String promoCode,
+        @JsonProperty("pd") Integer promoDiscount,
+        @JsonProperty("pf") Integer promoFinalPrice) {
+
+    public static final int VERSION = 1;
+
+    public static final SessionState EMPTY = new SessionState(VERSION, null, null, null, null, null);
+
+    @JsonCreator
+    static SessionState read(@JsonProperty("v") Integer v,
+                             @JsonProperty("b") long[] bikes,
+                             @JsonProperty("pi") Long promoCodeId,
+                             @JsonProperty("pc") String promoCode,
+                             @JsonProperty("pd") Integer promoDiscount,
+                             @JsonProperty("pf") Integer promoFinalPrice,
+                             @JsonProperty("bikeMap") Map<String, Object> legacyBikeMap,
+                             @JsonProperty("promoCodeId") Object legacyPromoCodeId,
+                             @JsonProperty("promoCode") Object legacyPromoCode,
+                             @JsonProperty("promoAppliedDiscount") Object legacyDiscount,
+                             @JsonProperty("promoFinalPrice") Object legacyFinalPrice) {
+        if (v != null) return new SessionState(v, bikes, promoCodeId, promoCode, promoDiscount, promoFinalPrice);
+        Map<String, Object> legacy = new HashMap<>();
+        if (legacyBikeMap != null) legacy.put("bikeMap", legacyBikeMap);
+        if (legacyPromoCodeId != null) legacy.put("promoCodeId", legacyPromoCodeId);
+        if (legacyPromoCode != null) legacy.put("promoCode", legacyPromoCode);
+        if (legacyDiscount != null) legacy.put("promoAppliedDiscount", legacyDiscount);
+        if (legacyFinalPrice != null) legacy.put("promoFinalPrice", legacyFinalPrice);
+        return fromMap(legacy);
+    }
+
+    /**
+     * Read a pre-version session map: {@code bikeMap} ("1" -> bike id, ids as numbers or strings) and the
+     * promo keys. Values that can't be read as numbers are dropped, as the old readers ignored them.
+     */
+    public static SessionState fromMap(Map<String, ?> data) {
+        if (data == null || data.isEmpty()) return new SessionState(0, null, null, null, null, null);
+        long[] bikes = null;
+        if (data.get("bikeMap") instanceof Map<?, ?> bikeMap) {
+            // listed numbers are 1..n; order by number in case the map lost its order
+            TreeMap<Integer, Long> byNumber = new TreeMap<>();
+            bikeMap.forEach((number, id) -> {
+                Integer n = number == null ? null : toInteger(number);
+                Long bikeId = toLong(id);
+                if (n != null && bikeId != null) byNumber.put(n, bikeId);
+            });
+            bikes = byNumber.values().stream().mapToLong(Long::longValue).toArray();
+        }
+        Object code = data.get("promoCode");
+        return new SessionState(0, bikes, toLong(data.get("promoCodeId")), code == null ? null : String.valueOf(code),
+                toInteger(data.get("promoAppliedDiscount")), toInteger(data.get("promoFinalPrice")));
+    }
+
+    /** This state at the current version; the same instance when it already is. */
+    public SessionState current() {
+        return version == VERSION ? this : new SessionState(VERSION, bikes, promoCodeId, promoCode, promoDiscount, promoFinalPrice);
+    }
+
+    /** True once a bike list was shown, even an empty one. */
+    @JsonIgnore
+    public boolean hasBikeList() {
+        return bikes != null;
+    }
+
+    /** The bike id listed under {@code number} ("1", "2", ...), or null. */
+    public Long bikeNumbered(String number) {
+        if (bikes == null || number == null) return null;
+        int n;
+        try {
+            n = Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // only the number as listed: "01" or "+1" is left to the name match
+        if (n < 1 || n > bikes.length || !String.valueOf(n).equals(number)) return null;
+        return bikes[n - 1];
+    }
+
+    @JsonIgnore
+    public boolean hasPromo() {
+        return promoCodeId != null || promoCode != null;
+    }
+
+    /** True when both the discount and the final price shown with the promo were stored. */
+    @JsonIgnore
+    public boolean hasPromoPrice() {
+        return promoDiscount != null && promoFinalPrice != null;
+    }
+
+    /** @param bikeIds the listed bike ids in list order */
+    public SessionState withBikes(Collection<Long> bikeIds) {
+        long[] ids = bikeIds.stream().mapToLong(Long::longValue).toArray();
+        return new SessionState(VERSION, ids, promoCodeId, promoCode, promoDiscount, promoFinalPrice);
+    }
+
+    public SessionState withPromo(Long id, String code, int discount, int finalPrice) {
+        return new SessionState(VERSION, bikes, id, code, discount, finalPrice);
+    }
+
+    public SessionState withoutPromo() {
+        if (!hasPromo() && promoDiscount == null && promoFinalPrice == null) return current();
+        return new SessionState(VERSION, bikes, null, null, null, null);
+    }
+
+    /**
+     * How this state differs from {@code before}, by document field name: {@code changed} has the new values
+     * of the fields that differ, {@code removed} the fields this state left null (and so out of the document).
+     */
+    public record Diff(Map<String, Object> changed, List<String> removed) {
+    }
+
+    public Diff diff(SessionState before) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        List<String> removed = new ArrayList<>();
+        if (version != before.version) changed.put("v", version);
+        if (!Arrays.equals(bikes, before.bikes)) put(changed, removed, "b", bikes);
+        if (!Objects.equals(promoCodeId, before.promoCodeId)) put(changed, removed, "pi", promoCodeId);
+        if (!Objects.equals(promoCode, before.promoCode)) put(changed, removed, "pc", promoCode);
+        if (!Objects.equals(promoDiscount, before.promoDiscount)) put(changed, removed, "pd", promoDiscount);
+        if (!Objects.equals(promoFinalPrice, before.promoFinalPrice)) put(changed, removed, "pf", promoFinalPrice);
+        return new Diff(changed, removed);
+    }
+
+    private static void put(Map<String, Object> changed, List<String> removed, String name, Object value) {
+        if (value == null) removed.add(name);
+        else changed.put(name, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SessionState s && version == s.version && Arrays.equals(bikes, s.bikes)
+                && Objects.equals(promoCodeId, s.promoCodeId) && Objects.equals(promoCode, s.promoCode)
+                && Objects.equals(promoDiscount, s.promoDiscount) && Objects.equals(promoFinalPrice, s.promoFinalPrice);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(version, Arrays.hashCode(bikes), promoCodeId, promoCode, promoDiscount, promoFinalPrice);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionState[v=" + version + ", bikes=" + Arrays.toString(bikes) + ", promo=" + promoCodeId + "/" + promoCode
+                + ", discount=" + promoDiscount + ", final=" + promoFinalPrice + "]";
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number n) return n.longValue();
+        if (value instanceof String s) {
+            try {
+                return Long.valueOf(s.trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return null;
+    }
+
+    private static Integer toInteger(Object value) {
+        Long l = toLong(value);
+        return l == null || l < Integer.MIN_VALUE || l > Integer.MAX_VALUE ? null : l.intValue();
+    }
+}
@@ -0,0 +1,7 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+/**
+ * Delivery status callback (sent/delivered/read/failed) for a message we sent.
+ */
+public record StatusUpdate(String id, String recipientId, String status) {
+}
@@ -0,0 +1,10 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+import java.util.List;
+
+/**
+ * The parts of a webhook delivery the bot acts on. Entry/change counts are kept so the controller
+ * can tell an empty delivery apart from one that only carried status callbacks.
+ */
+public record WebhookPayload(int entryCount, int changeCount, List<InboundMessage> messages, List<StatusUpdate> statuses) {
+}
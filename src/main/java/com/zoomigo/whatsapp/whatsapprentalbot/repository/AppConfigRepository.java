@@ -2,7 +2,13 @@ package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.AppConfig;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
 
 public interface AppConfigRepository extends JpaRepository<AppConfig, String> {
-}
 
+    // newest updated_at; polled to notice config edited outside this instance
+    @Query("select max(c.updatedAt) from AppConfig c")
+    Instant findMaxUpdatedAt();
+}
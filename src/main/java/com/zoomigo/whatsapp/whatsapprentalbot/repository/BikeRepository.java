@@ -1,12 +1,22 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface BikeRepository extends JpaRepository<Bike, Long> {
     List<Bike> findByIsAvailableTrue();
+
+    // select ... for update: serialises confirmations of the same bike until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Bike b where b.id = :id")
+    Optional<Bike> lockById(@Param("id") Long id);
 }
@@ -2,9 +2,42 @@ package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 public interface BookingRepository extends JpaRepository<Booking, Long> {
     Optional<Booking> findTopByWaIdOrderByCreatedAtDesc(String phoneNumber);
-}
\ No newline at end of file
+
+    // [bike id, start date, end date] of confirmed bookings still running on or after :from; a booking
+    // without a bike id (its name was shared by several bikes when V2 backfilled the ids) holds every
+    // bike of that name, and one whose name no bike has any more comes back with a null id
+    @Query("""
+            select coalesce(b.bikeId, k.id), b.startDate, b.endDate from Booking b
+              left join Bike k on b.bikeId is null and k.name = b.bike
+             where b.status = 'CONFIRMED' and b.endDate > :from""")
+    List<Object[]> findConfirmedBikeDays(@Param("from") LocalDate from);
+
+    @Query("""
+            select b.bikeId, b.startDate, b.endDate from Booking b
+             where b.status = 'CONFIRMED' and b.endDate > :from
+               and (b.bikeId = :bikeId or (b.bikeId is null and b.bike = :bikeName))""")
+    List<Object[]> findConfirmedBikeDays(@Param("bikeId") Long bikeId, @Param("bikeName") String bikeName,
+                                         @Param("from") LocalDate from);
+
+    // confirmed bookings of the bike sharing at least one day with [start, end)
+    @Query("""
+            select count(b) from Booking b
+             where b.bikeId = :bikeId and b.status = 'CONFIRMED' and b.startDate < :end and b.endDate > :start""")
+    long countOverlapping(@Param("bikeId") Long bikeId, @Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    // the same for bookings without a bike id, which hold every bike of their name; kept apart from
+    // countOverlapping because an OR of the two would not be answered from the bike_id index
+    @Query("""
+            select count(b) from Booking b
+             where b.bikeId is null and b.bike = :bikeName and b.status = 'CONFIRMED' and b.startDate < :end and b.endDate > :start""")
+    long countOverlappingByName(@Param("bikeName") String bikeName, @Param("start") LocalDate start, @Param("end") LocalDate end);
+}
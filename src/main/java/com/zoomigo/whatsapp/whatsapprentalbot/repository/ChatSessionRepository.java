@@ -2,11 +2,24 @@ package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface ChatSessionRepository extends JpaRepository<ChatSessionEntity, Long> {
     Optional<ChatSessionEntity> findByWaId(String waId);
 
     void deleteByWaId(String from);
+
+    // Postgres only: drop the removed keys (a text[] literal) and merge the changed ones (a JSON object)
+    // into the stored jsonb document, without reading or rewriting the rest of it. 0 if the row is gone.
+    @Modifying
+    @Query(value = "update chat_session set state = :state, last_updated = :lastUpdated,"
+            + " data_json = (coalesce(data_json, cast('{}' as jsonb)) - cast(:removed as text[])) || cast(:changed as jsonb)"
+            + " where id = :id", nativeQuery = true)
+    int patchData(@Param("id") Long id, @Param("state") String state, @Param("lastUpdated") Instant lastUpdated,
+                  @Param("changed") String changed, @Param("removed") String removed);
 }
@@ -0,0 +1,18 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.repository;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ProcessedMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface ProcessedMessageRepository extends JpaRepository<ProcessedMessage, String> {
+
+    @Transactional
+    @Modifying
+    @Query("delete from ProcessedMessage p where p.receivedAt < :cutoff")
+    int deleteReceivedBefore(@Param("cutoff") Instant cutoff);
+}
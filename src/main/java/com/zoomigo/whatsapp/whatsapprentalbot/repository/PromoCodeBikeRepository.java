@@ -2,6 +2,7 @@ package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCodeBike;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
@@ -9,5 +10,8 @@ public interface PromoCodeBikeRepository extends JpaRepository<PromoCodeBike, Lo
     List<PromoCodeBike> findByPromoCode_Id(Long promoId);
 
     List<PromoCodeBike> findByPromoCode_CodeIgnoreCase(String code);
-}
 
+    // Every mapping as [promo id, promo code, bike id], without loading the promo and bike entities
+    @Query("select p.id, p.code, m.bike.id from PromoCodeBike m join m.promoCode p")
+    List<Object[]> findAllPromoBikeIds();
+}
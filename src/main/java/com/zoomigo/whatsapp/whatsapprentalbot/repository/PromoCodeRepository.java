@@ -2,10 +2,21 @@ package com.zoomigo.whatsapp.whatsapprentalbot.repository;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCode;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 public interface PromoCodeRepository extends JpaRepository<PromoCode, Long> {
     Optional<PromoCode> findByCodeIgnoreCase(String code);
-}
 
+    // Claim one use of an active promo in a single conditional update; 1 if claimed, 0 if inactive or used up.
+    // A total allocation of 0 (or none) means unlimited, as in the ASK_PROMO check.
+    @Transactional
+    @Modifying
+    @Query("update PromoCode p set p.usedCount = coalesce(p.usedCount, 0) + 1 where p.id = :id and p.active = true"
+            + " and (coalesce(p.totalAllocation, 0) <= 0 or coalesce(p.usedCount, 0) < p.totalAllocation)")
+    int redeem(@Param("id") Long id);
+}
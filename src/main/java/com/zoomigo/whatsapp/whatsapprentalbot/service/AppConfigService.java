@@ -1,18 +1,40 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.AppConfig;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.AppConfigRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Runtime settings from the app_config table, served from an in-memory copy of every row.
+ * <p>
+ * The copy is reloaded when a row is saved through JPA in this process ({@link EntityChangeListener},
+ * which {@link #setString} goes through) and when a poll of row count and max(updated_at) shows that
+ * another instance or an admin edited the table. {@link #version()} moves whenever the values do.
+ */
+@Slf4j
 @Service
 public class AppConfigService {
     private final AppConfigRepository repo;
+    private final TrackedSnapshot<Snapshot> current;
+
+    /**
+     * The rows as loaded, plus {@code lookups}: keys read since the load, present or not, so a missing key
+     * costs one query per reload rather than one per read.
+     */
+    private record Snapshot(long version, Map<String, String> values, Map<String, Optional<String>> lookups,
+                            long rowCount, Instant maxUpdatedAt) {
+    }
 
     public AppConfigService(AppConfigRepository repo) {
         this.repo = repo;
+        this.current = new TrackedSnapshot<>("app config", () -> EntityChangeListener.changeCount(AppConfig.class), this::load);
     }
 
     public String getDefaultCurrency() {
@@ -25,8 +47,16 @@ public class AppConfigService {
 
     public String getString(String key, String defaultValue) {
         try {
-            Optional<AppConfig> maybe = repo.findById(key);
-            if (maybe.isPresent()) return maybe.get().getValueText();
+            Snapshot s = snapshot();
+            String v = s.values().get(key);
+            if (v != null) return v;
+            // not there at load time; it may have been inserted since
+            Optional<String> looked = s.lookups().get(key);
+            if (looked == null) {
+                looked = repo.findById(key).map(AppConfig::getValueText);
+                s.lookups().put(key, looked);
+            }
+            if (looked.isPresent()) return looked.get();
         } catch (Exception ignored) {}
         return defaultValue;
     }
@@ -47,5 +77,55 @@ public class AppConfigService {
         cfg.setValueText(value == null ? "" : value);
         cfg.setUpdatedAt(Instant.now());
         repo.save(cfg);
+        // the listener covers JPA saves; reload explicitly so the next read sees the value either way
+        refresh();
+    }
+
+    // Bumped whenever a reload finds different values, so anything derived from config knows to rebuild
+    public long version() {
+        try {
+            return snapshot().version();
+        } catch (Exception e) {
+            Snapshot s = current.current();
+            return s == null ? 0 : s.version();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app-config.refresh-interval:PT30S}", initialDelayString = "${app-config.refresh-interval:PT30S}")
+    public void poll() {
+        Snapshot s = current.current();
+        if (s == null) return; // nothing loaded yet; the first read loads everything
+        try {
+            if (repo.count() != s.rowCount() || !Objects.equals(repo.findMaxUpdatedAt(), s.maxUpdatedAt())) refresh();
+        } catch (Exception e) {
+            log.warn("⚠️ App config poll failed, keeping version {}: {}", s.version(), e.getMessage());
+        }
+    }
+
+    public void refresh() {
+        current.refresh();
+    }
+
+    private Snapshot snapshot() {
+        return current.get();
+    }
+
+    private Snapshot load(Snapshot previous) {
+        List<AppConfig> rows = repo.findAll();
+        Map<String, String> values = new HashMap<>();
+        Instant maxUpdatedAt = null;
+        for (AppConfig c : rows) {
+            if (c.getKeyText() == null || c.getValueText() == null) continue;
+            values.put(c.getKeyText(), c.getValueText());
+            if (c.getUpdatedAt() != null && (maxUpdatedAt == null || c.getUpdatedAt().isAfter(maxUpdatedAt))) maxUpdatedAt = c.getUpdatedAt();
+        }
+
+        long version;
+        if (previous == null) version = 1;
+        else if (previous.values().equals(values)) version = previous.version(); // unchanged: keep dependants warm
+        else version = previous.version() + 1;
+        if (previous == null || version != previous.version()) log.info("⚙️ App config v{}: {} setting(s)", version, values.size());
+
+        return new Snapshot(version, Collections.unmodifiableMap(values), new ConcurrentHashMap<>(), rows.size(), maxUpdatedAt);
     }
 }
@@ -0,0 +1,154 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.BookingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Which days each bike is booked, as one bitmap per bike over a rolling horizon starting today:
+ * bit {@code n} is set when a CONFIRMED booking holds the bike on {@code firstDay + n}. A booking
+ * holds its bike from the start date up to, not including, the end date.
+ * <p>
+ * Loaded from one query, updated in place when this process confirms or cancels a booking, and
+ * reloaded at the start of each day and by a periodic poll that picks up bookings made elsewhere.
+ * Days past the horizon are reported free; the check at confirmation time is the authoritative one.
+ */
+@Slf4j
+@Service
+public class BikeAvailabilityIndex {
+
+    /** Booked days per bike id; bikes without an entry have no bookings in the horizon. */
+    public record Snapshot(LocalDate firstDay, int horizonDays, Map<Long, BitSet> booked) {
+
+        /** True when no booking holds the bike on any day of [start, end) inside the horizon. */
+        public boolean isFree(Long bikeId, LocalDate start, LocalDate end) {
+            BitSet days = bikeId == null ? null : booked.get(bikeId);
+            if (days == null) return true;
+            int from = offset(start);
+            int to = offset(end);
+            if (from >= to) return true;
+            int next = days.nextSetBit(from);
+            return next < 0 || next >= to;
+        }
+
+        private int offset(LocalDate day) {
+            long n = ChronoUnit.DAYS.between(firstDay, day);
+            return (int) Math.max(0, Math.min(horizonDays, n));
+        }
+
+        private void mark(BitSet days, LocalDate start, LocalDate end) {
+            if (start == null || end == null) return;
+            int from = offset(start);
+            int to = offset(end);
+            if (from < to) days.set(from, to);
+        }
+    }
+
+    private final BookingRepository bookingRepo;
+    private final ZoneId zone;
+    private final int horizonDays;
+    // published bitmaps are never modified; an update copies the bike's bitmap and swaps the snapshot
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    public BikeAvailabilityIndex(BookingRepository bookingRepo,
+                                 @Value("${app.time-zone:}") String timeZone,
+                                 @Value("${bookings.availability.horizon-days:400}") int horizonDays) {
+        this.bookingRepo = bookingRepo;
+        this.zone = timeZone == null || timeZone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(timeZone);
+        this.horizonDays = horizonDays;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot s = current.get();
+        if (s != null && !s.firstDay().isBefore(LocalDate.now(zone))) return s;
+        return rebuild(s);
+    }
+
+    public boolean isFree(Long bikeId, LocalDate start, LocalDate end) {
+        return snapshot().isFree(bikeId, start, end);
+    }
+
+    /** Mark the days of a booking this process just saved as CONFIRMED. */
+    public synchronized void booked(Booking booking) {
+        Snapshot s = current.get();
+        // not loaded yet: the first load reads it from the database
+        if (s == null || booking.getBikeId() == null) return;
+        BitSet days = s.booked().containsKey(booking.getBikeId()) ? (BitSet) s.booked().get(booking.getBikeId()).clone() : new BitSet();
+        s.mark(days, booking.getStartDate(), booking.getEndDate());
+        current.set(withBike(s, booking.getBikeId(), days));
+    }
+
+    /** Free the days of a booking this process just cancelled; other bookings of the bike keep theirs. */
+    public synchronized void cancelled(Booking booking) {
+        Snapshot s = current.get();
+        if (s == null) return;
+        try {
+            if (booking.getBikeId() == null) {
+                // a legacy booking holds every bike of its name, which only the query resolves
+                rebuild(s);
+                return;
+            }
+            BitSet days = new BitSet();
+            for (Object[] row : bookingRepo.findConfirmedBikeDays(booking.getBikeId(), booking.getBike(), s.firstDay())) {
+                s.mark(days, (LocalDate) row[1], (LocalDate) row[2]);
+            }
+            current.set(withBike(s, booking.getBikeId(), days));
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Could not reload bookings of bike {}, its days stay booked until the next refresh: {}", booking.getBikeId(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bookings.availability.refresh-interval:PT10M}", initialDelayString = "${bookings.availability.refresh-interval:PT10M}")
+    public void refresh() {
+        try {
+            rebuild(current.get());
+        } catch (Exception e) {
+            log.warn("⚠️ Bike availability refresh failed, keeping the index from {}: {}", current.get() == null ? "-" : current.get().firstDay(), e.getMessage());
+        }
+    }
+
+    private synchronized Snapshot rebuild(Snapshot seen) {
+        Snapshot previous = current.get();
+        // another thread rebuilt while this one waited for the lock
+        if (previous != seen && previous != null && !previous.firstDay().isBefore(LocalDate.now(zone))) return previous;
+
+        LocalDate firstDay = LocalDate.now(zone);
+        List<Object[]> rows;
+        try {
+            rows = bookingRepo.findConfirmedBikeDays(firstDay);
+        } catch (RuntimeException e) {
+            if (previous == null) throw e;
+            log.warn("⚠️ Could not reload confirmed bookings, serving the index from {}: {}", previous.firstDay(), e.getMessage());
+            return previous;
+        }
+
+        Snapshot empty = new Snapshot(firstDay, horizonDays, Map.of());
+        Map<Long, BitSet> booked = new HashMap<>();
+        for (Object[] row : rows) {
+            Long bikeId = (Long) row[0];
+            // a legacy booking whose bike was renamed or removed
+            if (bikeId == null) continue;
+            empty.mark(booked.computeIfAbsent(bikeId, k -> new BitSet()), (LocalDate) row[1], (LocalDate) row[2]);
+        }
+        Snapshot next = new Snapshot(firstDay, horizonDays, Map.copyOf(booked));
+        current.set(next);
+        log.info("📅 Bike availability from {}: {} booking(s) over {} bike(s)", firstDay, rows.size(), booked.size());
+        return next;
+    }
+
+    private static Snapshot withBike(Snapshot s, Long bikeId, BitSet days) {
+        Map<Long, BitSet> booked = new HashMap<>(s.booked());
+        if (days.isEmpty()) booked.remove(bikeId);
+        else booked.put(bikeId, days);
+        return new Snapshot(s.firstDay(), s.horizonDays(), Map.copyOf(booked));
+    }
+}
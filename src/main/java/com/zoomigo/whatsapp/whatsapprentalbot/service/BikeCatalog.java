@@ -0,0 +1,89 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.BikeRepository;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.BikeNameMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Immutable, versioned in-memory copy of the bikes table.
+ * <p>
+ * Reads never hit the database once the catalog is loaded. It is rebuilt (and its version bumped)
+ * when a bike is saved through JPA in this process ({@link EntityChangeListener}) and by a periodic poll
+ * that picks up changes made elsewhere. The returned {@link Bike} instances are shared: treat them as read-only.
+ */
+@Slf4j
+@Service
+public class BikeCatalog {
+
+    /**
+     * One consistent view of the catalog. {@code available} is in display order (by id);
+     * {@code byId} holds every bike, including unavailable ones, so existing selections still resolve.
+     * {@code nameMatcher} indexes the names of all bikes, in id order.
+     */
+    public record Snapshot(long version, List<Bike> available, Map<Long, Bike> byId, BikeNameMatcher nameMatcher) {
+
+        public Bike get(Long id) {
+            return id == null ? null : byId.get(id);
+        }
+    }
+
+    private final BikeRepository bikeRepo;
+    private final TrackedSnapshot<Snapshot> current;
+
+    public BikeCatalog(BikeRepository bikeRepo) {
+        this.bikeRepo = bikeRepo;
+        this.current = new TrackedSnapshot<>("bike catalog", () -> EntityChangeListener.changeCount(Bike.class), this::load);
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public long version() {
+        return snapshot().version();
+    }
+
+    public List<Bike> available() {
+        return snapshot().available();
+    }
+
+    public Bike findById(Long id) {
+        if (id == null) return null;
+        Bike bike = snapshot().get(id);
+        if (bike != null) return bike;
+        // not in our copy - it may have been added by another instance since the last poll
+        Bike fresh = bikeRepo.findById(id).orElse(null);
+        if (fresh != null) refresh();
+        return fresh;
+    }
+
+    @Scheduled(fixedDelayString = "${bikes.catalog.refresh-interval:PT1M}", initialDelayString = "${bikes.catalog.refresh-interval:PT1M}")
+    public void refresh() {
+        current.refresh();
+    }
+
+    private Snapshot load(Snapshot previous) {
+        List<Bike> all = new ArrayList<>(bikeRepo.findAll());
+        all.sort(Comparator.comparing(Bike::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        List<Bike> available = new ArrayList<>();
+        Map<Long, Bike> byId = new HashMap<>();
+        for (Bike b : all) {
+            if (b.getId() != null) byId.put(b.getId(), b);
+            if (b.isAvailable()) available.add(b);
+        }
+
+        if (previous != null && previous.available().equals(available) && previous.byId().equals(byId)) {
+            return previous; // nothing changed: keep the version so dependent caches stay warm
+        }
+        long version = previous == null ? 1 : previous.version() + 1;
+        log.info("🏍️ Bike catalog v{}: {} bike(s), {} available", version, byId.size(), available.size());
+        return new Snapshot(version, List.copyOf(available), Map.copyOf(byId), BikeNameMatcher.of(all));
+    }
+}
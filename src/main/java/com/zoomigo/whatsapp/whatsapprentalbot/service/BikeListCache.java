@@ -0,0 +1,74 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The "Available bikes" reply, rendered once per (catalog version, display currency, rate version,
+ * bikes left out as booked for the user's dates) instead of formatting every price for every user
+ * who reaches bike selection.
+ * <p>
+ * A new catalog or rate version is a new key; entries for older versions are dropped when it is
+ * first rendered. The TTL bounds how long a rate changed outside this process (and so not
+ * reflected in the rate version) can be shown.
+ */
+@Service
+public class BikeListCache {
+
+    /** {@code bookedBikeIds}: bikes of the catalog not listed because they are booked for the user's dates. */
+    public record Key(long catalogVersion, String currency, long rateVersion, List<Long> bookedBikeIds) {
+        public Key {
+            bookedBikeIds = List.copyOf(bookedBikeIds);
+        }
+
+        public Key(long catalogVersion, String currency, long rateVersion) {
+            this(catalogVersion, currency, rateVersion, List.of());
+        }
+    }
+
+    /**
+     * {@code text} is the complete reply; {@code bikeNumbers} maps the listed number ("1", "2", ...) to the bike id.
+     */
+    public record RenderedBikeList(String text, Map<String, Long> bikeNumbers) {
+        public RenderedBikeList {
+            bikeNumbers = Collections.unmodifiableMap(new LinkedHashMap<>(bikeNumbers));
+        }
+    }
+
+    private final Cache<Key, RenderedBikeList> rendered;
+
+    public BikeListCache(@Value("${bikes.list-cache.ttl:PT1M}") Duration ttl) {
+        this.rendered = Caffeine.newBuilder()
+                .maximumSize(128)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        // same tag keys as the caches Boot binds from the CacheManager; Prometheus rejects a mismatch
+        if (meterRegistry != null) CaffeineCacheMetrics.monitor(meterRegistry, rendered, "bike-list", Tags.of("cache.manager", "none", "name", "bike-list"));
+    }
+
+    public RenderedBikeList get(Key key, Supplier<RenderedBikeList> render) {
+        RenderedBikeList list = rendered.getIfPresent(key);
+        if (list != null) return list;
+        rendered.asMap().keySet().removeIf(k -> k.catalogVersion() < key.catalogVersion() || k.rateVersion() < key.rateVersion());
+        // through asMap() so the miss above is the only one counted in the cache stats
+        return rendered.asMap().computeIfAbsent(key, k -> render.get());
+    }
+}
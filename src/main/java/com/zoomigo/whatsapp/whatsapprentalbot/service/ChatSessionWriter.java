@@ -0,0 +1,91 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ChatSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.*;
+
+/**
+ * Writes a chat session changed by one message. On Postgres an existing row is patched: one UPDATE
+ * merges the fields whose values changed since the message started into the jsonb document and drops
+ * the removed ones. The states are compared field by field ({@link SessionState#diff}), so the
+ * untouched fields (the bike list above all) are neither serialized nor sent.
+ * Other databases, rows created during the message and documents still in the pre-version layout
+ * (see {@link SessionState}) get the whole entity saved.
+ */
+@Slf4j
+@Service
+public class ChatSessionWriter {
+
+    private final ChatSessionRepository chatSessionRepo;
+    private final ObjectMapper mapper;
+    private final boolean patch;
+
+    @Autowired
+    public ChatSessionWriter(ChatSessionRepository chatSessionRepo, ObjectMapper mapper, DataSource dataSource,
+                             @Value("${chat-session.partial-writes:true}") boolean partialWrites) {
+        this(chatSessionRepo, mapper, partialWrites && isPostgres(dataSource));
+        log.info("💾 Chat session writes: {}", patch ? "jsonb patches of changed fields" : "whole document");
+    }
+
+    ChatSessionWriter(ChatSessionRepository chatSessionRepo, ObjectMapper mapper, boolean patch) {
+        this.chatSessionRepo = chatSessionRepo;
+        this.mapper = mapper;
+        this.patch = patch;
+    }
+
+    /**
+     * @param before the session data as read when the message started
+     * @param isNew  true when the row did not exist (or is a different instance) at the start of the message
+     */
+    public void write(ChatSessionEntity session, SessionState before, boolean isNew) {
+        // a legacy document keeps its old keys under a patch: replace it
+        if (!patch || isNew || session.getId() == null || before == null || before.version() != SessionState.VERSION) {
+            chatSessionRepo.save(session);
+            return;
+        }
+        SessionState now = session.getData() == null ? SessionState.EMPTY : session.getData();
+        SessionState.Diff diff = now.diff(before);
+
+        ObjectNode changed = mapper.createObjectNode();
+        diff.changed().forEach((name, value) -> changed.set(name, mapper.valueToTree(value)));
+
+        int rows = chatSessionRepo.patchData(session.getId(), session.getState(), session.getLastUpdated(),
+                changed.toString(), textArray(diff.removed()));
+        if (rows == 0) {
+            // deleted while the message was handled (e.g. a reset): fall back to what a full save does
+            log.warn("⚠️ Chat session {} vanished before its patch, saving it whole", session.getId());
+            chatSessionRepo.save(session);
+        }
+    }
+
+    // Postgres array literal: {"a","b"} with quotes and backslashes escaped
+    static String textArray(List<String> values) {
+        StringJoiner out = new StringJoiner(",", "{", "}");
+        for (String v : values) {
+            out.add('"' + v.replace("\\", "\\\\").replace("\"", "\\\"") + '"');
+        }
+        return out.toString();
+    }
+
+    private static boolean isPostgres(DataSource dataSource) {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(product);
+        } catch (MetaDataAccessException e) {
+            log.warn("⚠️ Could not tell the database product, chat sessions are saved whole: {}", e.getMessage());
+            return false;
+        }
+    }
+}
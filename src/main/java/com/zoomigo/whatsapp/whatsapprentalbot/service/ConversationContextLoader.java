@@ -0,0 +1,103 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.ConversationContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Loads the user, chat session, selected bike and latest booking for a waId in one round trip.
+ * <p>
+ * For a waId seen for the first time the missing user/session rows are created with
+ * insert-where-not-exists statements (safe to race with another instance) and the context is read again.
+ */
+@Slf4j
+@Service
+public class ConversationContextLoader {
+
+    // latest booking = the one with the newest createdAt; ties are broken by id below.
+    // The promo is fetch-joined: it references promo_code.code rather than the id, so it would
+    // otherwise cost a second select.
+    private static final String CONTEXT_QUERY = """
+            select u, s, b, bk from User u
+              left join ChatSessionEntity s on s.waId = u.phoneNumber
+              left join Bike b on b.id = u.selectedBikeId
+              left join Booking bk on bk.waId = u.phoneNumber
+                   and bk.createdAt = (select max(b2.createdAt) from Booking b2 where b2.waId = u.phoneNumber)
+              left join fetch bk.promoCode
+             where u.phoneNumber = :waId
+             order by s.id desc, bk.id desc
+            """;
+
+    private static final String INSERT_USER = """
+            insert into users (phone_number, stage)
+            select :waId, 'START' where not exists (select 1 from users where phone_number = :waId)
+            """;
+
+    // data_json starts as the column default, an empty JSON object
+    private static final String INSERT_SESSION = """
+            insert into chat_session (wa_id, state, last_updated)
+            select :waId, 'START', :now where not exists (select 1 from chat_session where wa_id = :waId)
+            """;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final TransactionTemplate tx;
+
+    public ConversationContextLoader(PlatformTransactionManager transactionManager) {
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @return the context for {@code waId}; never null, user and session are always present
+     */
+    public ConversationContext load(String waId) {
+        ConversationContext ctx = query(waId);
+        if (ctx != null && ctx.session() != null) return ctx;
+
+        createMissingRows(waId);
+        ctx = query(waId);
+        if (ctx == null || ctx.session() == null) {
+            throw new IllegalStateException("User/session rows for " + waId + " missing after upsert");
+        }
+        return ctx;
+    }
+
+    private ConversationContext query(String waId) {
+        List<Object[]> rows = em.createQuery(CONTEXT_QUERY, Object[].class)
+                .setParameter("waId", waId)
+                .setMaxResults(1)
+                .getResultList();
+        if (rows.isEmpty()) return null;
+        Object[] row = rows.get(0);
+        return new ConversationContext((User) row[0], (ChatSessionEntity) row[1], (Bike) row[2], (Booking) row[3]);
+    }
+
+    private void createMissingRows(String waId) {
+        try {
+            tx.executeWithoutResult(status -> {
+                int users = em.createNativeQuery(INSERT_USER).setParameter("waId", waId).executeUpdate();
+                int sessions = em.createNativeQuery(INSERT_SESSION)
+                        .setParameter("waId", waId)
+                        .setParameter("now", Instant.now())
+                        .executeUpdate();
+                if (users + sessions > 0) log.info("🆕 Created {} user and {} session row(s) for {}", users, sessions, waId);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // another delivery for the same waId created the user first; its rows are what we want
+            log.debug("User {} created concurrently: {}", waId, e.getMessage());
+        }
+    }
+}
@@ -1,22 +1,35 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
-import com.joestelmach.natty.Parser;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.ConversationContext;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.BikeNameMatcher;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.DateInputParser;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.StageTag;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.Year;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationStage.*;
+import static com.zoomigo.whatsapp.whatsapprentalbot.service.StageTable.entry;
 
 @Slf4j
 @Service
@@ -31,6 +44,8 @@ public class ConversationService {
     private final PromoCodeBikeRepository promoBikeRepo;
     private final ExchangeRateService exchangeRateService;
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd MMM yyyy");
+    // replaced from app.time-zone / app.date-parser.natty-fallback when running in Spring
+    private DateInputParser dateParser = new DateInputParser(ZoneId.systemDefault(), true);
     @Value("${app.shop-address:No. 1, Paramulla Road, Matara}")
     private String shopAddressProp;
     // backward-compatible field used in older tests
@@ -45,8 +60,44 @@ public class ConversationService {
 
     private final AppConfigService appConfigService;
 
+    // which handler answers each stage and which stages it may move the user to; checked when the service is built
+    private final StageTable stages;
+
     private CacheManager cacheManager;
 
+    // optional: in-memory bike catalog; when present bike listing and lookups don't touch the database
+    private BikeCatalog bikeCatalog;
+
+    // optional: when present, promo-to-bike applicability is answered from memory
+    private PromoBikeIndex promoBikeIndex;
+
+    // optional: when present (with the catalog), the bike list reply is rendered once per catalog/currency/rate version
+    private BikeListCache bikeListCache;
+
+    // optional: when present, bike selection only lists bikes free for the user's dates
+    private BikeAvailabilityIndex availabilityIndex;
+
+    // optional: when present, user/session/bike/latest booking are read in one query per message
+    private ConversationContextLoader contextLoader;
+
+    // optional: when present, an existing session is written as a patch of its changed keys where the database allows
+    private ChatSessionWriter sessionWriter;
+
+    // optional: when present, the per-message user/session flush and each booking insert (with its promo redemption) run in a transaction
+    private TransactionTemplate flushTransaction;
+    private MeterRegistry meterRegistry;
+    private Timer flushWritten;
+    private Counter flushSkipped;
+    private Counter userWrites;
+    private Counter sessionWrites;
+    // one counter per declared transition, registered with the meter registry
+    private Map<ConversationStage, Map<ConversationStage, Counter>> transitions = Map.of();
+
+    // user/session changes collected while the current thread handles a message
+    private final ThreadLocal<SessionUnitOfWork> currentWork = new ThreadLocal<>();
+    // the stage table entry the current thread's message was dispatched to
+    private final ThreadLocal<StageTable.Dispatch> currentDispatch = new ThreadLocal<>();
+
     @Autowired
     public ConversationService(UserRepository userRepo, BikeRepository bikeRepo,
                                ChatSessionRepository chatSessionRepo,
@@ -65,6 +116,29 @@ public class ConversationService {
         this.promoBikeRepo = promoBikeRepo;
         this.exchangeRateService = exchangeRateService;
         this.appConfigService = appConfigService;
+        this.stages = stageTable();
+    }
+
+    /**
+     * The conversation's stages. Each handler may save the stages listed after it; anything else fails
+     * the message before it is written (see checkTransition). 'cancel' resets the user and session instead of saving a stage, so START has no
+     * incoming transition besides the reset.
+     */
+    private StageTable stageTable() {
+        Map<ConversationStage, StageTable.Entry> table = new EnumMap<>(ConversationStage.class);
+        table.put(START, entry(this::onStart, ASK_NAME));
+        table.put(ASK_NAME, entry(this::onAskName, ASK_DAYS));
+        table.put(ASK_DAYS, entry(this::onAskDays, ASK_START_DATE));
+        table.put(ASK_START_DATE, entry(this::onAskStartDate, ASK_PICKUP));
+        table.put(ASK_PICKUP, entry(this::onAskPickup, ASK_BIKE, ASK_ADDRESS));
+        // the address reply is answered with the bike list, so it may go wherever ASK_BIKE goes
+        table.put(ASK_ADDRESS, entry(this::onAskAddress, ASK_BIKE, CONFIRM_BIKE, ASK_PROMO));
+        table.put(ASK_BIKE, entry(this::onAskBike, ASK_BIKE, CONFIRM_BIKE, ASK_PROMO));
+        table.put(ASK_PROMO, entry(this::onAskPromo, ASK_PROMO, CONFIRM_BIKE, BOOKING_CONFIRMED, ASK_BIKE));
+        table.put(CONFIRM_BIKE, entry(this::onConfirmBike, CONFIRM_BIKE, BOOKING_CONFIRMED, ASK_BIKE));
+        table.put(BOOKING_CONFIRMED, entry(this::onBookingConfirmed, CANCEL_CONFIRM));
+        table.put(CANCEL_CONFIRM, entry(this::onCancelConfirm, BOOKING_CONFIRMED));
+        return new StageTable(table);
     }
 
     // Backwards-compatible constructor for existing tests/code that don't provide ExchangeRateService
@@ -93,6 +167,71 @@ public class ConversationService {
         this.cacheManager = cacheManager;
     }
 
+    @Autowired
+    public void configureDateParsing(@Value("${app.time-zone:}") String timeZone,
+                                     @Value("${app.date-parser.natty-fallback:true}") boolean nattyFallback) {
+        ZoneId zone = timeZone == null || timeZone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(timeZone);
+        this.dateParser = new DateInputParser(zone, nattyFallback);
+    }
+
+    @Autowired(required = false)
+    public void setBikeCatalog(BikeCatalog bikeCatalog) {
+        this.bikeCatalog = bikeCatalog;
+    }
+
+    @Autowired(required = false)
+    public void setPromoBikeIndex(PromoBikeIndex promoBikeIndex) {
+        this.promoBikeIndex = promoBikeIndex;
+    }
+
+    @Autowired(required = false)
+    public void setBikeListCache(BikeListCache bikeListCache) {
+        this.bikeListCache = bikeListCache;
+    }
+
+    @Autowired(required = false)
+    public void setAvailabilityIndex(BikeAvailabilityIndex availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+    }
+
+    @Autowired(required = false)
+    public void setContextLoader(ConversationContextLoader contextLoader) {
+        this.contextLoader = contextLoader;
+    }
+
+    @Autowired(required = false)
+    public void setSessionWriter(ChatSessionWriter sessionWriter) {
+        this.sessionWriter = sessionWriter;
+    }
+
+    @Autowired(required = false)
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.flushTransaction = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+    }
+
+    @Autowired(required = false)
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry == null) return;
+        this.meterRegistry = meterRegistry;
+        this.flushWritten = Timer.builder("conversation.session.flush")
+                .description("End-of-message write of changed user/session rows").register(meterRegistry);
+        this.flushSkipped = Counter.builder("conversation.session.flush.skipped")
+                .description("Messages that left user and session unchanged").register(meterRegistry);
+        this.userWrites = Counter.builder("conversation.session.writes").tag("entity", "user").register(meterRegistry);
+        this.sessionWrites = Counter.builder("conversation.session.writes").tag("entity", "session").register(meterRegistry);
+        Map<ConversationStage, Map<ConversationStage, Counter>> byStage = new EnumMap<>(ConversationStage.class);
+        for (ConversationStage from : ConversationStage.values()) {
+            Map<ConversationStage, Counter> counters = new EnumMap<>(ConversationStage.class);
+            for (ConversationStage to : stages.next(from)) {
+                counters.put(to, Counter.builder("conversation.stage.transitions")
+                        .description("Messages whose handler moved the user from one stage to the next")
+                        .tag("from", from.name()).tag("to", to.name()).register(meterRegistry));
+            }
+            byStage.put(from, counters);
+        }
+        this.transitions = byStage;
+    }
+
     private String getShopAddress() {
         try {
             if (appConfigService != null) {
@@ -119,6 +258,7 @@ public class ConversationService {
     // Use explicit cache access to avoid self-invocation cache issues in unit tests
     @SuppressWarnings("unchecked")
     public List<Bike> getAvailableBikes() {
+        if (bikeCatalog != null) return bikeCatalog.available();
         if (cacheManager != null) {
             Cache cache = cacheManager.getCache("bikes");
             if (cache != null) {
@@ -148,76 +288,101 @@ public class ConversationService {
         return promoRepo.findByCodeIgnoreCase(code).orElse(null);
     }
 
+    /** The reply to a message and the stage whose handler produced it (the stored stage, "load" if it failed before one was known). */
+    public record Reply(String text, String stage) {
+    }
+
+    /** {@link #reply} without the stage. */
     public String handleMessage(String from, String text) {
-        text = text == null ? "" : text.trim();
-        log.info("📨 Message from {}: '{}'", from, text);
+        return reply(from, text).text();
+    }
 
-        User user = userRepo.findByPhoneNumber(from)
-                .orElseGet(() -> {
-                    User u = new User();
-                    u.setPhoneNumber(from);
-                    u.setStage("START");
-                    User saved = userRepo.save(u);
-                    // ensure we have a usable user even if save() returns null in tests
-                    return saved == null ? u : saved;
-                });
-
-        ChatSessionEntity session = chatSessionRepo.findByWaId(from).orElse(null);
-        if (session == null) {
-            ChatSessionEntity candidate = new ChatSessionEntity(from, "START", new HashMap<>());
-            ChatSessionEntity saved = null;
-            try {
-                saved = chatSessionRepo.save(candidate);
-            } catch (Exception e) {
-                log.warn("⚠️ Could not persist new session for {}: {}", from, e.getMessage());
-            }
-            session = saved == null ? candidate : saved;
-        }
-
-        Map<String, Object> sessionData = readSessionData(session);
-        // sessionData is guaranteed non-null from readSessionData
-        String origStage = user.getStage() == null ? "START" : user.getStage();
-        // Global guard: if user typed 'no' and either the user's stage or session state indicate promo flow,
-        // treat it as skipping promo. This covers timing/race differences between session and user stage.
-        if ("no".equalsIgnoreCase(text)) {
-            String sessState = session == null ? null : session.getState();
-            if ("ASK_PROMO".equalsIgnoreCase(origStage) || "ASK_PROMO".equalsIgnoreCase(sessState)) {
-                save(user, session, "CONFIRM_BIKE", sessionData);
-                return "No promo applied. Please confirm your booking: 1️⃣ Yes  2️⃣ No";
+    /**
+     * Handle one inbound message and return the reply. User and session changes are collected while
+     * the message is processed and written once at the end; if processing throws, nothing is written.
+     */
+    public Reply reply(String from, String text) {
+        SessionUnitOfWork outer = currentWork.get();
+        StageTable.Dispatch outerDispatch = currentDispatch.get();
+        String outerStage = StageTag.current();
+        long start = System.nanoTime();
+        String outcome = "error";
+        // repository reads before the stage is known are tagged "load"; the caller's tag is put back on
+        // return, so nothing it records afterwards (Graph API calls, the next message) inherits this stage
+        StageTag.set("load");
+        try {
+            String reply = processMessage(from, text);
+            flush(currentWork.get());
+            outcome = "ok";
+            return new Reply(reply, StageTag.current());
+        } finally {
+            if (meterRegistry != null) {
+                Timer.builder("conversation.message")
+                        .description("handleMessage duration, by the stage that handled the message")
+                        .tag("stage", StageTag.current()).tag("outcome", outcome)
+                        .register(meterRegistry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
+            StageTag.set(StageTag.NONE.equals(outerStage) ? null : outerStage);
+            if (outer == null) currentWork.remove();
+            else currentWork.set(outer);
+            if (outerDispatch == null) currentDispatch.remove();
+            else currentDispatch.set(outerDispatch);
         }
-        // If user explicitly replies 'no' while in ASK_PROMO, immediately treat it as 'skip promo'.
-        // (handled above globally)
-        String stage = origStage;
+    }
 
-        // If user explicitly replied 'no' while in ASK_PROMO, honor that and don't override stage.
-        boolean userExplicitNo = "ASK_PROMO".equals(origStage) && text.equalsIgnoreCase("no");
+    private String processMessage(String from, String text) {
+        text = text == null ? "" : text.trim();
+        log.info("📨 Message from {}: '{}'", from, text);
 
-        // Only auto-advance to CONFIRM_BIKE if session already contains a promo selection and the user
-        // is in a promo/confirm related stage. This prevents accidental jumps when user reselects bikes.
-        if (!userExplicitNo && (sessionData.containsKey("promoCodeId") || sessionData.containsKey("promoCode"))
-                && ("ASK_PROMO".equals(origStage) || "CONFIRM_BIKE".equals(origStage))) {
-            stage = "CONFIRM_BIKE";
-        } else if ("ASK_PROMO".equals(stage) && ("1".equals(text) || "2".equals(text))) {
-            // user directly replied 1/2 while in ASK_PROMO -> treat as confirmation or reselect
-            stage = "CONFIRM_BIKE";
+        ConversationContext context = loadContext(from);
+        User user;
+        ChatSessionEntity session;
+        boolean newUser = false;
+        boolean newSession = false;
+        if (context != null) {
+            user = context.user();
+            session = context.session();
+        } else {
+            user = userRepo.findByPhoneNumber(from).orElse(null);
+            newUser = user == null;
+            if (newUser) {
+                user = new User();
+                user.setPhoneNumber(from);
+                user.setStage("START");
+            }
+
+            session = chatSessionRepo.findByWaId(from).orElse(null);
+            newSession = session == null;
+            if (newSession) {
+                session = new ChatSessionEntity(from, "START", SessionState.EMPTY);
+            }
         }
+        currentWork.set(new SessionUnitOfWork(user, newUser, session, newSession, context));
+
+        SessionState sessionData = readSessionData(session);
+        // sessionData is guaranteed non-null from readSessionData
+        String origStage = user.getStage() == null ? "START" : user.getStage();
+        StageTag.set(origStage);
+        String stage = resolveStage(origStage, session, sessionData, text);
+        boolean skipPromo = "ASK_PROMO".equals(stage) && "no".equalsIgnoreCase(text);
 
         if (!"BOOKING_CONFIRMED".equals(stage)) {
             if (text.equalsIgnoreCase("cancel")) {
+                discardPendingWrites();
                 sessionResetService.resetUserAndSession(from);
                 return "❌ Your booking has been cancelled.\nYou can start a new one anytime by typing *Hi* 👋";
             }
         }
 
+        StageTag.set(stage);
         log.info("➡️ Stage: {}", stage);
 
-        // Do not remap a literal 'cancel' - we want the switch to handle it specially
+        // Do not remap a literal 'cancel' - the BOOKING_CONFIRMED handler answers it specially - nor the 'no' that skips the promo
         boolean isLiteralCancel = "cancel".equalsIgnoreCase(text);
 
         // Map free-form replies (like 'pick up at shop', 'pickup at store', 'yes', 'no') to numeric choices where possible
         String mappedChoice = null;
-        if (!isLiteralCancel) {
+        if (!isLiteralCancel && !skipPromo) {
             mappedChoice = mapToChoice(stage, text);
             if (mappedChoice != null) {
                 log.info("🧭 Mapped freeform '{}' -> choice '{}' for stage {}", text, mappedChoice, stage);
@@ -225,447 +390,599 @@ public class ConversationService {
             }
         }
 
-        switch (stage) {
-            case "START":
-                user.setStage("ASK_NAME");
-                save(user, session, "ASK_NAME", sessionData);
-                return String.format("👋 Welcome to *%s*!\nPlease tell me your *name* to start your booking.", getDisplayName());
+        ConversationStage resolved = ConversationStage.parse(stage);
+        if (resolved == null) {
+            return "🤖 Sorry, I didn't understand that. Please type *Hi* to start a booking or follow the prompts.";
+        }
+        StageTable.Dispatch dispatch = new StageTable.Dispatch(resolved);
+        currentDispatch.set(dispatch);
+        String reply = stages.handler(resolved).handle(new StageHandler.Turn(user, session, sessionData, text));
+        if (dispatch.next() != null) {
+            Counter moved = transitions.getOrDefault(resolved, Map.of()).get(dispatch.next());
+            if (moved != null) moved.increment();
+        }
+        return reply;
+    }
 
-            case "ASK_NAME":
-                if (text.equalsIgnoreCase("hi") || text.equalsIgnoreCase("hello")) {
-                    return "😊 Please tell me your *name* to continue.";
-                }
-                user.setName(text);
-                save(user, session, "ASK_DAYS", sessionData);
-                return String.format(
-                        "Thanks, %s! 🙏\nHow many *days* would you like to rent the bike? (Enter a number)\n\n💡 Tip: Type 'cancel' anytime to reset or start over.",
-                        text);
+    /**
+     * The stage whose handler answers this message: normally the user's stored stage, but a promo that is
+     * already in the session, or a 1/2/'no' reply while the promo question is open, is answered as that
+     * flow requires even when the user and session rows disagree about where the user is.
+     */
+    private String resolveStage(String origStage, ChatSessionEntity session, SessionState sessionData, String text) {
+        // Global guard: if user typed 'no' and either the user's stage or session state indicate promo flow,
+        // treat it as skipping promo (the ASK_PROMO handler does). This covers timing/race differences between session and user stage.
+        if ("no".equalsIgnoreCase(text)) {
+            String sessState = session == null ? null : session.getState();
+            if ("ASK_PROMO".equalsIgnoreCase(origStage) || "ASK_PROMO".equalsIgnoreCase(sessState)) {
+                return "ASK_PROMO";
+            }
+        }
 
-            case "ASK_DAYS":
-                try {
-                    int days = Integer.parseInt(text);
-                    if (days <= 0) throw new NumberFormatException();
-                    user.setDays(days);
-                    save(user, session, "ASK_START_DATE", sessionData);
-                    return "Got it! 📅 Please enter your *rental start date*.\n(You can type 'today' or a date like '25 Oct' or '2025-10-25')";
-                } catch (NumberFormatException e) {
-                    return "❌ Please enter a valid number of days.";
-                }
+        // Only auto-advance to CONFIRM_BIKE if session already contains a promo selection and the user
+        // is in a promo/confirm related stage. This prevents accidental jumps when user reselects bikes.
+        if (sessionData.hasPromo() && ("ASK_PROMO".equals(origStage) || "CONFIRM_BIKE".equals(origStage))) {
+            return "CONFIRM_BIKE";
+        }
+        if ("ASK_PROMO".equals(origStage) && ("1".equals(text) || "2".equals(text))) {
+            // user directly replied 1/2 while in ASK_PROMO -> treat as confirmation or reselect
+            return "CONFIRM_BIKE";
+        }
+        return origStage;
+    }
 
-            case "ASK_START_DATE":
-                LocalDate startDate = parseDate(text);
-                if (startDate == null) {
-                    return "⚠️ Please enter a valid date (e.g., 'today', '25 Oct', or '2025-10-25').";
-                }
-                user.setStartDate(startDate);
-                save(user, session, "ASK_PICKUP", sessionData);
-                return "How would you like to pick up your bike?\n1️⃣ Pickup at shop\n2️⃣ Home delivery";
-
-            case "ASK_PICKUP":
-                if ("1".equals(text)) {
-                    user.setPickupType("Pickup at shop");
-                    save(user, session, "ASK_BIKE", sessionData);
-                    // build and return bike list (same flow as ASK_BIKE initial list)
-                    return buildBikeListAndPersist(session, sessionData, user, true);
-                } else if ("2".equals(text)) {
-                    user.setPickupType("Home delivery");
-                    save(user, session, "ASK_ADDRESS", sessionData);
-                    return "Since you selected *home delivery*, please enter your *delivery address*.\n(If unsure, just type your nearest town name.)";
-                } else {
-                    String lower = text.toLowerCase(Locale.ENGLISH);
-                    if (lower.contains("pickup") || lower.contains("shop") || lower.contains("store")) {
-                        user.setPickupType("Pickup at shop");
-                        save(user, session, "ASK_BIKE", sessionData);
-                        // produce bike list same as above
-                        return buildBikeListAndPersist(session, sessionData, user, true);
-                    } else if (lower.contains("deliver") || lower.contains("home") || lower.contains("door")) {
-                        user.setPickupType("Home delivery");
-                        save(user, session, "ASK_ADDRESS", sessionData);
-                        return "Home delivery noted. Please enter your delivery address.";
-                    }
-                    return "❌ Please reply with 1 or 2 to choose pickup method.";
-                }
-                // fallthrough
+    private String onStart(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        user.setStage("ASK_NAME");
+        save(user, session, "ASK_NAME", sessionData);
+        return String.format("👋 Welcome to *%s*!\nPlease tell me your *name* to start your booking.", getDisplayName());
+    }
 
-            case "ASK_ADDRESS":
-                if ("ASK_ADDRESS".equals(stage)) {
-                    user.setDeliveryAddress(text);
-                    save(user, session, "ASK_BIKE", sessionData);
-                }
+    private String onAskName(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        if (text.equalsIgnoreCase("hi") || text.equalsIgnoreCase("hello")) {
+            return "😊 Please tell me your *name* to continue.";
+        }
+        user.setName(text);
+        save(user, session, "ASK_DAYS", sessionData);
+        return String.format(
+                "Thanks, %s! 🙏\nHow many *days* would you like to rent the bike? (Enter a number)\n\n💡 Tip: Type 'cancel' anytime to reset or start over.",
+                text);
+    }
 
-            case "ASK_BIKE":
-                List<Bike> availableBikes = getAvailableBikes();
-                if (availableBikes.isEmpty()) {
-                    return "⚠️ Sorry, no bikes are available now.";
-                }
+    private String onAskDays(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        try {
+            int days = Integer.parseInt(text);
+            if (days <= 0) throw new NumberFormatException();
+            user.setDays(days);
+            save(user, session, "ASK_START_DATE", sessionData);
+            return "Got it! 📅 Please enter your *rental start date*.\n(You can type 'today' or a date like '25 Oct' or '2025-10-25')";
+        } catch (NumberFormatException e) {
+            return "❌ Please enter a valid number of days.";
+        }
+    }
 
-                Object bikeMapObj = sessionData.get("bikeMap");
-                Map<String, Object> bikeMapRaw = null;
-                if (bikeMapObj instanceof Map<?, ?>) {
-                    Map<?, ?> tmp = (Map<?, ?>) bikeMapObj;
-                    bikeMapRaw = new LinkedHashMap<>();
-                    for (Map.Entry<?, ?> en : tmp.entrySet()) {
-                        if (en.getKey() instanceof String) {
-                            bikeMapRaw.put((String) en.getKey(), en.getValue());
-                        }
-                    }
-                }
+    private String onAskStartDate(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        LocalDate startDate = parseDate(text);
+        if (startDate == null) {
+            return "⚠️ Please enter a valid date (e.g., 'today', '25 Oct', or '2025-10-25').";
+        }
+        user.setStartDate(startDate);
+        save(user, session, "ASK_PICKUP", sessionData);
+        return "How would you like to pick up your bike?\n1️⃣ Pickup at shop\n2️⃣ Home delivery";
+    }
 
-                if (bikeMapRaw == null) {
-                    bikeMapRaw = new LinkedHashMap<>();
-                    StringBuilder list = new StringBuilder("🏍️ Available bikes:\n\n");
-                    for (int i = 0; i < availableBikes.size(); i++) {
-                        Bike b = availableBikes.get(i);
-                        String id = String.valueOf(i + 1);
-                        bikeMapRaw.put(id, b.getId());
-                        // Format price using exchange service (base USD -> active currency)
-                        BigDecimal price = BigDecimal.valueOf(b.getPricePerDay());
-                        String priceDisplay = formatMoney(price);
-                        list.append(id).append(". ").append(b.getName())
-                                .append(" - ").append(priceDisplay).append("/day\n");
-                    }
-                    sessionData.put("bikeMap", bikeMapRaw);
-                    saveSession(session, "ASK_BIKE", sessionData);
-                    return list + "\nPlease reply with the *bike number* to continue.";
-                }
+    private String onAskPickup(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        if ("1".equals(text)) {
+            user.setPickupType("Pickup at shop");
+            save(user, session, "ASK_BIKE", sessionData);
+            // build and return bike list (same flow as ASK_BIKE initial list)
+            return buildBikeListAndPersist(session, sessionData, user, true);
+        } else if ("2".equals(text)) {
+            user.setPickupType("Home delivery");
+            save(user, session, "ASK_ADDRESS", sessionData);
+            return "Since you selected *home delivery*, please enter your *delivery address*.\n(If unsure, just type your nearest town name.)";
+        } else {
+            String lower = text.toLowerCase(Locale.ENGLISH);
+            if (lower.contains("pickup") || lower.contains("shop") || lower.contains("store")) {
+                user.setPickupType("Pickup at shop");
+                save(user, session, "ASK_BIKE", sessionData);
+                // produce bike list same as above
+                return buildBikeListAndPersist(session, sessionData, user, true);
+            } else if (lower.contains("deliver") || lower.contains("home") || lower.contains("door")) {
+                user.setPickupType("Home delivery");
+                save(user, session, "ASK_ADDRESS", sessionData);
+                return "Home delivery noted. Please enter your delivery address.";
+            }
+            return "❌ Please reply with 1 or 2 to choose pickup method.";
+        }
+    }
 
-                Map<String, Long> bikeMap = new LinkedHashMap<>();
-                for (Map.Entry<String, Object> entry : bikeMapRaw.entrySet()) {
-                    bikeMap.put(entry.getKey(), ((Number) entry.getValue()).longValue());
-                }
+    private String onAskAddress(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        user.setDeliveryAddress(text);
+        save(user, session, "ASK_BIKE", sessionData);
+        // the address was the last question before the bike list: answer as ASK_BIKE would
+        return onAskBike(turn);
+    }
 
-                if (!bikeMap.containsKey(text)) {
-                    String lower = text.toLowerCase(Locale.ENGLISH);
-                    for (Map.Entry<String, Long> e : bikeMap.entrySet()) {
-                        Bike b = bikeRepo.findById(e.getValue()).orElse(null);
-                        if (b == null) continue;
-                        String nameLower = b.getName() == null ? "" : b.getName().toLowerCase(Locale.ENGLISH);
-                        if (nameLower.equals(lower) || nameLower.contains(lower) || lower.contains(nameLower)) {
-                            user.setSelectedBikeId(b.getId());
-                            // clear promo to avoid accidental auto-apply from previous session
-                            if (sessionData != null) {
-                                sessionData.remove("promoCodeId");
-                                sessionData.remove("promoCode");
-                                sessionData.remove("promoAppliedDiscount");
-                                sessionData.remove("promoFinalPrice");
-                            }
-                            save(user, session, "CONFIRM_BIKE", sessionData);
-
-                            LocalDate endDate = user.getStartDate().plusDays(user.getDays());
-                            BigDecimal total = BigDecimal.valueOf(b.getPricePerDay()).multiply(BigDecimal.valueOf(user.getDays()));
-                            BigDecimal deposit = BigDecimal.valueOf(b.getDeposit());
-                            String totalStr = formatMoney(total);
-                            String depositStr = formatMoney(deposit);
-                            String pickupMsg = "Pickup at shop".equals(user.getPickupType())
-                                    ? "\n🏠 Shop address: *" + getShopAddress() + "*"
-                                    : "";
-
-                            return String.format(
-                                    "You selected *%s* for %d days (%s → %s).\nTotal: %s + deposit %s\n\nConfirm booking?\n1️⃣ Yes\n2️⃣ No%s",
-                                    b.getName(),
-                                    user.getDays(),
-                                    dateFormatter.format(user.getStartDate()),
-                                    dateFormatter.format(endDate),
-                                    totalStr, depositStr, pickupMsg);
-                        }
-                    }
-                    return "❌ Invalid bike number. Please choose again.";
-                }
+    private String onAskBike(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        List<Bike> availableBikes = getAvailableBikes();
+        if (availableBikes.isEmpty()) {
+            return "⚠️ Sorry, no bikes are available now.";
+        }
 
-                Long selectedBikeId = bikeMap.get(text);
-                Bike selectedBike = bikeRepo.findById(selectedBikeId).orElse(null);
-                if (selectedBike == null) return "❌ Invalid selection. Please choose again.";
-
-                user.setSelectedBikeId(selectedBikeId);
-                // clear any existing promo from session so it won't be auto-applied
-                if (sessionData != null) {
-                    sessionData.remove("promoCodeId");
-                    sessionData.remove("promoCode");
-                    sessionData.remove("promoAppliedDiscount");
-                    sessionData.remove("promoFinalPrice");
-                }
-                save(user, session, "ASK_PROMO", sessionData);
-
-                LocalDate endDate = user.getStartDate().plusDays(user.getDays());
-                BigDecimal total = BigDecimal.valueOf((long) selectedBike.getPricePerDay()).multiply(BigDecimal.valueOf(user.getDays()));
-                BigDecimal deposit = BigDecimal.valueOf(selectedBike.getDeposit());
-                String totalStr = formatMoney(total);
-                String depositStr = formatMoney(deposit);
-                String pickupMsg = "Pickup at shop".equals(user.getPickupType()) ? "\n🏠 Pickup location: *" + getShopAddress() + "*" : "";
-
-                return String.format(
-                        "You selected *%s* for %d days (%s → %s).\nTotal: %s + deposit %s\n\nDo you have a promo code? If yes, type it now to apply it; or reply '1' to confirm the booking, '2' to choose another bike.\n\nConfirm booking?\n1️⃣ Yes\n2️⃣ No%s",
-                        selectedBike.getName(),
-                        user.getDays(),
-                        dateFormatter.format(user.getStartDate()),
-                        dateFormatter.format(endDate),
-                        totalStr, depositStr, pickupMsg);
-
-            case "ASK_PROMO":
-                // If user explicitly says 'no' here (safety net), skip promo
-                if (text.equalsIgnoreCase("no")) {
-                    save(user, session, "CONFIRM_BIKE", sessionData);
-                    return "No promo applied. Please confirm your booking: 1️⃣ Yes  2️⃣ No";
-                }
-                // New behavior: user may either enter a promo code, or reply '1' to confirm, or '2' to choose another bike.
-                if ("1".equals(text) || "2".equals(text)) {
-                    return handleConfirmOrReselect(user, session, sessionData, text);
-                }
+        if (!sessionData.hasBikeList()) {
+            List<Long> bookedIds = bookedBikeIds(user, availableBikes);
+            if (bookedIds.size() == availableBikes.size()) return noBikesFree(user);
+            BikeListCache.RenderedBikeList rendered = bikeList(availableBikes, bookedIds);
+            sessionData = sessionData.withBikes(rendered.bikeNumbers().values());
+            saveSession(session, "ASK_BIKE", sessionData);
+            return rendered.text();
+        }
 
-                // If empty input, repeat the prompt without requiring a 'no' response
-                if (text.isBlank()) {
-                    save(user, session, "ASK_PROMO", sessionData);
-                    return "Do you have a promo code? If yes, type it now to apply it; or reply '1' to confirm the booking, '2' to choose another bike.";
+        Long selectedBikeId = sessionData.bikeNumbered(text);
+        if (selectedBikeId == null) {
+            // free-text name: rank the bikes we listed to this user
+            Map<Long, String> numberByBikeId = new LinkedHashMap<>();
+            long[] listedIds = sessionData.bikes();
+            for (int i = 0; i < listedIds.length; i++) numberByBikeId.putIfAbsent(listedIds[i], String.valueOf(i + 1));
+            BikeNameMatcher.Result match = nameMatcherFor(numberByBikeId.keySet()).match(text, numberByBikeId::containsKey);
+
+            if (match.outcome() == BikeNameMatcher.Outcome.AMBIGUOUS) {
+                StringBuilder options = new StringBuilder("🤔 Did you mean:\n");
+                for (Bike option : match.suggestions()) {
+                    options.append(numberByBikeId.get(option.getId())).append(". ").append(option.getName()).append("\n");
                 }
+                return options + "\nPlease reply with the *bike number* to continue.";
+            }
+            if (match.outcome() == BikeNameMatcher.Outcome.NONE) {
+                return "❌ Invalid bike number. Please choose again.";
+            }
 
-                PromoCode promoCodeCandidate = getPromoByCode(text);
-                if (promoCodeCandidate == null || !Boolean.TRUE.equals(promoCodeCandidate.getActive())) {
-                    return "⚠️ Promo code not found or inactive. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
-                }
-                int totalAllocSafe = promoCodeCandidate.getTotalAllocation() == null ? 0 : promoCodeCandidate.getTotalAllocation();
-                int usedCountSafe = promoCodeCandidate.getUsedCount() == null ? 0 : promoCodeCandidate.getUsedCount();
-                if (totalAllocSafe > 0 && usedCountSafe >= totalAllocSafe) {
-                    return "⚠️ This promo code has been fully used. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
-                }
+            Bike b = match.bike();
+            user.setSelectedBikeId(b.getId());
+            // clear promo to avoid accidental auto-apply from previous session
+            sessionData = sessionData.withoutPromo();
+            save(user, session, "CONFIRM_BIKE", sessionData);
 
-                // NOTE: accept the promo code at this stage (show 'applied' to user) even if promo is bike-specific.
-                // Final applicability check will be enforced at confirmation time to avoid confusing UX.
-                // If promo has bike-specific mappings and it doesn't apply to selected bike, reject now
-                if (!promoAppliesToBike(promoCodeCandidate, user.getSelectedBikeId())) {
-                    return "⚠️ This promo code does not apply to the bike you selected. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
-                }
+            LocalDate endDate = user.getStartDate().plusDays(user.getDays());
+            BigDecimal total = BigDecimal.valueOf(b.getPricePerDay()).multiply(BigDecimal.valueOf(user.getDays()));
+            BigDecimal deposit = BigDecimal.valueOf(b.getDeposit());
+            String totalStr = formatMoney(total);
+            String depositStr = formatMoney(deposit);
+            String pickupMsg = "Pickup at shop".equals(user.getPickupType())
+                    ? "\n🏠 Shop address: *" + getShopAddress() + "*"
+                    : "";
+
+            return String.format(
+                    "You selected *%s* for %d days (%s → %s).\nTotal: %s + deposit %s\n\nConfirm booking?\n1️⃣ Yes\n2️⃣ No%s",
+                    b.getName(),
+                    user.getDays(),
+                    dateFormatter.format(user.getStartDate()),
+                    dateFormatter.format(endDate),
+                    totalStr, depositStr, pickupMsg);
+        }
 
-                // store promo choice in session (computed discount will be stored after we calculate it)
-                sessionData.put("promoCodeId", promoCodeCandidate.getId());
-                sessionData.put("promoCode", promoCodeCandidate.getCode());
+        Bike selectedBike = findBike(selectedBikeId);
+        if (selectedBike == null) return "❌ Invalid selection. Please choose again.";
+
+        user.setSelectedBikeId(selectedBikeId);
+        // clear any existing promo from session so it won't be auto-applied
+        sessionData = sessionData.withoutPromo();
+        save(user, session, "ASK_PROMO", sessionData);
+
+        LocalDate endDate = user.getStartDate().plusDays(user.getDays());
+        BigDecimal total = BigDecimal.valueOf((long) selectedBike.getPricePerDay()).multiply(BigDecimal.valueOf(user.getDays()));
+        BigDecimal deposit = BigDecimal.valueOf(selectedBike.getDeposit());
+        String totalStr = formatMoney(total);
+        String depositStr = formatMoney(deposit);
+        String pickupMsg = "Pickup at shop".equals(user.getPickupType()) ? "\n🏠 Pickup location: *" + getShopAddress() + "*" : "";
+
+        return String.format(
+                "You selected *%s* for %d days (%s → %s).\nTotal: %s + deposit %s\n\nDo you have a promo code? If yes, type it now to apply it; or reply '1' to confirm the booking, '2' to choose another bike.\n\nConfirm booking?\n1️⃣ Yes\n2️⃣ No%s",
+                selectedBike.getName(),
+                user.getDays(),
+                dateFormatter.format(user.getStartDate()),
+                dateFormatter.format(endDate),
+                totalStr, depositStr, pickupMsg);
+    }
 
-                // compute discount details to show user
-                Bike chosenBike = null;
-                if (user.getSelectedBikeId() != null) {
-                    chosenBike = bikeRepo.findById(user.getSelectedBikeId()).orElse(null);
-                }
+    private String onAskPromo(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        // If user explicitly says 'no' here (safety net), skip promo
+        if (text.equalsIgnoreCase("no")) {
+            save(user, session, "CONFIRM_BIKE", sessionData);
+            return "No promo applied. Please confirm your booking: 1️⃣ Yes  2️⃣ No";
+        }
+        // New behavior: user may either enter a promo code, or reply '1' to confirm, or '2' to choose another bike.
+        if ("1".equals(text) || "2".equals(text)) {
+            return handleConfirmOrReselect(user, session, sessionData, text);
+        }
 
-                int basePricePromo = 0;
-                int depositAmtPromo = 0;
-                if (chosenBike != null && user.getDays() != null) {
-                    basePricePromo = chosenBike.getPricePerDay() * user.getDays();
-                    depositAmtPromo = chosenBike.getDeposit();
-                }
+        // If empty input, repeat the prompt without requiring a 'no' response
+        if (text.isBlank()) {
+            save(user, session, "ASK_PROMO", sessionData);
+            return "Do you have a promo code? If yes, type it now to apply it; or reply '1' to confirm the booking, '2' to choose another bike.";
+        }
 
-                // Determine discount: percentage takes precedence
-                int discountPromo = 0;
-                int finalPricePromo = basePricePromo;
-                if (promoCodeCandidate.getDiscountPercent() != null && promoCodeCandidate.getDiscountPercent() > 0) {
-                    discountPromo = (int) Math.round(basePricePromo * (promoCodeCandidate.getDiscountPercent() / 100.0));
-                    finalPricePromo = Math.max(0, basePricePromo - discountPromo);
-                } else {
-                    discountPromo = promoCodeCandidate.getDiscountAmount() == null ? 0 : promoCodeCandidate.getDiscountAmount();
-                    finalPricePromo = Math.max(0, basePricePromo - discountPromo);
-                }
+        PromoCode promoCodeCandidate = getPromoByCode(text);
+        if (promoCodeCandidate == null || !Boolean.TRUE.equals(promoCodeCandidate.getActive())) {
+            return "⚠️ Promo code not found or inactive. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
+        }
+        int totalAllocSafe = promoCodeCandidate.getTotalAllocation() == null ? 0 : promoCodeCandidate.getTotalAllocation();
+        int usedCountSafe = promoCodeCandidate.getUsedCount() == null ? 0 : promoCodeCandidate.getUsedCount();
+        if (totalAllocSafe > 0 && usedCountSafe >= totalAllocSafe) {
+            return "⚠️ This promo code has been fully used. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
+        }
 
-                // advance user's stage to confirmation (persist user.stage as well)
-                // store computed discount and final price in session to ensure the value
-                // shown to the user is the value persisted at confirmation (avoids recompute drift)
-                sessionData.put("promoAppliedDiscount", discountPromo);
-                sessionData.put("promoFinalPrice", finalPricePromo);
-                save(user, session, "CONFIRM_BIKE", sessionData);
+        // NOTE: accept the promo code at this stage (show 'applied' to user) even if promo is bike-specific.
+        // Final applicability check will be enforced at confirmation time to avoid confusing UX.
+        // If promo has bike-specific mappings and it doesn't apply to selected bike, reject now
+        if (!promoAppliesToBike(promoCodeCandidate, user.getSelectedBikeId())) {
+            return "⚠️ This promo code does not apply to the bike you selected. Please try another code, reply '1' to confirm, or '2' to reselect the bike.";
+        }
 
-                String promoPriceLine = "";
-                if (chosenBike != null) {
-                    String disc = formatMoney(BigDecimal.valueOf(discountPromo));
-                    String finalP = formatMoney(BigDecimal.valueOf(finalPricePromo));
-                    String dep = formatMoney(BigDecimal.valueOf(depositAmtPromo));
-                    promoPriceLine = String.format("Discount: %s. New total: %s + deposit %s\n\n", disc, finalP, dep);
-                }
+        // compute discount details to show user
+        Bike chosenBike = null;
+        if (user.getSelectedBikeId() != null) {
+            chosenBike = findBike(user.getSelectedBikeId());
+        }
 
-                return String.format("✅ Promo '%s' applied. %sPlease reply '1' to confirm or '2' to choose another bike.", promoCodeCandidate.getCode(), promoPriceLine);
+        int basePricePromo = 0;
+        int depositAmtPromo = 0;
+        if (chosenBike != null && user.getDays() != null) {
+            basePricePromo = chosenBike.getPricePerDay() * user.getDays();
+            depositAmtPromo = chosenBike.getDeposit();
+        }
 
-            case "CONFIRM_BIKE":
-                return handleConfirmOrReselect(user, session, sessionData, text);
+        // Determine discount: percentage takes precedence
+        int discountPromo = 0;
+        int finalPricePromo = basePricePromo;
+        if (promoCodeCandidate.getDiscountPercent() != null && promoCodeCandidate.getDiscountPercent() > 0) {
+            discountPromo = (int) Math.round(basePricePromo * (promoCodeCandidate.getDiscountPercent() / 100.0));
+            finalPricePromo = Math.max(0, basePricePromo - discountPromo);
+        } else {
+            discountPromo = promoCodeCandidate.getDiscountAmount() == null ? 0 : promoCodeCandidate.getDiscountAmount();
+            finalPricePromo = Math.max(0, basePricePromo - discountPromo);
+        }
 
-            case "BOOKING_CONFIRMED":
-                if (text.equalsIgnoreCase("cancel")) {
-                    save(user, session, "CANCEL_CONFIRM", sessionData);
-                    return "⚠️ Are you sure you want to cancel your confirmed booking?\n\n" +
-                            "1️⃣ Yes, cancel my booking\n" +
-                            "2️⃣ No, keep it active";
-                }
-                return "✅ Your booking is confirmed! Our team will contact you soon.\n" +
-                        "💡 You can type *cancel* if you really wish to cancel this booking.";
+        // advance user's stage to confirmation (persist user.stage as well)
+        // store computed discount and final price in session to ensure the value
+        // shown to the user is the value persisted at confirmation (avoids recompute drift)
+        sessionData = sessionData.withPromo(promoCodeCandidate.getId(), promoCodeCandidate.getCode(), discountPromo, finalPricePromo);
+        save(user, session, "CONFIRM_BIKE", sessionData);
+
+        String promoPriceLine = "";
+        if (chosenBike != null) {
+            String disc = formatMoney(BigDecimal.valueOf(discountPromo));
+            String finalP = formatMoney(BigDecimal.valueOf(finalPricePromo));
+            String dep = formatMoney(BigDecimal.valueOf(depositAmtPromo));
+            promoPriceLine = String.format("Discount: %s. New total: %s + deposit %s\n\n", disc, finalP, dep);
+        }
 
-            case "CANCEL_CONFIRM":
-                if ("1".equalsIgnoreCase(text)) {
-                    Booking bookingToCancel = bookingRepo.findTopByWaIdOrderByCreatedAtDesc(user.getPhoneNumber())
-                            .orElse(null);
+        return String.format("✅ Promo '%s' applied. %sPlease reply '1' to confirm or '2' to choose another bike.", promoCodeCandidate.getCode(), promoPriceLine);
+    }
 
-                    if (bookingToCancel != null && !"CANCELLED".equalsIgnoreCase(bookingToCancel.getStatus())) {
-                        bookingToCancel.setStatus("CANCELLED");
-                        bookingToCancel.setCancelledAt(Instant.now());
-                        bookingRepo.save(bookingToCancel);
+    private String onConfirmBike(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        return handleConfirmOrReselect(user, session, sessionData, text);
+    }
 
-                        log.info("❌ Booking cancelled for user {}", user.getPhoneNumber());
-                    }
+    private String onBookingConfirmed(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        if (text.equalsIgnoreCase("cancel")) {
+            save(user, session, "CANCEL_CONFIRM", sessionData);
+            return "⚠️ Are you sure you want to cancel your confirmed booking?\n\n" +
+                    "1️⃣ Yes, cancel my booking\n" +
+                    "2️⃣ No, keep it active";
+        }
+        return "✅ Your booking is confirmed! Our team will contact you soon.\n" +
+                "💡 You can type *cancel* if you really wish to cancel this booking.";
+    }
 
-                    sessionResetService.resetUserAndSession(user.getPhoneNumber());
-                    return "✅ Your booking has been cancelled.\nYou can start a new one anytime by typing *Hi* 👋";
-                } else if ("2".equalsIgnoreCase(text)) {
-                    // Keep booking active and return a contextual summary based on latest booking/user data
-                    save(user, session, "BOOKING_CONFIRMED", sessionData);
-
-                    Booking latest = bookingRepo.findTopByWaIdOrderByCreatedAtDesc(user.getPhoneNumber()).orElse(null);
-                    StringBuilder msg = new StringBuilder("✅ Your booking remains active.");
-
-                    if (latest != null) {
-                        String bike = latest.getBike() == null ? "your bike" : latest.getBike();
-                        String dates = "";
-                        try {
-                            if (latest.getStartDate() != null && latest.getEndDate() != null) {
-                                dates = String.format(" 📅 *%s → %s*", dateFormatter.format(latest.getStartDate()), dateFormatter.format(latest.getEndDate()));
-                            }
-                        } catch (Exception ignored) {
-                        }
+    private String onCancelConfirm(StageHandler.Turn turn) {
+        User user = turn.user();
+        ChatSessionEntity session = turn.session();
+        SessionState sessionData = turn.data();
+        String text = turn.text();
+        if ("1".equalsIgnoreCase(text)) {
+            Booking bookingToCancel = findLatestBooking(user.getPhoneNumber());
 
-                        // price and deposit
-                        String priceLine = "";
-                        try {
-                            BigDecimal priceLatest = BigDecimal.valueOf(latest.getPrice());
-                            BigDecimal depositLatest = BigDecimal.valueOf(latest.getDeposit());
-                            priceLine = String.format("\n💰 %s + deposit %s", formatMoney(priceLatest), formatMoney(depositLatest));
-                        } catch (Exception ignored) {
-                        }
+            if (bookingToCancel != null && !"CANCELLED".equalsIgnoreCase(bookingToCancel.getStatus())) {
+                bookingToCancel.setStatus("CANCELLED");
+                bookingToCancel.setCancelledAt(Instant.now());
+                bookingRepo.save(bookingToCancel);
+                StageTable.Dispatch dispatch = currentDispatch.get();
+                if (dispatch != null) dispatch.committedElsewhere();
+                if (availabilityIndex != null) availabilityIndex.cancelled(bookingToCancel);
 
-                        msg.append(String.format(" We’ll contact you soon to finalise pickup/delivery for %s.%s%s", bike, dates, priceLine));
+                log.info("❌ Booking cancelled for user {}", user.getPhoneNumber());
+            }
 
-                        // Promo info
-                        if (latest.getPromoApplied() != null && latest.getPromoApplied() && latest.getPromoCode() != null) {
-                            int applied = latest.getPromoDiscountAmount() == null ? 0 : latest.getPromoDiscountAmount();
-                            msg.append(String.format("\n\nPromo applied: %s - Rs%d", latest.getPromoCode().getCode(), applied));
-                        }
+            discardPendingWrites();
+            sessionResetService.resetUserAndSession(user.getPhoneNumber());
+            return "✅ Your booking has been cancelled.\nYou can start a new one anytime by typing *Hi* 👋";
+        } else if ("2".equalsIgnoreCase(text)) {
+            // Keep booking active and return a contextual summary based on latest booking/user data
+            save(user, session, "BOOKING_CONFIRMED", sessionData);
 
-                        // Pickup/Delivery specifics
-                        if ("Pickup at shop".equalsIgnoreCase(latest.getPickupType()) || "Pickup at shop".equalsIgnoreCase(user.getPickupType())) {
-                            msg.append(String.format("\n\n🏠 Pickup location: *%s*", getShopAddress() == null ? "the shop" : getShopAddress()));
-                            msg.append("\nWe will message you when the booking is ready for pickup.");
-                        } else if (latest.getDeliveryAddress() != null && !latest.getDeliveryAddress().isBlank()) {
-                            msg.append(String.format("\n\n🚚 Delivery address: *%s*", latest.getDeliveryAddress()));
-                            msg.append("\nOur delivery team will contact you to arrange a convenient time.");
-                        } else if (user.getDeliveryAddress() != null && !user.getDeliveryAddress().isBlank()) {
-                            msg.append(String.format("\n\n🚚 Delivery address: *%s*", user.getDeliveryAddress()));
-                            msg.append("\nOur delivery team will contact you to arrange a convenient time.");
-                        } else {
-                            msg.append("\n\nWe will contact you to confirm pickup or delivery details soon.");
-                        }
-                    } else {
-                        // fallback to user's stored pickup/delivery info
-                        if ("Pickup at shop".equalsIgnoreCase(user.getPickupType())) {
-                            msg.append(String.format(" We’ll contact you soon to finalise pickup at *%s*.", getShopAddress() == null ? "the shop" : getShopAddress()));
-                        } else if (user.getDeliveryAddress() != null && !user.getDeliveryAddress().isBlank()) {
-                            msg.append(String.format(" We’ll contact you soon to finalise delivery to *%s*.", user.getDeliveryAddress()));
-                        } else {
-                            msg.append(" We’ll contact you soon for pickup or delivery.");
-                        }
-                    }
+            Booking latest = findLatestBooking(user.getPhoneNumber());
+            StringBuilder msg = new StringBuilder("✅ Your booking remains active.");
 
-                    return msg.toString();
+            if (latest != null) {
+                String bike = latest.getBike() == null ? "your bike" : latest.getBike();
+                String dates = "";
+                try {
+                    if (latest.getStartDate() != null && latest.getEndDate() != null) {
+                        dates = String.format(" 📅 *%s → %s*", dateFormatter.format(latest.getStartDate()), dateFormatter.format(latest.getEndDate()));
+                    }
+                } catch (Exception ignored) {
                 }
-                return "❌ Please reply 1️⃣ to cancel or 2️⃣ to keep your booking.";
 
-            default:
-                return "🤖 Sorry, I didn't understand that. Please type *Hi* to start a booking or follow the prompts.";
-        }
-    }
-
-    private LocalDate parseDate(String text) {
-        if (text == null || text.isBlank()) return null;
+                // price and deposit
+                String priceLine = "";
+                try {
+                    BigDecimal priceLatest = BigDecimal.valueOf(latest.getPrice());
+                    BigDecimal depositLatest = BigDecimal.valueOf(latest.getDeposit());
+                    priceLine = String.format("\n💰 %s + deposit %s", formatMoney(priceLatest), formatMoney(depositLatest));
+                } catch (Exception ignored) {
+                }
 
-        text = text.toLowerCase().trim();
-        if (text.equals("today")) return LocalDate.now();
-        text = text.replaceAll("(\\d+)(st|nd|rd|th)", "$1");
+                msg.append(String.format(" We’ll contact you soon to finalise pickup/delivery for %s.%s%s", bike, dates, priceLine));
 
-        LocalDate strictDate = tryStrictPatterns(text);
-        if (strictDate != null) return strictDate;
+                // Promo info
+                if (latest.getPromoApplied() != null && latest.getPromoApplied() && latest.getPromoCode() != null) {
+                    int applied = latest.getPromoDiscountAmount() == null ? 0 : latest.getPromoDiscountAmount();
+                    msg.append(String.format("\n\nPromo applied: %s - Rs%d", latest.getPromoCode().getCode(), applied));
+                }
 
-        try {
-            Parser parser = new Parser();
-            List<com.joestelmach.natty.DateGroup> groups = parser.parse(text);
-            if (!groups.isEmpty()) {
-                Date date = groups.get(0).getDates().get(0);
-                return Instant.ofEpochMilli(date.getTime())
-                        .atZone(ZoneId.systemDefault())
-                        .toLocalDate();
+                // Pickup/Delivery specifics
+                if ("Pickup at shop".equalsIgnoreCase(latest.getPickupType()) || "Pickup at shop".equalsIgnoreCase(user.getPickupType())) {
+                    msg.append(String.format("\n\n🏠 Pickup location: *%s*", getShopAddress() == null ? "the shop" : getShopAddress()));
+                    msg.append("\nWe will message you when the booking is ready for pickup.");
+                } else if (latest.getDeliveryAddress() != null && !latest.getDeliveryAddress().isBlank()) {
+                    msg.append(String.format("\n\n🚚 Delivery address: *%s*", latest.getDeliveryAddress()));
+                    msg.append("\nOur delivery team will contact you to arrange a convenient time.");
+                } else if (user.getDeliveryAddress() != null && !user.getDeliveryAddress().isBlank()) {
+                    msg.append(String.format("\n\n🚚 Delivery address: *%s*", user.getDeliveryAddress()));
+                    msg.append("\nOur delivery team will contact you to arrange a convenient time.");
+                } else {
+                    msg.append("\n\nWe will contact you to confirm pickup or delivery details soon.");
+                }
+            } else {
+                // fallback to user's stored pickup/delivery info
+                if ("Pickup at shop".equalsIgnoreCase(user.getPickupType())) {
+                    msg.append(String.format(" We’ll contact you soon to finalise pickup at *%s*.", getShopAddress() == null ? "the shop" : getShopAddress()));
+                } else if (user.getDeliveryAddress() != null && !user.getDeliveryAddress().isBlank()) {
+                    msg.append(String.format(" We’ll contact you soon to finalise delivery to *%s*.", user.getDeliveryAddress()));
+                } else {
+                    msg.append(" We’ll contact you soon for pickup or delivery.");
+                }
             }
-        } catch (Exception e) {
-            log.warn("⚠️ Natty failed to parse '{}': {}", text, e.getMessage());
-        }
 
-        log.warn("⚠️ Could not parse date '{}'", text);
-        return null;
+            return msg.toString();
+        }
+        return "❌ Please reply 1️⃣ to cancel or 2️⃣ to keep your booking.";
     }
 
-    private LocalDate tryStrictPatterns(String text) {
-        DateTimeFormatter[] formatters = new DateTimeFormatter[]{
-                DateTimeFormatter.ofPattern("yyyy-M-d"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
-                DateTimeFormatter.ofPattern("d MMM yyyy"),
-                DateTimeFormatter.ofPattern("MMM d yyyy"),
-                DateTimeFormatter.ofPattern("d MMM"),
-                DateTimeFormatter.ofPattern("MMM d")
-        };
-
-        boolean appendYear = !text.matches(".*\\d{4}.*");
-
-        for (DateTimeFormatter formatter : formatters) {
-            try {
-                String parseText = text;
-                if (appendYear) parseText += " " + Year.now().getValue();
-                return LocalDate.parse(parseText, formatter.withLocale(Locale.ENGLISH));
-            } catch (Exception ignored) {
-            }
-        }
-        return null;
+    private LocalDate parseDate(String text) {
+        LocalDate date = dateParser.parse(text);
+        if (date == null && text != null && !text.isBlank()) log.warn("⚠️ Could not parse date '{}'", text);
+        return date;
     }
 
-    private void save(User user, ChatSessionEntity session, String nextState, Map<String, Object> sessionData) {
+    private void save(User user, ChatSessionEntity session, String nextState, SessionState sessionData) {
+        checkTransition(nextState);
         user.setStage(nextState);
-        userRepo.save(user);
+        SessionUnitOfWork work = currentWork.get();
+        if (work != null) work.recordUser(user);
+        else userRepo.save(user);
         // pass the user's phone number (waId) so placeholder sessions use the correct waId
-        saveSession(session, nextState, sessionData, user.getPhoneNumber());
+        writeSession(session, nextState, sessionData, user.getPhoneNumber());
     }
 
     // backward-compatible overload
-    private void saveSession(ChatSessionEntity session, String nextState, Map<String, Object> sessionData) {
+    private void saveSession(ChatSessionEntity session, String nextState, SessionState sessionData) {
         saveSession(session, nextState, sessionData, null);
     }
 
-    private void saveSession(ChatSessionEntity session, String nextState, Map<String, Object> sessionData, String waId) {
+    private void saveSession(ChatSessionEntity session, String nextState, SessionState sessionData, String waId) {
+        checkTransition(nextState);
+        writeSession(session, nextState, sessionData, waId);
+    }
+
+    private void writeSession(ChatSessionEntity session, String nextState, SessionState sessionData, String waId) {
+        StageTable.Dispatch dispatch = currentDispatch.get();
+        if (dispatch != null) dispatch.movedTo(ConversationStage.parse(nextState));
+        SessionUnitOfWork work = currentWork.get();
         try {
             if (session == null) {
                 // create a minimal placeholder so we don't get NPEs in tests where repository mocks return null
                 String idToUse = waId == null ? "unknown" : waId;
                 log.warn("⚠️ saveSession called with null session - creating placeholder session for {}", idToUse);
-                session = new ChatSessionEntity(idToUse, nextState, sessionData == null ? new HashMap<>() : sessionData);
+                session = new ChatSessionEntity(idToUse, nextState, sessionData == null ? SessionState.EMPTY : sessionData);
             }
             session.setState(nextState);
-            session.setDataJson(sessionData);
+            session.setData(sessionData);
             session.setLastUpdated(Instant.now());
-            chatSessionRepo.save(session);
+            if (work != null) work.recordSession(session);
+            else chatSessionRepo.save(session);
         } catch (Exception e) {
             log.error("⚠️ Failed to save session: {}", e.getMessage());
         }
     }
 
-    private Map<String, Object> readSessionData(ChatSessionEntity session) {
+    // A handler may only save the stages the table lists for the stage it was dispatched for. Checked before
+    // the user or session is changed, so an undeclared transition fails the message without writing anything;
+    // once a booking has been committed, failing would only lose the reply, so it is logged and counted instead.
+    private void checkTransition(String nextState) {
+        StageTable.Dispatch dispatch = currentDispatch.get();
+        if (dispatch == null || stages.allows(dispatch.from(), ConversationStage.parse(nextState))) return;
+        ConversationStage from = dispatch.from();
+        if (!dispatch.hasCommittedElsewhere()) {
+            throw new IllegalStateException("Undeclared stage transition " + from + " -> " + nextState);
+        }
+        log.error("🚨 Undeclared stage transition {} -> {} after the message's booking was committed", from, nextState);
+        if (meterRegistry != null) {
+            meterRegistry.counter("conversation.stage.transitions.undeclared", "from", from.name(), "to", String.valueOf(nextState)).increment();
+        }
+    }
+
+    private ConversationContext loadContext(String waId) {
+        if (contextLoader == null) return null;
         try {
-            if (session == null) return new HashMap<>();
-            if (session.getDataJson() == null) return new HashMap<>();
-            // Return a mutable copy to avoid UnsupportedOperationException when original map is immutable (e.g., Map.of in tests)
-            return new LinkedHashMap<>(session.getDataJson());
+            return contextLoader.load(waId);
         } catch (Exception e) {
-            log.error("⚠️ Failed to parse session JSON", e);
-            return new HashMap<>();
+            log.warn("⚠️ Context load failed for {}, falling back to per-entity lookups: {}", waId, e.getMessage());
+            return null;
         }
     }
 
+    // Bike lookup: catalog first, then the selected bike read with the conversation context, then the repository
+    private Bike findBike(Long bikeId) {
+        if (bikeId == null) return null;
+        if (bikeCatalog != null) return bikeCatalog.findById(bikeId);
+        SessionUnitOfWork work = currentWork.get();
+        ConversationContext context = work == null ? null : work.context();
+        if (context != null && context.selectedBike() != null && bikeId.equals(context.selectedBike().getId())) {
+            return context.selectedBike();
+        }
+        return bikeRepo.findById(bikeId).orElse(null);
+    }
+
+    // Catalog-wide matcher (built once per catalog version) or, without a catalog, one over the listed bikes
+    private BikeNameMatcher nameMatcherFor(Collection<Long> listedBikeIds) {
+        if (bikeCatalog != null) return bikeCatalog.snapshot().nameMatcher();
+        List<Bike> listed = new ArrayList<>();
+        for (Long id : listedBikeIds) {
+            Bike b = findBike(id);
+            if (b != null) listed.add(b);
+        }
+        return BikeNameMatcher.of(listed);
+    }
+
+    private Booking findLatestBooking(String waId) {
+        SessionUnitOfWork work = currentWork.get();
+        ConversationContext context = work == null ? null : work.context();
+        // a loaded context already answered this: null means the user has no bookings
+        if (context != null) return context.latestBooking();
+        return bookingRepo.findTopByWaIdOrderByCreatedAtDesc(waId).orElse(null);
+    }
+
+    private void discardPendingWrites() {
+        SessionUnitOfWork work = currentWork.get();
+        if (work != null) work.discard();
+        StageTable.Dispatch dispatch = currentDispatch.get();
+        if (dispatch != null) dispatch.stayed();
+    }
+
+    private enum BookingWrite { SAVED, PROMO_USED_UP, BIKE_TAKEN }
+
+    // Check the bike is still free, claim one use of the booking's promo and insert the booking, in one
+    // transaction when a manager is wired. Writes nothing unless it returns SAVED.
+    private BookingWrite saveBooking(Booking booking) {
+        PromoCode promo = Boolean.TRUE.equals(booking.getPromoApplied()) ? booking.getPromoCode() : null;
+        Supplier<BookingWrite> writes = () -> {
+            if (booking.getBikeId() != null) {
+                // the row lock makes a concurrent confirmation of the same bike wait for this one to commit
+                if (flushTransaction != null) bikeRepo.lockById(booking.getBikeId());
+                if (bookingRepo.countOverlapping(booking.getBikeId(), booking.getStartDate(), booking.getEndDate()) > 0
+                        || bookingRepo.countOverlappingByName(booking.getBike(), booking.getStartDate(), booking.getEndDate()) > 0) {
+                    return BookingWrite.BIKE_TAKEN;
+                }
+            }
+            if (promo != null && promo.getId() != null && promoRepo.redeem(promo.getId()) == 0) return BookingWrite.PROMO_USED_UP;
+            bookingRepo.save(booking);
+            return BookingWrite.SAVED;
+        };
+        BookingWrite written = flushTransaction != null
+                ? flushTransaction.execute(status -> writes.get())
+                : writes.get();
+        // the cached promo carries the old used count, which the ASK_PROMO check reads
+        if (promo != null) evictPromo(promo.getCode());
+        if (written == BookingWrite.SAVED) {
+            StageTable.Dispatch dispatch = currentDispatch.get();
+            if (dispatch != null) dispatch.committedElsewhere();
+            if (availabilityIndex != null) availabilityIndex.booked(booking);
+        }
+        return written;
+    }
+
+    private void evictPromo(String code) {
+        if (cacheManager == null || code == null) return;
+        Cache cache = cacheManager.getCache("promos");
+        if (cache != null) cache.evict(code.toLowerCase(Locale.ENGLISH));
+    }
+
+    // Write whatever the message changed: at most one user and one session save, in one transaction
+    private void flush(SessionUnitOfWork work) {
+        if (work == null) return;
+        User user = work.userToWrite();
+        ChatSessionEntity session = work.sessionToWrite();
+        if (user == null && session == null) {
+            if (flushSkipped != null) flushSkipped.increment();
+            return;
+        }
+
+        long start = System.nanoTime();
+        Runnable writes = () -> {
+            if (user != null) userRepo.save(user);
+            if (session != null && sessionWriter != null) {
+                sessionWriter.write(session, work.sessionDataSnapshot(), work.sessionIsNew());
+            } else if (session != null) {
+                chatSessionRepo.save(session);
+            }
+        };
+        if (flushTransaction != null) {
+            flushTransaction.executeWithoutResult(status -> writes.run());
+        } else {
+            writes.run();
+        }
+        if (flushWritten != null) flushWritten.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (user != null && userWrites != null) userWrites.increment();
+        if (session != null && sessionWrites != null) sessionWrites.increment();
+    }
+
+    // at the current version, so a session read in the legacy layout is rewritten whenever the message saves it
+    private SessionState readSessionData(ChatSessionEntity session) {
+        if (session == null || session.getData() == null) return SessionState.EMPTY;
+        return session.getData().current();
+    }
+
     // Helper: normalize input text
     private String normalize(String text) {
         if (text == null) return "";
@@ -719,12 +1036,12 @@ public class ConversationService {
     }
 
     // Helper to centralize confirm (1) and reselect (2) logic.
-    private String handleConfirmOrReselect(User user, ChatSessionEntity session, Map<String, Object> sessionData, String text) {
+    private String handleConfirmOrReselect(User user, ChatSessionEntity session, SessionState sessionData, String text) {
         // Confirm booking path
         if ("1".equalsIgnoreCase(text)) {
             Bike selectedBike = null;
             if (user.getSelectedBikeId() != null) {
-                selectedBike = bikeRepo.findById(user.getSelectedBikeId()).orElse(null);
+                selectedBike = findBike(user.getSelectedBikeId());
             }
             if (selectedBike == null) {
                 return "⚠️ Something went wrong saving your booking. Please try again.";
@@ -735,6 +1052,7 @@ public class ConversationService {
             booking.setWaId(user.getPhoneNumber());
             booking.setName(user.getName());
             booking.setBike(selectedBike.getName());
+            booking.setBikeId(selectedBike.getId());
             booking.setDuration(user.getDays());
 
             int basePrice = selectedBike.getPricePerDay() * user.getDays();
@@ -742,55 +1060,25 @@ public class ConversationService {
             booking.setDeposit(selectedBike.getDeposit());
 
             // Attempt to apply promo if present in session
-            if (sessionData != null && (sessionData.containsKey("promoCodeId") || sessionData.containsKey("promoCode"))) {
+            if (sessionData.hasPromo()) {
                 PromoCode p = null;
-                // try by id (could be Number or String)
-                if (sessionData.containsKey("promoCodeId")) {
-                    Object pidObj = sessionData.get("promoCodeId");
-                    Long pid = null;
-                    if (pidObj instanceof Number) {
-                        pid = ((Number) pidObj).longValue();
-                    } else if (pidObj instanceof String) {
-                        try {
-                            pid = Long.valueOf((String) pidObj);
-                        } catch (NumberFormatException ignored) {
-                        }
-                    }
-                    if (pid != null) p = promoRepo.findById(pid).orElse(null);
-                }
+                if (sessionData.promoCodeId() != null) p = promoRepo.findById(sessionData.promoCodeId()).orElse(null);
                 // fallback to code lookup
-                if (p == null && sessionData.containsKey("promoCode")) {
-                    String code = String.valueOf(sessionData.get("promoCode"));
-                    p = promoRepo.findByCodeIgnoreCase(code).orElse(null);
+                if (p == null && sessionData.promoCode() != null) {
+                    p = promoRepo.findByCodeIgnoreCase(sessionData.promoCode()).orElse(null);
                 }
 
                 if (p != null && Boolean.TRUE.equals(p.getActive())) {
                     // check bike-specific mapping
-                    boolean applicable = true;
-                    if (p.getId() != null) {
-                        var mappings = promoBikeRepo.findByPromoCode_Id(p.getId());
-                        if (mappings != null && !mappings.isEmpty()) {
-                            Long selBikeId = selectedBike.getId();
-                            applicable = mappings.stream().anyMatch(m -> m.getBike() != null && Objects.equals(m.getBike().getId(), selBikeId));
-                        }
-                    }
+                    boolean applicable = promoAppliesToBike(p, selectedBike.getId());
 
                     if (applicable) {
                         // Prefer stored session values to avoid drift
                         Integer appliedDiscount = null;
                         Integer appliedFinal = null;
-                        if (sessionData.containsKey("promoAppliedDiscount") && sessionData.containsKey("promoFinalPrice")) {
-                            try {
-                                Object discObj = sessionData.get("promoAppliedDiscount");
-                                Object finalObj = sessionData.get("promoFinalPrice");
-                                if (discObj instanceof Number) appliedDiscount = ((Number) discObj).intValue();
-                                else appliedDiscount = Integer.valueOf(String.valueOf(discObj));
-                                if (finalObj instanceof Number) appliedFinal = ((Number) finalObj).intValue();
-                                else appliedFinal = Integer.valueOf(String.valueOf(finalObj));
-                            } catch (Exception ignored) {
-                                appliedDiscount = null;
-                                appliedFinal = null;
-                            }
+                        if (sessionData.hasPromoPrice()) {
+                            appliedDiscount = sessionData.promoDiscount();
+                            appliedFinal = sessionData.promoFinalPrice();
                         }
 
                         // Recompute if session values missing
@@ -807,10 +1095,6 @@ public class ConversationService {
                         booking.setPromoCode(p);
                         booking.setPromoApplied(Boolean.TRUE);
                         booking.setPromoDiscountAmount(appliedDiscount);
-
-                        // increment usage and persist promo
-                        p.setUsedCount((p.getUsedCount() == null ? 0 : p.getUsedCount()) + 1);
-                        promoRepo.save(p);
                     } else {
                         log.info("➡️ Promo {} not applicable to bike id {} - ignored", p.getCode(), selectedBike.getId());
                     }
@@ -823,18 +1107,32 @@ public class ConversationService {
             booking.setPickupType(user.getPickupType());
             booking.setDeliveryAddress(user.getDeliveryAddress());
             booking.setCreatedAt(Instant.now());
-            bookingRepo.save(booking);
+            // the stage a saved booking leads to, checked before the booking is committed
+            checkTransition("BOOKING_CONFIRMED");
+            BookingWrite written = saveBooking(booking);
+            if (written == BookingWrite.BIKE_TAKEN) {
+                log.info("📅 {} was booked for overlapping dates before {} confirmed", selectedBike.getName(), user.getPhoneNumber());
+                sessionData = sessionData.withoutPromo();
+                user.setSelectedBikeId(null);
+                save(user, session, "ASK_BIKE", sessionData);
+                return String.format("⚠️ Sorry, *%s* has just been booked for those dates.\n\n", selectedBike.getName())
+                        + buildBikeListAndPersist(session, sessionData, user);
+            }
+            if (written == BookingWrite.PROMO_USED_UP) {
+                // the promo was used up (or switched off) since it was applied: offer the booking without it
+                String code = booking.getPromoCode().getCode();
+                log.info("🎟️ Promo {} ran out before {} confirmed", code, user.getPhoneNumber());
+                sessionData = sessionData.withoutPromo();
+                save(user, session, "CONFIRM_BIKE", sessionData);
+                return String.format("⚠️ Sorry, promo code %s has just been fully used.\nTotal: %s + deposit %s\n\nPlease reply '1' to confirm without it or '2' to choose another bike.",
+                        code, formatMoney(BigDecimal.valueOf(basePrice)), formatMoney(BigDecimal.valueOf(booking.getDeposit())));
+            }
 
             log.info("🧾 Booking CONFIRMED and saved for {}", user.getPhoneNumber());
 
             // Clear promo entries from session after successful booking
-            if (sessionData != null) {
-                sessionData.remove("promoCodeId");
-                sessionData.remove("promoCode");
-                sessionData.remove("promoAppliedDiscount");
-                sessionData.remove("promoFinalPrice");
-                log.info("➡️ Cleared promo from session for user {} after booking confirmation", user.getPhoneNumber());
-            }
+            sessionData = sessionData.withoutPromo();
+            log.info("➡️ Cleared promo from session for user {} after booking confirmation", user.getPhoneNumber());
 
             // persist updated user stage and cleared session
             save(user, session, "BOOKING_CONFIRMED", sessionData);
@@ -870,13 +1168,8 @@ public class ConversationService {
 
         // Reselect path - user wants to choose another bike
         if ("2".equalsIgnoreCase(text)) {
-            if (sessionData != null) {
-                sessionData.remove("promoCodeId");
-                sessionData.remove("promoCode");
-                sessionData.remove("promoAppliedDiscount");
-                sessionData.remove("promoFinalPrice");
-                log.info("➡️ User {} reselected bike — cleared promo from session", user.getPhoneNumber());
-            }
+            sessionData = sessionData.withoutPromo();
+            log.info("➡️ User {} reselected bike — cleared promo from session", user.getPhoneNumber());
             save(user, session, "ASK_BIKE", sessionData);
             return "No problem! Please choose another bike number.";
         }
@@ -884,17 +1177,16 @@ public class ConversationService {
         return "❌ Please reply 1️⃣ to confirm or 2️⃣ to reselect.";
     }
 
-    // Helper to build bike list string, persist bikeMap in session and return list text
-    private String buildBikeListAndPersist(ChatSessionEntity session, Map<String, Object> sessionData, User user) {
+    // Helper to build bike list string, persist the listed bike ids in session and return list text
+    private String buildBikeListAndPersist(ChatSessionEntity session, SessionState sessionData, User user) {
         return buildBikeListAndPersist(session, sessionData, user, false);
     }
 
-    private String buildBikeListAndPersist(ChatSessionEntity session, Map<String, Object> sessionData, User user, boolean invokedFromPickup) {
+    private String buildBikeListAndPersist(ChatSessionEntity session, SessionState sessionData, User user, boolean invokedFromPickup) {
         List<Bike> availableBikes = getAvailableBikes();
         if (availableBikes.isEmpty()) {
-            // still persist an empty bikeMap so subsequent flows can populate or tests can stub it
-            sessionData.put("bikeMap", new LinkedHashMap<>());
-            saveSession(session, "ASK_BIKE", sessionData, user == null ? null : user.getPhoneNumber());
+            // still persist an empty bike list so subsequent flows can populate or tests can stub it
+            saveSession(session, "ASK_BIKE", sessionData.withBikes(List.of()), user == null ? null : user.getPhoneNumber());
             // If invoked from pickup flow, return the pickup acknowledgement; otherwise return no-bikes message.
             if (invokedFromPickup) {
                 return "Okay, pickup at shop noted. Proceeding to bike selection.";
@@ -902,27 +1194,78 @@ public class ConversationService {
             return "⚠️ Sorry, no bikes are available now.";
         }
 
-        Map<String, Object> bikeMapRaw = new LinkedHashMap<>();
+        List<Long> bookedIds = bookedBikeIds(user, availableBikes);
+        if (bookedIds.size() == availableBikes.size()) {
+            saveSession(session, "ASK_BIKE", sessionData.withBikes(List.of()), user.getPhoneNumber());
+            return noBikesFree(user);
+        }
+
+        BikeListCache.RenderedBikeList rendered = bikeList(availableBikes, bookedIds);
+        saveSession(session, "ASK_BIKE", sessionData.withBikes(rendered.bikeNumbers().values()), user == null ? null : user.getPhoneNumber());
+        return rendered.text();
+    }
+
+    // Ids of the listed bikes already booked on some day of the user's rental, in list order
+    private List<Long> bookedBikeIds(User user, List<Bike> availableBikes) {
+        if (availabilityIndex == null || user == null || user.getStartDate() == null || user.getDays() == null) return List.of();
+        try {
+            BikeAvailabilityIndex.Snapshot calendar = availabilityIndex.snapshot();
+            LocalDate start = user.getStartDate();
+            LocalDate end = start.plusDays(user.getDays());
+            List<Long> booked = new ArrayList<>();
+            for (Bike b : availableBikes) {
+                if (!calendar.isFree(b.getId(), start, end)) booked.add(b.getId());
+            }
+            return booked;
+        } catch (Exception e) {
+            // list everything; the overlap check at confirmation still applies
+            log.warn("⚠️ Bike availability unavailable, listing all bikes: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private String noBikesFree(User user) {
+        return String.format("⚠️ Sorry, all our bikes are booked from %s to %s.\nType 'cancel' to start over with other dates.",
+                dateFormatter.format(user.getStartDate()), dateFormatter.format(user.getStartDate().plusDays(user.getDays())));
+    }
+
+    // The bike list reply for exactly the bikes the caller validated against; served from the cache
+    // only when those are the current catalog snapshot's list, the version the cache key names
+    private BikeListCache.RenderedBikeList bikeList(List<Bike> availableBikes, List<Long> bookedIds) {
+        String currency = displayCurrency();
+        BikeCatalog.Snapshot catalog = bikeListCache == null || bikeCatalog == null ? null : bikeCatalog.snapshot();
+        if (catalog == null || catalog.available() != availableBikes) return renderBikeList(withoutBooked(availableBikes, bookedIds), currency);
+        long rateVersion = exchangeRateService == null ? 0 : exchangeRateService.rateVersion();
+        return bikeListCache.get(new BikeListCache.Key(catalog.version(), String.valueOf(currency), rateVersion, bookedIds),
+                () -> renderBikeList(withoutBooked(availableBikes, bookedIds), currency));
+    }
+
+    private static List<Bike> withoutBooked(List<Bike> bikes, List<Long> bookedIds) {
+        if (bookedIds.isEmpty()) return bikes;
+        return bikes.stream().filter(b -> !bookedIds.contains(b.getId())).toList();
+    }
+
+    private BikeListCache.RenderedBikeList renderBikeList(List<Bike> availableBikes, String currency) {
+        Map<String, Long> numbers = new LinkedHashMap<>();
         StringBuilder list = new StringBuilder("🏍️ Available bikes:\n\n");
         for (int i = 0; i < availableBikes.size(); i++) {
             Bike b = availableBikes.get(i);
             String id = String.valueOf(i + 1);
-            bikeMapRaw.put(id, b.getId());
+            numbers.put(id, b.getId());
             // Format price using exchange service (base USD -> active currency)
-            BigDecimal price = BigDecimal.valueOf(b.getPricePerDay());
-            String priceDisplay = formatMoney(price);
+            String priceDisplay = formatMoney(BigDecimal.valueOf(b.getPricePerDay()), currency);
             list.append(id).append(". ").append(b.getName())
                     .append(" - ").append(priceDisplay).append("/day\n");
         }
-        sessionData.put("bikeMap", bikeMapRaw);
-        saveSession(session, "ASK_BIKE", sessionData, user == null ? null : user.getPhoneNumber());
-        return list + "\nPlease reply with the *bike number* to continue.";
+        list.append("\nPlease reply with the *bike number* to continue.");
+        return new BikeListCache.RenderedBikeList(list.toString(), numbers);
     }
 
     // Helper to check whether a promo applies to a particular bike id (or globally if no mappings exist)
     private boolean promoAppliesToBike(PromoCode promo, Long bikeId) {
         if (promo == null) return false;
         try {
+            if (promoBikeIndex != null) return promoBikeIndex.applies(promo, bikeId);
             List<?> mappings = Collections.emptyList();
             if (promo.getId() != null) {
                 mappings = promoBikeRepo.findByPromoCode_Id(promo.getId());
@@ -953,6 +1296,20 @@ public class ConversationService {
 
     // Helper to format money using active currency and exchange rate
     private String formatMoney(BigDecimal amountInBase) {
+        return formatMoney(amountInBase, displayCurrency());
+    }
+
+    // the currency prices are shown in; null when there is no exchange service (legacy Rs display)
+    private String displayCurrency() {
+        if (exchangeRateService == null) return null;
+        try {
+            return exchangeRateService.getActiveCurrency();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String formatMoney(BigDecimal amountInBase, String active) {
         try {
             if (exchangeRateService == null) {
                 // Legacy fallback: original app used LKR (Rs) and integer amounts.
@@ -961,7 +1318,10 @@ public class ConversationService {
                 return "Rs" + v.toPlainString();
             }
 
-            String active = exchangeRateService.getActiveCurrency();
+            if (active == null) {
+                // the active currency could not be read: show the base amount, as before
+                return amountInBase == null ? "USD 0.00" : "USD " + amountInBase.setScale(2, java.math.RoundingMode.HALF_UP);
+            }
             BigDecimal converted = exchangeRateService.convert(amountInBase, "USD", active);
             // Format like: LKR 1,200.00
             java.text.NumberFormat nf = java.text.NumberFormat.getNumberInstance(Locale.US);
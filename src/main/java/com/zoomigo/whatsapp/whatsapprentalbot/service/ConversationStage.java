@@ -0,0 +1,30 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+/**
+ * The stages of the booking conversation, in the order a booking goes through them. Stored by name in
+ * {@code users.stage} and {@code chat_session.state}; see {@link ConversationService} for the table of
+ * which stage may follow which.
+ */
+public enum ConversationStage {
+    START,
+    ASK_NAME,
+    ASK_DAYS,
+    ASK_START_DATE,
+    ASK_PICKUP,
+    ASK_ADDRESS,
+    ASK_BIKE,
+    ASK_PROMO,
+    CONFIRM_BIKE,
+    BOOKING_CONFIRMED,
+    CANCEL_CONFIRM;
+
+    /** The stage stored as {@code name}, or null for a name that is not one. */
+    public static ConversationStage parse(String name) {
+        if (name == null) return null;
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
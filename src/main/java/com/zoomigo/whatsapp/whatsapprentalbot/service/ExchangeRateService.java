@@ -1,32 +1,24 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 
 @Slf4j
 @Service
 public class ExchangeRateService {
 
     private final ExchangeRateRepository repo;
-    private final WebClient webClient;
-
-    @Value("${openexchangerates.app_id:}")
-    private String openExchangeAppId;
 
     @Value("${app.base-currency:USD}")
     private String baseCurrency;
@@ -34,24 +26,56 @@ public class ExchangeRateService {
     // optional app config service to read runtime settings like default currency
     private final AppConfigService appConfigService;
 
+    /**
+     * Every rate row as a base -> target -> rate matrix, plus the base and active currency resolved when it
+     * was built.
+     */
+    private record RateSnapshot(long version, String baseCurrency, String activeCurrency,
+                                Map<String, Map<String, BigDecimal>> rates) {
+
+        BigDecimal rate(String base, String target) {
+            Map<String, BigDecimal> row = rates.get(base);
+            return row == null ? null : row.get(target);
+        }
+
+        boolean sameContent(RateSnapshot other) {
+            return other != null && baseCurrency.equals(other.baseCurrency) && activeCurrency.equals(other.activeCurrency)
+                    && rates.equals(other.rates);
+        }
+    }
+
+    // empty until the first refresh; until then every call queries the repository as before. Reloaded when
+    // rates are saved or the config version moves: both only grow, so their sum moves whenever either does
+    private final TrackedSnapshot<RateSnapshot> current =
+            new TrackedSnapshot<>("exchange rates", () -> rateChanges() + configVersion(), this::load);
+
     @Autowired
-    public ExchangeRateService(ExchangeRateRepository repo, @Nullable WebClient.Builder webClientBuilder, @Nullable AppConfigService appConfigService) {
+    public ExchangeRateService(ExchangeRateRepository repo, @Nullable AppConfigService appConfigService) {
         this.repo = repo;
         this.appConfigService = appConfigService;
-        if (webClientBuilder == null) {
-            this.webClient = WebClient.create("https://openexchangerates.org/api");
-        } else {
-            this.webClient = webClientBuilder.baseUrl("https://openexchangerates.org/api").build();
-        }
     }
 
-    // 2-arg convenience constructor for tests/backwards compatibility
-    public ExchangeRateService(ExchangeRateRepository repo, WebClient.Builder webClientBuilder) {
-        this(repo, webClientBuilder, null);
+    // convenience constructor for tests/backwards compatibility
+    public ExchangeRateService(ExchangeRateRepository repo) {
+        this(repo, null);
+    }
+
+    // The currency every stored rate is quoted against
+    public String baseCurrency() {
+        RateSnapshot snapshot = snapshot();
+        return snapshot != null ? snapshot.baseCurrency() : getBaseCurrency();
     }
 
     private String getBaseCurrency() {
         // Prefer runtime config from AppConfigService if present
+        String cfg = configuredCurrency();
+        if (cfg != null) return cfg;
+
+        if (baseCurrency == null || baseCurrency.isBlank()) return "USD";
+        return baseCurrency.trim().toUpperCase(Locale.ENGLISH);
+    }
+
+    private String configuredCurrency() {
         try {
             if (this.appConfigService != null) {
                 String cfg = this.appConfigService.getDefaultCurrency();
@@ -59,47 +83,51 @@ public class ExchangeRateService {
             }
         } catch (Exception ignored) {
         }
-
-        if (baseCurrency == null || baseCurrency.isBlank()) return "USD";
-        return baseCurrency.trim().toUpperCase(Locale.ENGLISH);
+        return null;
     }
 
-    // Convert amount from one currency to another using DB-stored rates; if useLiveRate flag is set, call API
+    // Convert amount from one currency to another using DB-stored rates (from the snapshot once it is loaded)
     public BigDecimal convert(BigDecimal amount, String fromCurrency, String toCurrency) {
         if (amount == null) return BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
-        String base = getBaseCurrency();
+        RateSnapshot snapshot = snapshot();
+        String base = snapshot != null ? snapshot.baseCurrency() : getBaseCurrency();
         fromCurrency = normalize(fromCurrency == null ? base : fromCurrency);
         toCurrency = normalize(toCurrency == null ? base : toCurrency);
         if (fromCurrency.equalsIgnoreCase(toCurrency)) return amount.setScale(2, RoundingMode.HALF_UP);
 
+        if (snapshot != null) {
+            return convert(amount, fromCurrency, toCurrency, base, snapshot.rate(base, fromCurrency), snapshot.rate(base, toCurrency));
+        }
         if (this.repo == null) return amount.setScale(2, RoundingMode.HALF_UP);
 
         // Try to read rates base->from and base->to
-        Optional<ExchangeRate> rateBaseToFrom = repo.findByBaseCurrencyAndTargetCurrency(base, fromCurrency);
-        Optional<ExchangeRate> rateBaseToTo = repo.findByBaseCurrencyAndTargetCurrency(base, toCurrency);
+        BigDecimal rateBaseToFrom = repo.findByBaseCurrencyAndTargetCurrency(base, fromCurrency).map(ExchangeRate::getRate).orElse(null);
+        BigDecimal rateBaseToTo = repo.findByBaseCurrencyAndTargetCurrency(base, toCurrency).map(ExchangeRate::getRate).orElse(null);
+        return convert(amount, fromCurrency, toCurrency, base, rateBaseToFrom, rateBaseToTo);
+    }
 
+    private static BigDecimal convert(BigDecimal amount, String fromCurrency, String toCurrency, String base,
+                                      BigDecimal rateBaseToFrom, BigDecimal rateBaseToTo) {
         try {
             if (fromCurrency.equalsIgnoreCase(base)) {
                 // USD -> target
-                if (rateBaseToTo.isPresent() && rateBaseToTo.get().getRate() != null)
-                    return amount.multiply(rateBaseToTo.get().getRate()).setScale(2, RoundingMode.HALF_UP);
+                if (rateBaseToTo != null) return amount.multiply(rateBaseToTo).setScale(2, RoundingMode.HALF_UP);
                 return amount.setScale(2, RoundingMode.HALF_UP);
             }
 
             if (toCurrency.equalsIgnoreCase(base)) {
                 // from -> USD
-                if (rateBaseToFrom.isPresent() && rateBaseToFrom.get().getRate() != null)
-                    return amount.divide(rateBaseToFrom.get().getRate(), 2, RoundingMode.HALF_UP);
+                if (rateBaseToFrom != null) return amount.divide(rateBaseToFrom, 2, RoundingMode.HALF_UP);
                 return amount.setScale(2, RoundingMode.HALF_UP);
             }
 
             // General case: from -> base -> to
             BigDecimal amountInBase = amount;
-            if (rateBaseToFrom.isPresent() && rateBaseToFrom.get().getRate() != null) {
-                amountInBase = amount.divide(rateBaseToFrom.get().getRate(), 8, RoundingMode.HALF_UP);
+            if (rateBaseToFrom != null) {
+                amountInBase = amount.divide(rateBaseToFrom, 8, RoundingMode.HALF_UP);
             }
-            if (rateBaseToTo.isPresent() && rateBaseToTo.get().getRate() != null) {
-                return amountInBase.multiply(rateBaseToTo.get().getRate()).setScale(2, RoundingMode.HALF_UP);
+            if (rateBaseToTo != null) {
+                return amountInBase.multiply(rateBaseToTo).setScale(2, RoundingMode.HALF_UP);
             }
             return amountInBase.setScale(2, RoundingMode.HALF_UP);
         } catch (ArithmeticException ae) {
@@ -108,77 +136,86 @@ public class ExchangeRateService {
         }
     }
 
-    // Fetch live rates from OpenExchangeRates for the specific target currency and save into DB.
-    // This method is intentionally fire-and-forget for now.
-    private void fetchLiveRates(String targetCurrency) {
-        if (openExchangeAppId == null || openExchangeAppId.isBlank()) {
-            log.warn("OpenExchangeRates app_id not configured. Skipping live fetch.");
-            return;
-        }
-        if (this.repo == null) {
-            log.warn("ExchangeRateRepository is null - skipping live fetch in test mode.");
-            return;
-        }
-        try {
-            Map<String, Object> resp = webClient.get()
-                    .uri(uriBuilder -> uriBuilder.path("/latest.json")
-                            .queryParam("app_id", openExchangeAppId)
-                            .queryParam("symbols", targetCurrency)
-                            .build())
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block(Duration.ofSeconds(5));
-
-            if (resp != null && resp.containsKey("rates")) {
-                Map<String, Object> rates = (Map<String, Object>) resp.get("rates");
-                Object r = rates.get(targetCurrency);
-                if (r instanceof Number) {
-                    BigDecimal rate = new BigDecimal(((Number) r).toString());
-                    String base = getBaseCurrency();
-                    Optional<ExchangeRate> maybe = repo.findByBaseCurrencyAndTargetCurrency(base, targetCurrency);
-                    ExchangeRate er = maybe.orElseGet(() -> {
-                        ExchangeRate ne = new ExchangeRate();
-                        ne.setBaseCurrency(base);
-                        ne.setTargetCurrency(targetCurrency);
-                        return ne;
-                    });
-                    er.setRate(rate);
-                    er.setLastUpdated(Instant.now());
-                    er.setUseLiveRate(true);
-                    repo.save(er);
-                }
-            }
-        } catch (Exception e) {
-            log.warn("Failed to fetch live rates for {}: {}", targetCurrency, e.getMessage());
-        }
-    }
-
     private String normalize(String cur) {
         if (cur == null) return getBaseCurrency();
         return cur.trim().toUpperCase(Locale.ENGLISH);
     }
 
+    // Bumped whenever the rates in use change, so rate-dependent renders can be cached
+    public long rateVersion() {
+        RateSnapshot snapshot = snapshot();
+        return snapshot != null ? snapshot.version() : rateChanges();
+    }
+
     // Find the active target currency (admin-marked) or return baseCurrency if none
     public String getActiveCurrency() {
+        RateSnapshot snapshot = snapshot();
+        if (snapshot != null) return snapshot.activeCurrency();
+
         // First prefer configured app-level default if available
-        try {
-            if (this.appConfigService != null) {
-                String cfg = this.appConfigService.getDefaultCurrency();
-                if (cfg != null && !cfg.isBlank()) return cfg.trim().toUpperCase(Locale.ENGLISH);
-            }
-        } catch (Exception ignored) {
-        }
+        String cfg = configuredCurrency();
+        if (cfg != null) return cfg;
 
         String base = getBaseCurrency();
         if (this.repo == null) return base;
         Optional<ExchangeRate> maybe = repo.findByActiveTargetTrue();
         if (maybe.isPresent()) return maybe.get().getTargetCurrency();
         // fallback: try any active target
-        List<ExchangeRate> all = repo.findByBaseCurrency(base);
-        if (all != null && !all.isEmpty()) {
-            for (ExchangeRate e : all) if (Boolean.TRUE.equals(e.getActiveTarget())) return e.getTargetCurrency();
-            return all.get(0).getTargetCurrency();
+        return activeTargetOf(repo.findByBaseCurrency(base), base);
+    }
+
+    private static String activeTargetOf(List<ExchangeRate> rowsForBase, String base) {
+        if (rowsForBase != null && !rowsForBase.isEmpty()) {
+            for (ExchangeRate e : rowsForBase) if (Boolean.TRUE.equals(e.getActiveTarget())) return e.getTargetCurrency();
+            return rowsForBase.get(0).getTargetCurrency();
         }
         return base;
     }
+
+    // Runs once at startup (no initial delay) and then polls for rates changed outside this instance
+    @Scheduled(fixedDelayString = "${exchange-rates.refresh-interval:PT5M}")
+    public void refresh() {
+        if (this.repo == null) return;
+        current.refresh();
+    }
+
+    private static long rateChanges() {
+        return EntityChangeListener.changeCount(ExchangeRate.class);
+    }
+
+    private long configVersion() {
+        return appConfigService == null ? 0 : appConfigService.version();
+    }
+
+    private RateSnapshot snapshot() {
+        return current.current() == null ? null : current.get();
+    }
+
+    private RateSnapshot load(RateSnapshot previous) {
+        List<ExchangeRate> all = new ArrayList<>(repo.findAll());
+        all.sort(Comparator.comparing(ExchangeRate::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        String base = getBaseCurrency();
+        Map<String, Map<String, BigDecimal>> rates = new HashMap<>();
+        List<ExchangeRate> rowsForBase = new ArrayList<>();
+        String activeTarget = null;
+        for (ExchangeRate e : all) {
+            if (base.equals(e.getBaseCurrency())) rowsForBase.add(e);
+            if (activeTarget == null && Boolean.TRUE.equals(e.getActiveTarget())) activeTarget = e.getTargetCurrency();
+            if (e.getBaseCurrency() == null || e.getTargetCurrency() == null || e.getRate() == null) continue;
+            rates.computeIfAbsent(e.getBaseCurrency(), k -> new HashMap<>()).putIfAbsent(e.getTargetCurrency(), e.getRate());
+        }
+        String cfg = configuredCurrency();
+        String active = cfg != null ? cfg : activeTarget != null ? activeTarget : activeTargetOf(rowsForBase, base);
+        Map<String, Map<String, BigDecimal>> frozen = new HashMap<>();
+        rates.forEach((from, row) -> frozen.put(from, Map.copyOf(row)));
+
+        // continue from the change counter on first load, so versions never go backwards for rate-keyed caches
+        long version = previous == null ? rateChanges() + 1 : previous.version() + 1;
+        RateSnapshot next = new RateSnapshot(version, base, active, Map.copyOf(frozen));
+        // nothing changed: keep the version so dependent caches stay warm
+        if (next.sameContent(previous)) return previous;
+        log.info("💱 Exchange rates v{}: {} rate(s), base {}, showing {}", version, all.size(), base, active);
+        return next;
+    }
 }
@@ -0,0 +1,181 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the exchange rates flagged {@code useLiveRate} in line with OpenExchangeRates.
+ * <p>
+ * Every {@code openexchangerates.refresh-interval} one {@code latest.json} request fetches all of those
+ * currencies; the rows are then updated in one batch and the rate snapshot is rebuilt. Messages keep
+ * being priced from the previous snapshot while the request is in flight. Failed attempts are retried
+ * after {@code openexchangerates.retry-delay}, doubling up to {@code openexchangerates.max-backoff}.
+ * Rates entered by hand ({@code useLiveRate = false}) are never touched.
+ */
+@Slf4j
+@Service
+public class LiveRateRefresher {
+
+    private final ExchangeRateRepository repo;
+    private final ExchangeRateService exchangeRateService;
+    private final WebClient webClient;
+    private final String appId;
+    private final Duration interval;
+    private final Duration retryDelay;
+    private final Duration maxBackoff;
+    private final Duration timeout;
+    private final Clock clock;
+
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile Instant nextAttempt = Instant.EPOCH;
+    private volatile Instant lastSuccess;
+    // when OpenExchangeRates published the rates we hold (the "timestamp" of the response)
+    private volatile Instant publishedAt;
+
+    @Autowired
+    public LiveRateRefresher(ExchangeRateRepository repo, ExchangeRateService exchangeRateService,
+                             @Nullable WebClient.Builder webClientBuilder,
+                             @Value("${openexchangerates.app_id:}") String appId,
+                             @Value("${openexchangerates.base-url:https://openexchangerates.org/api}") String baseUrl,
+                             @Value("${openexchangerates.refresh-interval:PT1H}") Duration interval,
+                             @Value("${openexchangerates.retry-delay:PT1M}") Duration retryDelay,
+                             @Value("${openexchangerates.max-backoff:PT1H}") Duration maxBackoff,
+                             @Nullable MeterRegistry meterRegistry) {
+        this(repo, exchangeRateService, (webClientBuilder == null ? WebClient.builder() : webClientBuilder).baseUrl(baseUrl).build(),
+                appId, interval, retryDelay, maxBackoff, Duration.ofSeconds(10), meterRegistry, Clock.systemUTC());
+    }
+
+    LiveRateRefresher(ExchangeRateRepository repo, ExchangeRateService exchangeRateService, WebClient webClient, String appId,
+                      Duration interval, Duration retryDelay, Duration maxBackoff, Duration timeout,
+                      @Nullable MeterRegistry meterRegistry, Clock clock) {
+        this.repo = repo;
+        this.exchangeRateService = exchangeRateService;
+        this.webClient = webClient;
+        this.appId = appId == null ? "" : appId.trim();
+        this.interval = interval;
+        this.retryDelay = retryDelay;
+        this.maxBackoff = maxBackoff;
+        this.timeout = timeout;
+        this.clock = clock;
+        if (this.appId.isEmpty()) log.info("💱 openexchangerates.app_id not set: live exchange rates are off");
+        if (meterRegistry != null) {
+            Gauge.builder("exchange.rates.live.age", this, r -> seconds(r.publishedAt))
+                    .description("Seconds since OpenExchangeRates published the rates in use").baseUnit("seconds").register(meterRegistry);
+            Gauge.builder("exchange.rates.live.since-success", this, r -> seconds(r.lastSuccess))
+                    .description("Seconds since the last successful live rate refresh").baseUnit("seconds").register(meterRegistry);
+            Gauge.builder("exchange.rates.live.failures", consecutiveFailures, AtomicInteger::get)
+                    .description("Live rate refreshes that failed since the last success").register(meterRegistry);
+        }
+    }
+
+    // Ticks at the retry granularity; a fetch only starts when one is due and none is running
+    @Scheduled(fixedDelayString = "${openexchangerates.retry-delay:PT1M}")
+    public void refreshIfDue() {
+        if (appId.isEmpty() || clock.instant().isBefore(nextAttempt)) return;
+        if (!inFlight.compareAndSet(false, true)) return;
+        refresh().doFinally(signal -> inFlight.set(false)).subscribe(count -> { }, error -> { });
+    }
+
+    /**
+     * Fetch and store the live rates now. Emits how many rows were updated; a failure is logged,
+     * schedules the next attempt with backoff and is passed on.
+     */
+    Mono<Integer> refresh() {
+        return Mono.fromCallable(this::liveRows)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(rows -> rows.isEmpty() ? Mono.just(0) : fetch(rows).publishOn(Schedulers.boundedElastic()).map(json -> store(rows, json)))
+                .doOnSuccess(this::onSuccess)
+                .doOnError(this::onFailure);
+    }
+
+    private List<ExchangeRate> liveRows() {
+        String base = exchangeRateService.baseCurrency();
+        List<ExchangeRate> rows = new ArrayList<>();
+        for (ExchangeRate r : repo.findByBaseCurrency(base)) {
+            if (Boolean.TRUE.equals(r.getUseLiveRate()) && r.getTargetCurrency() != null) rows.add(r);
+        }
+        return rows;
+    }
+
+    private Mono<JsonNode> fetch(List<ExchangeRate> rows) {
+        String base = rows.get(0).getBaseCurrency();
+        String symbols = rows.stream().map(ExchangeRate::getTargetCurrency).distinct().collect(Collectors.joining(","));
+        return webClient.get()
+                .uri(uri -> {
+                    uri.path("/latest.json").queryParam("app_id", appId).queryParam("symbols", symbols);
+                    // the free plan only serves USD; only ask for another base when we need it
+                    if (!"USD".equals(base)) uri.queryParam("base", base);
+                    return uri.build();
+                })
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(timeout);
+    }
+
+    private int store(List<ExchangeRate> rows, JsonNode json) {
+        String base = rows.get(0).getBaseCurrency();
+        if (!base.equals(json.path("base").asText(base))) {
+            throw new IllegalStateException("rates came back in " + json.path("base").asText() + ", expected " + base);
+        }
+        JsonNode rates = json.path("rates");
+        Instant published = json.hasNonNull("timestamp") ? Instant.ofEpochSecond(json.get("timestamp").asLong()) : clock.instant();
+        List<ExchangeRate> updated = new ArrayList<>();
+        for (ExchangeRate r : rows) {
+            JsonNode rate = rates.get(r.getTargetCurrency());
+            if (rate == null || !rate.isNumber()) continue;
+            r.setRate(new BigDecimal(rate.asText()));
+            r.setLastUpdated(published);
+            updated.add(r);
+        }
+        if (updated.isEmpty()) throw new IllegalStateException("no rates for " + rows.size() + " currencies in the response");
+        repo.saveAll(updated);
+        publishedAt = published;
+        exchangeRateService.refresh();
+        return updated.size();
+    }
+
+    private void onSuccess(Integer updated) {
+        consecutiveFailures.set(0);
+        lastSuccess = clock.instant();
+        nextAttempt = lastSuccess.plus(interval);
+        if (updated != null && updated > 0) log.info("💱 Updated {} live exchange rate(s), published {}", updated, publishedAt);
+    }
+
+    private void onFailure(Throwable e) {
+        Duration delay = backoff(consecutiveFailures.incrementAndGet());
+        nextAttempt = clock.instant().plus(delay);
+        log.warn("⚠️ Live exchange rate refresh failed ({} in a row), retrying in {}: {}", consecutiveFailures.get(), delay, e.getMessage());
+    }
+
+    Duration backoff(int failures) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(failures - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private double seconds(Instant since) {
+        return since == null ? Double.NaN : Duration.between(since, clock.instant()).toMillis() / 1000.0;
+    }
+}
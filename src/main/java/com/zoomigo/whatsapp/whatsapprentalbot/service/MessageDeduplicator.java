@@ -0,0 +1,113 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ProcessedMessage;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ProcessedMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Remembers which inbound message ids have already been accepted so redelivered webhooks
+ * (Meta retries when we are slow to ack) are not run through the conversation twice.
+ * <p>
+ * A bounded, time-expiring in-memory cache answers the common case; the processed_message
+ * table backs it so a restart does not reopen the window. If the table is unreachable we
+ * fail open and process the message rather than drop it.
+ */
+@Slf4j
+@Service
+public class MessageDeduplicator {
+
+    private final Cache<String, Boolean> recent;
+    private final ProcessedMessageRepository repo;
+    private final Duration retention;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public MessageDeduplicator(@Nullable ProcessedMessageRepository repo,
+                               @Value("${webhook.dedup.max-size:100000}") long maxSize,
+                               @Value("${webhook.dedup.ttl:PT24H}") Duration ttl,
+                               @Value("${webhook.dedup.retention:P7D}") Duration retention,
+                               @Nullable MeterRegistry meterRegistry) {
+        this(repo, maxSize, ttl, retention, meterRegistry, Clock.systemUTC());
+    }
+
+    MessageDeduplicator(@Nullable ProcessedMessageRepository repo, long maxSize, Duration ttl, Duration retention,
+                        @Nullable MeterRegistry meterRegistry, Clock clock) {
+        this.repo = repo;
+        this.retention = retention;
+        this.clock = clock;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        if (meterRegistry != null) {
+            this.hits = Counter.builder("webhook.dedup").tag("result", "hit")
+                    .description("Inbound messages skipped because their id was already processed").register(meterRegistry);
+            this.misses = Counter.builder("webhook.dedup").tag("result", "miss")
+                    .description("Inbound messages seen for the first time").register(meterRegistry);
+        } else {
+            this.hits = null;
+            this.misses = null;
+        }
+    }
+
+    /**
+     * Record {@code messageId} as processed.
+     *
+     * @return true the first time an id is seen, false for a redelivery. Messages without an id
+     * cannot be deduplicated and always return true.
+     */
+    public boolean firstSeen(String messageId) {
+        if (messageId == null || messageId.isBlank()) return true;
+
+        if (recent.asMap().putIfAbsent(messageId, Boolean.TRUE) != null) {
+            count(hits);
+            return false;
+        }
+
+        if (repo != null) {
+            try {
+                // insert-only: a duplicate id violates the primary key
+                repo.save(new ProcessedMessage(messageId, clock.instant()));
+            } catch (DataIntegrityViolationException dup) {
+                count(hits);
+                return false;
+            } catch (Exception e) {
+                log.warn("⚠️ Could not persist processed message id {}: {}", messageId, e.getMessage());
+            }
+        }
+        count(misses);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.dedup.purge-interval:PT1H}", initialDelayString = "${webhook.dedup.purge-interval:PT1H}")
+    public void purgeExpired() {
+        if (repo == null) return;
+        try {
+            Instant cutoff = clock.instant().minus(retention);
+            int removed = repo.deleteReceivedBefore(cutoff);
+            if (removed > 0) log.info("🧹 Purged {} processed message id(s) older than {}", removed, cutoff);
+        } catch (Exception e) {
+            log.warn("⚠️ Failed to purge processed message ids: {}", e.getMessage());
+        }
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) counter.increment();
+    }
+}
@@ -0,0 +1,94 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCodeBike;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.PromoCodeBikeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * In-memory copy of the promo_code_bike table: for each promo, the sorted ids of the bikes it is
+ * limited to. A promo with no mappings is global and applies to every bike.
+ * <p>
+ * Built from one id-only query, rebuilt when a mapping is saved through JPA in this process
+ * ({@link EntityChangeListener}) and by a periodic poll that picks up changes made elsewhere.
+ */
+@Slf4j
+@Service
+public class PromoBikeIndex {
+
+    /** Bike ids per promo id and per lower-cased promo code; promos missing from both are global. */
+    public record Snapshot(long version, Map<Long, long[]> bikesByPromoId, Map<String, long[]> bikesByCode) {
+
+        public boolean applies(PromoCode promo, Long bikeId) {
+            if (promo == null) return false;
+            long[] bikes = promo.getId() == null ? null : bikesByPromoId.get(promo.getId());
+            if (bikes == null && promo.getCode() != null) bikes = bikesByCode.get(promo.getCode().toLowerCase(Locale.ENGLISH));
+            if (bikes == null) return true;
+            return bikeId != null && Arrays.binarySearch(bikes, bikeId) >= 0;
+        }
+    }
+
+    private final PromoCodeBikeRepository promoBikeRepo;
+    private final TrackedSnapshot<Snapshot> current;
+
+    public PromoBikeIndex(PromoCodeBikeRepository promoBikeRepo) {
+        this.promoBikeRepo = promoBikeRepo;
+        this.current = new TrackedSnapshot<>("promo bike index", () -> EntityChangeListener.changeCount(PromoCodeBike.class), this::load);
+    }
+
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public boolean applies(PromoCode promo, Long bikeId) {
+        return snapshot().applies(promo, bikeId);
+    }
+
+    @Scheduled(fixedDelayString = "${promos.bike-index.refresh-interval:PT1M}", initialDelayString = "${promos.bike-index.refresh-interval:PT1M}")
+    public void refresh() {
+        current.refresh();
+    }
+
+    private Snapshot load(Snapshot previous) {
+        List<Object[]> rows = promoBikeRepo.findAllPromoBikeIds();
+
+        Map<Long, Set<Long>> byId = new HashMap<>();
+        Map<String, Set<Long>> byCode = new HashMap<>();
+        for (Object[] row : rows) {
+            Long promoId = (Long) row[0];
+            String code = (String) row[1];
+            Long bikeId = (Long) row[2];
+            if (bikeId == null) continue;
+            if (promoId != null) byId.computeIfAbsent(promoId, k -> new TreeSet<>()).add(bikeId);
+            if (code != null) byCode.computeIfAbsent(code.toLowerCase(Locale.ENGLISH), k -> new TreeSet<>()).add(bikeId);
+        }
+        Map<Long, long[]> bikesByPromoId = new HashMap<>();
+        byId.forEach((id, bikes) -> bikesByPromoId.put(id, toSortedArray(bikes)));
+        Map<String, long[]> bikesByCode = new HashMap<>();
+        byCode.forEach((code, bikes) -> bikesByCode.put(code, toSortedArray(bikes)));
+
+        if (previous != null && sameBikes(previous.bikesByPromoId(), bikesByPromoId) && sameBikes(previous.bikesByCode(), bikesByCode)) {
+            return previous;
+        }
+        long version = previous == null ? 1 : previous.version() + 1;
+        log.info("🎟️ Promo bike index v{}: {} bike-specific promo(s)", version, bikesByPromoId.size());
+        return new Snapshot(version, Map.copyOf(bikesByPromoId), Map.copyOf(bikesByCode));
+    }
+
+    private static long[] toSortedArray(Set<Long> sortedIds) {
+        return sortedIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static <K> boolean sameBikes(Map<K, long[]> a, Map<K, long[]> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<K, long[]> e : a.entrySet()) {
+            if (!Arrays.equals(e.getValue(), b.get(e.getKey()))) return false;
+        }
+        return true;
+    }
+}
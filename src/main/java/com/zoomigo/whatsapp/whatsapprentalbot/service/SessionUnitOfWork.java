@@ -0,0 +1,120 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.ConversationContext;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+
+import java.util.Objects;
+
+/**
+ * Collects the user and session changes made while one inbound message is handled so they can be
+ * written once, at the end, instead of on every stage change.
+ * <p>
+ * A snapshot of both rows is taken when the message starts; {@link #userToWrite()} and
+ * {@link #sessionToWrite()} only return an entity if it was recorded as saved <em>and</em> differs
+ * from that snapshot (or was created during this message).
+ */
+class SessionUnitOfWork {
+
+    private User user;
+    private final User userSnapshot;
+    private boolean userNew;
+    private boolean userRecorded;
+
+    private ChatSessionEntity session;
+    private String sessionStateSnapshot;
+    private SessionState sessionDataSnapshot;
+    private boolean sessionNew;
+    private boolean sessionRecorded;
+
+    // what was read at the start of the message, when it came from ConversationContextLoader
+    private final ConversationContext context;
+
+    SessionUnitOfWork(User user, boolean userNew, ChatSessionEntity session, boolean sessionNew, ConversationContext context) {
+        this.context = context;
+        this.user = user;
+        this.userNew = userNew;
+        this.userRecorded = userNew;
+        this.userSnapshot = userNew ? null : copyOf(user);
+        this.session = session;
+        this.sessionNew = sessionNew;
+        this.sessionRecorded = sessionNew;
+        snapshotSession();
+    }
+
+    ConversationContext context() {
+        return context;
+    }
+
+    void recordUser(User changed) {
+        if (changed != user) {
+            // a different instance than the one we loaded: always write it
+            user = changed;
+            userNew = true;
+        }
+        userRecorded = true;
+    }
+
+    void recordSession(ChatSessionEntity changed) {
+        if (changed != session) {
+            session = changed;
+            sessionNew = true;
+        }
+        sessionRecorded = true;
+    }
+
+    /** Drop everything recorded so far, e.g. when the session is being reset out from under us. */
+    void discard() {
+        userRecorded = false;
+        sessionRecorded = false;
+        userNew = false;
+        sessionNew = false;
+    }
+
+    User userToWrite() {
+        if (!userRecorded || user == null) return null;
+        if (userNew || !user.equals(userSnapshot)) return user;
+        return null;
+    }
+
+    ChatSessionEntity sessionToWrite() {
+        if (!sessionRecorded || session == null) return null;
+        if (sessionNew) return session;
+        if (!Objects.equals(session.getState(), sessionStateSnapshot)) return session;
+        if (!Objects.equals(session.getData(), sessionDataSnapshot)) return session;
+        return null;
+    }
+
+    /** Session data as it was when the message started; the base {@link ChatSessionWriter} patches against. */
+    SessionState sessionDataSnapshot() {
+        return sessionDataSnapshot;
+    }
+
+    /** True when {@link #sessionToWrite()} has no stored row to patch: created or replaced during this message. */
+    boolean sessionIsNew() {
+        return sessionNew;
+    }
+
+    private void snapshotSession() {
+        if (session == null) return;
+        sessionStateSnapshot = session.getState();
+        // immutable, so the loaded instance is the snapshot
+        sessionDataSnapshot = session.getData();
+    }
+
+    private static User copyOf(User u) {
+        if (u == null) return null;
+        User c = new User();
+        c.setId(u.getId());
+        c.setPhoneNumber(u.getPhoneNumber());
+        c.setName(u.getName());
+        c.setDays(u.getDays());
+        c.setPickupType(u.getPickupType());
+        c.setDeliveryAddress(u.getDeliveryAddress());
+        c.setSelectedBikeId(u.getSelectedBikeId());
+        c.setStage(u.getStage());
+        c.setStartDate(u.getStartDate());
+        return c;
+    }
+}
@@ -0,0 +1,19 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+
+/** Replies to a message received in one {@link ConversationStage}; registered in a {@link StageTable}. */
+@FunctionalInterface
+interface StageHandler {
+
+    String handle(Turn turn);
+
+    /**
+     * The message being handled: the sender, their session with its data as read at the start of the
+     * message, and the text after free-form replies were mapped to menu choices.
+     */
+    record Turn(User user, ChatSessionEntity session, SessionState data, String text) {
+    }
+}
@@ -0,0 +1,104 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import java.util.*;
+
+/**
+ * The conversation as a state machine: for each {@link ConversationStage}, the handler that answers
+ * messages received in it and the stages that handler may move the conversation to.
+ * <p>
+ * The table is checked when it is built, so a stage without a handler or one that no path from
+ * {@link ConversationStage#START} leads to fails at startup instead of on the message that reaches it.
+ */
+final class StageTable {
+
+    /** A stage's handler and the stages it may save as the next one (itself included, if it re-asks). */
+    record Entry(StageHandler handler, Set<ConversationStage> next) {
+    }
+
+    static Entry entry(StageHandler handler, ConversationStage... next) {
+        return new Entry(handler, next.length == 0 ? EnumSet.noneOf(ConversationStage.class) : EnumSet.copyOf(Arrays.asList(next)));
+    }
+
+    /**
+     * One message's pass through the table: the stage whose handler answers it, the last stage that handler
+     * saved, and whether it committed rows other than the user and session (a booking, a promo use).
+     */
+    static final class Dispatch {
+        private final ConversationStage from;
+        private ConversationStage next;
+        private boolean committedElsewhere;
+
+        Dispatch(ConversationStage from) {
+            this.from = from;
+        }
+
+        ConversationStage from() {
+            return from;
+        }
+
+        ConversationStage next() {
+            return next;
+        }
+
+        void movedTo(ConversationStage stage) {
+            next = stage;
+        }
+
+        /** The handler's saves were dropped (the session is being reset), so it moved nowhere. */
+        void stayed() {
+            next = null;
+        }
+
+        void committedElsewhere() {
+            committedElsewhere = true;
+        }
+
+        boolean hasCommittedElsewhere() {
+            return committedElsewhere;
+        }
+    }
+
+    private final EnumMap<ConversationStage, StageHandler> handlers = new EnumMap<>(ConversationStage.class);
+    private final EnumMap<ConversationStage, Set<ConversationStage>> next = new EnumMap<>(ConversationStage.class);
+
+    StageTable(Map<ConversationStage, Entry> entries) {
+        List<String> problems = new ArrayList<>();
+        for (ConversationStage stage : ConversationStage.values()) {
+            Entry e = entries.get(stage);
+            if (e == null || e.handler() == null) {
+                problems.add(stage + " has no handler");
+                continue;
+            }
+            handlers.put(stage, e.handler());
+            next.put(stage, e.next().isEmpty() ? EnumSet.noneOf(ConversationStage.class) : EnumSet.copyOf(e.next()));
+        }
+        Set<ConversationStage> unreachable = EnumSet.allOf(ConversationStage.class);
+        unreachable.removeAll(reachableFrom(ConversationStage.START));
+        if (!unreachable.isEmpty()) problems.add("no transition leads to " + unreachable);
+        if (!problems.isEmpty()) throw new IllegalStateException("Invalid conversation stage table: " + String.join("; ", problems));
+    }
+
+    StageHandler handler(ConversationStage stage) {
+        return handlers.get(stage);
+    }
+
+    boolean allows(ConversationStage from, ConversationStage to) {
+        Set<ConversationStage> targets = next.get(from);
+        return targets != null && to != null && targets.contains(to);
+    }
+
+    Set<ConversationStage> next(ConversationStage from) {
+        return Collections.unmodifiableSet(next.getOrDefault(from, EnumSet.noneOf(ConversationStage.class)));
+    }
+
+    private Set<ConversationStage> reachableFrom(ConversationStage first) {
+        Set<ConversationStage> seen = EnumSet.of(first);
+        Deque<ConversationStage> todo = new ArrayDeque<>(seen);
+        while (!todo.isEmpty()) {
+            for (ConversationStage to : next.getOrDefault(todo.pop(), Set.of())) {
+                if (seen.add(to)) todo.push(to);
+            }
+        }
+        return seen;
+    }
+}
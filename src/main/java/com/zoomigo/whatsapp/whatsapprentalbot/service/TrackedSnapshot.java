@@ -0,0 +1,80 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * An immutable in-memory copy of some table, replaced as a whole. It is reloaded on read when its change
+ * counter (usually {@link com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener#changeCount})
+ * has moved since the last load, and on {@link #reload()}, e.g. from a poll for changes made elsewhere.
+ * <p>
+ * The counter is read before loading, so a change that races with the load triggers another one. A failed
+ * reload keeps serving the previous copy; only a failed first load throws.
+ */
+@Slf4j
+final class TrackedSnapshot<S> {
+
+    /** Builds the next copy; {@code previous} is null on the first load and may be returned when nothing changed. */
+    @FunctionalInterface
+    interface Loader<S> {
+        S load(S previous);
+    }
+
+    private final String name;
+    private final LongSupplier changes;
+    private final Loader<S> loader;
+    private final AtomicReference<S> current = new AtomicReference<>();
+    // changes.getAsLong() as of the last load
+    private volatile long seenChanges;
+
+    TrackedSnapshot(String name, LongSupplier changes, Loader<S> loader) {
+        this.name = name;
+        this.changes = changes;
+        this.loader = loader;
+    }
+
+    /** The copy loaded last, without checking for changes; null before the first load. */
+    S current() {
+        return current.get();
+    }
+
+    /** The current copy, loading it first if it was never loaded or the counter moved. */
+    S get() {
+        S s = current.get();
+        if (s != null && seenChanges == changes.getAsLong()) return s;
+        return load(false);
+    }
+
+    S reload() {
+        return load(true);
+    }
+
+    /** {@link #reload()} for scheduled polls: failures are logged, never thrown. */
+    void refresh() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("⚠️ {} refresh failed, nothing loaded yet: {}", name, e.getMessage());
+        }
+    }
+
+    private synchronized S load(boolean force) {
+        S previous = current.get();
+        long changesBefore = changes.getAsLong();
+        if (!force && previous != null && seenChanges == changesBefore) return previous;
+
+        S next;
+        try {
+            next = loader.load(previous);
+        } catch (RuntimeException e) {
+            if (previous == null) throw e;
+            log.warn("⚠️ Could not reload {}, serving the copy loaded before: {}", name, e.getMessage());
+            return previous;
+        }
+        current.set(next);
+        seenChanges = changesBefore;
+        return next;
+    }
+}
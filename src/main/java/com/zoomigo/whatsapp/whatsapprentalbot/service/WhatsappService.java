@@ -1,13 +1,16 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
+import com.zoomigo.whatsapp.whatsapprentalbot.util.OutboundSendQueue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,8 +19,10 @@ import java.util.Map;
 @Service
 public class WhatsappService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // blocking fallback for when there is no WebClient; built on the shared HTTP client when one is available
+    private RestTemplate restTemplate;
     private final WebClient webClient;
+    private OutboundSendQueue outbound;
     @Value("${whatsapp.api-base-url:}")
     private String apiBaseUrlProp;
     // alias for older tests
@@ -51,7 +56,22 @@ public class WhatsappService {
         this.webClient = null;
     }
 
-    public void sendTextMessage(String to, String body) {
+    @Autowired(required = false)
+    public void setHttpClient(HttpClient outboundHttpClient) {
+        this.restTemplate = new RestTemplate(new ReactorClientHttpRequestFactory(outboundHttpClient));
+    }
+
+    // When present, WebClient sends go through the queue (rate limit, retries, backpressure) instead of fire-and-forget
+    @Autowired(required = false)
+    public void setOutbound(OutboundSendQueue outbound) {
+        this.outbound = outbound;
+    }
+
+    /**
+     * @return true when the message was sent, or handed to the outbound queue or WebClient, which then own
+     * its delivery; false when it was dropped here: refused by a full queue, config missing or the blocking send failed
+     */
+    public boolean sendTextMessage(String to, String body) {
         try {
             String apiBaseUrl = apiBaseUrlProp == null || apiBaseUrlProp.isBlank() ? this.apiBaseUrl : apiBaseUrlProp;
             String apiVersion = apiVersionProp == null || apiVersionProp.isBlank() ? this.apiVersion : apiVersionProp;
@@ -68,6 +88,15 @@ public class WhatsappService {
 
             log.info("📤 Sending WhatsApp message to {}: {}", to, body);
 
+            if (webClient != null && apiBaseUrl != null && !apiBaseUrl.isBlank() && outbound != null) {
+                // a fresh request per attempt; the queue decides when (and whether again) to send it
+                return outbound.submit(phoneNumberId, "message to " + to, () -> {
+                    WebClient.RequestBodySpec req = webClient.post().uri(urlPath).contentType(MediaType.APPLICATION_JSON);
+                    if (accessToken != null && !accessToken.isBlank()) req.headers(h -> h.setBearerAuth(accessToken));
+                    return req.bodyValue(message).retrieve().toBodilessEntity();
+                });
+            }
+
             if (webClient != null && apiBaseUrl != null && !apiBaseUrl.isBlank()) {
                 // Non-blocking send; fire-and-forget
                 WebClient.RequestBodySpec req = webClient.post().uri(urlPath)
@@ -81,13 +110,13 @@ public class WhatsappService {
                         .doOnError(err -> log.warn("⚠️ Failed to send message to {}: {}", to, err.getMessage()))
                         .onErrorResume(e -> Mono.empty())
                         .subscribe();
-                return;
+                return true;
             }
 
             // fallback blocking RestTemplate call — only if config present
             if (apiBaseUrl == null || apiBaseUrl.isBlank() || apiVersion == null || apiVersion.isBlank() || phoneNumberId == null || phoneNumberId.isBlank()) {
                 log.warn("⚠️ WhatsApp HTTP config missing (apiBaseUrl/apiVersion/phoneNumberId). Skipping send for {}", to);
-                return;
+                return false;
             }
 
             String url = String.format("%s/%s/%s/messages", apiBaseUrl, apiVersion, phoneNumberId);
@@ -98,15 +127,18 @@ public class WhatsappService {
 
             org.springframework.http.HttpEntity<Map<String, Object>> entity = new org.springframework.http.HttpEntity<>(message, headers);
 
+            if (restTemplate == null) restTemplate = new RestTemplate();
             org.springframework.http.ResponseEntity<String> response = restTemplate.exchange(url, org.springframework.http.HttpMethod.POST, entity, String.class);
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 log.info("✅ Message sent successfully to {}", to);
-            } else {
-                log.warn("⚠️ Failed to send message to {}. Response: {}", to, response.getBody());
+                return true;
             }
+            log.warn("⚠️ Failed to send message to {}. Response: {}", to, response.getBody());
+            return false;
         } catch (Exception e) {
             log.error("❌ Error sending WhatsApp message to {}: {}", to, e.getMessage(), e);
+            return false;
         }
     }
 }
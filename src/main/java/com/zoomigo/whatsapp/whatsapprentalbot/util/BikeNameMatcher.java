@@ -0,0 +1,294 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Precomputed index for matching free-text bike names ("honda dio", "fz 150", "yamha").
+ * <p>
+ * Names are split into lowercase tokens (letters and digits are separated, so "FZ150" gives "fz", "150").
+ * Bikes sharing a name are scored once as a model. Candidate models are found through a token index
+ * (exact and prefix) and a trigram index over the token vocabulary (typos), so a lookup only scores
+ * models that share something with the query. Model numbers must match exactly: "150" never
+ * fuzzy-matches "155".
+ * <p>
+ * Immutable and thread-safe once built.
+ */
+public final class BikeNameMatcher {
+
+    public enum Outcome {MATCH, AMBIGUOUS, NONE}
+
+    /**
+     * {@code bike} is set for {@link Outcome#MATCH}; {@code suggestions} (best first) for {@link Outcome#AMBIGUOUS}.
+     */
+    public record Result(Outcome outcome, Bike bike, List<Bike> suggestions) {
+        static final Result NONE = new Result(Outcome.NONE, null, List.of());
+    }
+
+    private static final int MAX_SUGGESTIONS = 5;
+    // a model counts as "the bike the user typed" when this much of its name is covered
+    private static final double FULL_NAME = 0.8;
+    private static final double CLOSE_SCORE = 0.05;
+    private static final double MIN_SUGGESTION = 0.4;
+
+    private final List<Bike> bikes;
+    private final Map<String, Integer> modelByName = new HashMap<>();
+    private final int[][] modelTokens;   // model -> token ids
+    private final int[][] modelBikes;    // model -> bike indexes, in list order
+    private final String[] vocabulary;   // token id -> token
+    private final TreeMap<String, Integer> tokenIds = new TreeMap<>();
+    private final int[][] postings;      // token id -> models containing it
+    private final Map<String, int[]> tokensByTrigram = new HashMap<>();
+
+    private BikeNameMatcher(List<Bike> bikes) {
+        this.bikes = List.copyOf(bikes);
+
+        List<int[]> tokensOfModel = new ArrayList<>();
+        List<List<Integer>> bikesOfModel = new ArrayList<>();
+        List<List<Integer>> modelsOfToken = new ArrayList<>();
+        for (int i = 0; i < bikes.size(); i++) {
+            String[] tokens = tokenize(bikes.get(i).getName());
+            String name = String.join(" ", tokens);
+            Integer model = modelByName.get(name);
+            if (model == null) {
+                model = tokensOfModel.size();
+                modelByName.put(name, model);
+                int[] ids = new int[tokens.length];
+                for (int t = 0; t < tokens.length; t++) {
+                    Integer id = tokenIds.get(tokens[t]);
+                    if (id == null) {
+                        id = modelsOfToken.size();
+                        tokenIds.put(tokens[t], id);
+                        modelsOfToken.add(new ArrayList<>());
+                    }
+                    ids[t] = id;
+                    List<Integer> models = modelsOfToken.get(id);
+                    if (models.isEmpty() || models.get(models.size() - 1) != model.intValue()) models.add(model);
+                }
+                tokensOfModel.add(ids);
+                bikesOfModel.add(new ArrayList<>());
+            }
+            bikesOfModel.get(model).add(i);
+        }
+
+        this.modelTokens = tokensOfModel.toArray(new int[0][]);
+        this.modelBikes = bikesOfModel.stream().map(BikeNameMatcher::toArray).toArray(int[][]::new);
+        this.postings = modelsOfToken.stream().map(BikeNameMatcher::toArray).toArray(int[][]::new);
+        this.vocabulary = new String[postings.length];
+        tokenIds.forEach((token, id) -> vocabulary[id] = token);
+
+        Map<String, List<Integer>> byTrigram = new HashMap<>();
+        for (int id = 0; id < vocabulary.length; id++) {
+            if (!isWord(vocabulary[id])) continue;
+            for (String g : trigrams(vocabulary[id])) byTrigram.computeIfAbsent(g, k -> new ArrayList<>()).add(id);
+        }
+        byTrigram.forEach((g, ids) -> tokensByTrigram.put(g, toArray(ids)));
+    }
+
+    /** Build a matcher; bikes earlier in the list win ties. */
+    public static BikeNameMatcher of(Collection<Bike> bikes) {
+        List<Bike> usable = new ArrayList<>(bikes.size());
+        for (Bike b : bikes) if (b != null && b.getName() != null) usable.add(b);
+        return new BikeNameMatcher(usable);
+    }
+
+    public Result match(String query) {
+        return match(query, id -> true);
+    }
+
+    /**
+     * Match {@code query} against bikes whose id passes {@code allowedIds} (e.g. the bikes listed to this user).
+     */
+    public Result match(String query, Predicate<Long> allowedIds) {
+        String[] q = tokenize(query);
+        if (q.length == 0) return Result.NONE;
+
+        Integer exactModel = modelByName.get(String.join(" ", q));
+        if (exactModel != null) {
+            Bike b = firstAllowed(exactModel, allowedIds);
+            if (b != null) return new Result(Outcome.MATCH, b, List.of());
+        }
+
+        // similarity of each query token to every vocabulary token it can reach; unreached tokens score 0
+        Map<Integer, float[]> reached = new HashMap<>();
+        for (int qi = 0; qi < q.length; qi++) reach(q[qi], qi, q.length, reached);
+        if (reached.isEmpty()) return Result.NONE;
+
+        BitSet candidates = new BitSet(modelTokens.length);
+        for (int tokenId : reached.keySet()) {
+            for (int model : postings[tokenId]) candidates.set(model);
+        }
+
+        List<Scored> scored = new ArrayList<>();
+        float[] queryBest = new float[q.length];
+        for (int m = candidates.nextSetBit(0); m >= 0; m = candidates.nextSetBit(m + 1)) {
+            Bike first = firstAllowed(m, allowedIds);
+            if (first != null) scored.add(score(m, first, queryBest, reached));
+        }
+        if (scored.isEmpty()) return Result.NONE;
+        scored.sort(Comparator.comparingDouble(Scored::score).reversed().thenComparingInt(s -> modelBikes[s.model][0]));
+
+        // 1. the user typed (nearly) a whole bike name, possibly with extra words around it
+        List<Scored> fullNames = new ArrayList<>();
+        for (Scored s : scored) if (s.bikeCoverage >= FULL_NAME) fullNames.add(s);
+        if (!fullNames.isEmpty()) {
+            double best = fullNames.get(0).score;
+            fullNames.removeIf(s -> best - s.score > CLOSE_SCORE);
+            return decide(fullNames);
+        }
+
+        // 2. everything the user typed is part of some names ("honda", "dio", "fz")
+        List<Scored> partial = new ArrayList<>();
+        for (Scored s : scored) if (s.queryCoverage >= FULL_NAME) partial.add(s);
+        if (!partial.isEmpty()) return decide(partial);
+
+        // 3. nothing convincing: offer the closest names, if any are close enough
+        List<Bike> suggestions = new ArrayList<>();
+        for (Scored s : scored) {
+            if (s.score < MIN_SUGGESTION || suggestions.size() == MAX_SUGGESTIONS) break;
+            suggestions.add(s.bike);
+        }
+        return suggestions.isEmpty() ? Result.NONE : new Result(Outcome.AMBIGUOUS, null, suggestions);
+    }
+
+    private Result decide(List<Scored> top) {
+        if (top.size() == 1) return new Result(Outcome.MATCH, top.get(0).bike, List.of());
+        List<Bike> options = new ArrayList<>(Math.min(top.size(), MAX_SUGGESTIONS));
+        for (int i = 0; i < top.size() && i < MAX_SUGGESTIONS; i++) options.add(top.get(i).bike);
+        return new Result(Outcome.AMBIGUOUS, null, options);
+    }
+
+    private Bike firstAllowed(int model, Predicate<Long> allowedIds) {
+        for (int i : modelBikes[model]) {
+            Bike b = bikes.get(i);
+            if (allowedIds.test(b.getId())) return b;
+        }
+        return null;
+    }
+
+    private void reach(String qt, int qi, int qLen, Map<Integer, float[]> reached) {
+        Integer exact = tokenIds.get(qt);
+        if (exact != null) record(reached, exact, qi, qLen, 1f);
+        if (!isWord(qt)) return;
+        if (qt.length() >= 3) {
+            for (int id : tokenIds.subMap(qt, false, qt + Character.MAX_VALUE, false).values()) {
+                record(reached, id, qi, qLen, (float) similarity(qt, vocabulary[id]));
+            }
+        }
+        if (qt.length() >= 4) {
+            for (String g : trigrams(qt)) {
+                for (int id : tokensByTrigram.getOrDefault(g, new int[0])) {
+                    float[] sims = reached.get(id);
+                    if (sims != null && sims[qi] > 0) continue;
+                    double sim = similarity(qt, vocabulary[id]);
+                    if (sim > 0) record(reached, id, qi, qLen, (float) sim);
+                }
+            }
+        }
+    }
+
+    private static void record(Map<Integer, float[]> reached, int tokenId, int qi, int qLen, float sim) {
+        float[] sims = reached.computeIfAbsent(tokenId, k -> new float[qLen]);
+        sims[qi] = Math.max(sims[qi], sim);
+    }
+
+    private Scored score(int model, Bike first, float[] queryBest, Map<Integer, float[]> reached) {
+        Arrays.fill(queryBest, 0f);
+        int[] tokens = modelTokens[model];
+        double bikeHits = 0;
+        for (int tokenId : tokens) {
+            float[] sims = reached.get(tokenId);
+            if (sims == null) continue;
+            float best = 0;
+            for (int qi = 0; qi < sims.length; qi++) {
+                best = Math.max(best, sims[qi]);
+                queryBest[qi] = Math.max(queryBest[qi], sims[qi]);
+            }
+            bikeHits += best;
+        }
+        double queryHits = 0;
+        for (float v : queryBest) queryHits += v;
+        double queryCoverage = queryHits / queryBest.length;
+        double bikeCoverage = tokens.length == 0 ? 0 : bikeHits / tokens.length;
+        return new Scored(model, first, 0.6 * bikeCoverage + 0.4 * queryCoverage, queryCoverage, bikeCoverage);
+    }
+
+    private record Scored(int model, Bike bike, double score, double queryCoverage, double bikeCoverage) {
+    }
+
+    /** 1 for equal tokens, less for prefixes and small typos, 0 otherwise. Tokens with digits only match exactly. */
+    static double similarity(String q, String t) {
+        if (q.equals(t)) return 1.0;
+        if (!isWord(q) || !isWord(t)) return 0;
+        if (q.length() >= 3 && t.startsWith(q)) return 0.9;
+        if (q.length() < 4 || t.length() < 4) return 0;
+        int allowed = Math.max(q.length(), t.length()) >= 8 ? 2 : 1;
+        if (Math.abs(q.length() - t.length()) > allowed) return 0;
+        int d = editDistance(q, t, allowed);
+        return d <= allowed ? 1.0 - 0.15 * d : 0;
+    }
+
+    // optimal string alignment distance (Levenshtein + adjacent transpositions), capped at max + 1
+    static int editDistance(String a, String b, int max) {
+        int n = a.length(), m = b.length();
+        int[] prev2 = new int[m + 1], prev = new int[m + 1], cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = j;
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    v = Math.min(v, prev2[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) return max + 1;
+            int[] tmp = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[m];
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null) return new String[0];
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        int curKind = 0; // 1 = letter, 2 = digit
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int kind = Character.isLetter(c) ? 1 : Character.isDigit(c) ? 2 : 0;
+            if (kind != curKind && cur.length() > 0) {
+                out.add(cur.toString());
+                cur.setLength(0);
+            }
+            if (kind != 0) cur.append(c);
+            curKind = kind;
+        }
+        if (cur.length() > 0) out.add(cur.toString());
+        return out.toArray(new String[0]);
+    }
+
+    private static boolean isWord(String token) {
+        return !token.isEmpty() && Character.isLetter(token.charAt(0));
+    }
+
+    private static List<String> trigrams(String token) {
+        String padded = "^" + token + "$";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) out[i] = list.get(i);
+        return out;
+    }
+}
@@ -0,0 +1,263 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.joestelmach.natty.DateGroup;
+import com.joestelmach.natty.Parser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * Parses the start dates customers actually type: "today", "tomorrow", weekdays ("fri", "next monday"),
+ * "25 Oct" / "Oct 25th 2026", ISO "2025-10-25", day-first "25/10/2025", "the 25th" and "in 3 days".
+ * <p>
+ * "Today" is taken in the shop's time zone. Forms it does not know go to Natty when the fallback is
+ * enabled (it builds a full grammar per call, so it is only used for the rare leftovers).
+ * <p>
+ * Stateless apart from configuration, so one instance can be shared between threads.
+ */
+@Slf4j
+public final class DateInputParser {
+
+    private static final Map<String, DayOfWeek> WEEKDAYS = new HashMap<>();
+    private static final Map<String, Integer> MONTH_NAMES = new HashMap<>();
+    private static final Set<String> FILLERS = Set.of("on", "the", "of", "this", "from", "starting", "start", "at", "by",
+            "please", "pls", "plz");
+    private static final Set<String> TOMORROW = Set.of("tomorrow", "tmrw", "tmr", "tomorow", "tommorow", "tommorrow");
+
+    static {
+        for (DayOfWeek d : DayOfWeek.values()) {
+            String name = d.name().toLowerCase();
+            WEEKDAYS.put(name, d);
+            WEEKDAYS.put(name.substring(0, 3), d);
+        }
+        WEEKDAYS.put("tues", DayOfWeek.TUESDAY);
+        WEEKDAYS.put("weds", DayOfWeek.WEDNESDAY);
+        WEEKDAYS.put("thur", DayOfWeek.THURSDAY);
+        WEEKDAYS.put("thurs", DayOfWeek.THURSDAY);
+        for (Month m : Month.values()) {
+            String name = m.name().toLowerCase();
+            MONTH_NAMES.put(name, m.getValue());
+            MONTH_NAMES.put(name.substring(0, 3), m.getValue());
+        }
+        MONTH_NAMES.put("sept", 9);
+    }
+
+    private final ZoneId zone;
+    private final Clock clock;
+    private final boolean nattyFallback;
+
+    public DateInputParser(ZoneId zone, boolean nattyFallback) {
+        this(zone, Clock.systemUTC(), nattyFallback);
+    }
+
+    public DateInputParser(ZoneId zone, Clock clock, boolean nattyFallback) {
+        this.zone = zone;
+        this.clock = clock;
+        this.nattyFallback = nattyFallback;
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /** @return the date, or null when the text is not a date we understand */
+    public LocalDate parse(String text) {
+        if (text == null || text.isBlank()) return null;
+        LocalDate today = LocalDate.now(clock.withZone(zone));
+        LocalDate date = parseNative(text, today);
+        if (date != null || !nattyFallback) return date;
+        return parseWithNatty(text.toLowerCase().trim());
+    }
+
+    private LocalDate parseNative(String text, LocalDate today) {
+        LocalDate numeric = parseNumeric(text.trim(), today);
+        if (numeric != null) return numeric;
+
+        String[] words = words(text);
+        int n = words.length;
+        if (n == 0) return null;
+        String w0 = words[0];
+
+        if (n == 1) {
+            if (w0.equals("today") || w0.equals("now") || w0.equals("tonight")) return today;
+            if (TOMORROW.contains(w0)) return today.plusDays(1);
+            DayOfWeek dow = dayOfWeek(w0);
+            // a bare weekday means the next one; today's weekday means a week from today
+            if (dow != null) return today.plusDays(Math.floorMod(dow.getValue() - today.getDayOfWeek().getValue() - 1, 7) + 1);
+            // a bare number is more likely a menu choice than a date, so only "25th" counts
+            int day = Character.isDigit(w0.charAt(w0.length() - 1)) ? -1 : ordinalDay(w0);
+            if (day > 0) return dayOfComingMonth(day, today);
+            return null;
+        }
+
+        if (n == 2 && w0.equals("next")) {
+            if (words[1].equals("week")) return today.plusWeeks(1);
+            if (words[1].equals("month")) return today.plusMonths(1);
+            DayOfWeek dow = dayOfWeek(words[1]);
+            // "next friday" is the friday of next (Sunday-based) week
+            if (dow != null) return today.minusDays(today.getDayOfWeek().getValue() % 7).plusDays(dow.getValue() % 7 + 7);
+            return null;
+        }
+        if (n == 3 && w0.equals("day") && words[1].equals("after") && TOMORROW.contains(words[2])) return today.plusDays(2);
+
+        // in 3 days / in a week / 3 days from now (the trailing "now" survives after "from" is dropped)
+        if (n == 3 && w0.equals("in")) return plus(today, amount(words[1]), words[2]);
+        if (n == 3 && words[2].equals("now")) return plus(today, amount(w0), words[1]);
+
+        // 25 oct [2026] / oct 25th [26]
+        if (n == 2 || n == 3) {
+            int month = month(w0);
+            int day = month > 0 ? ordinalDay(words[1]) : ordinalDay(w0);
+            if (month == 0) month = month(words[1]);
+            if (month == 0 || day <= 0) return null;
+            int year = today.getYear();
+            if (n == 3) {
+                year = year(words[2]);
+                if (year < 0) return null;
+            }
+            return safeDate(year, month, day);
+        }
+        return null;
+    }
+
+    // yyyy-m-d, yyyy/m/d, d/m/yyyy, d-m-yy, d.m.yyyy, d/m
+    private static LocalDate parseNumeric(String s, LocalDate today) {
+        int[] parts = new int[3];
+        int[] digits = new int[3];
+        int count = 0;
+        char sep = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits[count] == 4) return null;
+                parts[count] = parts[count] * 10 + (c - '0');
+                digits[count]++;
+            } else if (c == '-' || c == '/' || c == '.') {
+                if (digits[count] == 0 || count == 2 || (sep != 0 && c != sep)) return null;
+                sep = c;
+                count++;
+            } else {
+                return null;
+            }
+        }
+        if (digits[count] == 0 || count == 0) return null;
+        if (count == 2 && digits[0] == 4) return safeDate(parts[0], parts[1], parts[2]);
+        if (digits[0] > 2 || digits[1] > 2) return null;
+        if (count == 1) return safeDate(today.getYear(), parts[1], parts[0]);
+        int year = digits[2] == 4 ? parts[2] : digits[2] == 2 ? 2000 + parts[2] : -1;
+        return year < 0 ? null : safeDate(year, parts[1], parts[0]);
+    }
+
+    private LocalDate parseWithNatty(String text) {
+        try {
+            Parser parser = new Parser(TimeZone.getTimeZone(zone));
+            Date reference = Date.from(ZonedDateTime.now(clock.withZone(zone)).toInstant());
+            List<DateGroup> groups = parser.parse(text, reference);
+            if (!groups.isEmpty() && !groups.get(0).getDates().isEmpty()) {
+                return groups.get(0).getDates().get(0).toInstant().atZone(zone).toLocalDate();
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Natty failed to parse '{}': {}", text, e.getMessage());
+        }
+        return null;
+    }
+
+    private static String[] words(String text) {
+        String[] out = new String[8];
+        int n = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) start = i;
+                continue;
+            }
+            if (start >= 0) {
+                String w = text.substring(start, i).toLowerCase();
+                start = -1;
+                if (FILLERS.contains(w)) continue;
+                if (n == out.length) return new String[0]; // far too long to be one of our forms
+                out[n++] = w;
+            }
+        }
+        String[] words = new String[n];
+        System.arraycopy(out, 0, words, 0, n);
+        return words;
+    }
+
+    private static LocalDate plus(LocalDate today, int amount, String unit) {
+        if (amount <= 0) return null;
+        return switch (unit) {
+            case "day", "days" -> today.plusDays(amount);
+            case "week", "weeks" -> today.plusWeeks(amount);
+            case "month", "months" -> today.plusMonths(amount);
+            default -> null;
+        };
+    }
+
+    private static int amount(String w) {
+        if (w.equals("a") || w.equals("one")) return 1;
+        if (w.equals("two")) return 2;
+        if (w.equals("three")) return 3;
+        return number(w, 3);
+    }
+
+    private static DayOfWeek dayOfWeek(String w) {
+        return WEEKDAYS.get(w);
+    }
+
+    private static int month(String w) {
+        return MONTH_NAMES.getOrDefault(w, 0);
+    }
+
+    // 25, 25th, 1st, 2nd, 3rd
+    private static int ordinalDay(String w) {
+        int digits = 0;
+        while (digits < w.length() && Character.isDigit(w.charAt(digits))) digits++;
+        if (digits == 0 || digits > 2) return -1;
+        String suffix = w.substring(digits);
+        if (!suffix.isEmpty() && !suffix.equals("st") && !suffix.equals("nd") && !suffix.equals("rd") && !suffix.equals("th")) {
+            return -1;
+        }
+        int day = number(w.substring(0, digits), 2);
+        return day >= 1 && day <= 31 ? day : -1;
+    }
+
+    private static int year(String w) {
+        if (w.length() == 4) return number(w, 4);
+        if (w.length() == 2) {
+            int yy = number(w, 2);
+            return yy < 0 ? -1 : 2000 + yy;
+        }
+        return -1;
+    }
+
+    private static int number(String w, int maxDigits) {
+        if (w.isEmpty() || w.length() > maxDigits) return -1;
+        int v = 0;
+        for (int i = 0; i < w.length(); i++) {
+            char c = w.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    // "the 25th": this month's, or next month's when it has already passed
+    private static LocalDate dayOfComingMonth(int day, LocalDate today) {
+        YearMonth month = YearMonth.from(today);
+        for (int i = 0; i < 3; i++, month = month.plusMonths(1)) {
+            if (day > month.lengthOfMonth()) continue;
+            LocalDate d = month.atDay(day);
+            if (!d.isBefore(today)) return d;
+        }
+        return null;
+    }
+
+    private static LocalDate safeDate(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1) return null;
+        YearMonth ym = YearMonth.of(year, month);
+        return day > ym.lengthOfMonth() ? null : ym.atDay(day);
+    }
+}
@@ -0,0 +1,215 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks strictly in submission order per key (e.g. per WhatsApp waId) while tasks for
+ * different keys run in parallel on the shared delegate executor.
+ * <p>
+ * Each key owns a small bounded mailbox. At most one drain task per mailbox is scheduled on the
+ * delegate at any time, so two messages from the same sender never run concurrently and no
+ * thread is parked waiting for a per-user lock. A drain task runs at most {@code maxTasksPerTurn}
+ * tasks and then resubmits itself behind the other senders' work, so one chatty sender cannot keep a
+ * delegate thread to itself. Mailboxes that stay empty longer than the idle timeout are evicted.
+ * <p>
+ * The delegate must reject rather than run tasks on the submitting thread: a rejected first
+ * submission drops the task (counted as rejected), a rejected resubmission keeps draining on the
+ * delegate thread that already holds the mailbox.
+ */
+@Slf4j
+public class KeyedMailboxExecutor {
+
+    public static final int DEFAULT_MAX_QUEUE_PER_KEY = 32;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    public static final int DEFAULT_MAX_TASKS_PER_TURN = 8;
+
+    private final Executor delegate;
+    private final int maxQueuePerKey;
+    private final int maxTasksPerTurn;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+    private final Counter evictedCounter;
+
+    public KeyedMailboxExecutor(Executor delegate) {
+        this(delegate, DEFAULT_MAX_QUEUE_PER_KEY, DEFAULT_MAX_TASKS_PER_TURN, DEFAULT_IDLE_TIMEOUT, null);
+    }
+
+    public KeyedMailboxExecutor(Executor delegate, int maxQueuePerKey, int maxTasksPerTurn, Duration idleTimeout,
+                                @Nullable MeterRegistry registry) {
+        if (maxQueuePerKey <= 0) throw new IllegalArgumentException("maxQueuePerKey must be positive");
+        if (maxTasksPerTurn <= 0) throw new IllegalArgumentException("maxTasksPerTurn must be positive");
+        this.delegate = delegate;
+        this.maxQueuePerKey = maxQueuePerKey;
+        this.maxTasksPerTurn = maxTasksPerTurn;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        if (registry != null) {
+            Gauge.builder("conversation.mailbox.pending", pending, AtomicInteger::get)
+                    .description("Messages queued in per-sender mailboxes and not yet started")
+                    .register(registry);
+            Gauge.builder("conversation.mailbox.active", mailboxes, ConcurrentHashMap::size)
+                    .description("Live per-sender mailboxes")
+                    .register(registry);
+            this.waitTimer = Timer.builder("conversation.mailbox.wait")
+                    .description("Time a message waited in its sender's mailbox before processing started")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.rejectedCounter = Counter.builder("conversation.mailbox.rejected")
+                    .description("Messages dropped because the sender's mailbox was full or the executor rejected it")
+                    .register(registry);
+            this.evictedCounter = Counter.builder("conversation.mailbox.evicted")
+                    .description("Idle mailboxes evicted")
+                    .register(registry);
+        } else {
+            this.waitTimer = null;
+            this.rejectedCounter = null;
+            this.evictedCounter = null;
+        }
+    }
+
+    /**
+     * Queue a task behind any earlier tasks for the same key.
+     *
+     * @return false if the key's mailbox is full or the delegate rejected it (the task is dropped)
+     */
+    public boolean execute(String key, Runnable task) {
+        sweepIfDue();
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, Mailbox::new);
+            boolean schedule;
+            synchronized (mailbox) {
+                if (mailbox.closed) continue; // evicted between lookup and lock; retry with a fresh mailbox
+                if (mailbox.queue.size() >= maxQueuePerKey) {
+                    if (rejectedCounter != null) rejectedCounter.increment();
+                    log.warn("⚠️ Mailbox for {} is full ({} queued) - dropping message", key, mailbox.queue.size());
+                    return false;
+                }
+                mailbox.queue.addLast(new Envelope(task, System.nanoTime()));
+                pending.incrementAndGet();
+                schedule = !mailbox.scheduled;
+                mailbox.scheduled = true;
+            }
+            return !schedule || schedule(mailbox);
+        }
+    }
+
+    /** Remove mailboxes that have been empty for longer than the idle timeout. */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            synchronized (mailbox) {
+                if (!mailbox.scheduled && mailbox.queue.isEmpty() && now - mailbox.lastActiveNanos >= idleTimeoutNanos) {
+                    mailbox.closed = true;
+                    mailboxes.remove(mailbox.key, mailbox);
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0 && evictedCounter != null) evictedCounter.increment(evicted);
+        return evicted;
+    }
+
+    public int activeMailboxes() {
+        return mailboxes.size();
+    }
+
+    public int pendingTasks() {
+        return pending.get();
+    }
+
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        long last = lastSweepNanos.get();
+        if (now - last >= idleTimeoutNanos && lastSweepNanos.compareAndSet(last, now)) {
+            evictIdle();
+        }
+    }
+
+    private boolean schedule(Mailbox mailbox) {
+        try {
+            delegate.execute(mailbox);
+            return true;
+        } catch (RejectedExecutionException e) {
+            int dropped;
+            synchronized (mailbox) {
+                dropped = mailbox.queue.size();
+                mailbox.queue.clear();
+                mailbox.scheduled = false;
+            }
+            pending.addAndGet(-dropped);
+            if (rejectedCounter != null) rejectedCounter.increment(dropped);
+            log.error("❌ Conversation executor rejected mailbox for {} - dropped {} message(s)", mailbox.key, dropped);
+            return false;
+        }
+    }
+
+    private record Envelope(Runnable task, long enqueuedNanos) {
+    }
+
+    private final class Mailbox implements Runnable {
+        private final String key;
+        private final ArrayDeque<Envelope> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closed;
+        private long lastActiveNanos = System.nanoTime();
+
+        private Mailbox(String key) {
+            this.key = key;
+        }
+
+        // Runs up to maxTasksPerTurn tasks, then goes to the back of the delegate's queue if more are waiting.
+        @Override
+        public void run() {
+            int ran = 0;
+            while (true) {
+                Envelope next;
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        scheduled = false;
+                        lastActiveNanos = System.nanoTime();
+                        return;
+                    }
+                    next = ran < maxTasksPerTurn ? queue.pollFirst() : null;
+                }
+                if (next == null) {
+                    // still marked scheduled, so execute() won't submit a second drain while this one is requeued
+                    try {
+                        delegate.execute(this);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        // delegate saturated: keep draining on this (delegate) thread rather than drop the queue
+                        ran = 0;
+                        continue;
+                    }
+                }
+                ran++;
+                pending.decrementAndGet();
+                if (waitTimer != null) waitTimer.record(System.nanoTime() - next.enqueuedNanos, TimeUnit.NANOSECONDS);
+                try {
+                    next.task.run();
+                } catch (Throwable t) {
+                    log.error("❌ Task for {} failed: {}", key, t.getMessage(), t);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded queue in front of an HTTP API with per-sender throughput limits (e.g. the WhatsApp Cloud API,
+ * limited per phone-number-id).
+ * <p>
+ * Submitted sends wait in the queue until one of {@code maxConcurrency} slots is free, then take a token
+ * from their sender's bucket (waiting for one if the sender is over its rate) before each attempt.
+ * 429s, 5xx responses and connection failures are retried with jittered exponential backoff; other
+ * errors and exhausted retries are logged and counted. A full queue refuses new sends.
+ */
+@Slf4j
+public class OutboundSendQueue implements AutoCloseable {
+
+    public record Settings(int capacity, int maxConcurrency, double permitsPerSecond, int burst,
+                           int maxRetries, Duration minBackoff, Duration maxBackoff) {
+    }
+
+    private record Job(String senderId, String description, Supplier<? extends Mono<?>> send) {
+    }
+
+    private final Settings settings;
+    private final Sinks.Many<Job> sink = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable worker;
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Timer sendTimer;
+    private final Counter retries;
+    private final Counter queueFull;
+    private final Counter rejected;
+    private final Counter exhausted;
+
+    public OutboundSendQueue(Settings settings, @Nullable MeterRegistry registry) {
+        if (settings.capacity() <= 0 || settings.maxConcurrency() <= 0) throw new IllegalArgumentException("capacity and maxConcurrency must be positive");
+        this.settings = settings;
+        if (registry != null) {
+            Gauge.builder("whatsapp.outbound.queue.depth", queued, AtomicInteger::get)
+                    .description("Outbound messages waiting for a send slot").register(registry);
+            Gauge.builder("whatsapp.outbound.in-flight", inFlight, AtomicInteger::get)
+                    .description("Outbound messages being sent, including rate-limit waits and retries").register(registry);
+            this.sendTimer = Timer.builder("whatsapp.outbound.send")
+                    .description("Time from leaving the queue to delivery, including retries")
+                    .publishPercentiles(0.5, 0.99).register(registry);
+            this.retries = Counter.builder("whatsapp.outbound.retries")
+                    .description("Send attempts retried after a 429, 5xx or connection failure").register(registry);
+            this.queueFull = Counter.builder("whatsapp.outbound.failures").tag("reason", "queue-full")
+                    .description("Outbound messages that were not delivered").register(registry);
+            this.rejected = Counter.builder("whatsapp.outbound.failures").tag("reason", "rejected")
+                    .description("Outbound messages that were not delivered").register(registry);
+            this.exhausted = Counter.builder("whatsapp.outbound.failures").tag("reason", "retries-exhausted")
+                    .description("Outbound messages that were not delivered").register(registry);
+        } else {
+            this.sendTimer = null;
+            this.retries = null;
+            this.queueFull = null;
+            this.rejected = null;
+            this.exhausted = null;
+        }
+        this.worker = sink.asFlux()
+                .flatMap(job -> {
+                    queued.decrementAndGet();
+                    return deliver(job);
+                }, settings.maxConcurrency())
+                .subscribe();
+    }
+
+    /**
+     * Queue one send. {@code send} is subscribed once per attempt, so it must build a fresh request each time.
+     *
+     * @return false if the queue is full (the send is dropped)
+     */
+    public boolean submit(String senderId, String description, Supplier<? extends Mono<?>> send) {
+        if (queued.incrementAndGet() > settings.capacity()) {
+            queued.decrementAndGet();
+            count(queueFull);
+            log.warn("⚠️ Outbound queue is full ({} waiting) - dropping {}", settings.capacity(), description);
+            return false;
+        }
+        Sinks.EmitResult result;
+        // a unicast sink takes one emitter at a time
+        synchronized (sink) {
+            result = sink.tryEmitNext(new Job(senderId, description, send));
+        }
+        if (result.isFailure()) {
+            queued.decrementAndGet();
+            count(queueFull);
+            log.warn("⚠️ Outbound queue refused {}: {}", description, result);
+            return false;
+        }
+        return true;
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private Mono<Void> deliver(Job job) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        Mono<?> attempt = Mono.defer(() -> {
+            long waitNanos = bucket(job.senderId()).reserveNanos();
+            Mono<?> call = Mono.defer(job.send());
+            return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then(call) : call;
+        });
+        return attempt
+                .retryWhen(Retry.backoff(settings.maxRetries(), settings.minBackoff())
+                        .maxBackoff(settings.maxBackoff())
+                        .jitter(0.5)
+                        .filter(OutboundSendQueue::isRetryable)
+                        .doBeforeRetry(signal -> {
+                            count(retries);
+                            log.info("🔁 Retrying {} (attempt {}): {}", job.description(), signal.totalRetries() + 2, signal.failure().getMessage());
+                        }))
+                .doOnSuccess(r -> {
+                    if (sendTimer != null) sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    log.info("✅ Delivered {}", job.description());
+                })
+                .onErrorResume(e -> {
+                    boolean gaveUp = Exceptions.isRetryExhausted(e);
+                    Throwable cause = gaveUp && e.getCause() != null ? e.getCause() : e;
+                    count(gaveUp ? exhausted : rejected);
+                    log.error("❌ Could not deliver {}{}: {}", job.description(), gaveUp ? " after " + (settings.maxRetries() + 1) + " attempts" : "", cause.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> inFlight.decrementAndGet())
+                .then();
+    }
+
+    private TokenBucket bucket(String senderId) {
+        return buckets.computeIfAbsent(senderId == null ? "" : senderId, k -> new TokenBucket(settings.permitsPerSecond(), settings.burst()));
+    }
+
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException r) {
+            return r.getStatusCode().value() == 429 || r.getStatusCode().is5xxServerError();
+        }
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) counter.increment();
+    }
+
+    @Override
+    public void close() {
+        worker.dispose();
+    }
+}
@@ -0,0 +1,29 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+/**
+ * Conversation stage of the message being handled on the current thread, so metrics recorded further
+ * down (repository calls, reply latency) can be tagged with it. {@link #NONE} outside a message.
+ */
+public final class StageTag {
+
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private StageTag() {
+    }
+
+    public static String current() {
+        String stage = CURRENT.get();
+        return stage == null ? NONE : stage;
+    }
+
+    public static void set(String stage) {
+        if (stage == null) CURRENT.remove();
+        else CURRENT.set(stage);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,41 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that hands out reservations instead of refusing: each {@link #reserveNanos()} takes a
+ * token and says how long the caller has to wait before using it. Tokens may go negative, so callers
+ * that arrive while the bucket is empty line up behind earlier reservations at the configured rate.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be positive");
+        if (burst <= 0) throw new IllegalArgumentException("burst must be positive");
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.capacity = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /** Take one token; returns 0 if it can be used now, otherwise the nanoseconds until it can. */
+    public synchronized long reserveNanos() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+        tokens -= 1;
+        if (tokens >= 0) return 0;
+        return (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
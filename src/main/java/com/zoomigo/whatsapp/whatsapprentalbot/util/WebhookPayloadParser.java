@@ -0,0 +1,199 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.InboundMessage;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.StatusUpdate;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.WebhookPayload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for WhatsApp Cloud API webhook bodies.
+ * <p>
+ * Walks the token stream once and copies only the fields the bot uses into small records;
+ * everything else (metadata, contacts, pricing, media objects, ...) is skipped without being
+ * materialised, so a status-only callback allocates almost nothing.
+ */
+public class WebhookPayloadParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public WebhookPayload parse(byte[] body) throws IOException {
+        List<InboundMessage> messages = new ArrayList<>(1);
+        List<StatusUpdate> statuses = new ArrayList<>(0);
+        int entries = 0;
+        int changes = 0;
+
+        try (JsonParser p = JSON.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Webhook body is not a JSON object");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if (!"entry".equals(field) || p.currentToken() != JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (p.currentToken() != JsonToken.START_OBJECT) {
+                        p.skipChildren();
+                        continue;
+                    }
+                    entries++;
+                    changes += readEntry(p, messages, statuses);
+                }
+            }
+        }
+        return new WebhookPayload(entries, changes, messages, statuses);
+    }
+
+    // returns the number of changes in the entry
+    private int readEntry(JsonParser p, List<InboundMessage> messages, List<StatusUpdate> statuses) throws IOException {
+        int changes = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (!"changes".equals(field) || p.currentToken() != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                if (p.currentToken() != JsonToken.START_OBJECT) {
+                    p.skipChildren();
+                    continue;
+                }
+                changes++;
+                readChange(p, messages, statuses);
+            }
+        }
+        return changes;
+    }
+
+    private void readChange(JsonParser p, List<InboundMessage> messages, List<StatusUpdate> statuses) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (!"value".equals(field) || p.currentToken() != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String valueField = p.currentName();
+                p.nextToken();
+                if ("messages".equals(valueField) && p.currentToken() == JsonToken.START_ARRAY) {
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (p.currentToken() == JsonToken.START_OBJECT) messages.add(readMessage(p));
+                        else p.skipChildren();
+                    }
+                } else if ("statuses".equals(valueField) && p.currentToken() == JsonToken.START_ARRAY) {
+                    while (p.nextToken() != JsonToken.END_ARRAY) {
+                        if (p.currentToken() == JsonToken.START_OBJECT) statuses.add(readStatus(p));
+                        else p.skipChildren();
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    private InboundMessage readMessage(JsonParser p) throws IOException {
+        String id = null, from = null, type = null, text = null, replyId = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken t = p.nextToken();
+            switch (field) {
+                case "id" -> id = stringValue(p);
+                case "from" -> from = stringValue(p);
+                case "type" -> type = stringValue(p);
+                case "text" -> {
+                    if (t == JsonToken.START_OBJECT) text = readField(p, "body");
+                    else p.skipChildren();
+                }
+                case "interactive" -> {
+                    if (t == JsonToken.START_OBJECT) {
+                        String[] reply = readInteractive(p);
+                        replyId = reply[0];
+                        text = reply[1];
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                case "button" -> {
+                    if (t == JsonToken.START_OBJECT) {
+                        String[] button = readIdAndTitle(p, "payload", "text");
+                        replyId = button[0];
+                        text = button[1];
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                default -> p.skipChildren();
+            }
+        }
+        return new InboundMessage(id, from, type, text, replyId);
+    }
+
+    // interactive: { "type": "button_reply" | "list_reply", "button_reply": { "id", "title" } }
+    private String[] readInteractive(JsonParser p) throws IOException {
+        String[] reply = new String[2];
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken t = p.nextToken();
+            if (("button_reply".equals(field) || "list_reply".equals(field)) && t == JsonToken.START_OBJECT) {
+                reply = readIdAndTitle(p, "id", "title");
+            } else {
+                p.skipChildren();
+            }
+        }
+        return reply;
+    }
+
+    private StatusUpdate readStatus(JsonParser p) throws IOException {
+        String id = null, recipient = null, status = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            switch (field) {
+                case "id" -> id = stringValue(p);
+                case "recipient_id" -> recipient = stringValue(p);
+                case "status" -> status = stringValue(p);
+                default -> p.skipChildren();
+            }
+        }
+        return new StatusUpdate(id, recipient, status);
+    }
+
+    private String[] readIdAndTitle(JsonParser p, String idField, String titleField) throws IOException {
+        String[] out = new String[2];
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (idField.equals(field)) out[0] = stringValue(p);
+            else if (titleField.equals(field)) out[1] = stringValue(p);
+            else p.skipChildren();
+        }
+        return out;
+    }
+
+    private String readField(JsonParser p, String wanted) throws IOException {
+        String value = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if (wanted.equals(field)) value = stringValue(p);
+            else p.skipChildren();
+        }
+        return value;
+    }
+
+    private String stringValue(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_STRING || t.isNumeric() || t.isBoolean()) return p.getValueAsString();
+        p.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * The X-Hub-Signature-256 header Meta sends with every webhook: {@code sha256=} followed by the hex
+ * HMAC-SHA256 of the raw request body, keyed with the app secret.
+ */
+public final class WebhookSignature {
+
+    public static final String HEADER = "X-Hub-Signature-256";
+    private static final String PREFIX = "sha256=";
+
+    private WebhookSignature() {
+    }
+
+    public static String sign(String appSecret, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(appSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return PREFIX + HexFormat.of().formatHex(mac.doFinal(body == null ? new byte[0] : body));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    /** Constant-time check of a received header against the body. */
+    public static boolean matches(String appSecret, byte[] body, String header) {
+        if (header == null || !header.startsWith(PREFIX)) return false;
+        byte[] expected = sign(appSecret, body).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = header.trim().toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+}
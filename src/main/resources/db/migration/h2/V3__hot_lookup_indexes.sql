@@ -0,0 +1,12 @@
+-- postgresql/V3 without the partial and expression indexes H2 cannot create; QueryPlanTest runs against these.
+
+CREATE INDEX IF NOT EXISTS idx_chat_session_wa_id ON chat_session (wa_id);
+
+CREATE INDEX IF NOT EXISTS idx_booking_wa_id_created_at ON booking (wa_id, created_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_booking_bike_id_start_date ON booking (bike_id, start_date);
+
+CREATE INDEX IF NOT EXISTS idx_exchange_rate_active_target ON exchange_rate (active_target, target_currency);
+
+CREATE INDEX IF NOT EXISTS idx_promo_code_bike_promo_id ON promo_code_bike (promo_id);
+CREATE INDEX IF NOT EXISTS idx_promo_code_bike_bike_id ON promo_code_bike (bike_id);
@@ -0,0 +1,6 @@
+-- H2 counterpart of the Postgres jsonb column: a native JSON column. A plain type change would keep
+-- each existing document as a JSON string, so the values are re-parsed into a new column.
+ALTER TABLE chat_session ADD COLUMN data_json_doc json DEFAULT JSON '{}';
+UPDATE chat_session SET data_json_doc = data_json FORMAT JSON WHERE data_json IS NOT NULL AND data_json <> '';
+ALTER TABLE chat_session DROP COLUMN data_json;
+ALTER TABLE chat_session ALTER COLUMN data_json_doc RENAME TO data_json;
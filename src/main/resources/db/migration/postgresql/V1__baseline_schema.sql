@@ -0,0 +1,104 @@
+-- Schema as ddl-auto: update created it. Databases that already have it are baselined at version 0,
+-- so every statement here has to be a no-op against an existing table.
+
+CREATE TABLE IF NOT EXISTS bikes (
+  id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name           varchar(255),
+  price_per_day  integer,
+  deposit        integer,
+  is_available   boolean NOT NULL,
+  currency_unit  varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS promo_code (
+  id                bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  code              varchar(255) NOT NULL UNIQUE,
+  title             varchar(255),
+  description       varchar(255),
+  total_allocation  integer,
+  used_count        integer,
+  discount_amount   integer,
+  discount_percent  integer,
+  active            boolean,
+  currency_unit     varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS promo_code_bike (
+  id        bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  promo_id  bigint NOT NULL REFERENCES promo_code (id),
+  bike_id   bigint NOT NULL REFERENCES bikes (id)
+);
+
+CREATE TABLE IF NOT EXISTS users (
+  id                bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  phone_number      varchar(255) UNIQUE,
+  name              varchar(255),
+  days              integer,
+  pickup_type       varchar(255),
+  delivery_address  varchar(255),
+  selected_bike_id  bigint,
+  stage             varchar(255),
+  start_date        date
+);
+
+CREATE TABLE IF NOT EXISTS chat_session (
+  id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  wa_id         varchar(255),
+  state         varchar(255),
+  data_json     text,
+  last_updated  timestamp(6) with time zone
+);
+
+CREATE TABLE IF NOT EXISTS booking (
+  id                     bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  wa_id                  varchar(255),
+  name                   varchar(255),
+  bike                   varchar(255),
+  bike_id                bigint,
+  duration               integer,
+  price                  integer,
+  deposit                integer,
+  status                 varchar(255),
+  start_date             date,
+  end_date               date,
+  pickup_type            varchar(255),
+  delivery_address       varchar(255),
+  promo_code             varchar(255) REFERENCES promo_code (code),
+  promo_discount_amount  integer,
+  promo_applied          boolean,
+  currency_unit          varchar(255),
+  applied_exchange_rate  numeric(38,2),
+  created_at             timestamp(6) with time zone NOT NULL,
+  cancelled_at           timestamp(6) with time zone
+);
+
+-- databases created before bookings recorded the bike id
+ALTER TABLE booking ADD COLUMN IF NOT EXISTS bike_id bigint;
+
+CREATE TABLE IF NOT EXISTS exchange_rate (
+  id               bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  base_currency    varchar(255) NOT NULL,
+  target_currency  varchar(255) NOT NULL,
+  rate             numeric(19,6),
+  last_updated     timestamp(6) with time zone,
+  use_live_rate    boolean,
+  active_target    boolean,
+  UNIQUE (base_currency, target_currency)
+);
+
+CREATE TABLE IF NOT EXISTS processed_message (
+  message_id   varchar(128) PRIMARY KEY,
+  received_at  timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_processed_message_received_at ON processed_message (received_at);
+
+CREATE TABLE IF NOT EXISTS app_config (
+  key_text    varchar(255) PRIMARY KEY,
+  value_text  varchar(255) NOT NULL,
+  updated_at  timestamp(6) with time zone NOT NULL
+);
+
+INSERT INTO app_config (key_text, value_text, updated_at)
+VALUES ('default_currency', 'USD', CURRENT_TIMESTAMP)
+ON CONFLICT (key_text) DO NOTHING;
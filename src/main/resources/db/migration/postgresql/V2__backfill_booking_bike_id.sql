@@ -0,0 +1,8 @@
+-- Bookings made before booking.bike_id was recorded only name their bike. Fill in the id so the
+-- availability queries can match on it (and its index). Only names that exactly one bike has are
+-- filled in: a booking of a name several bikes share, or no bike has any more, keeps a null id and
+-- is matched by name (BookingRepository).
+UPDATE booking
+   SET bike_id = (SELECT k.id FROM bikes k WHERE k.name = booking.bike)
+ WHERE bike_id IS NULL AND bike IS NOT NULL
+   AND (SELECT count(*) FROM bikes k WHERE k.name = booking.bike) = 1;
@@ -0,0 +1,20 @@
+-- Indexes for the lookups made on every message; QueryPlanTest fails if one of them stops being used.
+
+-- ChatSessionRepository.findByWaId
+CREATE INDEX IF NOT EXISTS idx_chat_session_wa_id ON chat_session (wa_id);
+
+-- BookingRepository.findTopByWaIdOrderByCreatedAtDesc and the latest-booking subquery of ConversationContextLoader
+CREATE INDEX IF NOT EXISTS idx_booking_wa_id_created_at ON booking (wa_id, created_at DESC);
+
+-- BookingRepository.countOverlapping, run on every confirmation
+CREATE INDEX IF NOT EXISTS idx_booking_bike_id_start_date ON booking (bike_id, start_date) WHERE status = 'CONFIRMED';
+
+-- ExchangeRateRepository.findByActiveTargetTrue / findByTargetCurrencyAndActiveTargetTrue: one row at most
+CREATE INDEX IF NOT EXISTS idx_exchange_rate_active_target ON exchange_rate (target_currency) WHERE active_target;
+
+-- PromoCodeBikeRepository.findByPromoCode_Id; Postgres does not index foreign keys by itself
+CREATE INDEX IF NOT EXISTS idx_promo_code_bike_promo_id ON promo_code_bike (promo_id);
+CREATE INDEX IF NOT EXISTS idx_promo_code_bike_bike_id ON promo_code_bike (bike_id);
+
+-- PromoCodeRepository.findByCodeIgnoreCase, which Spring Data renders as upper(code) = upper(?)
+CREATE INDEX IF NOT EXISTS idx_promo_code_upper_code ON promo_code (upper(code));
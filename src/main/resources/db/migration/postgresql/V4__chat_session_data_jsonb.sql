@@ -0,0 +1,6 @@
+-- Store session data as jsonb so a changed session can be written as a patch of its changed keys
+-- (ChatSessionWriter) instead of a rewrite of the whole document. Blank legacy values become '{}',
+-- which is also what sessions created by ConversationContextLoader start with.
+ALTER TABLE chat_session
+  ALTER COLUMN data_json TYPE jsonb USING coalesce(nullif(data_json::text, ''), '{}')::jsonb,
+  ALTER COLUMN data_json SET DEFAULT '{}'::jsonb;
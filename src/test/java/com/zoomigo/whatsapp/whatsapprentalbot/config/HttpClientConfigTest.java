@@ -0,0 +1,73 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpClientConfigTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private HttpServer server;
+    private ConnectionProvider pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Metrics.addRegistry(registry);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.dispose();
+        server.stop(0);
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void callsReuseThePooledConnection() throws InterruptedException {
+        HttpClientConfig cfg = new HttpClientConfig();
+        // one connection: without keep-alive every request would need a new one
+        pool = cfg.outboundConnections(1, 10, Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5));
+        HttpClient http = cfg.outboundHttpClient(pool, Duration.ofSeconds(1), Duration.ofSeconds(2), true);
+        WebClient client = cfg.whatsappWebClient(cfg.outboundConnector(http));
+
+        for (int i = 0; i < 20; i++) {
+            client.post().uri("http://127.0.0.1:" + server.getAddress().getPort() + "/v24.0/1/messages")
+                    .bodyValue("{}").retrieve().toBodilessEntity().block(Duration.ofSeconds(5));
+        }
+
+        assertThat(clientPorts).hasSize(1);
+        // the connection goes back to the pool just after the response completes
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (idleConnections() < 1 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(registry.get("reactor.netty.connection.provider.idle.connections").tag("name", "outbound").gauge().value()).isEqualTo(1.0);
+        assertThat(registry.get("reactor.netty.connection.provider.active.connections").tag("name", "outbound").gauge().value()).isZero();
+        assertThat(registry.find("reactor.netty.connection.provider.pending.connections").tag("name", "outbound").gauge()).isNotNull();
+    }
+
+    private double idleConnections() {
+        return registry.get("reactor.netty.connection.provider.idle.connections").tag("name", "outbound").gauge().value();
+    }
+}
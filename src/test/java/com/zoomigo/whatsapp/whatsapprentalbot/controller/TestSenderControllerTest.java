@@ -7,12 +7,14 @@ import org.springframework.http.ResponseEntity;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
 
 class TestSenderControllerTest {
 
     @Test
     void sendText_returnsOk_whenWhatsappServiceSucceeds() {
         WhatsappService ws = Mockito.mock(WhatsappService.class);
+        when(ws.sendTextMessage("000", "Hello")).thenReturn(true);
         TestSenderController c = new TestSenderController(ws);
 
         ResponseEntity<String> r = c.sendText("000", "Hello");
@@ -20,6 +22,16 @@ class TestSenderControllerTest {
         assertThat(r.getBody()).contains("Message sent to 000");
     }
 
+    @Test
+    void sendText_returns503_whenTheMessageIsDropped() {
+        WhatsappService ws = Mockito.mock(WhatsappService.class);
+        when(ws.sendTextMessage("000", "Hello")).thenReturn(false);
+        TestSenderController c = new TestSenderController(ws);
+
+        ResponseEntity<String> r = c.sendText("000", "Hello");
+        assertThat(r.getStatusCode().value()).isEqualTo(503);
+    }
+
     @Test
     void sendText_handlesException_andReturns500() {
         WhatsappService ws = Mockito.mock(WhatsappService.class);
@@ -1,13 +1,19 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.controller;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationService;
+import com.zoomigo.whatsapp.whatsapprentalbot.service.MessageDeduplicator;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.KeyedMailboxExecutor;
 import com.zoomigo.whatsapp.whatsapprentalbot.service.WhatsappService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -19,7 +25,7 @@ class WebhookControllerTest {
         ConversationService chat = mock(ConversationService.class);
         WhatsappService ws = mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
-        WebhookController c = new WebhookController(chat, ws, exec);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
 
         // set VERIFY_TOKEN via reflection
         var f = WebhookController.class.getDeclaredField("VERIFY_TOKEN");
@@ -47,7 +53,7 @@ class WebhookControllerTest {
             return null;
         }).when(exec).execute(any(Runnable.class));
 
-        WebhookController c = new WebhookController(chat, ws, exec);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
 
         Map<String, Object> text = Map.of("body", "Hello");
         Map<String, Object> msg = Map.of("from", "123", "type", "text", "text", text);
@@ -56,11 +62,11 @@ class WebhookControllerTest {
         Map<String, Object> entry = Map.of("changes", List.of(change));
         Map<String, Object> payload = Map.of("entry", List.of(entry));
 
-        when(chat.handleMessage("123", "Hello")).thenReturn("reply!");
+        when(chat.reply("123", "Hello")).thenReturn(new ConversationService.Reply("reply!", "START"));
 
-        ResponseEntity<String> res = c.receive(payload);
+        ResponseEntity<String> res = c.receive(json(payload), null);
         assertThat(res.getStatusCode().value()).isEqualTo(200);
-        verify(chat).handleMessage("123", "Hello");
+        verify(chat).reply("123", "Hello");
         verify(ws).sendTextMessage("123", "reply!");
     }
 
@@ -70,7 +76,7 @@ class WebhookControllerTest {
         WhatsappService ws = mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
 
-        WebhookController c = new WebhookController(chat, ws, exec);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
 
         // message with type 'image' and no 'text' block
         Map<String, Object> msg = Map.of("from", "999", "type", "image");
@@ -79,7 +85,7 @@ class WebhookControllerTest {
         Map<String, Object> entry = Map.of("changes", List.of(change));
         Map<String, Object> payload = Map.of("entry", List.of(entry));
 
-        ResponseEntity<String> res = c.receive(payload);
+        ResponseEntity<String> res = c.receive(json(payload), null);
         assertThat(res.getStatusCode().value()).isEqualTo(200);
         verifyNoInteractions(chat);
         verifyNoInteractions(ws);
@@ -91,9 +97,9 @@ class WebhookControllerTest {
         WhatsappService ws = mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
 
-        WebhookController c = new WebhookController(chat, ws, exec);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
         Map<String, Object> payload = Map.of();
-        ResponseEntity<String> res = c.receive(payload);
+        ResponseEntity<String> res = c.receive(json(payload), null);
         assertThat(res.getBody()).isEqualTo("No entry");
     }
 
@@ -103,14 +109,141 @@ class WebhookControllerTest {
         WhatsappService ws = mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
 
-        WebhookController c = new WebhookController(chat, ws, exec);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
 
         Map<String, Object> value = Map.of();
         Map<String, Object> change = Map.of("value", value);
         Map<String, Object> entry = Map.of("changes", List.of(change));
         Map<String, Object> payload = Map.of("entry", List.of(entry));
 
-        ResponseEntity<String> res = c.receive(payload);
+        ResponseEntity<String> res = c.receive(json(payload), null);
         assertThat(res.getBody()).isEqualTo("No messages");
     }
+
+    @Test
+    void receive_batched_payload_processes_every_message_in_order() {
+        ConversationService chat = mock(ConversationService.class);
+        WhatsappService ws = mock(WhatsappService.class);
+        ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(invocation -> {
+            Runnable r = invocation.getArgument(0);
+            r.run();
+            return null;
+        }).when(exec).execute(any(Runnable.class));
+
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
+
+        Map<String, Object> m1 = Map.of("id", "w1", "from", "111", "type", "text", "text", Map.of("body", "Hi"));
+        Map<String, Object> m2 = Map.of("id", "w2", "from", "222", "type", "text", "text", Map.of("body", "Hello"));
+        Map<String, Object> m3 = Map.of("id", "w3", "from", "111", "type", "text", "text", Map.of("body", "Alice"));
+        Map<String, Object> img = Map.of("id", "w4", "from", "333", "type", "image");
+        Map<String, Object> entry1 = Map.of("changes", List.of(
+                Map.of("value", Map.of("messages", List.of(m1, m2))),
+                Map.of("value", Map.of("statuses", List.of()))));
+        Map<String, Object> entry2 = Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(img, m3)))));
+        Map<String, Object> payload = Map.of("entry", List.of(entry1, entry2));
+
+        when(chat.reply("111", "Hi")).thenThrow(new RuntimeException("db down"));
+        when(chat.reply("111", "Alice")).thenReturn(new ConversationService.Reply("r-alice", "START"));
+        when(chat.reply("222", "Hello")).thenReturn(new ConversationService.Reply("r-hello", "START"));
+
+        ResponseEntity<String> res = c.receive(json(payload), null);
+        assertThat(res.getBody()).isEqualTo("EVENT_RECEIVED");
+
+        // the failing first message from 111 must not stop its second message
+        InOrder sender111 = inOrder(chat);
+        sender111.verify(chat).reply("111", "Hi");
+        sender111.verify(chat).reply("111", "Alice");
+        verify(ws).sendTextMessage("111", "r-alice");
+        verify(ws).sendTextMessage("222", "r-hello");
+        verify(chat, never()).reply(eq("333"), any());
+    }
+
+    @Test
+    void receive_interactive_reply_is_dispatched_and_garbage_is_rejected() {
+        ConversationService chat = mock(ConversationService.class);
+        WhatsappService ws = mock(WhatsappService.class);
+        ThreadPoolTaskExecutor exec = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(invocation -> {
+            Runnable r = invocation.getArgument(0);
+            r.run();
+            return null;
+        }).when(exec).execute(any(Runnable.class));
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(exec));
+
+        Map<String, Object> interactive = Map.of("type", "button_reply", "button_reply", Map.of("id", "yes", "title", "Yes"));
+        Map<String, Object> msg = Map.of("id", "w1", "from", "555", "type", "interactive", "interactive", interactive);
+        Map<String, Object> payload = Map.of("entry", List.of(Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(msg)))))));
+        when(chat.reply("555", "Yes")).thenReturn(new ConversationService.Reply("ok", "START"));
+
+        assertThat(c.receive(json(payload), null).getBody()).isEqualTo("EVENT_RECEIVED");
+        verify(ws).sendTextMessage("555", "ok");
+
+        ResponseEntity<String> bad = c.receive("{not json".getBytes(), null);
+        assertThat(bad.getStatusCode().value()).isEqualTo(400);
+    }
+
+    @Test
+    void receive_redelivered_message_is_processed_once() {
+        ConversationService chat = mock(ConversationService.class);
+        WhatsappService ws = mock(WhatsappService.class);
+        MessageDeduplicator dedup = new MessageDeduplicator(null, 100, Duration.ofMinutes(5), Duration.ofDays(7), null);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(Runnable::run), dedup);
+
+        Map<String, Object> msg = Map.of("id", "wamid.1", "from", "777", "type", "text", "text", Map.of("body", "1"));
+        Map<String, Object> payload = Map.of("entry", List.of(Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(msg)))))));
+        when(chat.reply("777", "1")).thenReturn(new ConversationService.Reply("Booked!", "START"));
+
+        assertThat(c.receive(json(payload), null).getBody()).isEqualTo("EVENT_RECEIVED");
+        assertThat(c.receive(json(payload), null).getBody()).isEqualTo("EVENT_RECEIVED");
+
+        verify(chat, times(1)).reply("777", "1");
+        verify(ws, times(1)).sendTextMessage("777", "Booked!");
+    }
+
+    @Test
+    void receive_acks_before_the_deduplicator_is_consulted() {
+        ConversationService chat = mock(ConversationService.class);
+        WhatsappService ws = mock(WhatsappService.class);
+        MessageDeduplicator dedup = mock(MessageDeduplicator.class);
+        when(dedup.firstSeen("wamid.2")).thenReturn(true);
+        List<Runnable> queued = new java.util.ArrayList<>();
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(queued::add), dedup);
+
+        Map<String, Object> msg = Map.of("id", "wamid.2", "from", "778", "type", "text", "text", Map.of("body", "hi"));
+        Map<String, Object> payload = Map.of("entry", List.of(Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(msg)))))));
+
+        assertThat(c.receive(json(payload), null).getBody()).isEqualTo("EVENT_RECEIVED");
+        // the insert behind firstSeen runs with the message, not on the request thread
+        verifyNoInteractions(dedup);
+
+        queued.forEach(Runnable::run);
+        verify(dedup).firstSeen("wamid.2");
+        verify(chat).reply("778", "hi");
+    }
+
+    @Test
+    void receive_refused_by_a_saturated_executor_asks_for_redelivery() {
+        ConversationService chat = mock(ConversationService.class);
+        WhatsappService ws = mock(WhatsappService.class);
+        WebhookController c = new WebhookController(chat, ws, new KeyedMailboxExecutor(task -> {
+            throw new RejectedExecutionException("saturated");
+        }));
+
+        Map<String, Object> msg = Map.of("id", "wamid.3", "from", "779", "type", "text", "text", Map.of("body", "hi"));
+        Map<String, Object> payload = Map.of("entry", List.of(Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(msg)))))));
+
+        ResponseEntity<String> res = c.receive(json(payload), null);
+
+        assertThat(res.getStatusCode().value()).isEqualTo(503);
+        verifyNoInteractions(chat, ws);
+    }
+
+    private static byte[] json(Map<String, Object> payload) {
+        try {
+            return new ObjectMapper().writeValueAsBytes(payload);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -1,7 +1,13 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.controller;
 
+import com.zoomigo.whatsapp.whatsapprentalbot.model.InboundMessage;
 import com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationService;
 import com.zoomigo.whatsapp.whatsapprentalbot.service.WhatsappService;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.KeyedMailboxExecutor;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.StageTag;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.WebhookSignature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.http.ResponseEntity;
@@ -12,7 +18,10 @@ import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,7 +41,7 @@ class WebhookControllerUnitTest {
         ConversationService cs = Mockito.mock(ConversationService.class);
         WhatsappService ws = Mockito.mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = syncExecutor();
-        WebhookController c = new WebhookController(cs, ws, exec);
+        WebhookController c = new WebhookController(cs, ws, new KeyedMailboxExecutor(exec));
 
         // set private VERIFY_TOKEN via reflection
         try {
@@ -56,21 +65,21 @@ class WebhookControllerUnitTest {
         ConversationService cs = Mockito.mock(ConversationService.class);
         WhatsappService ws = Mockito.mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = syncExecutor();
-        WebhookController c = new WebhookController(cs, ws, exec);
+        WebhookController c = new WebhookController(cs, ws, new KeyedMailboxExecutor(exec));
 
         Map<String, Object> payload = new HashMap<>();
-        ResponseEntity<String> r = c.receive(payload);
+        ResponseEntity<String> r = c.receive(json(payload), null);
         assertThat(r.getStatusCode().is2xxSuccessful()).isTrue();
         assertThat(r.getBody()).isEqualTo("No entry");
 
         payload.put("entry", List.of(Map.of()));
-        r = c.receive(payload);
+        r = c.receive(json(payload), null);
         assertThat(r.getBody()).isEqualTo("No changes");
 
         Map<String, Object> entry = new HashMap<>();
         entry.put("changes", List.of(Map.of("value", Map.of())));
         payload.put("entry", List.of(entry));
-        r = c.receive(payload);
+        r = c.receive(json(payload), null);
         assertThat(r.getBody()).isEqualTo("No messages");
     }
 
@@ -79,7 +88,7 @@ class WebhookControllerUnitTest {
         ConversationService cs = Mockito.mock(ConversationService.class);
         WhatsappService ws = Mockito.mock(WhatsappService.class);
         ThreadPoolTaskExecutor exec = syncExecutor();
-        WebhookController c = new WebhookController(cs, ws, exec);
+        WebhookController c = new WebhookController(cs, ws, new KeyedMailboxExecutor(exec));
 
         Map<String, Object> payload = new HashMap<>();
         Map<String, Object> message = new HashMap<>();
@@ -90,7 +99,7 @@ class WebhookControllerUnitTest {
         Map<String, Object> entry = Map.of("changes", List.of(change));
         payload.put("entry", List.of(entry));
 
-        ResponseEntity<String> r = c.receive(payload);
+        ResponseEntity<String> r = c.receive(json(payload), null);
         assertThat(r.getBody()).isEqualTo("EVENT_RECEIVED");
 
         // Now text message path
@@ -99,13 +108,62 @@ class WebhookControllerUnitTest {
         message.put("text", textObj);
         payload.put("entry", List.of(entry));
 
-        when(cs.handleMessage(eq("123"), eq("Hello"))).thenReturn("reply!");
+        when(cs.reply(eq("123"), eq("Hello"))).thenReturn(new ConversationService.Reply("reply!", "START"));
 
-        r = c.receive(payload);
+        r = c.receive(json(payload), null);
         assertThat(r.getBody()).isEqualTo("EVENT_RECEIVED");
 
         // ensure whatsapp service was called synchronously via executor
         verify(ws).sendTextMessage("123", "reply!");
     }
-}
 
+    @Test
+    void replyLatencyIsRecordedPerStage() {
+        ConversationService cs = Mockito.mock(ConversationService.class);
+        WhatsappService ws = Mockito.mock(WhatsappService.class);
+        WebhookController c = new WebhookController(cs, ws, new KeyedMailboxExecutor(syncExecutor()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        c.setMeterRegistry(registry);
+        when(cs.reply(eq("123"), anyString())).thenReturn(new ConversationService.Reply("reply", "ASK_DAYS"));
+        when(ws.sendTextMessage("123", "reply")).thenReturn(true);
+        doThrow(new RuntimeException("send failed")).when(ws).sendTextMessage("123", "boom");
+        when(cs.reply("123", "explode")).thenReturn(new ConversationService.Reply("boom", "ASK_BIKE"));
+        // the outbound queue is full
+        when(cs.reply("123", "busy")).thenReturn(new ConversationService.Reply("later", "ASK_PICKUP"));
+        when(ws.sendTextMessage("123", "later")).thenReturn(false);
+
+        c.dispatch(List.of(new InboundMessage("m1", "123", "text", "3"), new InboundMessage("m2", "123", "text", "explode"),
+                new InboundMessage("m3", "123", "text", "busy")));
+
+        assertThat(registry.get("conversation.reply").tag("stage", "ASK_DAYS").tag("outcome", "ok").timer().count()).isEqualTo(1);
+        assertThat(registry.get("conversation.reply").tag("stage", "ASK_BIKE").tag("outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(registry.get("conversation.reply").tag("stage", "ASK_PICKUP").tag("outcome", "dropped").timer().count()).isEqualTo(1);
+        assertThat(StageTag.current()).isEqualTo(StageTag.NONE);
+    }
+
+    @Test
+    void signatureIsCheckedWhenAnAppSecretIsSet() {
+        ConversationService cs = Mockito.mock(ConversationService.class);
+        WhatsappService ws = Mockito.mock(WhatsappService.class);
+        WebhookController c = new WebhookController(cs, ws, new KeyedMailboxExecutor(syncExecutor()));
+        org.springframework.test.util.ReflectionTestUtils.setField(c, "appSecret", "s3cret");
+        when(cs.reply("123", "Hello")).thenReturn(new ConversationService.Reply("reply!", "START"));
+        Map<String, Object> message = Map.of("from", "123", "id", "m1", "type", "text", "text", Map.of("body", "Hello"));
+        byte[] body = json(Map.of("entry", List.of(Map.of("changes", List.of(Map.of("value", Map.of("messages", List.of(message))))))));
+
+        assertThat(c.receive(body, null).getStatusCode().value()).isEqualTo(401);
+        assertThat(c.receive(body, WebhookSignature.sign("other", body)).getStatusCode().value()).isEqualTo(401);
+        verify(cs, never()).reply(anyString(), anyString());
+
+        assertThat(c.receive(body, WebhookSignature.sign("s3cret", body)).getBody()).isEqualTo("EVENT_RECEIVED");
+        verify(ws).sendTextMessage("123", "reply!");
+    }
+
+    private static byte[] json(Map<String, Object> payload) {
+        try {
+            return new ObjectMapper().writeValueAsBytes(payload);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
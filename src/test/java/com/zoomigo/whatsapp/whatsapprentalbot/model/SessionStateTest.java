@@ -0,0 +1,66 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionStateTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void writesTheCompactLayoutAndReadsItBack() throws Exception {
+        SessionState state = SessionState.EMPTY.withBikes(List.of(7L, 3L, 5L)).withPromo(12L, "ZOOMI10", 300, 2700);
+
+        String json = mapper.writeValueAsString(state);
+
+        assertThat(json).isEqualTo("{\"v\":1,\"b\":[7,3,5],\"pi\":12,\"pc\":\"ZOOMI10\",\"pd\":300,\"pf\":2700}");
+        assertThat(mapper.readValue(json, SessionState.class)).isEqualTo(state);
+        assertThat(mapper.writeValueAsString(SessionState.EMPTY)).isEqualTo("{\"v\":1}");
+    }
+
+    @Test
+    void diffListsChangedValuesAndRemovedFieldsByDocumentName() {
+        SessionState before = SessionState.EMPTY.withBikes(List.of(7L, 3L)).withPromo(12L, "ZOOMI10", 300, 2700);
+
+        SessionState.Diff diff = before.withoutPromo().withBikes(List.of(7L, 5L)).diff(before);
+
+        assertThat(diff.changed()).containsOnlyKeys("b");
+        assertThat((long[]) diff.changed().get("b")).containsExactly(7L, 5L);
+        assertThat(diff.removed()).containsExactly("pi", "pc", "pd", "pf");
+        assertThat(before.withBikes(List.of(7L, 3L)).diff(before).changed()).isEmpty();
+        assertThat(before.withPromo(12L, "ZOOMI10", 250, 2750).diff(before).changed()).containsOnlyKeys("pd", "pf");
+    }
+
+    @Test
+    void legacyDocumentIsMigratedOnRead() throws Exception {
+        String legacy = "{\"bikeMap\":{\"2\":3,\"1\":\"7\",\"x\":9},\"promoCodeId\":\"12\",\"promoCode\":\"ZOOMI10\","
+                + "\"promoAppliedDiscount\":300,\"promoFinalPrice\":\"2700\",\"other\":true}";
+
+        SessionState state = mapper.readValue(legacy, SessionState.class);
+
+        assertThat(state.version()).isZero();
+        assertThat(state.bikes()).containsExactly(7L, 3L);
+        assertThat(state.promoCodeId()).isEqualTo(12L);
+        assertThat(state.promoCode()).isEqualTo("ZOOMI10");
+        assertThat(state.hasPromoPrice()).isTrue();
+        assertThat(state.current()).isEqualTo(SessionState.EMPTY.withBikes(List.of(7L, 3L)).withPromo(12L, "ZOOMI10", 300, 2700));
+        assertThat(mapper.readValue("{}", SessionState.class).current()).isEqualTo(SessionState.EMPTY);
+    }
+
+    @Test
+    void bikeNumbersAreTheListPositions() {
+        SessionState state = SessionState.EMPTY.withBikes(List.of(7L, 3L));
+
+        assertThat(state.bikeNumbered("1")).isEqualTo(7L);
+        assertThat(state.bikeNumbered("2")).isEqualTo(3L);
+        assertThat(state.bikeNumbered("3")).isNull();
+        assertThat(state.bikeNumbered("01")).isNull();
+        assertThat(state.bikeNumbered("honda")).isNull();
+        assertThat(SessionState.EMPTY.hasBikeList()).isFalse();
+        assertThat(SessionState.EMPTY.withBikes(List.of()).hasBikeList()).isTrue();
+    }
+}
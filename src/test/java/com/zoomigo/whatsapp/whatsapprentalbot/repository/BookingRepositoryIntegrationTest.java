@@ -0,0 +1,101 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.repository;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DataJpaTest
+class BookingRepositoryIntegrationTest {
+
+    private static final LocalDate NOV_1 = LocalDate.of(2025, 11, 1);
+
+    @Autowired
+    BookingRepository bookingRepo;
+    @Autowired
+    BikeRepository bikeRepo;
+
+    @Test
+    void confirmedDaysSkipCancelledAndFinishedBookings() {
+        Long dio = bike("Honda Dio");
+        Long fz = bike("Yamaha FZ");
+        booking(dio, NOV_1, NOV_1.plusDays(3), "CONFIRMED");
+        booking(fz, NOV_1.plusDays(1), NOV_1.plusDays(2), "CONFIRMED");
+        booking(dio, NOV_1.plusDays(5), NOV_1.plusDays(6), "CANCELLED");
+        // returned on the first day asked about
+        booking(fz, NOV_1.minusDays(5), NOV_1, "CONFIRMED");
+
+        assertThat(bookingRepo.findConfirmedBikeDays(NOV_1))
+                .extracting(row -> row[0], row -> row[1])
+                .containsExactlyInAnyOrder(tuple(dio, NOV_1), tuple(fz, NOV_1.plusDays(1)));
+        assertThat(bookingRepo.findConfirmedBikeDays(fz, "Yamaha FZ", NOV_1)).singleElement()
+                .satisfies(row -> assertThat(row).containsExactly(fz, NOV_1.plusDays(1), NOV_1.plusDays(2)));
+    }
+
+    @Test
+    void overlapCountsSharedDaysOnly() {
+        Long dio = bike("Honda Dio");
+        booking(dio, NOV_1, NOV_1.plusDays(3), "CONFIRMED");
+        booking(dio, NOV_1.plusDays(10), NOV_1.plusDays(12), "CANCELLED");
+
+        assertThat(bookingRepo.countOverlapping(dio, NOV_1.plusDays(2), NOV_1.plusDays(4))).isEqualTo(1);
+        // the bike is back on the end date
+        assertThat(bookingRepo.countOverlapping(dio, NOV_1.plusDays(3), NOV_1.plusDays(5))).isZero();
+        assertThat(bookingRepo.countOverlapping(dio, NOV_1.plusDays(11), NOV_1.plusDays(13))).isZero();
+        assertThat(bookingRepo.countOverlapping(dio + 1, NOV_1, NOV_1.plusDays(20))).isZero();
+        assertThat(bikeRepo.lockById(dio)).isPresent();
+    }
+
+    @Test
+    void bookingsWithoutABikeIdHoldEveryBikeOfTheirName() {
+        Long dio = bike("Honda Dio");
+        Long otherDio = bike("Honda Dio");
+        bike("Yamaha FZ");
+        legacyBooking("Honda Dio", NOV_1, NOV_1.plusDays(3));
+        // no bike has this name any more
+        legacyBooking("Bajaj Pulsar", NOV_1, NOV_1.plusDays(3));
+
+        assertThat(bookingRepo.findConfirmedBikeDays(NOV_1))
+                .extracting(row -> row[0])
+                .containsExactlyInAnyOrder(dio, otherDio, null);
+        assertThat(bookingRepo.findConfirmedBikeDays(otherDio, "Honda Dio", NOV_1)).hasSize(1);
+        assertThat(bookingRepo.countOverlappingByName("Honda Dio", NOV_1.plusDays(2), NOV_1.plusDays(4))).isEqualTo(1);
+        assertThat(bookingRepo.countOverlapping(dio, NOV_1.plusDays(2), NOV_1.plusDays(4))).isZero();
+        assertThat(bookingRepo.countOverlappingByName("Yamaha FZ", NOV_1, NOV_1.plusDays(4))).isZero();
+    }
+
+    private Long bike(String name) {
+        Bike b = new Bike();
+        b.setName(name);
+        b.setPricePerDay(10);
+        b.setDeposit(50);
+        b.setAvailable(true);
+        return bikeRepo.save(b).getId();
+    }
+
+    private void booking(Long bikeId, LocalDate start, LocalDate end, String status) {
+        Booking b = new Booking();
+        b.setWaId("u1");
+        b.setBikeId(bikeId);
+        b.setStartDate(start);
+        b.setEndDate(end);
+        b.setStatus(status);
+        bookingRepo.save(b);
+    }
+
+    private void legacyBooking(String bikeName, LocalDate start, LocalDate end) {
+        Booking b = new Booking();
+        b.setWaId("u1");
+        b.setBike(bikeName);
+        b.setStartDate(start);
+        b.setEndDate(end);
+        b.setStatus("CONFIRMED");
+        bookingRepo.save(b);
+    }
+}
@@ -0,0 +1,105 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.repository;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCodeBike;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// not transactional: every redeem has to commit on its own, as concurrent confirmations do
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PromoCodeRepositoryIntegrationTest {
+
+    @Autowired
+    PromoCodeRepository promoRepo;
+    @Autowired
+    PromoCodeBikeRepository promoBikeRepo;
+    @Autowired
+    BikeRepository bikeRepo;
+
+    @AfterEach
+    void tearDown() {
+        promoBikeRepo.deleteAll();
+        promoRepo.deleteAll();
+        bikeRepo.deleteAll();
+    }
+
+    @Test
+    void parallelRedemptionsNeverExceedTheAllocation() throws Exception {
+        PromoCode promo = promo("FLASH50", 50);
+
+        int successes = redeemInParallel(promo.getId(), 300);
+
+        assertThat(successes).isEqualTo(50);
+        assertThat(promoRepo.findById(promo.getId()).orElseThrow().getUsedCount()).isEqualTo(50);
+    }
+
+    @Test
+    void zeroAllocationIsUnlimitedAndInactivePromosAreRefused() throws Exception {
+        PromoCode unlimited = promo("ALWAYS", 0);
+        assertThat(redeemInParallel(unlimited.getId(), 40)).isEqualTo(40);
+        assertThat(promoRepo.findById(unlimited.getId()).orElseThrow().getUsedCount()).isEqualTo(40);
+
+        PromoCode off = promo("OFF", 10);
+        off.setActive(false);
+        promoRepo.save(off);
+        assertThat(promoRepo.redeem(off.getId())).isZero();
+    }
+
+    @Test
+    void mappingIdsLoadInOneQuery() {
+        PromoCode promo = promo("BIKE1_100", 10);
+        Bike bike = new Bike();
+        bike.setName("Honda Dio");
+        bike.setPricePerDay(1500);
+        bike.setDeposit(5000);
+        Long bikeId = bikeRepo.save(bike).getId();
+        PromoCodeBike mapping = new PromoCodeBike();
+        mapping.setPromoCode(promo);
+        mapping.setBike(bike);
+        promoBikeRepo.save(mapping);
+
+        assertThat(promoBikeRepo.findAllPromoBikeIds()).singleElement()
+                .satisfies(row -> assertThat(row).containsExactly(promo.getId(), "BIKE1_100", bikeId));
+    }
+
+    private PromoCode promo(String code, int allocation) {
+        PromoCode p = new PromoCode();
+        p.setCode(code);
+        p.setTotalAllocation(allocation);
+        p.setUsedCount(0);
+        p.setActive(true);
+        return promoRepo.save(p);
+    }
+
+    private int redeemInParallel(Long id, int attempts) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return promoRepo.redeem(id);
+                }));
+            }
+            start.countDown();
+            int successes = 0;
+            for (Future<Integer> r : results) successes += r.get(30, TimeUnit.SECONDS);
+            return successes;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.repository;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationContextLoader;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EXPLAINs the SQL Hibernate actually sends for the lookups made on every message, against the schema
+ * the Flyway migrations create, and fails when H2 would answer one with a table scan.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.zoomigo.whatsapp.whatsapprentalbot.repository.QueryPlanTest$Recorder")
+@Import(ConversationContextLoader.class)
+class QueryPlanTest {
+
+    static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    public static class Recorder implements StatementInspector {
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    JdbcTemplate jdbc;
+    @Autowired
+    ChatSessionRepository sessionRepo;
+    @Autowired
+    BookingRepository bookingRepo;
+    @Autowired
+    ExchangeRateRepository rateRepo;
+    @Autowired
+    PromoCodeBikeRepository promoBikeRepo;
+    @Autowired
+    UserRepository userRepo;
+    @Autowired
+    ConversationContextLoader contextLoader;
+
+    @BeforeEach
+    void clear() {
+        STATEMENTS.clear();
+    }
+
+    @Test
+    void sessionByWaIdUsesAnIndex() {
+        sessionRepo.findByWaId("94770000000");
+        assertIndexed("94770000000");
+    }
+
+    @Test
+    void latestBookingUsesAnIndex() {
+        bookingRepo.findTopByWaIdOrderByCreatedAtDesc("94770000000");
+        assertIndexed("94770000000", 1);
+    }
+
+    @Test
+    void overlapCheckUsesAnIndex() {
+        LocalDate day = LocalDate.of(2025, 11, 1);
+        bookingRepo.countOverlapping(1L, day, day.plusDays(3));
+        assertIndexed(1L, day.plusDays(3), day);
+        bookingRepo.countOverlappingByName("Honda Dio", day, day.plusDays(3));
+        assertIndexed("Honda Dio", day.plusDays(3), day);
+    }
+
+    @Test
+    void activeRateUsesAnIndex() {
+        rateRepo.findByActiveTargetTrue();
+        assertIndexed();
+        rateRepo.findByTargetCurrencyAndActiveTargetTrue("LKR");
+        assertIndexed("LKR");
+    }
+
+    @Test
+    void promoBikesByPromoUseAnIndex() {
+        promoBikeRepo.findByPromoCode_Id(1L);
+        assertIndexed(1L);
+    }
+
+    @Test
+    void userByPhoneNumberUsesAnIndex() {
+        userRepo.findByPhoneNumber("94770000000");
+        assertIndexed("94770000000");
+    }
+
+    @Test
+    void conversationContextUsesIndexes() {
+        contextLoader.load("94770000000");
+        String sql = STATEMENTS.get(STATEMENTS.size() - 1);
+        // every parameter of the context query is the waId
+        assertIndexed(Collections.nCopies((int) sql.chars().filter(c -> c == '?').count(), "94770000000").toArray());
+    }
+
+    // EXPLAIN the last statement Hibernate sent, bound with the values it was sent with
+    private void assertIndexed(Object... params) {
+        assertThat(STATEMENTS).isNotEmpty();
+        String sql = STATEMENTS.get(STATEMENTS.size() - 1);
+        String plan = jdbc.queryForObject("EXPLAIN " + sql, String.class, params);
+        assertThat(plan).as("plan for %s", sql).doesNotContainIgnoringCase("tableScan");
+    }
+}
@@ -6,11 +6,12 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 class AppConfigServiceTest {
 
@@ -36,5 +37,47 @@ class AppConfigServiceTest {
         Mockito.verify(repo).save(any(AppConfig.class));
         assertThat(s.getDefaultCurrency()).isEqualTo("USD");
     }
-}
 
+    @Test
+    void readsAreServedFromOneBulkLoad() {
+        AppConfigRepository repo = Mockito.mock(AppConfigRepository.class);
+        when(repo.findAll()).thenReturn(List.of(new AppConfig("default_currency", "LKR"), new AppConfig("max_days", "30")));
+
+        AppConfigService s = new AppConfigService(repo);
+        for (int i = 0; i < 5; i++) {
+            assertThat(s.getDefaultCurrency()).isEqualTo("LKR");
+            assertThat(s.getInt("max_days", 7)).isEqualTo(30);
+            assertThat(s.getString("app.shop-address", "Galle Road")).isEqualTo("Galle Road");
+        }
+
+        verify(repo, times(1)).findAll();
+        // the missing key is looked up once, not once per read
+        verify(repo, times(1)).findById("app.shop-address");
+        verify(repo, never()).findById("default_currency");
+    }
+
+    @Test
+    void pollReloadsOnlyWhenUpdatedAtMoves() {
+        AppConfigRepository repo = Mockito.mock(AppConfigRepository.class);
+        AppConfig cfg = new AppConfig("default_currency", "LKR");
+        cfg.setUpdatedAt(Instant.parse("2025-10-15T10:00:00Z"));
+        when(repo.findAll()).thenReturn(List.of(cfg));
+        when(repo.count()).thenReturn(1L);
+        when(repo.findMaxUpdatedAt()).thenReturn(cfg.getUpdatedAt());
+
+        AppConfigService s = new AppConfigService(repo);
+        assertThat(s.getDefaultCurrency()).isEqualTo("LKR");
+        long version = s.version();
+        s.poll();
+        verify(repo, times(1)).findAll();
+
+        AppConfig edited = new AppConfig("default_currency", "EUR");
+        edited.setUpdatedAt(Instant.parse("2025-10-15T10:05:00Z"));
+        when(repo.findAll()).thenReturn(List.of(edited));
+        when(repo.findMaxUpdatedAt()).thenReturn(edited.getUpdatedAt());
+        s.poll();
+
+        assertThat(s.getDefaultCurrency()).isEqualTo("EUR");
+        assertThat(s.version()).isGreaterThan(version);
+    }
+}
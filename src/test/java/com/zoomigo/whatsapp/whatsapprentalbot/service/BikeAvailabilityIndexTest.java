@@ -0,0 +1,104 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.BookingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BikeAvailabilityIndexTest {
+
+    private final BookingRepository bookingRepo = mock(BookingRepository.class);
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    private final BikeAvailabilityIndex index = new BikeAvailabilityIndex(bookingRepo, "UTC", 400);
+
+    @Test
+    void answersDateRangesFromMemoryAfterOneLoad() {
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(rows(
+                new Object[]{1L, today.plusDays(5), today.plusDays(8)},
+                new Object[]{2L, today.minusDays(3), today.plusDays(1)}));
+
+        // bike 1 is out on days 5, 6 and 7 and back on day 8
+        assertThat(index.isFree(1L, today.plusDays(2), today.plusDays(5))).isTrue();
+        assertThat(index.isFree(1L, today.plusDays(4), today.plusDays(6))).isFalse();
+        assertThat(index.isFree(1L, today.plusDays(7), today.plusDays(9))).isFalse();
+        assertThat(index.isFree(1L, today.plusDays(8), today.plusDays(10))).isTrue();
+        // a booking that started before today still holds its remaining days
+        assertThat(index.isFree(2L, today, today.plusDays(1))).isFalse();
+        assertThat(index.isFree(2L, today.plusDays(1), today.plusDays(4))).isTrue();
+        assertThat(index.isFree(3L, today, today.plusDays(30))).isTrue();
+        // past the horizon only the confirmation check can tell
+        assertThat(index.isFree(1L, today.plusDays(500), today.plusDays(510))).isTrue();
+
+        verify(bookingRepo, times(1)).findConfirmedBikeDays(today);
+    }
+
+    @Test
+    void confirmAndCancelUpdateTheIndexInPlace() {
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(rows(new Object[]{1L, today.plusDays(10), today.plusDays(12)}));
+        BikeAvailabilityIndex.Snapshot before = index.snapshot();
+
+        Booking booking = booking(1L, today.plusDays(2), today.plusDays(4));
+        index.booked(booking);
+        assertThat(index.isFree(1L, today.plusDays(3), today.plusDays(4))).isFalse();
+        // published snapshots are not changed by later bookings
+        assertThat(before.isFree(1L, today.plusDays(3), today.plusDays(4))).isTrue();
+
+        // the database no longer has the cancelled booking; the other one stays
+        when(bookingRepo.findConfirmedBikeDays(eq(1L), any(), any(LocalDate.class))).thenReturn(rows(new Object[]{1L, today.plusDays(10), today.plusDays(12)}));
+        index.cancelled(booking);
+
+        assertThat(index.isFree(1L, today.plusDays(2), today.plusDays(4))).isTrue();
+        assertThat(index.isFree(1L, today.plusDays(11), today.plusDays(12))).isFalse();
+        verify(bookingRepo, times(1)).findConfirmedBikeDays(any(LocalDate.class));
+    }
+
+    @Test
+    void cancellingABookingWithoutABikeIdReloadsTheIndex() {
+        // the legacy booking holds both bikes of its name; a booking of a removed bike comes back without an id
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(rows(
+                new Object[]{1L, today, today.plusDays(2)},
+                new Object[]{2L, today, today.plusDays(2)},
+                new Object[]{null, today, today.plusDays(2)}));
+        assertThat(index.isFree(2L, today, today.plusDays(1))).isFalse();
+
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(rows());
+        index.cancelled(booking(null, today, today.plusDays(2)));
+
+        assertThat(index.isFree(1L, today, today.plusDays(1))).isTrue();
+        assertThat(index.isFree(2L, today, today.plusDays(1))).isTrue();
+        verify(bookingRepo, never()).findConfirmedBikeDays(any(), any(), any());
+    }
+
+    @Test
+    void failedRefreshKeepsTheLastIndex() {
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(rows(new Object[]{1L, today, today.plusDays(2)}));
+        index.snapshot();
+
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenThrow(new RuntimeException("db down"));
+        index.refresh();
+
+        assertThat(index.isFree(1L, today, today.plusDays(1))).isFalse();
+    }
+
+    private static Booking booking(Long bikeId, LocalDate start, LocalDate end) {
+        Booking b = new Booking();
+        b.setBikeId(bikeId);
+        b.setStartDate(start);
+        b.setEndDate(end);
+        b.setStatus("CONFIRMED");
+        return b;
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+}
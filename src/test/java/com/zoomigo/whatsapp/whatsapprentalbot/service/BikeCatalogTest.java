@@ -0,0 +1,141 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class BikeCatalogTest {
+
+    private final BikeRepository bikeRepo = mock(BikeRepository.class);
+
+    @Test
+    void loadsOnceAndServesReadsFromMemory() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(3L, "Vespa", true), bike(1L, "Dio", true), bike(2L, "Retired", false)));
+        BikeCatalog catalog = new BikeCatalog(bikeRepo);
+
+        assertThat(catalog.available()).extracting(Bike::getName).containsExactly("Dio", "Vespa");
+        assertThat(catalog.findById(2L).getName()).isEqualTo("Retired");
+        assertThat(catalog.version()).isEqualTo(1);
+        assertThatThrownBy(() -> catalog.available().add(bike(9L, "x", true))).isInstanceOf(UnsupportedOperationException.class);
+
+        verify(bikeRepo, times(1)).findAll();
+        verify(bikeRepo, never()).findById(anyLong());
+    }
+
+    @Test
+    void changeHookRebuildsAndBumpsVersionOnlyWhenContentChanged() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Dio", true)));
+        BikeCatalog catalog = new BikeCatalog(bikeRepo);
+        BikeCatalog.Snapshot first = catalog.snapshot();
+
+        // an unrelated save elsewhere: rebuilt, but identical content keeps the version
+        new EntityChangeListener().onChange(bike(1L, "Dio", true));
+        assertThat(catalog.snapshot()).isSameAs(first);
+
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Dio", false), bike(2L, "Vespa", true)));
+        new EntityChangeListener().onChange(bike(1L, "Dio", false));
+        BikeCatalog.Snapshot second = catalog.snapshot();
+
+        assertThat(second.version()).isEqualTo(first.version() + 1);
+        assertThat(second.available()).extracting(Bike::getName).containsExactly("Vespa");
+        assertThat(first.available()).extracting(Bike::getName).containsExactly("Dio");
+        verify(bikeRepo, times(3)).findAll();
+    }
+
+    @Test
+    void unknownIdFallsBackToRepositoryAndFailedPollKeepsLastSnapshot() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Dio", true)));
+        BikeCatalog catalog = new BikeCatalog(bikeRepo);
+        catalog.snapshot();
+
+        Bike added = bike(5L, "New", true);
+        when(bikeRepo.findById(5L)).thenReturn(Optional.of(added));
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Dio", true), added));
+        assertThat(catalog.findById(5L)).isEqualTo(added);
+        assertThat(catalog.findById(5L)).isEqualTo(added);
+        verify(bikeRepo, times(1)).findById(5L);
+
+        when(bikeRepo.findAll()).thenThrow(new IllegalStateException("db down"));
+        catalog.refresh();
+        assertThat(catalog.available()).hasSize(2);
+    }
+
+    @Test
+    void selectingABikeTakesNoBikeQueries() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Honda Dio", true), bike(2L, "Yamaha FZ", true)));
+        BikeCatalog catalog = new BikeCatalog(bikeRepo);
+        catalog.snapshot();
+        clearInvocations(bikeRepo);
+
+        UserRepository userRepo = mock(UserRepository.class);
+        ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+        ConversationService svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, mock(SessionResetService.class),
+                mock(BookingRepository.class), mock(PromoCodeRepository.class), mock(PromoCodeBikeRepository.class));
+        svc.setBikeCatalog(catalog);
+
+        User u = new User();
+        u.setPhoneNumber("b1");
+        u.setStage("ASK_BIKE");
+        u.setDays(2);
+        u.setStartDate(LocalDate.of(2025, 12, 1));
+        when(userRepo.findByPhoneNumber("b1")).thenReturn(Optional.of(u));
+        Map<String, Object> data = new HashMap<>(Map.of("bikeMap", Map.of("1", 1, "2", 2)));
+        when(chatSessionRepo.findByWaId("b1")).thenReturn(Optional.of(new ChatSessionEntity("b1", "ASK_BIKE", SessionState.fromMap(data))));
+
+        String byNumber = svc.handleMessage("b1", "2");
+        u.setStage("ASK_BIKE");
+        String byName = svc.handleMessage("b1", "honda dio");
+
+        assertThat(byNumber).contains("Yamaha FZ");
+        assertThat(byName).contains("Honda Dio");
+        verifyNoInteractions(bikeRepo);
+    }
+
+    @Test
+    void ambiguousNameAsksWhichListedBikeWasMeant() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Honda Dio", true), bike(2L, "Honda CB Shine", true), bike(3L, "Yamaha FZ", true)));
+        BikeCatalog catalog = new BikeCatalog(bikeRepo);
+        UserRepository userRepo = mock(UserRepository.class);
+        ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+        ConversationService svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, mock(SessionResetService.class),
+                mock(BookingRepository.class), mock(PromoCodeRepository.class), mock(PromoCodeBikeRepository.class));
+        svc.setBikeCatalog(catalog);
+
+        User u = new User();
+        u.setPhoneNumber("b2");
+        u.setStage("ASK_BIKE");
+        when(userRepo.findByPhoneNumber("b2")).thenReturn(Optional.of(u));
+        Map<String, Object> data = new HashMap<>(Map.of("bikeMap", Map.of("1", 1, "2", 2, "3", 3)));
+        when(chatSessionRepo.findByWaId("b2")).thenReturn(Optional.of(new ChatSessionEntity("b2", "ASK_BIKE", SessionState.fromMap(data))));
+
+        String reply = svc.handleMessage("b2", "honda");
+
+        assertThat(reply).contains("Did you mean").contains("1. Honda Dio").contains("2. Honda CB Shine").doesNotContain("Yamaha");
+        assertThat(u.getStage()).isEqualTo("ASK_BIKE");
+    }
+
+    private static Bike bike(Long id, String name, boolean available) {
+        Bike b = new Bike();
+        b.setId(id);
+        b.setName(name);
+        b.setPricePerDay(1000);
+        b.setDeposit(5000);
+        b.setAvailable(available);
+        return b;
+    }
+}
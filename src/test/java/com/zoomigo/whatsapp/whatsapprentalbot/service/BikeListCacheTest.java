@@ -0,0 +1,119 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BikeListCacheTest {
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+    private final BikeRepository bikeRepo = mock(BikeRepository.class);
+    private final ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+    private final ExchangeRateService rates = mock(ExchangeRateService.class);
+
+    private ConversationService svc;
+    private BigDecimal lkrPerUsd = new BigDecimal("300");
+
+    @BeforeEach
+    void setUp() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Honda Dio", 10), bike(2L, "Yamaha FZ", 12)));
+        when(rates.getActiveCurrency()).thenReturn("LKR");
+        when(rates.rateVersion()).thenReturn(1L);
+        when(rates.convert(any(), eq("USD"), eq("LKR"))).thenAnswer(inv -> ((BigDecimal) inv.getArgument(0)).multiply(lkrPerUsd));
+
+        svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, mock(SessionResetService.class), mock(BookingRepository.class),
+                mock(PromoCodeRepository.class), mock(PromoCodeBikeRepository.class), rates);
+        svc.setBikeCatalog(new BikeCatalog(bikeRepo));
+        svc.setBikeListCache(new BikeListCache(Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void listIsRenderedOnceAndEveryUserGetsTheirOwnBikeMap() {
+        String first = reachBikeList("u1");
+        String second = reachBikeList("u2");
+
+        assertThat(first).isEqualTo(second).contains("1. Honda Dio - LKR 3,000.00/day", "2. Yamaha FZ - LKR 3,600.00/day");
+        verify(rates, times(2)).convert(any(), any(), any());
+        assertThat(savedBikes("u2")).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void newRateVersionReRendersThePrices() {
+        reachBikeList("u1");
+
+        lkrPerUsd = new BigDecimal("310");
+        when(rates.rateVersion()).thenReturn(2L);
+
+        assertThat(reachBikeList("u2")).contains("1. Honda Dio - LKR 3,100.00/day");
+        verify(rates, times(4)).convert(any(), any(), any());
+    }
+
+    @Test
+    void catalogChangeReRendersTheList() {
+        reachBikeList("u1");
+
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(2L, "Yamaha FZ", 12), bike(3L, "Vespa", 20)));
+        new EntityChangeListener().onChange(bike(3L, "Vespa", 20));
+
+        String reply = reachBikeList("u2");
+        assertThat(reply).contains("1. Yamaha FZ", "2. Vespa").doesNotContain("Honda Dio");
+        assertThat(savedBikes("u2")).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void listIsRenderedFromTheBikesTheMessageRead() {
+        // the catalog moves on between the message reading its bikes and rendering the list
+        List<Bike> read = List.of(bike(1L, "Honda Dio", 10));
+        BikeCatalog catalog = mock(BikeCatalog.class);
+        when(catalog.available()).thenReturn(read);
+        when(catalog.snapshot()).thenReturn(new BikeCatalog.Snapshot(2L, List.of(bike(3L, "Vespa", 20)), java.util.Map.of(), null));
+        svc.setBikeCatalog(catalog);
+
+        String reply = reachBikeList("u1");
+
+        assertThat(reply).contains("1. Honda Dio").doesNotContain("Vespa");
+        assertThat(savedBikes("u1")).containsExactly(1L);
+    }
+
+    private String reachBikeList(String waId) {
+        User u = new User();
+        u.setPhoneNumber(waId);
+        u.setStage("ASK_PICKUP");
+        when(userRepo.findByPhoneNumber(waId)).thenReturn(Optional.of(u));
+        when(chatSessionRepo.findByWaId(waId)).thenReturn(Optional.of(new ChatSessionEntity(waId, "ASK_PICKUP", SessionState.EMPTY)));
+        return svc.handleMessage(waId, "1");
+    }
+
+    private long[] savedBikes(String waId) {
+        ArgumentCaptor<ChatSessionEntity> saved = ArgumentCaptor.forClass(ChatSessionEntity.class);
+        verify(chatSessionRepo, atLeastOnce()).save(saved.capture());
+        ChatSessionEntity session = saved.getAllValues().stream().filter(s -> waId.equals(s.getWaId())).reduce((a, b) -> b).orElseThrow();
+        return session.getData().bikes();
+    }
+
+    private static Bike bike(Long id, String name, int pricePerDay) {
+        Bike b = new Bike();
+        b.setId(id);
+        b.setName(name);
+        b.setPricePerDay(pricePerDay);
+        b.setDeposit(50);
+        b.setAvailable(true);
+        return b;
+    }
+}
@@ -0,0 +1,89 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ChatSessionRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChatSessionWriterTest {
+
+    private final ChatSessionRepository repo = mock(ChatSessionRepository.class);
+    private final ObjectMapper mapper = spy(new ObjectMapper());
+
+    @Test
+    void existingSessionIsPatchedWithOnlyItsChangedAndRemovedFields() {
+        SessionState before = SessionState.EMPTY.withBikes(List.of(7L, 3L)).withPromo(12L, "ZOOMI10", 300, 2700);
+        ChatSessionEntity session = session(before.withoutPromo().withBikes(List.of(7L, 5L)));
+        when(repo.patchData(anyLong(), any(), any(), any(), any())).thenReturn(1);
+
+        new ChatSessionWriter(repo, mapper, true).write(session, before, false);
+
+        verify(repo).patchData(5L, "ASK_PICKUP", session.getLastUpdated(), "{\"b\":[7,5]}", "{\"pi\",\"pc\",\"pd\",\"pf\"}");
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void stageOnlyChangeSendsAnEmptyPatch() {
+        SessionState before = SessionState.EMPTY.withBikes(List.of(7L, 3L));
+        when(repo.patchData(anyLong(), any(), any(), any(), any())).thenReturn(1);
+
+        new ChatSessionWriter(repo, mapper, true).write(session(before), before, false);
+
+        verify(repo).patchData(eq(5L), eq("ASK_PICKUP"), any(), eq("{}"), eq("{}"));
+    }
+
+    @Test
+    void unchangedFieldsAreNotSerialized() {
+        SessionState before = SessionState.EMPTY.withBikes(List.of(7L, 3L)).withPromo(12L, "ZOOMI10", 300, 2700);
+        when(repo.patchData(anyLong(), any(), any(), any(), any())).thenReturn(1);
+
+        new ChatSessionWriter(repo, mapper, true).write(session(before.withPromo(12L, "ZOOMI10", 250, 2750)), before, false);
+
+        verify(repo).patchData(eq(5L), eq("ASK_PICKUP"), any(), eq("{\"pd\":250,\"pf\":2750}"), eq("{}"));
+        verify(mapper, never()).valueToTree(any(long[].class));
+        verify(mapper, never()).valueToTree(any(SessionState.class));
+    }
+
+    @Test
+    void newSessionsLegacyDocumentsAndOtherDatabasesAreSavedWhole() {
+        ChatSessionEntity session = session(SessionState.EMPTY.withBikes(List.of(4L)));
+
+        new ChatSessionWriter(repo, mapper, true).write(session, null, true);
+        new ChatSessionWriter(repo, mapper, true).write(session, SessionState.fromMap(Map.of("bikeMap", Map.of("1", 4))), false);
+        new ChatSessionWriter(repo, mapper, false).write(session, SessionState.EMPTY, false);
+
+        verify(repo, times(3)).save(session);
+        verify(repo, never()).patchData(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void sessionDeletedMeanwhileIsSavedWhole() {
+        ChatSessionEntity session = session(SessionState.EMPTY.withBikes(List.of(4L)));
+        when(repo.patchData(anyLong(), any(), any(), any(), any())).thenReturn(0);
+
+        new ChatSessionWriter(repo, mapper, true).write(session, SessionState.EMPTY, false);
+
+        verify(repo).save(session);
+    }
+
+    @Test
+    void removedKeysAreQuotedForAPostgresArray() {
+        assertThat(ChatSessionWriter.textArray(List.of())).isEqualTo("{}");
+        assertThat(ChatSessionWriter.textArray(List.of("a,b", "say \"hi\"", "c\\d")))
+                .isEqualTo("{\"a,b\",\"say \\\"hi\\\"\",\"c\\\\d\"}");
+    }
+
+    private static ChatSessionEntity session(SessionState data) {
+        ChatSessionEntity s = new ChatSessionEntity("w1", "ASK_PICKUP", data);
+        s.setId(5L);
+        return s;
+    }
+}
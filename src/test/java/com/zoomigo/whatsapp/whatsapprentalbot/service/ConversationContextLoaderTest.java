@@ -0,0 +1,128 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.ConversationContext;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(ConversationContextLoader.class)
+class ConversationContextLoaderTest {
+
+    @Autowired
+    ConversationContextLoader loader;
+    @Autowired
+    EntityManager em;
+
+    @Test
+    void existingUserLoadsEverythingInOneStatement() {
+        Bike bike = new Bike();
+        bike.setName("Honda Dio");
+        bike.setPricePerDay(1500);
+        bike.setDeposit(5000);
+        em.persist(bike);
+
+        PromoCode promo = new PromoCode();
+        promo.setCode("ZOOMI10");
+        em.persist(promo);
+
+        User u = new User();
+        u.setPhoneNumber("9477");
+        u.setStage("CONFIRM_BIKE");
+        u.setSelectedBikeId(bike.getId());
+        em.persist(u);
+        em.persist(new ChatSessionEntity("9477", "CONFIRM_BIKE", SessionState.fromMap(Map.of("promoCode", "ZOOMI10"))));
+
+        Booking older = booking("9477", Instant.parse("2025-01-01T00:00:00Z"));
+        Booking latest = booking("9477", Instant.parse("2025-02-01T00:00:00Z"));
+        latest.setPromoCode(promo);
+        em.persist(older);
+        em.persist(latest);
+        em.persist(booking("someone-else", Instant.parse("2025-03-01T00:00:00Z")));
+        em.flush();
+        em.clear();
+
+        Statistics stats = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        ConversationContext ctx = loader.load("9477");
+
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(ctx.user().getStage()).isEqualTo("CONFIRM_BIKE");
+        assertThat(ctx.session().getData().promoCode()).isEqualTo("ZOOMI10");
+        assertThat(ctx.selectedBike().getName()).isEqualTo("Honda Dio");
+        assertThat(ctx.latestBooking().getId()).isEqualTo(latest.getId());
+        assertThat(ctx.latestBooking().getPromoCode().getCode()).isEqualTo("ZOOMI10");
+    }
+
+    @Test
+    void unknownWaIdGetsUserAndSessionCreatedOnce() {
+        ConversationContext first = loader.load("new-1");
+        em.clear();
+        ConversationContext second = loader.load("new-1");
+
+        assertThat(first.user().getStage()).isEqualTo("START");
+        assertThat(first.session().getState()).isEqualTo("START");
+        assertThat(first.session().getData().current()).isEqualTo(SessionState.EMPTY);
+        assertThat(first.selectedBike()).isNull();
+        assertThat(first.latestBooking()).isNull();
+        assertThat(second.user().getId()).isEqualTo(first.user().getId());
+        assertThat(second.session().getId()).isEqualTo(first.session().getId());
+        assertThat(em.createQuery("select count(s) from ChatSessionEntity s where s.waId = 'new-1'", Long.class).getSingleResult())
+                .isEqualTo(1L);
+    }
+
+    @Test
+    void userWithoutSessionGetsASession() {
+        User u = new User();
+        u.setPhoneNumber("legacy");
+        u.setStage("ASK_DAYS");
+        u.setName("Bob");
+        em.persist(u);
+        em.flush();
+        em.clear();
+
+        ConversationContext ctx = loader.load("legacy");
+
+        assertThat(ctx.user().getName()).isEqualTo("Bob");
+        assertThat(ctx.user().getStage()).isEqualTo("ASK_DAYS");
+        assertThat(ctx.session().getWaId()).isEqualTo("legacy");
+    }
+
+    @Test
+    void sessionStoredInTheOldLayoutIsMigratedOnRead() {
+        User u = new User();
+        u.setPhoneNumber("9478");
+        u.setStage("ASK_BIKE");
+        em.persist(u);
+        em.createNativeQuery("insert into chat_session (wa_id, state, data_json, last_updated) values ('9478', 'ASK_BIKE',"
+                + " '{\"bikeMap\":{\"1\":4,\"2\":2},\"promoCode\":\"ZOOMI10\"}' FORMAT JSON, current_timestamp)").executeUpdate();
+        em.flush();
+        em.clear();
+
+        SessionState data = loader.load("9478").session().getData();
+
+        assertThat(data.version()).isZero();
+        assertThat(data.bikes()).containsExactly(4L, 2L);
+        assertThat(data.promoCode()).isEqualTo("ZOOMI10");
+    }
+
+    private static Booking booking(String waId, Instant createdAt) {
+        Booking b = new Booking();
+        b.setWaId(waId);
+        b.setStatus("CONFIRMED");
+        b.setCreatedAt(createdAt);
+        return b;
+    }
+}
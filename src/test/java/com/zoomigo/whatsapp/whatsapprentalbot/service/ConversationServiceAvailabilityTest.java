@@ -0,0 +1,121 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConversationServiceAvailabilityTest {
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+    private final BikeRepository bikeRepo = mock(BikeRepository.class);
+    private final ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+    private final BookingRepository bookingRepo = mock(BookingRepository.class);
+    private final LocalDate start = LocalDate.now(ZoneOffset.UTC).plusDays(3);
+
+    private ConversationService svc;
+    private BikeAvailabilityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        when(bikeRepo.findAll()).thenReturn(List.of(bike(1L, "Honda Dio"), bike(2L, "Yamaha FZ")));
+        // Honda Dio is out on the second day of the requested rental
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(new ArrayList<>(List.<Object[]>of(
+                new Object[]{1L, start.plusDays(1), start.plusDays(2)})));
+
+        svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, mock(SessionResetService.class), bookingRepo,
+                mock(PromoCodeRepository.class), mock(PromoCodeBikeRepository.class));
+        svc.setBikeCatalog(new BikeCatalog(bikeRepo));
+        index = new BikeAvailabilityIndex(bookingRepo, "UTC", 400);
+        svc.setAvailabilityIndex(index);
+    }
+
+    @Test
+    void bikeListLeavesOutBikesBookedForTheRequestedDays() {
+        String reply = handle(user("u1", "ASK_PICKUP", 3));
+
+        assertThat(reply).contains("1. Yamaha FZ").doesNotContain("Honda Dio");
+        assertThat(savedBikes("u1")).containsExactly(2L);
+    }
+
+    @Test
+    void noFreeBikeSaysSoInsteadOfAnEmptyList() {
+        when(bookingRepo.findConfirmedBikeDays(any(LocalDate.class))).thenReturn(new ArrayList<>(List.<Object[]>of(
+                new Object[]{1L, start, start.plusDays(1)}, new Object[]{2L, start, start.plusDays(1)})));
+
+        assertThat(handle(user("u1", "ASK_PICKUP", 1))).contains("all our bikes are booked");
+    }
+
+    @Test
+    void confirmingABikeBookedMeanwhileSavesNothingAndRelists() {
+        User u = user("u1", "CONFIRM_BIKE", 1);
+        u.setSelectedBikeId(2L);
+        when(bookingRepo.countOverlapping(2L, start, start.plusDays(1))).thenReturn(1L);
+
+        String reply = handle(u);
+
+        assertThat(reply).contains("*Yamaha FZ* has just been booked", "1. Honda Dio");
+        verify(bookingRepo, never()).save(any());
+        assertThat(u.getStage()).isEqualTo("ASK_BIKE");
+    }
+
+    @Test
+    void confirmedBookingRecordsTheBikeAndTakesItsDays() {
+        User u = user("u1", "CONFIRM_BIKE", 1);
+        u.setSelectedBikeId(2L);
+        index.snapshot();
+
+        assertThat(handle(u)).contains("Booking confirmed");
+
+        ArgumentCaptor<Booking> saved = ArgumentCaptor.forClass(Booking.class);
+        verify(bookingRepo).save(saved.capture());
+        assertThat(saved.getValue().getBikeId()).isEqualTo(2L);
+        assertThat(index.isFree(2L, start, start.plusDays(1))).isFalse();
+    }
+
+    private String handle(User u) {
+        return svc.handleMessage(u.getPhoneNumber(), "1");
+    }
+
+    private User user(String waId, String stage, int days) {
+        User u = new User();
+        u.setPhoneNumber(waId);
+        u.setName("Alice");
+        u.setStage(stage);
+        u.setDays(days);
+        u.setStartDate(start);
+        u.setPickupType("Pickup at shop");
+        when(userRepo.findByPhoneNumber(waId)).thenReturn(Optional.of(u));
+        when(chatSessionRepo.findByWaId(waId)).thenReturn(Optional.of(new ChatSessionEntity(waId, stage, SessionState.EMPTY)));
+        return u;
+    }
+
+    private long[] savedBikes(String waId) {
+        ArgumentCaptor<ChatSessionEntity> saved = ArgumentCaptor.forClass(ChatSessionEntity.class);
+        verify(chatSessionRepo, atLeastOnce()).save(saved.capture());
+        return saved.getAllValues().get(saved.getAllValues().size() - 1).getData().bikes();
+    }
+
+    private static Bike bike(Long id, String name) {
+        Bike b = new Bike();
+        b.setId(id);
+        b.setName(name);
+        b.setPricePerDay(10);
+        b.setDeposit(50);
+        b.setAvailable(true);
+        return b;
+    }
+}
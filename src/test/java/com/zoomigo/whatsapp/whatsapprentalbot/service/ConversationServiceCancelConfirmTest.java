@@ -3,13 +3,13 @@ package com.zoomigo.whatsapp.whatsapprentalbot.service;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -47,7 +47,7 @@ public class ConversationServiceCancelConfirmTest {
 
         when(userRepo.findByPhoneNumber(phone)).thenReturn(Optional.of(u));
 
-        ChatSessionEntity session = new ChatSessionEntity(phone, "CANCEL_CONFIRM", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity(phone, "CANCEL_CONFIRM", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId(phone)).thenReturn(Optional.of(session));
 
         Booking latest = new Booking();
@@ -81,7 +81,7 @@ public class ConversationServiceCancelConfirmTest {
 
         when(userRepo.findByPhoneNumber(phone)).thenReturn(Optional.of(u));
 
-        ChatSessionEntity session = new ChatSessionEntity(phone, "CANCEL_CONFIRM", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity(phone, "CANCEL_CONFIRM", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId(phone)).thenReturn(Optional.of(session));
 
         when(bookingRepo.findTopByWaIdOrderByCreatedAtDesc(phone)).thenReturn(Optional.empty());
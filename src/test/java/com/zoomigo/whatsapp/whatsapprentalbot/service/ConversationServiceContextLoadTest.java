@@ -0,0 +1,74 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Booking;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.ConversationContext;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ConversationServiceContextLoadTest {
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+    private final BikeRepository bikeRepo = mock(BikeRepository.class);
+    private final ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+    private final BookingRepository bookingRepo = mock(BookingRepository.class);
+    private final ConversationContextLoader loader = mock(ConversationContextLoader.class);
+
+    private ConversationService svc;
+
+    @BeforeEach
+    void setUp() {
+        svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, mock(SessionResetService.class), bookingRepo,
+                mock(PromoCodeRepository.class), mock(PromoCodeBikeRepository.class));
+        svc.setContextLoader(loader);
+    }
+
+    @Test
+    void keepBookingUsesPrefetchedContextOnly() {
+        User u = new User();
+        u.setPhoneNumber("c1");
+        u.setStage("CANCEL_CONFIRM");
+        Booking latest = new Booking();
+        latest.setBike("Yamaha XSR 155");
+        latest.setStartDate(LocalDate.of(2025, 11, 1));
+        latest.setEndDate(LocalDate.of(2025, 11, 5));
+        latest.setPrice(10240);
+        latest.setDeposit(20000);
+        when(loader.load("c1")).thenReturn(new ConversationContext(u, new ChatSessionEntity("c1", "CANCEL_CONFIRM", SessionState.EMPTY), null, latest));
+
+        String reply = svc.handleMessage("c1", "2");
+
+        assertThat(reply).contains("Yamaha XSR 155").contains("01 Nov 2025");
+        verify(userRepo, never()).findByPhoneNumber(anyString());
+        verify(chatSessionRepo, never()).findByWaId(anyString());
+        verify(bookingRepo, never()).findTopByWaIdOrderByCreatedAtDesc(anyString());
+        // the loader created the rows, so the flush updates rather than inserting new ones
+        verify(userRepo).save(u);
+    }
+
+    @Test
+    void loaderFailureFallsBackToRepositories() {
+        when(loader.load("c2")).thenThrow(new IllegalStateException("db hiccup"));
+        User u = new User();
+        u.setPhoneNumber("c2");
+        u.setStage("START");
+        when(userRepo.findByPhoneNumber("c2")).thenReturn(Optional.of(u));
+        when(chatSessionRepo.findByWaId("c2")).thenReturn(Optional.empty());
+
+        String reply = svc.handleMessage("c2", "Hi");
+
+        assertThat(reply).contains("Welcome");
+        verify(chatSessionRepo).save(any(ChatSessionEntity.class));
+    }
+}
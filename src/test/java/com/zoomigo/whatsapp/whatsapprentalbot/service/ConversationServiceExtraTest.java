@@ -61,7 +61,7 @@ class ConversationServiceExtraTest {
         u.setPhoneNumber("d1");
         u.setStage("ASK_START_DATE");
         when(userRepo.findByPhoneNumber("d1")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("d1")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("d1", "ASK_START_DATE", new java.util.HashMap<>())));
+        when(chatSessionRepo.findByWaId("d1")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("d1", "ASK_START_DATE", com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState.EMPTY)));
 
         String r = service.handleMessage("d1", "9 Nov");
         assertThat(r).contains("pick up");
@@ -83,7 +83,7 @@ class ConversationServiceExtraTest {
         u.setDays(1);
         u.setName("Bob");
         when(userRepo.findByPhoneNumber("c1")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("c1")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("c1", "CONFIRM_BIKE", new java.util.HashMap<>())));
+        when(chatSessionRepo.findByWaId("c1")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("c1", "CONFIRM_BIKE", com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState.EMPTY)));
 
         Bike b = new Bike();
         b.setId(123L);
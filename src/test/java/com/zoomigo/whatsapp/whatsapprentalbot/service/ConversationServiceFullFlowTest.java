@@ -3,6 +3,7 @@ package com.zoomigo.whatsapp.whatsapprentalbot.service;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -58,7 +59,7 @@ class ConversationServiceFullFlowTest {
         // findByPhoneNumber: first empty, then return user
         when(userRepo.findByPhoneNumber(wa)).thenReturn(Optional.empty(), Optional.of(u), Optional.of(u), Optional.of(u), Optional.of(u), Optional.of(u), Optional.of(u));
 
-        ChatSessionEntity s = new ChatSessionEntity(wa, "START", new HashMap<>());
+        ChatSessionEntity s = new ChatSessionEntity(wa, "START", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId(wa)).thenReturn(Optional.empty(), Optional.of(s), Optional.of(s), Optional.of(s), Optional.of(s), Optional.of(s), Optional.of(s));
 
         // available bike
@@ -102,7 +103,7 @@ class ConversationServiceFullFlowTest {
         // 6) user selects bike number (service will create bikeMap first, then selection). Provide session with bikeMap
         Map<String, Object> data = new HashMap<>();
         data.put("bikeMap", Map.of("1", 700L));
-        s.setDataJson(data);
+        s.setData(SessionState.fromMap(data));
         when(chatSessionRepo.findByWaId(wa)).thenReturn(Optional.of(s));
         // ensure user has startDate and days for price
         u.setStartDate(LocalDate.now());
@@ -3,6 +3,7 @@ package com.zoomigo.whatsapp.whatsapprentalbot.service;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -32,7 +33,7 @@ class ConversationServicePickupAndNoBikesTest {
         u.setStage("ASK_PICKUP");
         when(userRepo.findByPhoneNumber("p1")).thenReturn(Optional.of(u));
 
-        ChatSessionEntity sess = new ChatSessionEntity("p1", "ASK_PICKUP", new HashMap<>());
+        ChatSessionEntity sess = new ChatSessionEntity("p1", "ASK_PICKUP", SessionState.EMPTY);
         when(chatRepo.findByWaId("p1")).thenReturn(Optional.of(sess));
 
         // No bikes available
@@ -66,7 +67,7 @@ class ConversationServicePickupAndNoBikesTest {
         u.setStage("ASK_BIKE");
         when(userRepo.findByPhoneNumber("p2")).thenReturn(Optional.of(u));
 
-        ChatSessionEntity sess = new ChatSessionEntity("p2", "ASK_BIKE", new HashMap<>());
+        ChatSessionEntity sess = new ChatSessionEntity("p2", "ASK_BIKE", SessionState.EMPTY);
         when(chatRepo.findByWaId("p2")).thenReturn(Optional.of(sess));
 
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(Collections.emptyList());
@@ -0,0 +1,146 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+// Confirmations through CONFIRM_BIKE, where the promo claim and the booking insert share one transaction.
+// Not transactional itself: each confirmation has to commit on its own, as concurrent users' do.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ConversationServicePromoConcurrencyTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+    @Autowired
+    UserRepository userRepo;
+    @Autowired
+    BikeRepository bikeRepo;
+    @Autowired
+    ChatSessionRepository chatSessionRepo;
+    @Autowired
+    BookingRepository bookingRepo;
+    @Autowired
+    PromoCodeRepository promoRepo;
+    @Autowired
+    PromoCodeBikeRepository promoBikeRepo;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private Bike bike;
+    private PromoCode promo;
+
+    @BeforeEach
+    void setUp() {
+        bike = new Bike();
+        bike.setName("Honda Dio");
+        bike.setPricePerDay(1500);
+        bike.setDeposit(5000);
+        bike.setAvailable(true);
+        bike = bikeRepo.save(bike);
+
+        promo = new PromoCode();
+        promo.setCode("FLASH50");
+        promo.setDiscountAmount(100);
+        promo.setTotalAllocation(50);
+        promo.setUsedCount(0);
+        promo.setActive(true);
+        promo = promoRepo.save(promo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookingRepo.deleteAll();
+        chatSessionRepo.deleteAll();
+        userRepo.deleteAll();
+        promoRepo.deleteAll();
+        bikeRepo.deleteAll();
+    }
+
+    @Test
+    void parallelConfirmationsBookNoMorePromoUsesThanTheAllocation() throws Exception {
+        ConversationService svc = service(bookingRepo);
+        int users = 120;
+        // a day each, so the bike is free for every user and only the promo runs out
+        for (int i = 0; i < users; i++) readyToConfirm("c" + i, FIRST_DAY.plusDays(i));
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                String waId = "c" + i;
+                replies.add(pool.submit(() -> {
+                    start.await();
+                    return svc.handleMessage(waId, "1");
+                }));
+            }
+            start.countDown();
+            int confirmed = 0;
+            for (Future<String> reply : replies) {
+                if (reply.get(60, TimeUnit.SECONDS).contains("Booking confirmed")) confirmed++;
+            }
+            assertThat(confirmed).isEqualTo(50);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(bookingRepo.findAll())
+                .hasSize(50)
+                .allSatisfy(b -> assertThat(b.getPromoApplied()).isTrue());
+        assertThat(promoRepo.findById(promo.getId()).orElseThrow().getUsedCount()).isEqualTo(50);
+    }
+
+    @Test
+    void failedBookingInsertGivesTheClaimedUseBack() {
+        BookingRepository failingInsert = mock(BookingRepository.class, delegatesTo(bookingRepo));
+        doThrow(new IllegalStateException("insert failed")).when(failingInsert).save(any(Booking.class));
+        readyToConfirm("f1", FIRST_DAY);
+
+        assertThatThrownBy(() -> service(failingInsert).handleMessage("f1", "1")).hasMessageContaining("insert failed");
+
+        assertThat(bookingRepo.count()).isZero();
+        assertThat(promoRepo.findById(promo.getId()).orElseThrow().getUsedCount()).isZero();
+    }
+
+    private ConversationService service(BookingRepository bookings) {
+        ConversationService svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo,
+                new SessionResetService(userRepo, chatSessionRepo), bookings, promoRepo, promoBikeRepo);
+        svc.setTransactionManager(transactionManager);
+        return svc;
+    }
+
+    private void readyToConfirm(String waId, LocalDate startDate) {
+        User u = new User();
+        u.setPhoneNumber(waId);
+        u.setName("Guest " + waId);
+        u.setStage("CONFIRM_BIKE");
+        u.setDays(1);
+        u.setStartDate(startDate);
+        u.setPickupType("Pickup at shop");
+        u.setSelectedBikeId(bike.getId());
+        userRepo.save(u);
+        SessionState data = SessionState.EMPTY.withBikes(List.of(bike.getId())).withPromo(promo.getId(), promo.getCode(), 100, 1400);
+        chatSessionRepo.save(new ChatSessionEntity(waId, "CONFIRM_BIKE", data));
+    }
+}
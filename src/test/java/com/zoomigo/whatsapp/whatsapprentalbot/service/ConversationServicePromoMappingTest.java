@@ -1,13 +1,13 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 
@@ -46,7 +46,7 @@ public class ConversationServicePromoMappingTest {
         u.setStartDate(LocalDate.of(2025, 11, 2));
 
         when(userRepo.findByPhoneNumber(phone)).thenReturn(Optional.of(u));
-        ChatSessionEntity session = new ChatSessionEntity(phone, "ASK_PROMO", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity(phone, "ASK_PROMO", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId(phone)).thenReturn(Optional.of(session));
 
         Bike bike1 = new Bike();
@@ -90,7 +90,7 @@ public class ConversationServicePromoMappingTest {
         u.setStartDate(LocalDate.of(2025, 11, 2));
 
         when(userRepo.findByPhoneNumber(phone)).thenReturn(Optional.of(u));
-        ChatSessionEntity session = new ChatSessionEntity(phone, "ASK_PROMO", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity(phone, "ASK_PROMO", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId(phone)).thenReturn(Optional.of(session));
 
         Bike bike2 = new Bike();
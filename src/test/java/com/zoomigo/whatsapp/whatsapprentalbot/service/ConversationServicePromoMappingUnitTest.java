@@ -39,7 +39,7 @@ class ConversationServicePromoMappingUnitTest {
         when(userRepo.findByPhoneNumber("p3")).thenReturn(Optional.of(u));
 
         // let the service create a session placeholder if repository returns null; we provide a real session here
-        when(chatRepo.findByWaId("p3")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("p3","ASK_PROMO", Map.of("bikeMap", Map.of("1",1L)))));
+        when(chatRepo.findByWaId("p3")).thenReturn(Optional.of(new com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity("p3","ASK_PROMO", com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState.fromMap(Map.of("bikeMap", Map.of("1",1L))))));
 
         PromoCode promo = new PromoCode();
         promo.setId(10L);
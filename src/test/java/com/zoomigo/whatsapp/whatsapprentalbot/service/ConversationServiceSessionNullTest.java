@@ -2,6 +2,7 @@ package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,7 +12,6 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
-import java.util.HashMap;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -65,7 +65,7 @@ class ConversationServiceSessionNullTest {
         u.setPhoneNumber("uP");
         u.setStage("ASK_PICKUP");
         when(userRepo.findByPhoneNumber("uP")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("uP")).thenReturn(Optional.of(new ChatSessionEntity("uP", "ASK_PICKUP", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("uP")).thenReturn(Optional.of(new ChatSessionEntity("uP", "ASK_PICKUP", SessionState.EMPTY)));
 
         // reset stage before each call to simulate fresh prompt
         u.setStage("ASK_PICKUP");
@@ -1,6 +1,7 @@
 package com.zoomigo.whatsapp.whatsapprentalbot.service;
 
 import com.zoomigo.whatsapp.whatsapprentalbot.entity.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,6 +19,7 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -65,7 +67,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("u2");
         u.setStage("ASK_NAME");
         when(userRepo.findByPhoneNumber("u2")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("u2")).thenReturn(Optional.of(new ChatSessionEntity("u2", "ASK_NAME", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("u2")).thenReturn(Optional.of(new ChatSessionEntity("u2", "ASK_NAME", SessionState.EMPTY)));
 
         String resp = service.handleMessage("u2", "Alice");
         assertThat(resp).contains("How many *days*");
@@ -94,10 +96,10 @@ class ConversationServiceTest {
 
         when(userRepo.findByPhoneNumber("u3")).thenReturn(Optional.of(u));
 
-        ChatSessionEntity session = new ChatSessionEntity("u3", "ASK_BIKE", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity("u3", "ASK_BIKE", SessionState.EMPTY);
         Map<String, Object> data = new HashMap<>();
         data.put("bikeMap", Map.of("1", 101L));
-        session.setDataJson(data);
+        session.setData(SessionState.fromMap(data));
         when(chatSessionRepo.findByWaId("u3")).thenReturn(Optional.of(session));
 
         Bike bike = new Bike();
@@ -132,17 +134,56 @@ class ConversationServiceTest {
         u.setStage("CONFIRM_BIKE");
         when(userRepo.findByPhoneNumber("u3")).thenReturn(Optional.of(u));
 
-        // ensure promoRepo.findById returns the same promo so the service can increment and save it
+        // ensure promoRepo.findById returns the same promo so the service can redeem it
         when(promoRepo.findById(5L)).thenReturn(Optional.of(promo));
+        when(promoRepo.redeem(5L)).thenReturn(1);
 
         resp = service.handleMessage("u3", "1");
         assertThat(resp).contains("Booking confirmed");
 
-        // verify promo used count incremented and booking saved
-        verify(promoRepo).save(any(PromoCode.class));
+        // verify one use of the promo was claimed and booking saved
+        verify(promoRepo).redeem(5L);
         verify(bookingRepo).save(any());
     }
 
+    @Test
+    void promoUsedUpBeforeConfirmIsNotBooked() {
+        User u = new User();
+        u.setPhoneNumber("u9");
+        u.setName("Alice");
+        u.setStage("CONFIRM_BIKE");
+        u.setStartDate(LocalDate.now());
+        u.setDays(2);
+        u.setSelectedBikeId(101L);
+        when(userRepo.findByPhoneNumber("u9")).thenReturn(Optional.of(u));
+        ChatSessionEntity session = new ChatSessionEntity("u9", "CONFIRM_BIKE", SessionState.fromMap(Map.of("promoCodeId", 5L, "promoCode", "LAST1")));
+        when(chatSessionRepo.findByWaId("u9")).thenReturn(Optional.of(session));
+
+        Bike bike = new Bike();
+        bike.setId(101L);
+        bike.setName("Zoomer");
+        bike.setPricePerDay(500);
+        bike.setDeposit(100);
+        when(bikeRepo.findById(101L)).thenReturn(Optional.of(bike));
+
+        PromoCode promo = new PromoCode();
+        promo.setId(5L);
+        promo.setCode("LAST1");
+        promo.setDiscountAmount(50);
+        promo.setTotalAllocation(1);
+        promo.setActive(true);
+        when(promoRepo.findById(5L)).thenReturn(Optional.of(promo));
+        // someone else claimed the last use since the code was applied
+        when(promoRepo.redeem(5L)).thenReturn(0);
+
+        String resp = service.handleMessage("u9", "1");
+
+        assertThat(resp).contains("LAST1 has just been fully used", "Total: Rs1000 + deposit Rs100").doesNotContain("Booking confirmed");
+        verify(bookingRepo, never()).save(any());
+        assertThat(u.getStage()).isEqualTo("CONFIRM_BIKE");
+        assertThat(session.getData().hasPromo()).isFalse();
+    }
+
     @Test
     void pickupInferenceAndBikeNameSelection() {
         // user at ASK_PICKUP stage
@@ -150,7 +191,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("u4");
         u.setStage("ASK_PICKUP");
         when(userRepo.findByPhoneNumber("u4")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("u4")).thenReturn(Optional.of(new ChatSessionEntity("u4", "ASK_PICKUP", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("u4")).thenReturn(Optional.of(new ChatSessionEntity("u4", "ASK_PICKUP", SessionState.EMPTY)));
 
         // user types 'pickup at store'
         String r1 = service.handleMessage("u4", "I will pickup from your store");
@@ -169,14 +210,14 @@ class ConversationServiceTest {
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b1));
 
         // chat session without bikeMap so service will emit list
-        when(chatSessionRepo.findByWaId("u4")).thenReturn(Optional.of(new ChatSessionEntity("u4", "ASK_BIKE", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("u4")).thenReturn(Optional.of(new ChatSessionEntity("u4", "ASK_BIKE", SessionState.EMPTY)));
 
         String r2 = service.handleMessage("u4", "");
         assertThat(r2).contains("Available bikes");
 
         // prepare session with bikeMap so user can select by free-text name
-        ChatSessionEntity session = new ChatSessionEntity("u4", "ASK_BIKE", new HashMap<>());
-        session.getDataJson().put("bikeMap", Map.of("1", 201L));
+        ChatSessionEntity session = new ChatSessionEntity("u4", "ASK_BIKE", SessionState.EMPTY);
+        session.setData(SessionState.fromMap(Map.of("bikeMap", Map.of("1", 201L))));
         when(chatSessionRepo.findByWaId("u4")).thenReturn(Optional.of(session));
         when(bikeRepo.findById(201L)).thenReturn(Optional.of(b1));
 
@@ -204,8 +245,8 @@ class ConversationServiceTest {
         b.setPricePerDay(300);
         b.setDeposit(50);
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b));
-        ChatSessionEntity session = new ChatSessionEntity("u5", "ASK_BIKE", new HashMap<>());
-        session.getDataJson().put("bikeMap", Map.of("1", 301L));
+        ChatSessionEntity session = new ChatSessionEntity("u5", "ASK_BIKE", SessionState.EMPTY);
+        session.setData(SessionState.fromMap(Map.of("bikeMap", Map.of("1", 301L))));
         when(chatSessionRepo.findByWaId("u5")).thenReturn(Optional.of(session));
         when(bikeRepo.findById(301L)).thenReturn(Optional.of(b));
 
@@ -273,8 +314,8 @@ class ConversationServiceTest {
         b.setPricePerDay(150);
         b.setDeposit(30);
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b));
-        ChatSessionEntity session = new ChatSessionEntity("u11", "ASK_BIKE", new HashMap<>());
-        session.getDataJson().put("bikeMap", Map.of("1", 601L));
+        ChatSessionEntity session = new ChatSessionEntity("u11", "ASK_BIKE", SessionState.EMPTY);
+        session.setData(SessionState.fromMap(Map.of("bikeMap", Map.of("1", 601L))));
         when(chatSessionRepo.findByWaId("u11")).thenReturn(Optional.of(session));
         when(bikeRepo.findById(601L)).thenReturn(Optional.of(b));
 
@@ -289,7 +330,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("ux1");
         u.setStage("ASK_DAYS");
         when(userRepo.findByPhoneNumber("ux1")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("ux1")).thenReturn(Optional.of(new ChatSessionEntity("ux1", "ASK_DAYS", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("ux1")).thenReturn(Optional.of(new ChatSessionEntity("ux1", "ASK_DAYS", SessionState.EMPTY)));
 
         String r1 = service.handleMessage("ux1", "zero");
         assertThat(r1).contains("Please enter a valid number of days");
@@ -309,7 +350,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("ux2");
         u.setStage("ASK_PROMO");
         when(userRepo.findByPhoneNumber("ux2")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("ux2")).thenReturn(Optional.of(new ChatSessionEntity("ux2", "ASK_PROMO", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("ux2")).thenReturn(Optional.of(new ChatSessionEntity("ux2", "ASK_PROMO", SessionState.EMPTY)));
 
         // promo not found
         when(promoRepo.findByCodeIgnoreCase("NOPE")).thenReturn(Optional.empty());
@@ -334,7 +375,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("u7");
         u.setStage("ASK_NAME");
         when(userRepo.findByPhoneNumber("u7")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("u7")).thenReturn(Optional.of(new ChatSessionEntity("u7", "ASK_NAME", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("u7")).thenReturn(Optional.of(new ChatSessionEntity("u7", "ASK_NAME", SessionState.EMPTY)));
 
         String r = service.handleMessage("u7", "hi");
         assertThat(r).contains("Please tell me your *name*");
@@ -346,7 +387,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("u8");
         u.setStage("ASK_PICKUP");
         when(userRepo.findByPhoneNumber("u8")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("u8")).thenReturn(Optional.of(new ChatSessionEntity("u8", "ASK_PICKUP", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("u8")).thenReturn(Optional.of(new ChatSessionEntity("u8", "ASK_PICKUP", SessionState.EMPTY)));
 
         String r = service.handleMessage("u8", "2");
         assertThat(r).contains("delivery address");
@@ -358,7 +399,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("u9");
         u.setStage("ASK_ADDRESS");
         when(userRepo.findByPhoneNumber("u9")).thenReturn(Optional.of(u));
-        ChatSessionEntity s = new ChatSessionEntity("u9", "ASK_ADDRESS", new HashMap<>());
+        ChatSessionEntity s = new ChatSessionEntity("u9", "ASK_ADDRESS", SessionState.EMPTY);
         when(chatSessionRepo.findByWaId("u9")).thenReturn(Optional.of(s));
 
         Bike b = new Bike();
@@ -388,8 +429,8 @@ class ConversationServiceTest {
         b.setPricePerDay(400);
         b.setDeposit(80);
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b));
-        ChatSessionEntity session = new ChatSessionEntity("u10", "ASK_BIKE", new HashMap<>());
-        session.getDataJson().put("bikeMap", Map.of("1", 501L));
+        ChatSessionEntity session = new ChatSessionEntity("u10", "ASK_BIKE", SessionState.EMPTY);
+        session.setData(SessionState.fromMap(Map.of("bikeMap", Map.of("1", 501L))));
         when(chatSessionRepo.findByWaId("u10")).thenReturn(Optional.of(session));
         when(bikeRepo.findById(501L)).thenReturn(Optional.of(b));
 
@@ -403,7 +444,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("ux5");
         u.setStage("UNKNOWN_STATE");
         when(userRepo.findByPhoneNumber("ux5")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("ux5")).thenReturn(Optional.of(new ChatSessionEntity("ux5", "UNKNOWN_STATE", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("ux5")).thenReturn(Optional.of(new ChatSessionEntity("ux5", "UNKNOWN_STATE", SessionState.EMPTY)));
 
         String r = service.handleMessage("ux5", "blabla");
         assertThat(r).contains("didn't understand");
@@ -415,7 +456,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("ux3");
         u.setStage("ASK_PICKUP");
         when(userRepo.findByPhoneNumber("ux3")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("ux3")).thenReturn(Optional.of(new ChatSessionEntity("ux3", "ASK_PICKUP", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("ux3")).thenReturn(Optional.of(new ChatSessionEntity("ux3", "ASK_PICKUP", SessionState.EMPTY)));
 
         String r = service.handleMessage("ux3", "maybe later");
         assertThat(r).contains("Please reply with 1 or 2");
@@ -427,7 +468,7 @@ class ConversationServiceTest {
         u.setPhoneNumber("ux4");
         u.setStage("ASK_BIKE");
         when(userRepo.findByPhoneNumber("ux4")).thenReturn(Optional.of(u));
-        when(chatSessionRepo.findByWaId("ux4")).thenReturn(Optional.of(new ChatSessionEntity("ux4", "ASK_BIKE", new HashMap<>())));
+        when(chatSessionRepo.findByWaId("ux4")).thenReturn(Optional.of(new ChatSessionEntity("ux4", "ASK_BIKE", SessionState.EMPTY)));
 
         when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of());
         String r = service.handleMessage("ux4", "");
@@ -444,10 +485,10 @@ class ConversationServiceTest {
         u.setPickupType("Pickup at shop");
         when(userRepo.findByPhoneNumber("up1")).thenReturn(Optional.of(u));
 
-        ChatSessionEntity session = new ChatSessionEntity("up1", "ASK_BIKE", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity("up1", "ASK_BIKE", SessionState.EMPTY);
         Map<String, Object> data = new HashMap<>();
         data.put("bikeMap", Map.of("1", 701L));
-        session.setDataJson(data);
+        session.setData(SessionState.fromMap(data));
         when(chatSessionRepo.findByWaId("up1")).thenReturn(Optional.of(session));
 
         Bike b = new Bike();
@@ -478,6 +519,7 @@ class ConversationServiceTest {
         u.setStage("CONFIRM_BIKE");
         when(userRepo.findByPhoneNumber("up1")).thenReturn(Optional.of(u));
         when(promoRepo.findById(11L)).thenReturn(Optional.of(pc));
+        when(promoRepo.redeem(11L)).thenReturn(1);
 
         String r3 = service.handleMessage("up1", "1");
         assertThat(r3).contains("Booking confirmed");
@@ -495,10 +537,10 @@ class ConversationServiceTest {
         u.setPickupType("Pickup at shop");
         when(userRepo.findByPhoneNumber("up2")).thenReturn(Optional.of(u));
 
-        ChatSessionEntity session = new ChatSessionEntity("up2", "ASK_BIKE", new HashMap<>());
+        ChatSessionEntity session = new ChatSessionEntity("up2", "ASK_BIKE", SessionState.EMPTY);
         Map<String, Object> data = new HashMap<>();
         data.put("bikeMap", Map.of("1", 801L));
-        session.setDataJson(data);
+        session.setData(SessionState.fromMap(data));
         when(chatSessionRepo.findByWaId("up2")).thenReturn(Optional.of(session));
 
         Bike b = new Bike();
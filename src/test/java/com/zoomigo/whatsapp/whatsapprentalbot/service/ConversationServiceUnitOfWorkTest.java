@@ -0,0 +1,152 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ChatSessionEntity;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.User;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.SessionState;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.*;
+import com.zoomigo.whatsapp.whatsapprentalbot.util.StageTag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConversationServiceUnitOfWorkTest {
+
+    private final UserRepository userRepo = mock(UserRepository.class);
+    private final BikeRepository bikeRepo = mock(BikeRepository.class);
+    private final ChatSessionRepository chatSessionRepo = mock(ChatSessionRepository.class);
+    private final SessionResetService sessionResetService = mock(SessionResetService.class);
+    private final BookingRepository bookingRepo = mock(BookingRepository.class);
+    private final PromoCodeRepository promoRepo = mock(PromoCodeRepository.class);
+    private final PromoCodeBikeRepository promoBikeRepo = mock(PromoCodeBikeRepository.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ConversationService svc;
+
+    @BeforeEach
+    void setUp() {
+        svc = new ConversationService(userRepo, bikeRepo, chatSessionRepo, sessionResetService, bookingRepo, promoRepo, promoBikeRepo);
+        svc.setMeterRegistry(registry);
+    }
+
+    @Test
+    void pickupThenBikeListIsWrittenOnce() {
+        givenUser("w1", "ASK_PICKUP");
+        Bike b = new Bike();
+        b.setId(1L);
+        b.setName("Honda Dio");
+        b.setPricePerDay(1500);
+        b.setDeposit(5000);
+        when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b));
+
+        String reply = svc.handleMessage("w1", "1");
+
+        assertThat(reply).contains("Honda Dio");
+        // save() and buildBikeListAndPersist() both touched the session; only one write reaches the repos
+        verify(userRepo, times(1)).save(any(User.class));
+        verify(chatSessionRepo, times(1)).save(any(ChatSessionEntity.class));
+        assertThat(registry.get("conversation.session.flush").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidInputWritesNothing() {
+        givenUser("w2", "ASK_DAYS");
+
+        String reply = svc.handleMessage("w2", "lots");
+
+        assertThat(reply).contains("valid number");
+        verify(userRepo, never()).save(any());
+        verify(chatSessionRepo, never()).save(any());
+        assertThat(registry.get("conversation.session.flush.skipped").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void firstMessageInsertsUserAndSessionOnceInsideOneTransaction() {
+        when(userRepo.findByPhoneNumber("w3")).thenReturn(Optional.empty());
+        when(chatSessionRepo.findByWaId("w3")).thenReturn(Optional.empty());
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        TransactionStatus status = new SimpleTransactionStatus();
+        when(txManager.getTransaction(any())).thenReturn(status);
+        svc.setTransactionManager(txManager);
+
+        String reply = svc.handleMessage("w3", "Hi");
+
+        assertThat(reply).contains("Welcome");
+        verify(userRepo, times(1)).save(argThat(u -> "ASK_NAME".equals(u.getStage())));
+        verify(chatSessionRepo, times(1)).save(argThat(s -> "ASK_NAME".equals(s.getState())));
+        verify(txManager, times(1)).getTransaction(any());
+        verify(txManager, times(1)).commit(status);
+    }
+
+    @Test
+    void failureMidMessageLeavesRowsUntouched() {
+        givenUser("w4", "ASK_PICKUP");
+        when(bikeRepo.findByIsAvailableTrue()).thenThrow(new IllegalStateException("db down"));
+
+        assertThatThrownBy(() -> svc.handleMessage("w4", "1")).isInstanceOf(IllegalStateException.class);
+
+        verify(userRepo, never()).save(any());
+        verify(chatSessionRepo, never()).save(any());
+    }
+
+    @Test
+    void messageDurationIsTaggedWithTheStageThatHandledIt() {
+        givenUser("w1", "ASK_DAYS");
+
+        StageTag.set("caller");
+
+        ConversationService.Reply reply = svc.reply("w1", "3");
+
+        assertThat(reply.stage()).isEqualTo("ASK_DAYS");
+        assertThat(registry.get("conversation.message").tag("stage", "ASK_DAYS").tag("outcome", "ok").timer().count()).isEqualTo(1);
+        // the caller's tag is back, so its later metrics don't carry the message's stage
+        assertThat(StageTag.current()).isEqualTo("caller");
+        StageTag.clear();
+    }
+
+    @Test
+    void stageTagIsClearedAfterAMessageFromAnUntaggedThread() {
+        givenUser("w6", "ASK_DAYS");
+
+        svc.handleMessage("w6", "3");
+
+        assertThat(StageTag.current()).isEqualTo(StageTag.NONE);
+    }
+
+    @Test
+    void transitionIsCountedOncePerMessage() {
+        givenUser("w5", "ASK_PICKUP");
+        Bike b = new Bike();
+        b.setId(1L);
+        b.setName("Honda Dio");
+        b.setPricePerDay(1500);
+        b.setDeposit(5000);
+        when(bikeRepo.findByIsAvailableTrue()).thenReturn(List.of(b));
+
+        svc.handleMessage("w5", "1");
+        svc.handleMessage("w5", "lots of days");
+
+        assertThat(registry.get("conversation.stage.transitions").tag("from", "ASK_PICKUP").tag("to", "ASK_BIKE").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("conversation.stage.transitions").counters())
+                .filteredOn(c -> c.count() > 0).hasSize(1);
+    }
+
+    private void givenUser(String waId, String stage) {
+        User u = new User();
+        u.setPhoneNumber(waId);
+        u.setStage(stage);
+        when(userRepo.findByPhoneNumber(waId)).thenReturn(Optional.of(u));
+        when(chatSessionRepo.findByWaId(waId)).thenReturn(Optional.of(new ChatSessionEntity(waId, stage, SessionState.EMPTY)));
+    }
+}
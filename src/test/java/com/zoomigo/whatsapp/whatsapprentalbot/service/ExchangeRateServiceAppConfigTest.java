@@ -4,7 +4,6 @@ import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
 import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.math.BigDecimal;
 import java.util.Optional;
@@ -20,7 +19,7 @@ class ExchangeRateServiceAppConfigTest {
         AppConfigService cfg = Mockito.mock(AppConfigService.class);
         when(cfg.getDefaultCurrency()).thenReturn("EUR");
 
-        ExchangeRateService s = new ExchangeRateService(repo, null, cfg);
+        ExchangeRateService s = new ExchangeRateService(repo, cfg);
         String active = s.getActiveCurrency();
         assertThat(active).isEqualTo("EUR");
     }
@@ -32,7 +31,7 @@ class ExchangeRateServiceAppConfigTest {
         toLkr.setRate(BigDecimal.valueOf(320.5));
         when(repo.findByBaseCurrencyAndTargetCurrency("USD", "LKR")).thenReturn(Optional.of(toLkr));
 
-        ExchangeRateService s = new ExchangeRateService(repo, null, null);
+        ExchangeRateService s = new ExchangeRateService(repo);
         BigDecimal out = s.convert(BigDecimal.valueOf(10), "USD", "LKR");
         assertThat(out).isEqualByComparingTo("3205.00");
     }
@@ -21,7 +21,7 @@ class ExchangeRateServiceConvertTest {
         toLkr.setRate(BigDecimal.valueOf(320.5));
         when(repo.findByBaseCurrencyAndTargetCurrency("USD", "LKR")).thenReturn(Optional.of(toLkr));
 
-        ExchangeRateService s = new ExchangeRateService(repo, null);
+        ExchangeRateService s = new ExchangeRateService(repo);
         BigDecimal out = s.convert(BigDecimal.valueOf(1), "USD", "LKR");
         assertThat(out).isEqualByComparingTo("320.50");
     }
@@ -33,7 +33,7 @@ class ExchangeRateServiceConvertTest {
         baseToLkr.setRate(BigDecimal.valueOf(320.5));
         when(repo.findByBaseCurrencyAndTargetCurrency("USD", "LKR")).thenReturn(Optional.of(baseToLkr));
 
-        ExchangeRateService s = new ExchangeRateService(repo, null);
+        ExchangeRateService s = new ExchangeRateService(repo);
         BigDecimal out = s.convert(BigDecimal.valueOf(3205), "LKR", "USD");
         assertThat(out).isEqualByComparingTo("10.00");
     }
@@ -48,7 +48,7 @@ class ExchangeRateServiceConvertTest {
         when(repo.findByBaseCurrencyAndTargetCurrency("USD", "EUR")).thenReturn(Optional.of(usdToEur));
         when(repo.findByBaseCurrencyAndTargetCurrency("USD", "JPY")).thenReturn(Optional.of(usdToJpy));
 
-        ExchangeRateService s = new ExchangeRateService(repo, null);
+        ExchangeRateService s = new ExchangeRateService(repo);
         // convert 92 EUR to JPY => EUR->USD = 92 / 0.92 = 100, USD->JPY = 100 * 150.25 = 15025
         BigDecimal out = s.convert(BigDecimal.valueOf(92), "EUR", "JPY");
         assertThat(out).isEqualByComparingTo("15025.00");
@@ -0,0 +1,108 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ExchangeRateServiceSnapshotTest {
+
+    private static final List<String> CURRENCIES = List.of("USD", "LKR", "EUR", "INR");
+
+    private final ExchangeRateRepository repo = mock(ExchangeRateRepository.class);
+
+    @Test
+    void loadedSnapshotMatchesPerCallQueriesWithoutTouchingTheRepository() {
+        List<ExchangeRate> rows = List.of(rate(1L, "USD", "LKR", "320.5", true), rate(2L, "USD", "EUR", "0.9123", false),
+                rate(3L, "USD", "INR", "83.1", false));
+        ExchangeRateService legacy = new ExchangeRateService(legacyRepo(rows));
+        when(repo.findAll()).thenReturn(rows);
+        ExchangeRateService snapshot = new ExchangeRateService(repo);
+        snapshot.refresh();
+        clearInvocations(repo);
+
+        for (String amount : List.of("10", "45.55", "3205", "0.01")) {
+            for (String from : CURRENCIES) {
+                for (String to : CURRENCIES) {
+                    BigDecimal a = new BigDecimal(amount);
+                    assertThat(snapshot.convert(a, from, to)).as("%s %s->%s", amount, from, to).isEqualTo(legacy.convert(a, from, to));
+                }
+            }
+        }
+        assertThat(snapshot.getActiveCurrency()).isEqualTo("LKR").isEqualTo(legacy.getActiveCurrency());
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void rateChangeRebuildsTheSnapshotAndBumpsTheVersion() {
+        when(repo.findAll()).thenReturn(List.of(rate(1L, "USD", "LKR", "300", true)));
+        ExchangeRateService s = new ExchangeRateService(repo);
+        s.refresh();
+        long before = s.rateVersion();
+        assertThat(s.convert(BigDecimal.TEN, "USD", "LKR")).isEqualByComparingTo("3000.00");
+        assertThat(s.rateVersion()).isEqualTo(before);
+
+        ExchangeRate updated = rate(1L, "USD", "LKR", "310", true);
+        when(repo.findAll()).thenReturn(List.of(updated));
+        new EntityChangeListener().onChange(updated);
+
+        assertThat(s.convert(BigDecimal.TEN, "USD", "LKR")).isEqualByComparingTo("3100.00");
+        assertThat(s.rateVersion()).isGreaterThan(before);
+        verify(repo, never()).findByBaseCurrencyAndTargetCurrency(anyString(), anyString());
+    }
+
+    @Test
+    void failedRefreshKeepsServingThePreviousRates() {
+        when(repo.findAll()).thenReturn(List.of(rate(1L, "USD", "LKR", "300", true)));
+        ExchangeRateService s = new ExchangeRateService(repo);
+        s.refresh();
+        long version = s.rateVersion();
+
+        when(repo.findAll()).thenThrow(new RuntimeException("db down"));
+        s.refresh();
+
+        assertThat(s.convert(BigDecimal.TEN, "USD", "LKR")).isEqualByComparingTo("3000.00");
+        assertThat(s.rateVersion()).isEqualTo(version);
+    }
+
+    @Test
+    void defaultCurrencyChangeIsPickedUpWhenTheConfigVersionMoves() {
+        AppConfigService cfg = mock(AppConfigService.class);
+        when(cfg.getDefaultCurrency()).thenReturn("LKR");
+        when(repo.findAll()).thenReturn(List.of(rate(1L, "USD", "LKR", "300", true)));
+        ExchangeRateService s = new ExchangeRateService(repo, cfg);
+        s.refresh();
+        assertThat(s.getActiveCurrency()).isEqualTo("LKR");
+
+        when(cfg.getDefaultCurrency()).thenReturn("EUR");
+        assertThat(s.getActiveCurrency()).isEqualTo("LKR");
+
+        when(cfg.version()).thenReturn(2L);
+        assertThat(s.getActiveCurrency()).isEqualTo("EUR");
+    }
+
+    private static ExchangeRateRepository legacyRepo(List<ExchangeRate> rows) {
+        ExchangeRateRepository legacy = mock(ExchangeRateRepository.class);
+        when(legacy.findByBaseCurrencyAndTargetCurrency(anyString(), anyString())).thenReturn(Optional.empty());
+        for (ExchangeRate r : rows) {
+            when(legacy.findByBaseCurrencyAndTargetCurrency(r.getBaseCurrency(), r.getTargetCurrency())).thenReturn(Optional.of(r));
+        }
+        when(legacy.findByActiveTargetTrue()).thenReturn(rows.stream().filter(ExchangeRate::getActiveTarget).findFirst());
+        return legacy;
+    }
+
+    private static ExchangeRate rate(Long id, String base, String target, String rate, boolean active) {
+        ExchangeRate r = new ExchangeRate(base, target, new BigDecimal(rate), Instant.now(), false, active);
+        r.setId(id);
+        return r;
+    }
+}
@@ -20,7 +20,7 @@ class ExchangeRateServiceTest {
 
     @BeforeEach
     void setUp() {
-        svc = new ExchangeRateService(repo, null);
+        svc = new ExchangeRateService(repo);
     }
 
     @Test
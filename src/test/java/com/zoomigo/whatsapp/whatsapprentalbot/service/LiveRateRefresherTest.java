@@ -0,0 +1,126 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ExchangeRate;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ExchangeRateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LiveRateRefresherTest {
+
+    private final ExchangeRateRepository repo = mock(ExchangeRateRepository.class);
+    private final ExchangeRateService rates = mock(ExchangeRateService.class);
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private HttpServer server;
+    private volatile int status = 200;
+    private volatile String body = "";
+    private Instant now = Instant.parse("2025-10-15T10:00:00Z");
+
+    private ExchangeRate lkr;
+    private ExchangeRate eur;
+    private ExchangeRate inr;
+    private LiveRateRefresher refresher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/latest.json", exchange -> {
+            requests.add(exchange.getRequestURI().getQuery());
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+
+        lkr = new ExchangeRate("USD", "LKR", new BigDecimal("300"), now.minus(Duration.ofDays(1)), true, true);
+        eur = new ExchangeRate("USD", "EUR", new BigDecimal("0.90"), now.minus(Duration.ofDays(1)), true, false);
+        inr = new ExchangeRate("USD", "INR", new BigDecimal("80"), now.minus(Duration.ofDays(1)), false, false);
+        when(rates.baseCurrency()).thenReturn("USD");
+        when(repo.findByBaseCurrency("USD")).thenReturn(List.of(lkr, eur, inr));
+
+        WebClient client = WebClient.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api");
+        Clock clock = new Clock() {
+            public ZoneId getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(ZoneId zone) { return this; }
+            public Instant instant() { return now; }
+        };
+        refresher = new LiveRateRefresher(repo, rates, client, "test-app", Duration.ofHours(1), Duration.ofMinutes(1),
+                Duration.ofMinutes(30), Duration.ofSeconds(5), registry, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void oneRequestUpdatesEveryLiveRateInOneBatch() {
+        body = "{\"timestamp\":1760522400,\"base\":\"USD\",\"rates\":{\"LKR\":302.15,\"EUR\":0.8612}}";
+
+        assertThat(refresher.refresh().block()).isEqualTo(2);
+
+        assertThat(requests).singleElement().asString().contains("app_id=test-app", "symbols=LKR,EUR").doesNotContain("base=");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ExchangeRate>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repo).saveAll(saved.capture());
+        assertThat(saved.getValue()).containsExactly(lkr, eur);
+        assertThat(lkr.getRate()).isEqualByComparingTo("302.15");
+        assertThat(eur.getRate()).isEqualByComparingTo("0.8612");
+        assertThat(lkr.getLastUpdated()).isEqualTo(Instant.ofEpochSecond(1760522400));
+        assertThat(inr.getRate()).isEqualByComparingTo("80");
+        verify(rates).refresh();
+
+        // published 2025-10-15T10:00:00Z, which is "now"
+        assertThat(registry.get("exchange.rates.live.age").gauge().value()).isEqualTo(0.0);
+        assertThat(registry.get("exchange.rates.live.failures").gauge().value()).isEqualTo(0.0);
+    }
+
+    @Test
+    void failedFetchKeepsTheStoredRatesAndBacksOff() {
+        status = 503;
+
+        assertThatThrownBy(() -> refresher.refresh().block()).isNotNull();
+        verify(repo, never()).saveAll(any());
+        verify(rates, never()).refresh();
+        assertThat(lkr.getRate()).isEqualByComparingTo("300");
+        assertThat(registry.get("exchange.rates.live.failures").gauge().value()).isEqualTo(1.0);
+
+        // the next attempt is one retry delay away
+        now = now.plusSeconds(30);
+        refresher.refreshIfDue();
+        assertThat(requests).hasSize(1);
+
+        assertThatThrownBy(() -> refresher.refresh().block()).isNotNull();
+        assertThat(refresher.backoff(2)).isEqualTo(Duration.ofMinutes(2));
+        assertThat(refresher.backoff(10)).isEqualTo(Duration.ofMinutes(30));
+    }
+
+    @Test
+    void nothingIsRequestedWithoutLiveRows() {
+        when(repo.findByBaseCurrency("USD")).thenReturn(List.of(inr));
+
+        assertThat(refresher.refresh().block()).isZero();
+        assertThat(requests).isEmpty();
+        verify(repo, never()).saveAll(any());
+    }
+}
@@ -0,0 +1,71 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.ProcessedMessage;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.ProcessedMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageDeduplicatorTest {
+
+    private final Clock clock = Clock.fixed(Instant.parse("2025-01-10T10:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    void secondDeliveryOfSameIdIsAHitAndCounted() {
+        ProcessedMessageRepository repo = mock(ProcessedMessageRepository.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageDeduplicator dedup = new MessageDeduplicator(repo, 100, Duration.ofHours(1), Duration.ofDays(7), registry, clock);
+
+        assertThat(dedup.firstSeen("wamid.1")).isTrue();
+        assertThat(dedup.firstSeen("wamid.1")).isFalse();
+        assertThat(dedup.firstSeen("wamid.2")).isTrue();
+
+        // the in-memory hit never goes back to the database
+        verify(repo, times(2)).save(any(ProcessedMessage.class));
+        assertThat(registry.get("webhook.dedup").tag("result", "hit").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("webhook.dedup").tag("result", "miss").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void idPersistedBeforeRestartIsStillADuplicate() {
+        ProcessedMessageRepository repo = mock(ProcessedMessageRepository.class);
+        // fresh instance = empty memory cache; the table already holds the id
+        when(repo.save(any(ProcessedMessage.class))).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        MessageDeduplicator dedup = new MessageDeduplicator(repo, 100, Duration.ofHours(1), Duration.ofDays(7), null, clock);
+
+        assertThat(dedup.firstSeen("wamid.old")).isFalse();
+    }
+
+    @Test
+    void databaseOutageFailsOpen() {
+        ProcessedMessageRepository repo = mock(ProcessedMessageRepository.class);
+        when(repo.save(any(ProcessedMessage.class))).thenThrow(new DataAccessResourceFailureException("down"));
+        MessageDeduplicator dedup = new MessageDeduplicator(repo, 100, Duration.ofHours(1), Duration.ofDays(7), null, clock);
+
+        assertThat(dedup.firstSeen("wamid.3")).isTrue();
+        // still remembered in memory
+        assertThat(dedup.firstSeen("wamid.3")).isFalse();
+        assertThat(dedup.firstSeen(null)).isTrue();
+        assertThat(dedup.firstSeen(null)).isTrue();
+    }
+
+    @Test
+    void purgeDeletesRowsOlderThanRetention() {
+        ProcessedMessageRepository repo = mock(ProcessedMessageRepository.class);
+        MessageDeduplicator dedup = new MessageDeduplicator(repo, 100, Duration.ofHours(1), Duration.ofDays(7), null, clock);
+
+        dedup.purgeExpired();
+
+        verify(repo).deleteReceivedBefore(Instant.parse("2025-01-03T10:00:00Z"));
+    }
+}
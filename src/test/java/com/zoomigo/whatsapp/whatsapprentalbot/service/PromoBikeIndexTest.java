@@ -0,0 +1,84 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.EntityChangeListener;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCode;
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.PromoCodeBike;
+import com.zoomigo.whatsapp.whatsapprentalbot.repository.PromoCodeBikeRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class PromoBikeIndexTest {
+
+    private final PromoCodeBikeRepository promoBikeRepo = mock(PromoCodeBikeRepository.class);
+
+    @Test
+    void answersFromMemoryAfterOneLoad() {
+        when(promoBikeRepo.findAllPromoBikeIds()).thenReturn(rows(new Object[]{10L, "BIKE1_100", 7L}, new Object[]{10L, "BIKE1_100", 1L}));
+        PromoBikeIndex index = new PromoBikeIndex(promoBikeRepo);
+
+        PromoCode restricted = promo(10L, "BIKE1_100");
+        assertThat(index.applies(restricted, 1L)).isTrue();
+        assertThat(index.applies(restricted, 7L)).isTrue();
+        assertThat(index.applies(restricted, 2L)).isFalse();
+        assertThat(index.applies(restricted, null)).isFalse();
+        // not saved yet: found by code instead
+        assertThat(index.applies(promo(null, "bike1_100"), 2L)).isFalse();
+
+        PromoCode global = promo(11L, "ZOOMI10");
+        assertThat(index.applies(global, 2L)).isTrue();
+        assertThat(index.applies(global, null)).isTrue();
+        assertThat(index.applies(null, 1L)).isFalse();
+
+        verify(promoBikeRepo, times(1)).findAllPromoBikeIds();
+        verify(promoBikeRepo, never()).findByPromoCode_Id(anyLong());
+        verify(promoBikeRepo, never()).findByPromoCode_CodeIgnoreCase(any());
+    }
+
+    @Test
+    void mappingChangeRebuildsAndBumpsVersionOnlyWhenContentChanged() {
+        when(promoBikeRepo.findAllPromoBikeIds()).thenReturn(rows(new Object[]{10L, "BIKE1_100", 1L}));
+        PromoBikeIndex index = new PromoBikeIndex(promoBikeRepo);
+        PromoBikeIndex.Snapshot first = index.snapshot();
+
+        new EntityChangeListener().onChange(new PromoCodeBike());
+        assertThat(index.snapshot()).isSameAs(first);
+
+        when(promoBikeRepo.findAllPromoBikeIds()).thenReturn(rows(new Object[]{10L, "BIKE1_100", 1L}, new Object[]{10L, "BIKE1_100", 2L}));
+        new EntityChangeListener().onChange(new PromoCodeBike());
+
+        assertThat(index.snapshot().version()).isEqualTo(first.version() + 1);
+        assertThat(index.applies(promo(10L, "BIKE1_100"), 2L)).isTrue();
+    }
+
+    @Test
+    void failedRefreshKeepsTheLastIndex() {
+        when(promoBikeRepo.findAllPromoBikeIds()).thenReturn(rows(new Object[]{10L, "BIKE1_100", 1L}));
+        PromoBikeIndex index = new PromoBikeIndex(promoBikeRepo);
+        index.snapshot();
+
+        when(promoBikeRepo.findAllPromoBikeIds()).thenThrow(new RuntimeException("db down"));
+        index.refresh();
+
+        assertThat(index.applies(promo(10L, "BIKE1_100"), 2L)).isFalse();
+        assertThat(index.snapshot().version()).isEqualTo(1);
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+
+    private static PromoCode promo(Long id, String code) {
+        PromoCode p = new PromoCode();
+        p.setId(id);
+        p.setCode(code);
+        p.setActive(true);
+        return p;
+    }
+}
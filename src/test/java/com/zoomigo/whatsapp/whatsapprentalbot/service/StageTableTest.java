@@ -0,0 +1,63 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.zoomigo.whatsapp.whatsapprentalbot.service.ConversationStage.*;
+import static com.zoomigo.whatsapp.whatsapprentalbot.service.StageTable.entry;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StageTableTest {
+
+    private static final StageHandler REPLY = turn -> "ok";
+
+    @Test
+    void dispatchesAndChecksDeclaredTransitions() {
+        StageTable table = new StageTable(chain());
+
+        assertThat(table.handler(ASK_DAYS).handle(null)).isEqualTo("ok");
+        assertThat(table.allows(ASK_DAYS, ASK_START_DATE)).isTrue();
+        assertThat(table.allows(ASK_DAYS, BOOKING_CONFIRMED)).isFalse();
+        assertThat(table.allows(ASK_DAYS, null)).isFalse();
+        assertThat(table.next(CANCEL_CONFIRM)).isEmpty();
+    }
+
+    @Test
+    void stageWithoutHandlerFailsTheTable() {
+        Map<ConversationStage, StageTable.Entry> stages = chain();
+        stages.remove(CANCEL_CONFIRM);
+
+        assertThatThrownBy(() -> new StageTable(stages))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("CANCEL_CONFIRM has no handler");
+    }
+
+    @Test
+    void unreachableStageFailsTheTable() {
+        Map<ConversationStage, StageTable.Entry> stages = chain();
+        stages.put(ASK_PICKUP, entry(REPLY, ASK_BIKE));
+
+        assertThatThrownBy(() -> new StageTable(stages))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("no transition leads to [ASK_ADDRESS]");
+    }
+
+    @Test
+    void conversationServiceTableIsValid() {
+        ConversationService svc = new ConversationService(null, null, null, null, null, null, null);
+        assertThat(svc).isNotNull();
+    }
+
+    // every stage leads to the next one in declaration order
+    private static Map<ConversationStage, StageTable.Entry> chain() {
+        Map<ConversationStage, StageTable.Entry> stages = new EnumMap<>(ConversationStage.class);
+        ConversationStage[] all = ConversationStage.values();
+        for (int i = 0; i < all.length; i++) {
+            stages.put(all[i], i + 1 < all.length ? entry(REPLY, all[i + 1]) : entry(REPLY));
+        }
+        return stages;
+    }
+}
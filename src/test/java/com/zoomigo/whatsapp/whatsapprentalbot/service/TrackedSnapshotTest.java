@@ -0,0 +1,52 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrackedSnapshotTest {
+
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private boolean failing;
+
+    private final TrackedSnapshot<Integer> snapshot = new TrackedSnapshot<>("test", changes::get, previous -> {
+        if (failing) throw new IllegalStateException("db down");
+        return loads.incrementAndGet();
+    });
+
+    @Test
+    void loadsOnFirstReadAndAgainOnlyWhenTheCounterMoves() {
+        assertThat(snapshot.current()).isNull();
+        assertThat(snapshot.get()).isEqualTo(1);
+        assertThat(snapshot.get()).isEqualTo(1);
+
+        changes.incrementAndGet();
+        assertThat(snapshot.get()).isEqualTo(2);
+        assertThat(snapshot.reload()).isEqualTo(3);
+    }
+
+    @Test
+    void failedReloadKeepsThePreviousCopy() {
+        snapshot.get();
+        failing = true;
+        changes.incrementAndGet();
+
+        assertThat(snapshot.get()).isEqualTo(1);
+        snapshot.refresh();
+        assertThat(snapshot.current()).isEqualTo(1);
+    }
+
+    @Test
+    void failedFirstLoadThrows() {
+        failing = true;
+
+        assertThatThrownBy(snapshot::get).isInstanceOf(IllegalStateException.class);
+        snapshot.refresh();
+        assertThat(snapshot.current()).isNull();
+    }
+}
@@ -0,0 +1,91 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.entity.Bike;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BikeNameMatcherTest {
+
+    private final List<Bike> fleet = List.of(
+            bike(1, "Honda Dio"),
+            bike(2, "Honda CB Shine"),
+            bike(3, "Yamaha FZ150"),
+            bike(4, "Yamaha FZ155"),
+            bike(5, "Bajaj Pulsar 150"),
+            bike(6, "TVS Apache RTR 160"));
+    private final BikeNameMatcher matcher = BikeNameMatcher.of(fleet);
+
+    @Test
+    void exactAndEmbeddedNamesMatch() {
+        assertMatch("honda dio", 1);
+        assertMatch("Honda-Dio!", 1);
+        assertMatch("I'd like the honda dio please", 1);
+        assertMatch("dio", 1);
+        assertMatch("apache", 6);
+    }
+
+    @Test
+    void typosAndModelNumbers() {
+        assertMatch("yamaha fz 150", 3);
+        assertMatch("fz155", 4);
+        assertMatch("bajaj pulsr", 5);
+        assertMatch("apahce", 6);
+        // model numbers never fuzzy-match each other
+        assertThat(matcher.match("pulsar 220").outcome()).isNotEqualTo(BikeNameMatcher.Outcome.MATCH);
+    }
+
+    @Test
+    void brandOnlyIsAmbiguousAndListsBothModels() {
+        BikeNameMatcher.Result honda = matcher.match("honda");
+        assertThat(honda.outcome()).isEqualTo(BikeNameMatcher.Outcome.AMBIGUOUS);
+        assertThat(honda.suggestions()).extracting(Bike::getId).containsExactlyInAnyOrder(1L, 2L);
+
+        BikeNameMatcher.Result fz = matcher.match("yamaha fz");
+        assertThat(fz.outcome()).isEqualTo(BikeNameMatcher.Outcome.AMBIGUOUS);
+        assertThat(fz.suggestions()).extracting(Bike::getId).containsExactly(3L, 4L);
+    }
+
+    @Test
+    void noMatchAndRestrictionToListedBikes() {
+        assertThat(matcher.match("spaceship").outcome()).isEqualTo(BikeNameMatcher.Outcome.NONE);
+        assertThat(matcher.match("  ").outcome()).isEqualTo(BikeNameMatcher.Outcome.NONE);
+        // only Honda CB was listed to this user, so "honda" is no longer ambiguous
+        BikeNameMatcher.Result r = matcher.match("honda", Set.of(2L)::contains);
+        assertThat(r.outcome()).isEqualTo(BikeNameMatcher.Outcome.MATCH);
+        assertThat(r.bike().getId()).isEqualTo(2L);
+    }
+
+    @Test
+    void identicalModelsResolveToFirstListed() {
+        List<Bike> twoDios = new ArrayList<>(fleet);
+        twoDios.add(bike(7, "Honda Dio"));
+        BikeNameMatcher.Result r = BikeNameMatcher.of(twoDios).match("dio");
+        assertThat(r.outcome()).isEqualTo(BikeNameMatcher.Outcome.MATCH);
+        assertThat(r.bike().getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void tokenizerAndDistance() {
+        assertThat(BikeNameMatcher.tokenize("FZ-S V3.0 150cc")).containsExactly("fz", "s", "v", "3", "0", "150", "cc");
+        assertThat(BikeNameMatcher.editDistance("yamaha", "yamhaa", 2)).isEqualTo(1);
+        assertThat(BikeNameMatcher.similarity("150", "155")).isZero();
+    }
+
+    private void assertMatch(String query, long expectedId) {
+        BikeNameMatcher.Result r = matcher.match(query);
+        assertThat(r.outcome()).as(query).isEqualTo(BikeNameMatcher.Outcome.MATCH);
+        assertThat(r.bike().getId()).as(query).isEqualTo(expectedId);
+    }
+
+    private static Bike bike(long id, String name) {
+        Bike b = new Bike();
+        b.setId(id);
+        b.setName(name);
+        return b;
+    }
+}
@@ -0,0 +1,106 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.joestelmach.natty.DateGroup;
+import com.joestelmach.natty.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DateInputParserTest {
+
+    private static final ZoneId SHOP = ZoneId.of("Asia/Colombo");
+    // a Wednesday morning in the shop
+    private static final Clock CLOCK = Clock.fixed(ZonedDateTime.of(2025, 10, 15, 10, 0, 0, 0, SHOP).toInstant(), SHOP);
+
+    // inputs the native parser must answer exactly like the old strict-patterns + Natty chain
+    private static final List<String> SAME_AS_BEFORE = List.of(
+            "today", "Today", " tomorrow ", "day after tomorrow",
+            "friday", "fri", "this friday", "on Friday", "wednesday", "monday", "sat", "sunday please",
+            "next friday", "next wednesday", "next sunday", "next monday", "next week", "next month",
+            "25 oct", "25 Oct", "oct 25", "25 october", "October 25", "1 oct", "5 jan", "9 Nov", "dec 1",
+            "25 oct 2026", "25th oct", "oct 25th", "1st dec", "25 oct 25",
+            "2025-10-25", "2025-1-5", "2026/02/28",
+            "in 3 days", "3 days from now", "in a week", "in 2 weeks");
+
+    @Test
+    void corpusMatchesLegacyParser() {
+        DateInputParser parser = new DateInputParser(SHOP, CLOCK, false);
+        Map<String, String> mismatches = new LinkedHashMap<>();
+        for (String input : SAME_AS_BEFORE) {
+            LocalDate legacy = legacyParse(input);
+            LocalDate now = parser.parse(input);
+            if (!Objects.equals(legacy, now)) mismatches.put(input, "legacy=" + legacy + " native=" + now);
+        }
+        assertThat(mismatches).isEmpty();
+    }
+
+    @Test
+    void deliberateDifferencesFromLegacy() {
+        DateInputParser parser = new DateInputParser(SHOP, CLOCK, false);
+
+        // Natty read these month-first or as times; the shop's customers write day-first
+        assertThat(legacyParse("25/10/2025")).isEqualTo("2025-10-20");
+        assertThat(parser.parse("25/10/2025")).isEqualTo("2025-10-25");
+        assertThat(parser.parse("10/11/2025")).isEqualTo("2025-11-10");
+        assertThat(parser.parse("25.10.2025")).isEqualTo("2025-10-25");
+        // forms the old chain could not read at all
+        assertThat(legacyParse("the 25th")).isNull();
+        assertThat(parser.parse("the 25th")).isEqualTo("2025-10-25");
+        assertThat(parser.parse("3rd")).isEqualTo("2025-11-03");
+        assertThat(parser.parse("tmrw")).isEqualTo("2025-10-16");
+    }
+
+    @Test
+    void unknownTextIsNullWithoutFallbackAndGoesToNattyWithIt() {
+        assertThat(new DateInputParser(SHOP, CLOCK, false).parse("bike")).isNull();
+        assertThat(new DateInputParser(SHOP, CLOCK, false).parse("oct")).isNull();
+        assertThat(new DateInputParser(SHOP, CLOCK, false).parse("31 feb")).isNull();
+        assertThat(new DateInputParser(SHOP, CLOCK, false).parse("")).isNull();
+
+        assertThat(new DateInputParser(SHOP, CLOCK, true).parse("oct")).isEqualTo("2025-10-01");
+        assertThat(new DateInputParser(SHOP, CLOCK, true).parse("bike")).isNull();
+    }
+
+    @Test
+    void todayIsTheShopsDateNotTheServers() {
+        // 20:00 UTC is already the next day in Colombo (+05:30)
+        Clock lateUtc = Clock.fixed(Instant.parse("2025-10-15T20:00:00Z"), ZoneOffset.UTC);
+
+        assertThat(new DateInputParser(SHOP, lateUtc, false).parse("today")).isEqualTo("2025-10-16");
+        assertThat(new DateInputParser(ZoneOffset.UTC, lateUtc, false).parse("today")).isEqualTo("2025-10-15");
+        assertThat(new DateInputParser(SHOP, lateUtc, false).parse("tomorrow")).isEqualTo("2025-10-17");
+    }
+
+    // ConversationService.parseDate as it was before DateInputParser, pinned to the test clock
+    private static LocalDate legacyParse(String text) {
+        text = text.toLowerCase().trim();
+        LocalDate today = LocalDate.now(CLOCK);
+        if (text.equals("today")) return today;
+        text = text.replaceAll("(\\d+)(st|nd|rd|th)", "$1");
+
+        DateTimeFormatter[] formatters = {
+                DateTimeFormatter.ofPattern("yyyy-M-d"),
+                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+                DateTimeFormatter.ofPattern("d MMM yyyy"),
+                DateTimeFormatter.ofPattern("MMM d yyyy"),
+                DateTimeFormatter.ofPattern("d MMM"),
+                DateTimeFormatter.ofPattern("MMM d")
+        };
+        boolean appendYear = !text.matches(".*\\d{4}.*");
+        for (DateTimeFormatter formatter : formatters) {
+            try {
+                String parseText = appendYear ? text + " " + today.getYear() : text;
+                return LocalDate.parse(parseText, formatter.withLocale(Locale.ENGLISH));
+            } catch (Exception ignored) {
+            }
+        }
+
+        List<DateGroup> groups = new Parser(TimeZone.getTimeZone(SHOP)).parse(text, Date.from(CLOCK.instant()));
+        if (groups.isEmpty()) return null;
+        return groups.get(0).getDates().get(0).toInstant().atZone(SHOP).toLocalDate();
+    }
+}
@@ -0,0 +1,179 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedMailboxExecutorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void tasksForSameKeyRunInOrderAndNeverOverlap() throws Exception {
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(pool, 1000, 8, Duration.ofMinutes(1), null);
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(5 * 200);
+
+        for (int i = 0; i < 200; i++) {
+            for (int k = 0; k < 5; k++) {
+                String key = "wa" + k;
+                int seq = i;
+                exec.execute(key, () -> {
+                    if (inFlight.computeIfAbsent(key, x -> new AtomicInteger()).incrementAndGet() > 1) overlaps.incrementAndGet();
+                    seen.computeIfAbsent(key, x -> Collections.synchronizedList(new ArrayList<>())).add(seq);
+                    inFlight.get(key).decrementAndGet();
+                    done.countDown();
+                });
+            }
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(overlaps.get()).isZero();
+        for (List<Integer> perKey : seen.values()) {
+            assertThat(perKey).hasSize(200).isSorted();
+        }
+    }
+
+    @Test
+    void differentKeysRunInParallel() throws Exception {
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(pool);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (String key : List.of("a", "b")) {
+            exec.execute(key, () -> {
+                bothStarted.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // if keys were serialised behind each other only one task could be running here
+        assertThat(bothStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    void fullMailboxRejectsAndCounts() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(pool, 2, 8, Duration.ofMinutes(1), registry);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        exec.execute("k", () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(exec.execute("k", () -> {})).isTrue();
+        assertThat(exec.execute("k", () -> {})).isTrue();
+        assertThat(exec.execute("k", () -> {})).isFalse();
+        assertThat(exec.pendingTasks()).isEqualTo(2);
+        assertThat(registry.get("conversation.mailbox.rejected").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("conversation.mailbox.pending").gauge().value()).isEqualTo(2.0);
+        release.countDown();
+    }
+
+    @Test
+    void busySenderYieldsTheThreadToOtherSenders() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            KeyedMailboxExecutor exec = new KeyedMailboxExecutor(single, 100, 4, Duration.ofMinutes(1), null);
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(21);
+
+            exec.execute("chatty", () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                order.add("chatty");
+                done.countDown();
+            });
+            for (int i = 0; i < 19; i++) {
+                exec.execute("chatty", () -> {
+                    order.add("chatty");
+                    done.countDown();
+                });
+            }
+            exec.execute("quiet", () -> {
+                order.add("quiet");
+                done.countDown();
+            });
+            release.countDown();
+
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            // the quiet sender waits for one turn of the chatty one, not for its whole backlog
+            assertThat(order.indexOf("quiet")).isEqualTo(4);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedSubmissionIsDroppedAndCounted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Executor saturated = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(saturated, 4, 8, Duration.ofMinutes(1), registry);
+
+        assertThat(exec.execute("k", () -> {})).isFalse();
+        assertThat(exec.pendingTasks()).isZero();
+        assertThat(registry.get("conversation.mailbox.rejected").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void idleMailboxesAreEvictedAndRecreatedOnDemand() throws Exception {
+        Executor direct = Runnable::run;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(direct, 4, 8, Duration.ZERO, registry);
+        AtomicInteger runs = new AtomicInteger();
+
+        exec.execute("x", runs::incrementAndGet);
+        assertThat(exec.evictIdle()).isEqualTo(1);
+        assertThat(exec.activeMailboxes()).isZero();
+
+        exec.execute("x", runs::incrementAndGet);
+        assertThat(runs.get()).isEqualTo(2);
+        assertThat(registry.get("conversation.mailbox.wait").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void failingTaskDoesNotBlockLaterTasksForSameKey() {
+        KeyedMailboxExecutor exec = new KeyedMailboxExecutor(Runnable::run);
+        AtomicInteger ran = new AtomicInteger();
+        exec.execute("k", () -> {
+            throw new IllegalStateException("boom");
+        });
+        exec.execute("k", ran::incrementAndGet);
+        assertThat(ran.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,192 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.sun.net.httpserver.HttpServer;
+import com.zoomigo.whatsapp.whatsapprentalbot.service.WhatsappService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboundSendQueueTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    // statuses to answer with, in order; 200 once exhausted
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private WebClient client;
+    private OutboundSendQueue queue;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        serverThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverThreads);
+        server.createContext("/", exchange -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                requests.add(exchange.getRequestURI().getPath() + " " + exchange.getRequestHeaders().getFirst("Authorization") + " " + body);
+                release.await(10, TimeUnit.SECONDS);
+                Integer status = statuses.poll();
+                exchange.sendResponseHeaders(status == null ? 200 : status, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+        client = WebClient.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) queue.close();
+        release.countDown();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private OutboundSendQueue queue(int capacity, int maxConcurrency, int maxRetries) {
+        queue = new OutboundSendQueue(new OutboundSendQueue.Settings(capacity, maxConcurrency, 1000, 1000,
+                maxRetries, Duration.ofMillis(10), Duration.ofMillis(50)), registry);
+        return queue;
+    }
+
+    private boolean post(String text) {
+        return queue.submit("pn1", text, () -> client.post().uri("/messages").bodyValue(text).retrieve().toBodilessEntity());
+    }
+
+    private double failures(String reason) {
+        return registry.get("whatsapp.outbound.failures").tag("reason", reason).counter().count();
+    }
+
+    private void awaitCount(long expected, java.util.function.LongSupplier actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (actual.getAsLong() < expected && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(actual.getAsLong()).isEqualTo(expected);
+    }
+
+    private WhatsappService whatsapp() {
+        WhatsappService whatsapp = new WhatsappService(client);
+        ReflectionTestUtils.setField(whatsapp, "apiBaseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(whatsapp, "apiVersion", "v24.0");
+        ReflectionTestUtils.setField(whatsapp, "phoneNumberId", "123");
+        ReflectionTestUtils.setField(whatsapp, "accessToken", "tok");
+        whatsapp.setOutbound(queue);
+        return whatsapp;
+    }
+
+    @Test
+    void throttlingAndServerErrorsAreRetriedUntilDelivered() throws Exception {
+        queue(10, 4, 3);
+        statuses.addAll(List.of(429, 503));
+
+        assertThat(post("hello")).isTrue();
+
+        awaitCount(1, () -> registry.get("whatsapp.outbound.send").timer().count());
+        assertThat(requests).hasSize(3);
+        assertThat(registry.get("whatsapp.outbound.retries").counter().count()).isEqualTo(2.0);
+        assertThat(failures("retries-exhausted") + failures("rejected")).isZero();
+    }
+
+    @Test
+    void clientErrorsAreNotRetriedAndRetriesRunOut() throws Exception {
+        queue(10, 4, 2);
+        statuses.add(400);
+        post("bad");
+        awaitCount(1, () -> (long) failures("rejected"));
+        assertThat(requests).hasSize(1);
+
+        statuses.addAll(List.of(500, 500, 500));
+        post("down");
+        awaitCount(1, () -> (long) failures("retries-exhausted"));
+        assertThat(requests).hasSize(4);
+        assertThat(registry.get("whatsapp.outbound.send").timer().count()).isZero();
+    }
+
+    @Test
+    void concurrencyIsCappedAndTheRestWaitsInTheQueue() throws Exception {
+        queue(100, 3, 0);
+        release = new CountDownLatch(1);
+
+        for (int i = 0; i < 10; i++) assertThat(post("m" + i)).isTrue();
+
+        awaitCount(3, () -> requests.size());
+        Thread.sleep(100);
+        assertThat(requests).hasSize(3);
+        assertThat(registry.get("whatsapp.outbound.queue.depth").gauge().value()).isEqualTo(7.0);
+
+        release.countDown();
+        awaitCount(10, () -> registry.get("whatsapp.outbound.send").timer().count());
+        assertThat(maxActive.get()).isEqualTo(3);
+        assertThat(queue.queued()).isZero();
+    }
+
+    @Test
+    void fullQueueRefusesNewSends() throws Exception {
+        queue(2, 1, 0);
+        release = new CountDownLatch(1);
+
+        assertThat(post("in flight")).isTrue();
+        awaitCount(1, () -> requests.size());
+        assertThat(post("waiting 1")).isTrue();
+        assertThat(post("waiting 2")).isTrue();
+        assertThat(post("one too many")).isFalse();
+        assertThat(failures("queue-full")).isEqualTo(1.0);
+
+        release.countDown();
+        awaitCount(3, () -> registry.get("whatsapp.outbound.send").timer().count());
+        assertThat(requests).noneMatch(r -> r.contains("one too many"));
+    }
+
+    @Test
+    void whatsappServiceReportsASendTheFullQueueRefused() throws Exception {
+        queue(1, 1, 0);
+        release = new CountDownLatch(1);
+        WhatsappService whatsapp = whatsapp();
+
+        assertThat(whatsapp.sendTextMessage("94770000001", "in flight")).isTrue();
+        awaitCount(1, () -> requests.size());
+        assertThat(whatsapp.sendTextMessage("94770000002", "waiting")).isTrue();
+        assertThat(whatsapp.sendTextMessage("94770000003", "refused")).isFalse();
+        assertThat(failures("queue-full")).isEqualTo(1.0);
+
+        release.countDown();
+        awaitCount(2, () -> registry.get("whatsapp.outbound.send").timer().count());
+        assertThat(requests).noneMatch(r -> r.contains("refused"));
+    }
+
+    @Test
+    void whatsappServiceSendsThroughTheQueue() throws Exception {
+        queue(10, 2, 1);
+        statuses.add(429);
+        WhatsappService whatsapp = whatsapp();
+
+        assertThat(whatsapp.sendTextMessage("94770000000", "Hi there")).isTrue();
+
+        awaitCount(1, () -> registry.get("whatsapp.outbound.send").timer().count());
+        assertThat(requests).hasSize(2).allSatisfy(r -> assertThat(r)
+                .startsWith("/v24.0/123/messages Bearer tok")
+                .contains("\"to\":\"94770000000\"", "Hi there"));
+    }
+}
@@ -0,0 +1,30 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void burstIsFreeThenReservationsQueueAtTheRate() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 2, now::get);
+        long tick = TimeUnit.MILLISECONDS.toNanos(100);
+
+        assertThat(bucket.reserveNanos()).isZero();
+        assertThat(bucket.reserveNanos()).isZero();
+        // empty: each further caller waits one more tick than the one before
+        assertThat(bucket.reserveNanos()).isEqualTo(tick);
+        assertThat(bucket.reserveNanos()).isEqualTo(2 * tick);
+
+        // refills, but never beyond the burst
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(bucket.reserveNanos()).isZero();
+        assertThat(bucket.reserveNanos()).isZero();
+        assertThat(bucket.reserveNanos()).isEqualTo(tick);
+    }
+}
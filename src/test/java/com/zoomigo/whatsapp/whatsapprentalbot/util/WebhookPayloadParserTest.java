@@ -0,0 +1,95 @@
+package com.zoomigo.whatsapp.whatsapprentalbot.util;
+
+import com.zoomigo.whatsapp.whatsapprentalbot.model.InboundMessage;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.StatusUpdate;
+import com.zoomigo.whatsapp.whatsapprentalbot.model.WebhookPayload;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebhookPayloadParserTest {
+
+    private final WebhookPayloadParser parser = new WebhookPayloadParser();
+
+    @Test
+    void parsesTextMessageAndSkipsMetadataAndContacts() throws Exception {
+        String body = """
+                {"object":"whatsapp_business_account","entry":[{"id":"WABA","changes":[{"field":"messages","value":{
+                  "messaging_product":"whatsapp",
+                  "metadata":{"display_phone_number":"15550001111","phone_number_id":"123"},
+                  "contacts":[{"profile":{"name":"Alice"},"wa_id":"94771234567"}],
+                  "messages":[{"from":"94771234567","id":"wamid.A1","timestamp":"1730000000","type":"text","text":{"body":"Hi there"}}]
+                }}]}]}
+                """;
+
+        WebhookPayload payload = parse(body);
+
+        assertThat(payload.entryCount()).isEqualTo(1);
+        assertThat(payload.changeCount()).isEqualTo(1);
+        assertThat(payload.statuses()).isEmpty();
+        assertThat(payload.messages()).containsExactly(new InboundMessage("wamid.A1", "94771234567", "text", "Hi there", null));
+    }
+
+    @Test
+    void parsesInteractiveAndButtonReplies() throws Exception {
+        String body = """
+                {"entry":[{"changes":[{"value":{"messages":[
+                  {"from":"1","id":"m1","type":"interactive","interactive":{"type":"button_reply","button_reply":{"id":"confirm","title":"Yes"}}},
+                  {"from":"1","id":"m2","type":"interactive","interactive":{"type":"list_reply","list_reply":{"id":"bike-7","title":"Honda Dio","description":"Scooter"}}},
+                  {"from":"1","id":"m3","type":"button","button":{"payload":"KEEP","text":"Keep booking"}},
+                  {"from":"1","id":"m4","type":"image","image":{"id":"media-1","mime_type":"image/jpeg"}}
+                ]}}]}]}
+                """;
+
+        WebhookPayload payload = parse(body);
+
+        assertThat(payload.messages()).extracting(InboundMessage::text)
+                .containsExactly("Yes", "Honda Dio", "Keep booking", null);
+        assertThat(payload.messages()).extracting(InboundMessage::replyId)
+                .containsExactly("confirm", "bike-7", "KEEP", null);
+        assertThat(payload.messages().get(3).hasText()).isFalse();
+    }
+
+    @Test
+    void collectsStatusesAcrossEntriesAndChanges() throws Exception {
+        String body = """
+                {"entry":[
+                  {"changes":[{"value":{"statuses":[{"id":"s1","status":"delivered","recipient_id":"9","conversation":{"id":"c"},"pricing":{"billable":true}}]}}]},
+                  {"changes":[{"value":{"statuses":[{"id":"s2","status":"read","recipient_id":"9"}]}},
+                              {"value":{"messages":[{"from":"9","id":"m9","type":"text","text":{"body":"2"}}]}}]}
+                ]}
+                """;
+
+        WebhookPayload payload = parse(body);
+
+        assertThat(payload.entryCount()).isEqualTo(2);
+        assertThat(payload.changeCount()).isEqualTo(3);
+        assertThat(payload.statuses()).containsExactly(new StatusUpdate("s1", "9", "delivered"), new StatusUpdate("s2", "9", "read"));
+        assertThat(payload.messages()).extracting(InboundMessage::text).containsExactly("2");
+    }
+
+    @Test
+    void toleratesUnexpectedShapes() throws Exception {
+        WebhookPayload empty = parse("{}");
+        assertThat(empty.entryCount()).isZero();
+
+        WebhookPayload odd = parse("{\"entry\":[1,{\"changes\":\"x\"},{\"changes\":[{\"value\":{\"messages\":[\"nope\",{\"from\":\"1\",\"type\":\"text\",\"text\":\"flat\"}]}}]}]}");
+        assertThat(odd.entryCount()).isEqualTo(2);
+        assertThat(odd.changeCount()).isEqualTo(1);
+        assertThat(odd.messages()).singleElement().satisfies(m -> assertThat(m.text()).isNull());
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertThatThrownBy(() -> parse("{\"entry\":[{\"changes\":[")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> parse("[]")).isInstanceOf(IOException.class);
+    }
+
+    private WebhookPayload parse(String json) throws IOException {
+        return parser.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+}